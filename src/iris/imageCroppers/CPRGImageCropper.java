@@ -9,6 +9,7 @@ import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -48,11 +49,7 @@ public class CPRGImageCropper {
 		Roi rectangle = findCropBorders(duplicate);
 		duplicate.flush();
 
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
 		return(croppedImage);
 	}
 
@@ -7,6 +7,8 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ImageConverter;
 import iris.ui.IrisFrontend;
+import iris.utils.BrightnessProjection;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -63,20 +65,26 @@ public class GenericImageCropper {
 			return(croppedImage);
 		}
 
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, findPlate(originalImage));
+		return(croppedImage);
+	}
 
-		//find plate borders (where the colonies start) and return the Roi that these correspond to
-		//perform this in a duplicate picture, so any operations performed to find the Roi won't
-		//interfere with the original picture
-		ImagePlus duplicate = originalImage.duplicate();
-		Roi rectangle = findCropBorders(duplicate);
-		duplicate.flush();
 
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
+	/**
+	 * Finds the area of the picture that cropPlate keeps, without cropping it
+	 * @param originalImage
+	 * @return
+	 */
+	public static Rectangle findPlate(ImagePlus originalImage){
 
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
+		//find plate borders (where the colonies start) and return the Roi that these correspond to
+		//perform this in a grayscale copy of the picture, so any operations performed to find the Roi won't
+		//interfere with the original picture (the search only needs the grayscale picture anyway)
+		ImagePlus grayscaleCopy = Toolbox.getGrayscaleCopy(originalImage);
+		Roi rectangle = findCropBorders(grayscaleCopy);
+		grayscaleCopy.flush();
+
+		return(rectangle.getBounds());
 	}
 
 
@@ -98,8 +106,9 @@ public class GenericImageCropper {
 		ImageConverter imageConverter = new ImageConverter(originalImage);
 		imageConverter.convertToGray8();
 
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		BrightnessProjection projection = BrightnessProjection.calculate(originalImage);
+		int[] sumOfColumns = projection.sumOfColumns;
+		int[] sumOfRows = projection.sumOfRows;
 
 
 		//3. define the search space for the minima
@@ -119,29 +128,25 @@ public class GenericImageCropper {
 		int searchStartLeft = plasticPlateBorders.getBounds().x + searchSmallWidth;
 		int searchEndLeft = plasticPlateBorders.getBounds().x + searchBigWidth;
 
-		ArrayList<Integer> sublistColumnsLeft = new ArrayList<Integer>(sumOfColumns.subList(searchStartLeft, searchEndLeft));
-		int indexOfMinimumLeft = searchStartLeft + getIndexOfMinimumElement(sublistColumnsLeft);
+		int indexOfMinimumLeft = searchStartLeft + BrightnessProjection.getIndexOfMinimumElement(sumOfColumns, searchStartLeft, searchEndLeft);
 
 		//top
 		int searchStartTop = plasticPlateBorders.getBounds().y + searchSmallHeight;
 		int searchEndTop = plasticPlateBorders.getBounds().y + searchBigHeight;
 
-		ArrayList<Integer> sublistRowsTop = new ArrayList<Integer>(sumOfRows.subList(searchStartTop, searchEndTop));
-		int indexOfMinimumTop = searchStartTop + getIndexOfMinimumElement(sublistRowsTop);
+		int indexOfMinimumTop = searchStartTop + BrightnessProjection.getIndexOfMinimumElement(sumOfRows, searchStartTop, searchEndTop);
 
 		//right
 		int searchStartRight = plasticPlateBorders.getBounds().x + plasticPlateBorders.getBounds().width - searchBigWidth;
 		int searchEndRight = plasticPlateBorders.getBounds().x + plasticPlateBorders.getBounds().width - searchSmallWidth;
 
-		ArrayList<Integer> sublistColumnsRight = new ArrayList<Integer>(sumOfColumns.subList(searchStartRight, searchEndRight));
-		int indexOfMinimumRight = searchStartRight + getIndexOfMinimumElement(sublistColumnsRight);
+		int indexOfMinimumRight = searchStartRight + BrightnessProjection.getIndexOfMinimumElement(sumOfColumns, searchStartRight, searchEndRight);
 
 		//bottom
 		int searchStartBottom = plasticPlateBorders.getBounds().y + plasticPlateBorders.getBounds().height - searchBigHeight;
 		int searchEndBottom = plasticPlateBorders.getBounds().y + plasticPlateBorders.getBounds().height - searchSmallHeight;
 
-		ArrayList<Integer> sublistColumnsBottom = new ArrayList<Integer>(sumOfRows.subList(searchStartBottom, searchEndBottom));
-		int indexOfMinimumBottom = searchStartBottom + getIndexOfMinimumElement(sublistColumnsBottom);
+		int indexOfMinimumBottom = searchStartBottom + BrightnessProjection.getIndexOfMinimumElement(sumOfRows, searchStartBottom, searchEndBottom);
 
 
 		//create the Roi and return
@@ -170,8 +175,9 @@ public class GenericImageCropper {
 		imageConverter.convertToGray8();
 		
 		//2. get sum of rows/columns
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+		BrightnessProjection projection = BrightnessProjection.calculate(originalImage);
+		int[] sumOfColumns = projection.sumOfColumns;
+		int[] sumOfRows = projection.sumOfRows;
 		
 		//3. get only the sums that correspond to the middle of the plate, get their means
 		int width = originalImage.getWidth();
@@ -180,18 +186,14 @@ public class GenericImageCropper {
 		//define from where to where to get the sums of brightness (in the sawtooth pattern)
 		int columnsStartArea = width/2 - plateBorderSearchAreaColumns;
 		int columnsEndArea = width/2 + plateBorderSearchAreaColumns;
-		//get the sublist of those sums
-		ArrayList<Integer> sublistColumns = new ArrayList<Integer>(sumOfColumns.subList(columnsStartArea, columnsEndArea));
-		//get their mean
-		int meanOfCenterColumns = (int)Math.round(getMean(sublistColumns));
+		//get the mean of those sums
+		int meanOfCenterColumns = (int)Math.round(BrightnessProjection.getMean(sumOfColumns, columnsStartArea, columnsEndArea));
 		
 		//define from where to where to get the sums of brightness (in the sawtooth pattern)
 		int rowsStartArea = height/2 - plateBorderSearchAreaRows;
 		int rowsEndArea = height/2 + plateBorderSearchAreaRows;
-		//get the sublist of those sums
-		ArrayList<Integer> sublistRows = new ArrayList<Integer>(sumOfRows.subList(rowsStartArea, rowsEndArea));
-		//get their mean
-		int meanOfCenterRows = (int)Math.round(getMean(sublistRows));
+		//get the mean of those sums
+		int meanOfCenterRows = (int)Math.round(BrightnessProjection.getMean(sumOfRows, rowsStartArea, rowsEndArea));
 		
 		//4. get the index of the 20th element above the mean, this is the plate's plastic bounds
 		ArrayList<Integer> indicesOfColumnsSumsAboveMean = getIndicesAboveMean(sumOfColumns, meanOfCenterColumns);
@@ -224,43 +226,6 @@ public class GenericImageCropper {
 	
 
 
-	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the smallest element
-	 */
-	private static int getIndexOfMinimumElement(ArrayList<Integer> columns) {
-		int index = -1;
-		float min = Float.MAX_VALUE;
-
-		for (int i = 0; i < columns.size(); i++) {
-			if(columns.get(i)<min){
-				min = columns.get(i);
-				index = i;
-			}
-		}
-
-		return(index);
-	}
-	
-	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the smallest element
-	 */
-	private static int getIndexOfMaximumElement(ArrayList<Integer> columns) {
-		int index = -1;
-		float max = -Float.MAX_VALUE;
-
-		for (int i = 0; i < columns.size(); i++) {
-			if(columns.get(i)>max){
-				max = columns.get(i);
-				index = i;
-			}
-		}
-
-		return(index);
-	}
-
-
 	/**
 	 * This method iterates over the given list.
 	 * It returns the indices of that list where a value was found that was higher than the
@@ -271,12 +236,12 @@ public class GenericImageCropper {
 	 * @return
 	 */
 	private static ArrayList<Integer> getIndicesAboveMean(
-			ArrayList<Integer> list, int threshold) {
+			int[] list, int threshold) {
 
 		ArrayList<Integer> elementsAboveThreshold = new ArrayList<Integer>();
 
-		for(int i=0; i<list.size(); i++){
-			if(list.get(i)>threshold){
+		for(int i=0; i<list.length; i++){
+			if(list[i]>threshold){
 				elementsAboveThreshold.add(i);
 			}
 		}
@@ -285,89 +250,4 @@ public class GenericImageCropper {
 
 
 
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
 }
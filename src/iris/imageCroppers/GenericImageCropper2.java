@@ -7,6 +7,7 @@ import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ImageConverter;
 import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -64,23 +65,30 @@ public class GenericImageCropper2 {
 			return(croppedImage);
 		}
 
-		//find plate borders (where the colonies start) and return the Roi that these correspond to
-		//perform this in a duplicate picture, so any operations performed to find the Roi won't
-		//interfere with the original picture
-		ImagePlus duplicate = originalImage.duplicate();
-		Roi rectangle = findCropBorders2(duplicate);
-		duplicate.flush();
-
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, findPlate(originalImage));
 		croppedImage.setTitle(originalImage.getTitle());
 		return(croppedImage);
 	}
 
 
+	/**
+	 * Finds the area of the picture that cropPlate keeps, without cropping it
+	 * @param originalImage
+	 * @return
+	 */
+	public static Rectangle findPlate(ImagePlus originalImage){
+
+		//find plate borders (where the colonies start) and return the Roi that these correspond to
+		//perform this in a grayscale copy of the picture, so any operations performed to find the Roi won't
+		//interfere with the original picture (the search only needs the grayscale picture anyway)
+		ImagePlus grayscaleCopy = Toolbox.getGrayscaleCopy(originalImage);
+		Roi rectangle = findCropBorders2(grayscaleCopy);
+		grayscaleCopy.flush();
+
+		return(rectangle.getBounds());
+	}
+
+
 
 	/**
 	 * This function uses the plate border detection and then starts a search from those plate borders
@@ -169,15 +177,11 @@ public class GenericImageCropper2 {
 
 
 		//get a horizontal section of the plate
-		originalImage.setRoi(new Rectangle(0, 1000, originalImageWidth, 1000));
-		originalImage.copy(false);
-		ImagePlus horizontalSection = ImagePlus.getClipboard();
+		ImagePlus horizontalSection = Toolbox.cropImage(originalImage, new Rectangle(0, 1000, originalImageWidth, 1000));
 
 
 		//get a vertical section of the plate
-		originalImage.setRoi(new Rectangle(1000, 0, 1000, originalImageHeight));
-		originalImage.copy(false);
-		ImagePlus verticalSection = ImagePlus.getClipboard();
+		ImagePlus verticalSection = Toolbox.cropImage(originalImage, new Rectangle(1000, 0, 1000, originalImageHeight));
 
 
 		//2. get sum of rows/columns
@@ -236,15 +240,11 @@ public class GenericImageCropper2 {
 
 
 		//get a horizontal section of the plate
-		originalImage.setRoi(new Rectangle(0, 1000, width, 1000));
-		originalImage.copy(false);
-		ImagePlus horizontalSection = ImagePlus.getClipboard();
+		ImagePlus horizontalSection = Toolbox.cropImage(originalImage, new Rectangle(0, 1000, width, 1000));
 
 
 		//get a vertical section of the plate
-		originalImage.setRoi(new Rectangle(1000, 0, 1000, height));
-		originalImage.copy(false);
-		ImagePlus verticalSection = ImagePlus.getClipboard();
+		ImagePlus verticalSection = Toolbox.cropImage(originalImage, new Rectangle(1000, 0, 1000, height));
 
 
 		//2. get sum of rows/columns
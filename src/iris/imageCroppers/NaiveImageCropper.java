@@ -6,6 +6,9 @@ package iris.imageCroppers;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
+
+import java.awt.Rectangle;
 
 /**
  *This class provides methods to crop the original picture so as to keep only the colonies.
@@ -26,8 +29,7 @@ public abstract class NaiveImageCropper {
 	
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the area of interest (580, 380, 4080, 2730) to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the area of interest (580, 380, 4080, 2730) to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
@@ -44,13 +46,19 @@ public abstract class NaiveImageCropper {
 		//crop the plate so that we keep only the colonies
 		//Roi keepOnlyColoniesROI = new Roi(580, 380, 4080, 2730);
 		
-		originalImage.setRoi(keepOnlyColoniesROI);
-		originalImage.copy(false);//copy to the internal clipboard
-		
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, keepOnlyColoniesROI);
 		croppedImage.setTitle(originalImage.getTitle());
 		return(croppedImage);
 
 	}
+
+
+	/**
+	 * Returns the area of the picture that cropPlate keeps
+	 * @param originalImage
+	 * @return
+	 */
+	public static Rectangle findPlate(ImagePlus originalImage){
+		return(keepOnlyColoniesROI.getBounds());
+	}
 }
@@ -8,10 +8,9 @@ import ij.gui.Roi;
 import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.BrightnessProjection;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
 
 /**
  * This class implements methods that redefine the output of an existing image segmenter,
@@ -38,7 +37,7 @@ public class ColonyBreathing {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
 
 		//don't re-adjust colony borders if user has made the cropping
-		if(IrisFrontend.singleColonyRun==true){
+		if(input.settings.singleColonyRun==true){
 			return(originalSegmentation);
 		}
 
@@ -203,9 +202,10 @@ public class ColonyBreathing {
 	private static int colonyBreatheBotom(int left, int right, int initialBottom, ImagePlus bigPicture){
 		try{
 			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfRows_ = sumOfRows(bigPicture, left, right, initialBottom);
+			int[] sumOfRows_ = BrightnessProjection.calculate(bigPicture, 
+					new Rectangle(left, initialBottom-breathingSpace, right-left+1, 2*breathingSpace+1)).sumOfRows;
 			//then, find the minimum
-			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfRows_);
+			int minimumBrightnessSumLocation = BrightnessProjection.getIndexOfMinimumElement(sumOfRows_, 0, sumOfRows_.length);
 			//that's your new bottom
 			return(minimumBrightnessSumLocation - breathingSpace);
 		}
@@ -227,9 +227,10 @@ public class ColonyBreathing {
 	private static int colonyBreatheRight(int top, int bottom, int initialRight, ImagePlus bigPicture){
 		try{
 			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfColumns_ = sumOfColumns(bigPicture, top, bottom, initialRight);
+			int[] sumOfColumns_ = BrightnessProjection.calculate(bigPicture, 
+					new Rectangle(initialRight-breathingSpace, top, 2*breathingSpace+1, bottom-top+1)).sumOfColumns;
 			//then, find the minimum
-			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfColumns_);
+			int minimumBrightnessSumLocation = BrightnessProjection.getIndexOfMinimumElement(sumOfColumns_, 0, sumOfColumns_.length);
 			//that's your new bottom
 			return(minimumBrightnessSumLocation - breathingSpace);
 		}
@@ -241,92 +242,4 @@ public class ColonyBreathing {
 
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage, int left, int right, int initialBottom ){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=initialBottom-breathingSpace; y<=initialBottom+breathingSpace; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=left; x<=right; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage, int top, int bottom, int initialRight){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=initialRight-breathingSpace; x<=initialRight+breathingSpace; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=top; y<=bottom; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the smallest element
-	 */
-	private static int getIndexOfMinimumElement(ArrayList<Integer> list) {
-		int index = -1;
-		int min = Integer.MAX_VALUE;
-
-		for (int i = 0; i < list.size(); i++) {
-			if(list.get(i)<min){
-				min = list.get(i);
-				index = i;
-			}
-		}
-
-		return(index);
-	}
-
 }
@@ -8,7 +8,6 @@ import ij.gui.Roi;
 import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
-import iris.ui.IrisFrontend;
 import iris.utils.StdStats;
 
 import java.awt.Rectangle;
@@ -39,7 +38,7 @@ public class ColonyBreathing_variance {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
 
 		//don't re-adjust colony borders if user has made the cropping
-		if(IrisFrontend.singleColonyRun==true){
+		if(input.settings.singleColonyRun==true){
 			return(originalSegmentation);
 		}
 
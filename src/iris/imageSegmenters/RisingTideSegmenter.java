@@ -4,6 +4,7 @@
 package iris.imageSegmenters;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 import ij.ImagePlus;
@@ -16,7 +17,7 @@ import ij.process.ImageStatistics;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.utils.BrightnessProjection;
 
 /**
  * This class holds methods that implement the rising tide algorithm
@@ -34,7 +35,7 @@ public class RisingTideSegmenter {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
 
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(input.settings.singleColonyRun==true){
 
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -71,8 +72,9 @@ public class RisingTideSegmenter {
 
 
 		//3. the next step includes calculating the sum of the row/column brightness
-		ArrayList<Integer> sumOfColumns = sumOfColumns(BW_croppedImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(BW_croppedImage);
+		BrightnessProjection projection = BrightnessProjection.calculate(BW_croppedImage);
+		int[] sumOfColumns = projection.sumOfColumns;
+		int[] sumOfRows = projection.sumOfRows;
 
 		BW_croppedImage.flush();//flush the BW picture, we took the measurements we needed from it
 
@@ -169,12 +171,13 @@ public class RisingTideSegmenter {
 	/**
 	 * This function implements the rising tide algorithm to find local minima in the
 	 * sum of light intensities, that are distant by at least a minimum distance, defined in the settings
-	 * @param sumOfBrightness : an array of integers that is calculated by summing the brightness of all the pixels in an image row-wise or column-wise 
+	 * @param sumOfBrightness : an array of integers that is calculated by summing the brightness of all the pixels in an image row-wise or column-wise.
+	 * The values that go under the tide are overwritten in this array.
 	 * @param settings : pointer to a settings object, which can be used to fine-tune the algorithm
 	 * @param isRows : a boolean that shows whether this call is meant to find minima of rows or columns
 	 * @return a list of first X minima that were found while the threshold was rising
 	 */
-	private static ArrayList<Integer> risingTide(ArrayList<Integer> sumOfBrightness, BasicSettings settings, boolean isRows){
+	private static ArrayList<Integer> risingTide(int[] sumOfBrightness, BasicSettings settings, boolean isRows){
 
 		//calculate the number of rows and columns we should reach
 		int targetMinimaNumber;
@@ -196,13 +199,13 @@ public class RisingTideSegmenter {
 			iterations++;
 
 			//Step 1: find the current global minimum and it's index
-			Integer indexOfCurrentMinimum = new Integer(getMinimumAndIndexBW(sumOfBrightness));
+			int indexOfCurrentMinimum = getMinimumAndIndexBW(sumOfBrightness);
 			if(indexOfCurrentMinimum<0){
 				//an error occurred
 				return(minimaBag);
 			}
 
-			Integer currentMinimum = new Integer(sumOfBrightness.get(indexOfCurrentMinimum));
+			int currentMinimum = sumOfBrightness[indexOfCurrentMinimum];
 
 			//Step 2: check: if everything is now under the tide (was assigned a max value), the algorithm has to end
 			if(currentMinimum==Integer.MAX_VALUE){		
@@ -225,12 +228,10 @@ public class RisingTideSegmenter {
 				leftMostIndex = 0;		
 
 			//we cannot go over the maximum index, so set rightMost to maxIndex if that would have been the case
-			if(rightMostIndex>sumOfBrightness.size()-1)
-				rightMostIndex = sumOfBrightness.size()-1;
+			if(rightMostIndex>sumOfBrightness.length-1)
+				rightMostIndex = sumOfBrightness.length-1;
 
-			for(int i=leftMostIndex; i<=rightMostIndex; i++){
-				sumOfBrightness.set(i, Integer.MAX_VALUE);
-			}
+			Arrays.fill(sumOfBrightness, leftMostIndex, rightMostIndex+1, Integer.MAX_VALUE);
 
 
 
@@ -270,22 +271,22 @@ public class RisingTideSegmenter {
 	 * @param min_out
 	 * @param index_out
 	 */
-	private static int getMinimumAndIndexBW(ArrayList<Integer> list_input){
+	private static int getMinimumAndIndexBW(int[] list_input){
 
 		//initialize the output to something exotic
 		int min_out = Integer.MAX_VALUE;
 		int index_out = -1;
 
 
-		for(int i=0; i<list_input.size(); i++){
+		for(int i=0; i<list_input.length; i++){
 
 			//in case a list that 2 total minima (of the same low number, but in other places)
 			//we arbitrarily pick the first one.
 			//this algorithm will run again, after the currently selected minima (one of the 2)
 			//has been set to MAX_INT, so the other minima (of the 2) will have it's chance
-			if(list_input.get(i)<min_out){
+			if(list_input[i]<min_out){
 
-				min_out = list_input.get(i);
+				min_out = list_input[i];
 				index_out = i;
 
 				if(min_out==0){//nothing can go lower than zero
@@ -294,8 +295,8 @@ public class RisingTideSegmenter {
 					int lastZero = i;
 
 					//we found our first zero, now count consequtive zeros
-					for(;i<list_input.size(); i++){
-						if(list_input.get(i)==0){
+					for(;i<list_input.length; i++){
+						if(list_input[i]==0){
 							lastZero++;
 						}
 						else
@@ -366,77 +367,6 @@ public class RisingTideSegmenter {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-
 	/**
 	 * This function takes a picture and draws lines in the coordinates of the rows and columns given as arguments
 	 * the input picture will not change, we will retr
@@ -13,7 +13,6 @@ import ij.process.ImageStatistics;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
 import iris.utils.StdStats;
 
 import java.util.ArrayList;
@@ -35,7 +34,7 @@ public class RisingTideSegmenter_variance {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
 		
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(input.settings.singleColonyRun==true){
 			
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -9,7 +9,6 @@ import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
 
 
 /**
@@ -36,7 +35,7 @@ public class SimpleImageSegmenter {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
 
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(input.settings.singleColonyRun==true){
 
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -117,7 +116,7 @@ public class SimpleImageSegmenter {
 
 
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(input.settings.singleColonyRun==true){
 
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ImageConverter;
+import iris.imageCroppers.GenericImageCropper;
+import iris.imageCroppers.NaiveImageCropper3;
+
+/**
+ * This stage crops the plate to keep only the colonies (see GenericImageCropper.cropPlate), unless the user
+ * has set a fixed cropping or has already cropped the picture.
+ * Single colony pictures are not cropped, they're only copied (keeping their ROI).
+ * The cropped plate is kept in color, and a grayscale version of it is made for the segmentation and the tile readers.
+ * The rotated picture is flushed (or the original one, for profiles that don't rotate it).
+ * <br>
+ * Profiles that crop with a different cropper override cropPlateAutomatically (and cropPlateByDefault, if they
+ * crop differently when there are no user settings), and those that make the grayscale picture differently override makeGrayscale.
+ *
+ * @author George Kritikos
+ *
+ */
+public class CropStage implements PlateStage {
+
+	public boolean process(PlateContext context) {
+
+		//profiles without a rotate stage crop the original picture
+		if(context.rotatedImage==null){
+			context.rotatedImage = context.originalImage;
+			context.originalImage = null;
+		}
+
+		//1. crop the plate to keep only the colonies
+		//if user has cropped the colony, no need to re-crop
+		if(context.settings.singleColonyRun){
+			context.croppedImage = context.rotatedImage.duplicate();
+			context.croppedImage.setRoi(context.rotatedImage.getRoi());
+		}
+		else{
+			context.croppedImage = cropPlate(context);
+		}
+
+		//flush the rotated picture, we won't be needing it anymore (unless it was already just the plate)
+		if(context.rotatedImage!=context.croppedImage)
+			context.rotatedImage.flush();
+		context.rotatedImage = null;
+
+
+		//2. keep a color copy, then make the cropped picture grayscale
+		makeGrayscale(context);
+
+		return(true);
+	}
+
+
+	/**
+	 * Crops the rotated picture, as the user settings say
+	 * @param context
+	 * @return the cropped picture
+	 */
+	protected ImagePlus cropPlate(PlateContext context){
+
+		if(context.userProfileSettings==null){ //default behavior
+			return(cropPlateByDefault(context.rotatedImage));
+		}
+		else if(context.userProfileSettings.croppingSettings.UserCroppedImage){
+			//perform no cropping if the user already cropped the picture
+			ImagePlus croppedImage = context.rotatedImage.duplicate();
+			croppedImage.setRoi(context.rotatedImage.getRoi());
+			return(croppedImage);
+		}
+		else if(context.userProfileSettings.croppingSettings.UseFixedCropping){
+			int x_start = context.userProfileSettings.croppingSettings.FixedCropping_X_Start;
+			int x_end = context.userProfileSettings.croppingSettings.FixedCropping_X_End;
+			int y_start = context.userProfileSettings.croppingSettings.FixedCropping_Y_Start;
+			int y_end = context.userProfileSettings.croppingSettings.FixedCropping_Y_End;
+
+			return(cropPlateFixed(context.rotatedImage, new Roi(x_start, y_start, x_end, y_end)));
+		}
+		else{
+			return(cropPlateAutomatically(context.rotatedImage));
+		}
+	}
+
+
+	/**
+	 * Crops the plate when there are no user settings for this profile, the same as cropPlateAutomatically unless overridden
+	 * @param rotatedImage
+	 * @return
+	 */
+	protected ImagePlus cropPlateByDefault(ImagePlus rotatedImage){
+		return(cropPlateAutomatically(rotatedImage));
+	}
+
+
+	/**
+	 * Finds the plate and crops it, see GenericImageCropper.cropPlate
+	 * @param rotatedImage
+	 * @return
+	 */
+	protected ImagePlus cropPlateAutomatically(ImagePlus rotatedImage){
+		return(GenericImageCropper.cropPlate(rotatedImage));
+	}
+
+
+	/**
+	 * Crops the given area of the picture, see NaiveImageCropper3.cropPlate
+	 * @param rotatedImage
+	 * @param keepOnlyColoniesROI left, top, width and height of the area to keep
+	 * @return
+	 */
+	public static ImagePlus cropPlateFixed(ImagePlus rotatedImage, Roi keepOnlyColoniesROI){
+		return(NaiveImageCropper3.cropPlate(rotatedImage, keepOnlyColoniesROI));
+	}
+
+
+	/**
+	 * Keeps a color copy of the cropped picture, then makes the cropped picture grayscale
+	 * @param context
+	 */
+	protected void makeGrayscale(PlateContext context){
+		context.colourCroppedImage = context.croppedImage.duplicate();
+		context.colourCroppedImage.setRoi(context.croppedImage.getRoi());
+
+		ImageConverter imageConverter = new ImageConverter(context.croppedImage);
+		imageConverter.convertToGray8();
+	}
+}
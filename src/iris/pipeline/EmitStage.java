@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import iris.utils.ResultsStore;
+import iris.utils.ResultsWriter;
+import iris.utils.Toolbox;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * This stage writes the measurements of the colonies to the .iris file, and saves the grid picture.
+ * Each profile only has to say which measurements go in the table, see appendResults.
+ *
+ * @author George Kritikos
+ *
+ */
+public abstract class EmitStage implements PlateStage {
+
+	public boolean process(PlateContext context) {
+
+		//1. output the colony measurements as a text file
+		appendResults(context);
+
+		//check if writing to disk was successful
+		String outputFilename = context.filename + ".iris";
+		if(!writeOutputFile(outputFilename, context.output, context.results)){
+			System.err.println("Could not write output file " + outputFilename);
+		}
+		else{
+			System.out.println("...done processing!");
+		}
+
+
+		//2. save any intermediate picture files, if requested
+		if(context.settings.saveGridImage){
+			saveGridImage(context);
+		}
+
+		return(true);
+	}
+
+
+	/**
+	 * Appends the table of measurements (the header line, then one line per colony) to the output of the context
+	 * @param context
+	 */
+	protected abstract void appendResults(PlateContext context);
+
+
+	/**
+	 * Draws the colony bounds on the color cropped picture, and saves it next to the original picture.
+	 * Profiles that want a different grid picture override this.
+	 * @param context
+	 */
+	protected void saveGridImage(PlateContext context){
+		Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, context.readerOutputs);
+		Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
+	}
+
+
+
+	/**
+	 * This function writes the contents of the string buffer to the file with the given filename.
+	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
+	 * The file is first written under a temporary name, and only renamed to the output filename once it's all there,
+	 * so there's never a half-written .iris file (e.g. if Iris is stopped in the middle).
+	 * If a results store is open, the results are added to it as well, from the numbers the table was written with.
+	 * @param outputFilename
+	 * @param output
+	 * @param results the writer of the table in the output, null if it wasn't written with one
+	 * @return
+	 */
+	public static boolean writeOutputFile(String outputFilename, StringBuffer output, ResultsWriter results) {
+
+		File outputFile = new File(outputFilename);
+		File temporaryFile = new File(outputFilename + ".tmp");
+
+		try {
+			//1. write the output to the temporary file a piece at a time, without copying all of it into a string first
+			Writer writer = new FileWriter(temporaryFile);
+			try {
+				char[] piece = new char[8192];
+				for(int start=0; start<output.length(); start+=piece.length){
+					int end = Math.min(start+piece.length, output.length());
+					output.getChars(start, end, piece, 0);
+					writer.write(piece, 0, end-start);
+				}
+			}
+			finally {
+				writer.close();
+			}
+
+			//2. put it in place of the output file in one go
+			try {
+				Files.move(temporaryFile.toPath(), outputFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporaryFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+
+		} catch (IOException e) {
+			temporaryFile.delete();
+			return(false); //operation failed
+		}
+
+		ResultsStore.addPlate(outputFilename, output, results);
+
+		return(true); //operation succeeded
+	}
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import iris.utils.ImageLoader;
+
+import java.awt.Rectangle;
+
+/**
+ * This stage opens the picture file, see ImageLoader.openImage
+ * In single colony runs, the ROI of "colony_" pictures (the ones the user has defined a colony ROI on) is honoured,
+ * by setting the user defined ROI flag on the settings of this plate.
+ * <br>
+ * Profiles that don't rotate the picture and always crop the same area of it can give that area here,
+ * so that only that part of the picture is decoded (except in single colony runs, where the whole picture is the colony).
+ *
+ * @author George Kritikos
+ *
+ */
+public class LoadStage implements PlateStage {
+
+	/**
+	 * the only area of the picture to open, null to open the whole picture
+	 */
+	private Rectangle plateArea = null;
+
+
+	public LoadStage(){
+	}
+
+
+	/**
+	 * @param plateArea_ the only area of the picture to open, see ImageLoader.openImage(String, Rectangle)
+	 */
+	public LoadStage(Rectangle plateArea_){
+		plateArea = plateArea_;
+	}
+
+
+	public boolean process(PlateContext context) {
+
+		if(plateArea!=null && !(context.settings!=null && context.settings.singleColonyRun))
+			context.originalImage = ImageLoader.openImage(context.filename, plateArea);
+		else
+			context.originalImage = ImageLoader.openImage(context.filename);
+
+		//check that file was opened successfully
+		if(context.originalImage==null){
+			//TODO: warn the user that the file was not opened successfully
+			System.err.println("Could not open image file: " + context.filename);
+			return(false);
+		}
+
+		if(context.settings!=null && context.settings.singleColonyRun && context.filename.contains("colony_")){
+			context.settings.userDefinedRoi = true;
+		}
+
+		return(true);
+	}
+}
@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import ij.ImagePlus;
+import iris.imageSegmenterInput.BasicImageSegmenterInput;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.settings.BasicSettings;
+import iris.settings.UserSettings.ProfileSettings;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.tileReaderOutputs.CPRGTileReaderOutput;
+import iris.tileReaderOutputs.ColorTileReaderOutput;
+import iris.tileReaderOutputs.MorphologyTileReaderOutput;
+import iris.tileReaderOutputs.OpacityTileReaderOutput;
+import iris.utils.ResultsWriter;
+import iris.utils.Toolbox;
+
+import java.awt.Rectangle;
+
+/**
+ * This class holds everything known about the picture being analyzed by a PlatePipeline.
+ * Every stage finds here what the previous stages produced, and stores it's own results for the next ones.
+ *
+ * @author George Kritikos
+ *
+ */
+public class PlateContext {
+
+	/**
+	 * the name of the profile analyzing the picture, as written in the output file
+	 */
+	public String profileName;
+
+	/**
+	 * the full path of the picture file
+	 */
+	public String filename;
+
+	/**
+	 * only the name of the picture file, for the messages to the user
+	 */
+	public String justFilename;
+
+	/**
+	 * the contents of the .iris file, the header is filled in before the first stage
+	 */
+	public StringBuffer output = new StringBuffer();
+
+	/**
+	 * the settings of the profile
+	 */
+	public BasicSettings settings;
+
+	/**
+	 * the settings the user has set for this profile, null if there are none (or the profile doesn't use them)
+	 */
+	public ProfileSettings userProfileSettings = null;
+
+
+	/**
+	 * LOAD: the picture, as opened
+	 */
+	public ImagePlus originalImage;
+
+	/**
+	 * ROTATE: the angle the picture was rotated by, and the rotated picture
+	 */
+	public double imageAngle = 0;
+	public ImagePlus rotatedImage;
+
+	/**
+	 * CROP: the cropped plate, in grayscale and in color
+	 */
+	public ImagePlus croppedImage;
+	public ImagePlus colourCroppedImage;
+
+	/**
+	 * CROP: for profiles that find the colonies on the brightness of the picture (see Toolbox.getHSBgrayscaleImageBrightness),
+	 * that grayscale picture, and a black and white version of it
+	 */
+	public ImagePlus brightnessImage;
+	public ImagePlus thresholdedImage;
+
+	/**
+	 * CROP: the brightness of the whole rotated picture, for profiles that crop it more than once (see cropBrightness)
+	 */
+	private ImagePlus rotatedBrightnessImage = null;
+
+	/**
+	 * SEGMENT: the grid of tiles
+	 */
+	public BasicImageSegmenterInput segmentationInput;
+	public BasicImageSegmenterOutput segmentationOutput;
+
+	/**
+	 * READ_TILES: the measurements of the colony of each tile, [row][column]
+	 */
+	public BasicTileReaderOutput[][] readerOutputs;
+
+	/**
+	 * READ_TILES: for profiles that measure the opacity separately from the colony size, those measurements
+	 */
+	public OpacityTileReaderOutput[][] opacityReaderOutputs;
+
+	/**
+	 * READ_TILES: for profiles that measure the color of the colonies, those measurements
+	 */
+	public ColorTileReaderOutput[][] colorReaderOutputs;
+
+	/**
+	 * READ_TILES: for profiles that measure the morphology of the colonies, those measurements
+	 */
+	public MorphologyTileReaderOutput[][] morphologyReaderOutputs;
+
+	/**
+	 * READ_TILES: for profiles that also measure the morphology of the whole tile (not just the colony), those measurements
+	 */
+	public MorphologyTileReaderOutput[][] wholeTileMorphologyReaderOutputs;
+
+	/**
+	 * READ_TILES: for the CPRG profile, the dye measurements in the RGB and in the HSV color space
+	 */
+	public CPRGTileReaderOutput[][] cprgReaderOutputs;
+	public CPRGTileReaderOutput[][] cprgReaderOutputsHSV;
+
+	/**
+	 * EMIT: the table of measurements written to the output, see startResults
+	 */
+	public ResultsWriter results = null;
+
+
+	/**
+	 * the stage that stopped the analysis of this picture, null if all stages went through
+	 */
+	public Stage failedStage = null;
+
+
+
+	public PlateContext(String profileName_, String filename_, BasicSettings settings_){
+		profileName = profileName_;
+		filename = filename_;
+		settings = settings_;
+	}
+
+
+	/**
+	 * Starts the table of measurements in the output, and keeps it's writer for the results store (see EmitStage.writeOutputFile)
+	 * @param columns the column names, see ResultsColumns
+	 * @return
+	 */
+	public ResultsWriter startResults(String[] columns){
+		results = new ResultsWriter(output, columns);
+		return(results);
+	}
+
+
+	/**
+	 * Returns the brightness of the HSB color space (see Toolbox.getHSBgrayscaleImageBrightness) of the given area
+	 * of the rotated picture. The brightness of the whole rotated picture is worked out the first time and kept,
+	 * so trying out another cropper only copies the new area out of it.
+	 * @param plate the area of the rotated picture, as given to Toolbox.cropImage
+	 * @return
+	 */
+	public ImagePlus cropBrightness(Rectangle plate){
+		if(rotatedBrightnessImage==null)
+			rotatedBrightnessImage = Toolbox.getHSBbrightnessImage(rotatedImage, rotatedImage.getTitle());
+
+		return(Toolbox.cropImage(rotatedBrightnessImage, plate));
+	}
+
+
+	/**
+	 * Flushes the rotated picture and it's brightness, once the plate has been cropped out of it for good
+	 */
+	public void flushRotatedImage(){
+		if(rotatedImage!=null)
+			rotatedImage.flush();
+		if(rotatedBrightnessImage!=null)
+			rotatedBrightnessImage.flush();
+
+		rotatedImage = null;
+		rotatedBrightnessImage = null;
+	}
+
+
+	/**
+	 * Flushes all the pictures still held, once the analysis of the picture is over
+	 */
+	public void flushImages(){
+		flushRotatedImage();
+
+		ImagePlus[] images = {originalImage, croppedImage, colourCroppedImage, brightnessImage, thresholdedImage};
+
+		for(int i=0; i<images.length; i++){
+			if(images[i]!=null)
+				images[i].flush();
+		}
+
+		originalImage = null;
+		croppedImage = null;
+		colourCroppedImage = null;
+		brightnessImage = null;
+		thresholdedImage = null;
+	}
+}
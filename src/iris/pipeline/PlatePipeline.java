@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import iris.settings.BasicSettings;
+import iris.ui.IrisFrontend;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class analyzes a picture by running it through the stages of Stage, one after the other.
+ * A profile is just a configuration of this pipeline: it sets the PlateStage that does the work of each stage,
+ * using the shared stages (LoadStage, RotateStage, CropStage, EmitStage) wherever it doesn't need anything special.
+ * Stages that are not set are skipped.
+ * <br>
+ * Every stage of every picture is reported to the StageListeners, so e.g. timing doesn't need to be added to each profile.
+ *
+ * @author George Kritikos
+ *
+ */
+public class PlatePipeline {
+
+	/**
+	 * the name of the profile, as written in the output file
+	 */
+	private String profileName;
+
+	/**
+	 * the settings of the profile, handed to the stages through the context
+	 */
+	private BasicSettings settings;
+
+	/**
+	 * the stage implementations, by stage
+	 */
+	private EnumMap<Stage, PlateStage> stages = new EnumMap<Stage, PlateStage>(Stage.class);
+
+	/**
+	 * if true, the stages get the settings the user has set for this profile (see UserSettings)
+	 */
+	public boolean useUserSettings = false;
+
+	/**
+	 * these are notified about the stages of all pictures, of all pipelines
+	 */
+	private static List<StageListener> stageListeners = new CopyOnWriteArrayList<StageListener>();
+
+
+
+	public PlatePipeline(String profileName_, BasicSettings settings_){
+		profileName = profileName_;
+		settings = settings_;
+	}
+
+
+	/**
+	 * Sets the implementation of the given stage, replacing any previous one. A null plateStage removes the stage.
+	 * @param stage
+	 * @param plateStage
+	 */
+	public void setStage(Stage stage, PlateStage plateStage){
+		if(plateStage==null)
+			stages.remove(stage);
+		else
+			stages.put(stage, plateStage);
+	}
+
+
+	/**
+	 * Returns the implementation of the given stage, or null if it's not set
+	 * @param stage
+	 * @return
+	 */
+	public PlateStage getStage(Stage stage){
+		return(stages.get(stage));
+	}
+
+
+	public static void addStageListener(StageListener listener){
+		stageListeners.add(listener);
+	}
+
+
+	public static void removeStageListener(StageListener listener){
+		stageListeners.remove(listener);
+	}
+
+
+
+	/**
+	 * This function will analyze the given picture, running all the stages in order
+	 * until one of them fails. The end result will be a file with the same name as the input filename,
+	 * after the addition of a .iris ending (if the emit stage went through).
+	 * All pictures are flushed at the end.
+	 * @param filename
+	 * @return the context, holding all the results
+	 */
+	public PlateContext analyzePicture(String filename){
+
+		PlateContext context = new PlateContext(profileName, filename, settings);
+		context.justFilename = new File(filename).getName();
+
+		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+context.justFilename);
+
+		//initialize results file output
+		context.output.append("#Iris output\n");
+		context.output.append("#Profile: " + profileName + "\n");
+		context.output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
+		context.output.append("#"+filename+"\n");
+
+		//find any user settings pertaining to this profile
+		if(useUserSettings && IrisFrontend.userSettings!=null){
+			context.userProfileSettings = IrisFrontend.userSettings.getProfileSettings(profileName);
+		}
+
+
+		try{
+			for(Stage stage : Stage.values()){
+				PlateStage plateStage = stages.get(stage);
+				if(plateStage==null)
+					continue;
+
+				if(!runStage(stage, plateStage, context)){
+					context.failedStage = stage;
+					break;
+				}
+			}
+		}
+		finally{
+			context.flushImages();
+		}
+
+		return(context);
+	}
+
+
+	/**
+	 * Runs a single stage, notifying the listeners before and after it
+	 */
+	private static boolean runStage(Stage stage, PlateStage plateStage, PlateContext context){
+
+		for(StageListener listener : stageListeners){
+			listener.stageStarted(stage, context);
+		}
+
+		boolean succeeded = false;
+		try{
+			succeeded = plateStage.process(context);
+		}
+		finally{
+			for(StageListener listener : stageListeners){
+				listener.stageFinished(stage, context, succeeded);
+			}
+		}
+
+		return(succeeded);
+	}
+}
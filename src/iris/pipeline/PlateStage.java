@@ -0,0 +1,22 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+/**
+ * One stage of the analysis of a picture, see Stage.
+ * A stage reads what the previous stages left in the context, and adds it's own results to it.
+ *
+ * @author George Kritikos
+ *
+ */
+public interface PlateStage {
+
+	/**
+	 * Processes the picture of the given context.
+	 * Returns false if the picture can't be processed any further; the stage should have already told the user why.
+	 * @param context
+	 * @return
+	 */
+	public boolean process(PlateContext context);
+}
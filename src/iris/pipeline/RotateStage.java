@@ -0,0 +1,69 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import iris.utils.Toolbox;
+
+/**
+ * This stage finds the rotation of the plate (see Toolbox.calculateImageRotation) and creates the rotated picture.
+ * If the user has turned automatic rotation off, the angle the user has set is used instead.
+ * Single colony pictures are not rotated, they're only copied (keeping their ROI).
+ * The original picture is flushed.
+ * <br>
+ * Profiles that find the angle differently (e.g. not rotating by default) override calculateImageAngle.
+ *
+ * @author George Kritikos
+ *
+ */
+public class RotateStage implements PlateStage {
+
+	public boolean process(PlateContext context) {
+
+		//0. if user has cropped the colony, no need to rotate
+		if(context.settings.singleColonyRun){
+			context.imageAngle = 0;
+			context.rotatedImage = context.originalImage.duplicate();
+			context.rotatedImage.setRoi(context.originalImage.getRoi());
+			context.originalImage.flush();
+			context.originalImage = null;
+			return(true);
+		}
+
+
+		//1. get the angle
+		context.imageAngle = calculateImageAngle(context);
+
+
+		//2. create a copy of the original image and rotate it, then clear the original picture
+		context.rotatedImage = Toolbox.rotateImage(context.originalImage, context.imageAngle);
+		context.originalImage.flush();
+		context.originalImage = null;
+
+		//output how much the image needed to be rotated
+		if(context.imageAngle!=0){
+			System.out.println("Image had to be rotated by  " + context.imageAngle + " degrees");
+		}
+
+		return(true);
+	}
+
+
+	/**
+	 * Returns the angle the picture needs to be rotated by
+	 * @param context
+	 * @return
+	 */
+	protected double calculateImageAngle(PlateContext context){
+		if(context.userProfileSettings==null){
+			//if no settings loaded
+			return(Toolbox.calculateImageRotation(context.originalImage));
+		}
+		else if(context.userProfileSettings.rotationSettings.autoRotateImage){
+			return(Toolbox.calculateImageRotation(context.originalImage));
+		}
+		else{
+			return(context.userProfileSettings.rotationSettings.manualImageRotationDegrees);
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import ij.ImagePlus;
+import ij.gui.OvalRoi;
+import ij.gui.Roi;
+import iris.settings.BasicSettings;
+
+/**
+ * This stage opens the picture file (see LoadStage), and if it's the picture of a single colony (its name contains "colony_")
+ * or of a single tile (its name contains "tile_"), it sets the settings to a single tile and puts a ROI around the whole picture,
+ * an oval one for colonies, so that a possible user-set ROI is honoured.
+ *
+ * @author George Kritikos
+ *
+ */
+public class SingleColonyLoadStage extends LoadStage {
+
+	/**
+	 * the settings of the profile, set to a single tile for single colony pictures
+	 */
+	private BasicSettings settings;
+
+	/**
+	 * if true, the picture names are only looked at in single colony runs (see BasicSettings.singleColonyRun),
+	 * where the settings are already set to a single tile
+	 */
+	private boolean onlyInSingleColonyRuns;
+
+
+
+	public SingleColonyLoadStage(BasicSettings settings_){
+		this(settings_, false);
+	}
+
+
+	public SingleColonyLoadStage(BasicSettings settings_, boolean onlyInSingleColonyRuns_){
+		settings = settings_;
+		onlyInSingleColonyRuns = onlyInSingleColonyRuns_;
+	}
+
+
+
+	public boolean process(PlateContext context) {
+
+		if(!super.process(context))
+			return(false);
+
+		if(onlyInSingleColonyRuns && !settings.singleColonyRun)
+			return(true);
+
+		ImagePlus originalImage = context.originalImage;
+
+		//set flag to honour a possible user-set ROI
+		if(context.filename.contains("colony_")){
+			if(!onlyInSingleColonyRuns){
+				settings.singleColonyRun=true;
+				settings.numberOfColumnsOfColonies=1;
+				settings.numberOfRowsOfColonies=1;
+			}
+			settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
+		}
+		else if(context.filename.contains("tile_")){
+			if(!onlyInSingleColonyRuns){
+				settings.singleColonyRun=true;
+				settings.numberOfColumnsOfColonies=1;
+				settings.numberOfRowsOfColonies=1;
+			}
+			settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
+		}
+
+		return(true);
+	}
+}
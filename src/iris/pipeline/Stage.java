@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+/**
+ * The stages every picture goes through, in this order.
+ * A PlatePipeline runs whichever PlateStage a profile configured for each of them.
+ *
+ * @author George Kritikos
+ *
+ */
+public enum Stage {
+
+	/**
+	 * open the picture file
+	 */
+	LOAD,
+
+	/**
+	 * find the plate's rotation, and rotate the picture so that the colonies are aligned to it's axes
+	 */
+	ROTATE,
+
+	/**
+	 * crop the plate to keep only the colonies, and make a grayscale version of it
+	 */
+	CROP,
+
+	/**
+	 * find the grid of colonies (the tiles)
+	 */
+	SEGMENT,
+
+	/**
+	 * measure the colony in each tile
+	 */
+	READ_TILES,
+
+	/**
+	 * write the measurements to the .iris file, and save the grid picture
+	 */
+	EMIT
+}
@@ -0,0 +1,25 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+/**
+ * This is notified before and after every stage of every picture, e.g. to time the stages.
+ * The calls are made from the thread that analyzes the picture, so with many pictures being analyzed at once
+ * they can come from several threads at the same time.
+ *
+ * @author George Kritikos
+ *
+ */
+public interface StageListener {
+
+	/**
+	 * called just before the stage starts processing the picture
+	 */
+	public void stageStarted(Stage stage, PlateContext context);
+
+	/**
+	 * called right after the stage is done with the picture (even if it threw an exception, then succeeded is false)
+	 */
+	public void stageFinished(Stage stage, PlateContext context, boolean succeeded);
+}
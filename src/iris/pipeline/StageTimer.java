@@ -0,0 +1,163 @@
+/**
+ *
+ */
+package iris.pipeline;
+
+import iris.ui.IrisFrontend;
+import iris.utils.ThreadCost;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This listener measures the wall time, the CPU time and the allocated bytes of every stage of every picture.
+ * Each measurement is written to the log as a tab-separated line starting with "#stage".
+ * If asked to, the stages done before the results are written also go in the .iris file as comment lines,
+ * though that makes the .iris files differ from run to run.
+ * At the end of a run, getSummary gives the percentiles of each stage over all the pictures.
+ * <br>
+ * The CPU time and allocations include the work done by the tile pool for the picture (see ThreadCost),
+ * they are -1 if the JVM can't measure them.
+ *
+ * @author George Kritikos
+ *
+ */
+public class StageTimer implements StageListener {
+
+	/**
+	 * the column names of the lines written by this timer
+	 */
+	public static final String HEADER = "#stage\tfile\tprofile\tstage\tsucceeded\twall_ms\tcpu_ms\tallocated_kb";
+
+	/**
+	 * if true, the measurements are also added to the .iris file
+	 */
+	private boolean writeToOutput;
+
+	/**
+	 * [wall time, cpu time, allocated bytes] when the current stage of this thread started
+	 */
+	private final ThreadLocal<long[]> stageStart = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return(new long[3]);
+		}
+	};
+
+	/**
+	 * all the measurements so far, by stage. Each one is [wall time, cpu time, allocated bytes]
+	 */
+	private final EnumMap<Stage, List<long[]>> measurements = new EnumMap<Stage, List<long[]>>(Stage.class);
+
+
+
+	public StageTimer(boolean writeToOutput_){
+		writeToOutput = writeToOutput_;
+	}
+
+
+	public void stageStarted(Stage stage, PlateContext context) {
+		long[] start = stageStart.get();
+		start[0] = System.nanoTime();
+		start[1] = ThreadCost.getCpuTime();
+		start[2] = ThreadCost.getAllocatedBytes();
+	}
+
+
+	public void stageFinished(Stage stage, PlateContext context, boolean succeeded) {
+		long[] start = stageStart.get();
+		long wallTime = System.nanoTime() - start[0];
+		long cpuTime = start[1]<0 ? -1 : ThreadCost.getCpuTime() - start[1];
+		long allocatedBytes = start[2]<0 ? -1 : ThreadCost.getAllocatedBytes() - start[2];
+
+		synchronized (measurements) {
+			List<long[]> stageMeasurements = measurements.get(stage);
+			if(stageMeasurements==null){
+				stageMeasurements = new ArrayList<long[]>();
+				measurements.put(stage, stageMeasurements);
+			}
+			stageMeasurements.add(new long[]{wallTime, cpuTime, allocatedBytes});
+		}
+
+		String line = "#stage\t" + context.justFilename + "\t" + context.profileName + "\t" + stage + "\t" + succeeded + "\t"
+				+ toMilliseconds(wallTime) + "\t" + toMilliseconds(cpuTime) + "\t" + toKilobytes(allocatedBytes) + "\n";
+
+		IrisFrontend.writeToLog(line);
+
+		if(writeToOutput){
+			context.output.append(line);
+		}
+	}
+
+
+
+	/**
+	 * Returns a table with the median, 90th percentile and maximum wall time of every stage over all the pictures timed,
+	 * along with the median CPU time and allocations
+	 * @return
+	 */
+	public String getSummary(){
+		StringBuffer summary = new StringBuffer();
+		summary.append("#stage summary\tstage\tpictures\twall_ms_p50\twall_ms_p90\twall_ms_max\tcpu_ms_p50\tallocated_kb_p50\n");
+
+		synchronized (measurements) {
+			for(Stage stage : Stage.values()){
+				List<long[]> stageMeasurements = measurements.get(stage);
+				if(stageMeasurements==null)
+					continue;
+
+				long[] wallTimes = getColumn(stageMeasurements, 0);
+				long[] cpuTimes = getColumn(stageMeasurements, 1);
+				long[] allocatedBytes = getColumn(stageMeasurements, 2);
+
+				summary.append("#stage summary\t" + stage + "\t" + stageMeasurements.size() + "\t"
+						+ toMilliseconds(getPercentile(wallTimes, 50)) + "\t"
+						+ toMilliseconds(getPercentile(wallTimes, 90)) + "\t"
+						+ toMilliseconds(getPercentile(wallTimes, 100)) + "\t"
+						+ toMilliseconds(getPercentile(cpuTimes, 50)) + "\t"
+						+ toKilobytes(getPercentile(allocatedBytes, 50)) + "\n");
+			}
+		}
+
+		return(summary.toString());
+	}
+
+
+	/**
+	 * Returns the sorted values of one of the measurements
+	 */
+	private static long[] getColumn(List<long[]> stageMeasurements, int column){
+		long[] values = new long[stageMeasurements.size()];
+		for(int i=0; i<values.length; i++){
+			values[i] = stageMeasurements.get(i)[column];
+		}
+		Arrays.sort(values);
+		return(values);
+	}
+
+
+	/**
+	 * Returns the given percentile of the sorted values (nearest rank)
+	 */
+	private static long getPercentile(long[] sortedValues, int percentile){
+		int rank = (int) Math.ceil(percentile/100.0 * sortedValues.length);
+		return(sortedValues[Math.max(rank-1, 0)]);
+	}
+
+
+	private static String toMilliseconds(long nanoseconds){
+		if(nanoseconds<0)
+			return("-1");
+		return(String.format(Locale.ROOT, "%.1f", nanoseconds/1e6));
+	}
+
+
+	private static String toKilobytes(long bytes){
+		if(bytes<0)
+			return("-1");
+		return(Long.toString(bytes/1024));
+	}
+}
@@ -3,20 +3,18 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.Roi;
-import ij.measure.Calibration;
-import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
-import iris.imageCroppers.GenericImageCropper;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
-import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.LoadStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.RotateStage;
+import iris.pipeline.Stage;
 import iris.settings.BasicSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.OpacityTileReaderInput;
@@ -25,13 +23,11 @@ import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.BasicTileReader;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
-
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
  * 
@@ -56,153 +52,105 @@ public class BasicProfileNoEmptyCheck extends Profile {
 	 */
 	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
 
+
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load, rotate and crop stages,
+	 * then the rising tide segmentation, the colony size and opacity readers and the output of both,
+	 * even if too many tiles were found empty
 	 */
-	public void analyzePicture(String filename){
-
-		File file = new File(filename);
-		String justFilename = file.getName();
-
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-		//IrisFrontend.writeToLog("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-		//
-		//--------------------------------------------------
-		//
-		// 
-
-
-		//2. rotate the whole image
-		double imageAngle = calculateImageRotation(originalImage);
-
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
-		//output how much the image needed to be rotated
-		if(imageAngle!=0){
-			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		}
-
-
-		//3. crop the plate to keep only the colonies
-		ImagePlus croppedImage = GenericImageCropper.cropPlate(rotatedImage);
-//		ImagePlus croppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-		//flush the original picture, we won't be needing it anymore
-		rotatedImage.flush();
+	public BasicProfileNoEmptyCheck(){
+		pipeline = new PlatePipeline(profileName, settings);
 
+		pipeline.setStage(Stage.LOAD, new LoadStage());
+		pipeline.setStage(Stage.ROTATE, new RotateStage());
+		pipeline.setStage(Stage.CROP, new CropStage());
 
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
+		});
+	}
 
-		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus croppedImageColor = croppedImage.duplicate();
-		ImageConverter imageConverter = new ImageConverter(croppedImage);
-		imageConverter.convertToGray8();
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will segment the cropped picture, letting the colonies breathe
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
 
 		//let colonies breathe
-		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
-
-		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
+		context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-
-			System.err.print("Image segmentation algorithm failed:\n");
-
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
+			reportSegmentationError(context);
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImageColor, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(context.colourCroppedImage, context.segmentationOutput); //calculate grid image
+			Toolbox.savePicture(paintedImage, context.filename + ".grid.jpg");
 
-			croppedImageColor.flush();
 			paintedImage.flush();
 
-			return;
+			return(false);
 		}
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
-
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		appendGridPosition(context);
 
+		return(true);
+	}
 
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will measure the colony size and the opacity of every tile.
+	 * Too many empty tiles are only reported, the results are written anyway.
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
-		//6. analyze each tile
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] readerOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final BasicTileReaderOutput [][] readerOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = readerOutputs;
+		context.opacityReaderOutputs = opacityReaderOutputs;
+
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 				readerOutputs[i][j] = BasicTileReader.processTile(
-						new BasicTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 
 				if(readerOutputs[i][j].colonySize>0){
 
 					opacityReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], 
+							new OpacityTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j], 
 									readerOutputs[i][j].colonyROI, readerOutputs[i][j].colonySize, settings));
 				}
 				else
@@ -211,388 +159,42 @@ public class BasicProfileNoEmptyCheck extends Profile {
 				}
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
+		//2. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
 		if(checkRowsColumnsIncorrectGridding(readerOutputs)){
-			//something was wrong with the gridding.
-			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
+			//something was wrong with the gridding, but this profile outputs the results anyway
+			System.err.println("\n"+context.profileName+": unable to process picture " + context.justFilename);
 			System.err.print("Image segmentation algorithm warning:\n");
 			System.err.println("\ttoo many empty rows/columns");
 			System.err.println("\tThis profile will output an iris file anyway\n");
-
-			//calculate and save grid image
-			
-//			croppedImageColor = ColonyBreathing.paintSegmentedImage(croppedImageColor, segmentationOutput);
-//			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
-//			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
-//
-//			return;
 		}
 
-
-		//7. output the results
-
-		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"size\t" +
-				"circularity\t" +
-				"opacity\n");
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(opacityReaderOutputs[i][j].opacity) + "\n");
-			}
-		}
-
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			///ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
-
-			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
-		}
-
-	}
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			BasicTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
+		return(true);
 	}
 
 
 
 	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
 	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
+	private void appendColonyMeasurements(PlateContext context){
 
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
+		ResultsWriter results = context.startResults(ResultsColumns.GROWTH);
 
 		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
+		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
+			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+				results.add(i+1).add(j+1)
+						.add(context.readerOutputs[i][j].colonySize)
+						.add(context.readerOutputs[i][j].circularity)
+						.add(context.opacityReaderOutputs[i][j].opacity)
+						.endRow();
 			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
 		}
-
-		return(sumOfColumns);
-	}
-
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
 	}
 
-
 }
@@ -3,33 +3,27 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.Roi;
-import ij.measure.Calibration;
-import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
-import ij.process.ByteProcessor;
-import ij.process.ColorProcessor;
-import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
-import iris.imageCroppers.GenericImageCropper;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
-import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.LoadStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.RotateStage;
+import iris.pipeline.Stage;
 import iris.settings.BasicSettings;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.OpacityTileReaderForBsuColonies;
 import iris.ui.IrisFrontend;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
-
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
  * 
@@ -59,237 +53,143 @@ public class BsubtilisHazyProfileHSB extends Profile {
 
 
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load and rotate stages, cropping to the HSB brightness of the plate,
+	 * then the rising tide segmentation, the opacity reader for B.subtilis colonies and it's output
 	 */
-	public void analyzePicture(String filename){
-
-		File file = new File(filename);
-		String justFilename = file.getName();
-
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", build id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//2. rotate the whole image
-		double imageAngle = calculateImageRotation(originalImage);
-
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
-		//output how much the image needed to be rotated
-		if(imageAngle!=0){
-			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		}
-
-
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//3. crop the plate to keep only the colonies
-		ImagePlus croppedImage = GenericImageCropper.cropPlate(rotatedImage);
-
-		//flush the original picture, we won't be needing it anymore
-		rotatedImage.flush();
-
-
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
-		ImageProcessor ip =  croppedImage.getProcessor();
-
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the picture
-		int width = croppedImage.getWidth();
-		int height = croppedImage.getHeight();
-		int numPixels = width*height;
-
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
-
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+	public BsubtilisHazyProfileHSB(){
+		pipeline = new PlatePipeline(profileName, settings);
+
+		pipeline.setStage(Stage.LOAD, new LoadStage());
+		pipeline.setStage(Stage.ROTATE, new RotateStage());
+
+		pipeline.setStage(Stage.CROP, new CropStage() {
+			@Override
+			protected void makeGrayscale(PlateContext context) {
+				//the grayscale picture is the brightness of the HSB color space
+				context.colourCroppedImage = context.croppedImage.duplicate();
+				ImagePlus brightnessImage = Toolbox.getHSBbrightnessImage(context.croppedImage, context.croppedImage.getTitle());
+				context.croppedImage.flush();
+				context.croppedImage = brightnessImage;
+			}
+		});
 
-		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
-		croppedImage = new ImagePlus(croppedImage.getTitle(), bpBri);
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
+		});
+	}
 
 
-		//change the settings so that the distance between the colonies can now be smaller
-//		settings.minimumDistanceBetweenRows = 22;
-//		//..or larger
-//		settings.maximumDistanceBetweenRows = 55;
-		
-		calculateGridSpacing(settings, croppedImage);
 
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+	/**
+	 * This function will segment the cropped picture
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
-		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
+		calculateGridSpacing(settings, context.croppedImage);
 
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			
-			System.err.print("Image segmentation algorithm failed:\n");
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
 
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
+			reportSegmentationError(context);
 
-			//save the grid before exiting
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			//save the picture before exiting
+			Toolbox.savePicture(context.croppedImage, context.filename + ".grid.jpg");
 
-			return;
+			return(false);
 		}
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
-
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		appendGridPosition(context);
 
+		return(true);
+	}
 
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will measure the colony size and opacity of every tile.
+	 * Too many empty tiles are reported (with a grid picture), but the results are written anyway.
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
-		//6. analyze each tile
-		//OpacityTileReaderForHazyColonies_old.varianceThreshold = 3e6;
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = readerOutputs;
+		context.opacityReaderOutputs = readerOutputs;
+
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 				readerOutputs[i][j] = OpacityTileReaderForBsuColonies.processTile(
-						new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new OpacityTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
-		
-		
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
+
+		//2. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
 		if(checkRowsColumnsIncorrectGridding(readerOutputs)){
 			//something was wrong with the gridding.
-			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
+			//print an error message and save grid for debugging reasons, but carry on
+			reportIncorrectGridding(context);
 
 			//calculate and save grid image
-			//RisingTideSegmenter.paintSegmentedImage(croppedImage, segmentationOutput);
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-			
-			//return;
+			Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, readerOutputs);
+			Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
 		}
 
+		return(true);
+	}
 
 
 
-		//7. output the results
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
+
+		ResultsWriter results = context.startResults(ResultsColumns.GROWTH);
 
-		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"size\t" +
-				"circularity\t" +
-				"opacity\n");
-		
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].opacity) + "\n");
+				results.add(i+1).add(j+1)
+						.add(context.opacityReaderOutputs[i][j].colonySize)
+						.add(context.opacityReaderOutputs[i][j].circularity)
+						.add(context.opacityReaderOutputs[i][j].opacity)
+						.endRow();
 			}
 		}
-
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-		}
-
 	}
 
 
@@ -321,319 +221,5 @@ public class BsubtilisHazyProfileHSB extends Profile {
 		settings_.maximumDistanceBetweenRows = Math.round(nominal_width*3/2);
 		
 	}
-	
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			OpacityTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
-
-
 
 }
@@ -3,31 +3,22 @@
  */
 package iris.profiles;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
-
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.OvalRoi;
 import ij.gui.Roi;
-import ij.measure.Calibration;
-import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper2;
-import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
-import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
-import iris.imageSegmenters.RisingTideSegmenter;
 import iris.imageSegmenters.SimpleImageSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.RotateStage;
+import iris.pipeline.SingleColonyLoadStage;
+import iris.pipeline.Stage;
 import iris.settings.BasicSettings;
 import iris.settings.ColorSettings;
-import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.CPRGTileReaderOutput;
@@ -36,6 +27,9 @@ import iris.tileReaders.CPRGColorTileReader;
 import iris.tileReaders.CPRGColorTileReaderHSV;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
 /**
@@ -68,256 +62,139 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load (honouring single colony pictures) and rotate stages,
+	 * cropping a fixed area of the picture by default, then the simple segmentation, the opacity and CPRG dye readers
+	 * and their output
 	 */
-	public void analyzePicture(String filename){
-
-
-		//0. initialize settings and open files for input and output
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		File file = new File(filename);
-		String justFilename = file.getName();
-
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-
-
-		//find any user settings pertaining to this profile
-		ProfileSettings userProfileSettings = null;
-		if(IrisFrontend.userSettings!=null){
-			userProfileSettings = IrisFrontend.userSettings.getProfileSettings(profileName);
-		}
-
-		//set flag to honour a possible user-set ROI
-		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
-			settings.numberOfColumnsOfColonies=1;
-			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
-			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
-		}
-		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
-			settings.numberOfColumnsOfColonies=1;
-			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
-			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
-		}
-
-
-
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//2. rotate the whole image
-		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
-			//if no settings loaded
-			//or if this is a single colony image
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
-		}
-		else if(userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
-		}
-		else if(!userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = userProfileSettings.rotationSettings.manualImageRotationDegrees;
-		}
-
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
-		//output how much the image needed to be rotated
-		if(imageAngle!=0){
-			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		}
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//3. crop the plate to keep only the colonies
-		ImagePlus croppedImage = null;
-
-		if(userProfileSettings==null){ //default behavior
-			int x_start = 470;
-			int x_end = 4150;
-			int y_start = 325;
-			int y_end = 2770;
-
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
-		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
-			//perform no cropping if the user already cropped the picture
-			//or if this is a single-colony picture
-			croppedImage = rotatedImage.duplicate();
-			croppedImage.setRoi(rotatedImage.getRoi());
-		}
-		else if(userProfileSettings.croppingSettings.UseFixedCropping){
-			int x_start = userProfileSettings.croppingSettings.FixedCropping_X_Start;
-			int x_end = userProfileSettings.croppingSettings.FixedCropping_X_End;
-			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
-			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
-
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
-		}
-		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
-			croppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-		}
+	public CPRGProfile384_ourCamera2(){
+		pipeline = new PlatePipeline(profileName, settings);
+		pipeline.useUserSettings = true;
+
+		pipeline.setStage(Stage.LOAD, new SingleColonyLoadStage(settings));
+		pipeline.setStage(Stage.ROTATE, new RotateStage());
+
+		pipeline.setStage(Stage.CROP, new CropStage() {
+			@Override
+			protected ImagePlus cropPlateByDefault(ImagePlus rotatedImage) {
+				//the plate is always at the same place in the pictures of our camera
+				return(cropPlateFixed(rotatedImage, new Roi(470, 325, 4150, 2770)));
+			}
 
-		//flush the original picture, we won't be needing it anymore
-		rotatedImage.flush();
+			@Override
+			protected ImagePlus cropPlateAutomatically(ImagePlus rotatedImage) {
+				return(GenericImageCropper2.cropPlate(rotatedImage));
+			}
+		});
 
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
 
-		//
-		//--------------------------------------------------
-		//
-		//
+			@Override
+			protected void saveGridImage(PlateContext context) {
+				context.colourCroppedImage = ColonyBreathing.paintSegmentedImage(context.colourCroppedImage, context.segmentationOutput);
+				super.saveGridImage(context);
+			}
+		});
+	}
 
-		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
-		colourCroppedImage.setRoi(croppedImage.getRoi());
-		ImagePlus colourCroppedImage_duplicate = colourCroppedImage.duplicate();
-		colourCroppedImage_duplicate.setRoi(colourCroppedImage.getRoi());
-		ImageConverter imageConverter = new ImageConverter(croppedImage);
-		imageConverter.convertToGray8();
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will segment the cropped picture, letting the tile boundaries breathe if the user says so
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
-		//calculate the minimum and maximum grid spacings according to the cropped image size 
+		//calculate the minimum and maximum grid spacings according to the cropped image size
 		//and the number of rows and columns, save the results in the settings object
-		calculateGridSpacing(settings, croppedImage);
-
-		//		//change the settings so that the distance between the colonies can now be smaller
-		//		settings.minimumDistanceBetweenRows = 40;
-		//		//..or larger
-		//		settings.maximumDistanceBetweenRows = 100;
-
+		calculateGridSpacing(settings, context.croppedImage);
 
 
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = SimpleImageSegmenter.segmentPicture_width(segmentationInput);
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = SimpleImageSegmenter.segmentPicture_width(context.segmentationInput);
 
 		//let the tile boundaries "breathe"
-		if(userProfileSettings==null){//default behavior
-			//do nothing more
+		if(context.userProfileSettings!=null && context.userProfileSettings.segmentationSettings.ColonyBreathing){
+			ColonyBreathing.breathingSpace = context.userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 		}
-		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
-		}
-
-		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
-
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
 
-			System.err.print("Image segmentation algorithm failed:\n");
 
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
+			reportSegmentationError(context);
 
-			//save the grid before exiting
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage_duplicate, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(colourCroppedImage_duplicate, filename + ".grid.jpg");
+			//save the color picture before exiting
+			Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
 
-			return;
+			return(false);
 		}
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
-
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		appendGridPosition(context);
 
+		return(true);
+	}
 
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will measure the colony size and opacity of every tile, then the CPRG dye in the tiles with a colony.
+	 * Too many empty tiles are reported, but the results are written anyway.
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
 		//retrieve the user-defined detection thresholds
 		float minimumValidColonyCircularity;
-		try{minimumValidColonyCircularity = userProfileSettings.detectionSettings.MinimumValidColonyCircularity;} 
+		try{minimumValidColonyCircularity = context.userProfileSettings.detectionSettings.MinimumValidColonyCircularity;}
 		catch(Exception e) {minimumValidColonyCircularity = (float)0.3;}
 
 		int minimumValidColonySize;
-		try{minimumValidColonySize = userProfileSettings.detectionSettings.MinimumValidColonySize;} 
+		try{minimumValidColonySize = context.userProfileSettings.detectionSettings.MinimumValidColonySize;}
 		catch(Exception e) {minimumValidColonySize = 50;}
 
 
-
-
-		//6. analyze each tile
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		CPRGTileReaderOutput [][] cprgTileReaderOutputs = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		CPRGTileReaderOutput [][] cprgTileReaderOutputsHSV = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final CPRGTileReaderOutput [][] cprgTileReaderOutputs = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final CPRGTileReaderOutput [][] cprgTileReaderOutputsHSV = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = opacityReaderOutputs;
+		context.opacityReaderOutputs = opacityReaderOutputs;
+		context.cprgReaderOutputs = cprgTileReaderOutputs;
+		context.cprgReaderOutputsHSV = cprgTileReaderOutputsHSV;
+
+		final int minimumColonySize = minimumValidColonySize;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 				try{
 					opacityReaderOutputs[i][j] = OpacityTileReader.processTile(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new OpacityTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 				} catch(Exception e){
 					IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 					opacityReaderOutputs[i][j] = new OpacityTileReaderOutput();
@@ -325,8 +202,8 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				//each generated tile image is cleaned up inside the tile reader
 
 				//colony QC
-				if(opacityReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						opacityReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(opacityReaderOutputs[i][j].colonySize<minimumColonySize ||
+						opacityReaderOutputs[i][j].circularity<minimumColonyCircularity){
 					opacityReaderOutputs[i][j] = new OpacityTileReaderOutput();
 				}
 
@@ -334,7 +211,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				if(opacityReaderOutputs[i][j].colonySize>0){
 					try{
 						cprgTileReaderOutputs[i][j] = CPRGColorTileReader.processTile(
-								new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], colorSettings));
+								new ColorTileReaderInput(context.colourCroppedImage, context.segmentationOutput.ROImatrix[i][j], colorSettings));
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						cprgTileReaderOutputs[i][j] = new CPRGTileReaderOutput();
@@ -342,7 +219,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 					try{
 						cprgTileReaderOutputsHSV[i][j] = CPRGColorTileReaderHSV.processTile(
-								new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], colorSettings));
+								new ColorTileReaderInput(context.colourCroppedImage, context.segmentationOutput.ROImatrix[i][j], colorSettings));
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						cprgTileReaderOutputsHSV[i][j] = new CPRGTileReaderOutput();
@@ -359,82 +236,45 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				}
 
 			}
-		}
-
+		});
 
 
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
+		//2. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
 		if(checkRowsColumnsIncorrectGridding(opacityReaderOutputs)){
 			//something was wrong with the gridding.
-			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
-
-
-			/* ///HACK commenting-out the following block will make Iris print out the result even though the gridding failed
-			//calculate and save grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			//print an error message, but write the iris file anyway
+			reportIncorrectGridding(context);
+			System.err.println("\twarning: writing iris file anyway");
+		}
 
+		return(true);
+	}
 
-			return;
-			 */ //HACK end
 
-			System.err.println("\twarning: writing iris file anyway");
-		}
 
-		//7. output the results
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
 
-		//7.1 output the colony measurements as a text file
-		//7.1 output the colony measurements as a text file
-		output.append("row\t"+
-				"column\t"+
-				"size\t"+
-				"opacity\t"+
-				"circularity\t"+
-				"avg. dye intensity in colony\t"+
-				"avg. dye intensity in tile\t"+
-				"hsv avg. dye intensity in colony\t"+
-				"hsv avg. dye intensity in tile\n");
+		ResultsWriter results = context.startResults(ResultsColumns.CPRG);
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(opacityReaderOutputs[i][j].colonySize) + "\t"
-						+ Integer.toString(opacityReaderOutputs[i][j].opacity) + "\t"
-						+ String.format("%.3f", opacityReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(cprgTileReaderOutputs[i][j].colorSumInColony) + "\t"
-						+ Integer.toString(cprgTileReaderOutputs[i][j].colorSumInTile)  + "\t"
-						+ Integer.toString(cprgTileReaderOutputsHSV[i][j].colorSumInColony) + "\t"
-						+ Integer.toString(cprgTileReaderOutputsHSV[i][j].colorSumInTile)  + "\n");
+				results.add(i+1).add(j+1)
+						.add(context.opacityReaderOutputs[i][j].colonySize)
+						.add(context.opacityReaderOutputs[i][j].opacity)
+						.add(context.opacityReaderOutputs[i][j].circularity)
+						.add(context.cprgReaderOutputs[i][j].colorSumInColony)
+						.add(context.cprgReaderOutputs[i][j].colorSumInTile)
+						.add(context.cprgReaderOutputsHSV[i][j].colorSumInColony)
+						.add(context.cprgReaderOutputsHSV[i][j].colorSumInTile)
+						.endRow();
 			}
 		}
-
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			colourCroppedImage_duplicate = ColonyBreathing.paintSegmentedImage(colourCroppedImage_duplicate, segmentationOutput);
-			Toolbox.drawColonyBounds(colourCroppedImage_duplicate, segmentationOutput, opacityReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage_duplicate, filename + ".grid.jpg");
-		}
-
 	}
 
 
@@ -467,321 +307,4 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 	}
 
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			OpacityTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
-
-
-
 }
@@ -3,29 +3,30 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.OvalRoi;
-import ij.gui.Roi;
-import ij.process.ImageConverter;
-import iris.imageCroppers.GenericImageCropper;
-import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.RotateStage;
+import iris.pipeline.SingleColonyLoadStage;
+import iris.pipeline.Stage;
 import iris.settings.BasicSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
  * 
@@ -37,7 +38,7 @@ public class ColonyOpacityProfile extends Profile {
 	/**
 	 * the user-friendly name of this profile (will appear in the drop-down list of the GUI) 
 	 */
-	static String profileName = "Colony growth";
+	private static String profileName = "Colony growth";
 
 
 	/**
@@ -51,217 +52,120 @@ public class ColonyOpacityProfile extends Profile {
 	 */
 	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
 
+
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load, rotate and crop stages (honouring the user settings),
+	 * then the rising tide segmentation, the opacity reader and it's output
 	 */
-	public void analyzePicture(String filename){
-
-		File file = new File(filename);
-		String justFilename = file.getName();
-
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-
-
-		//find any user settings pertaining to this profile
-		ProfileSettings userProfileSettings = null;
-		if(IrisFrontend.userSettings!=null){
-			userProfileSettings = IrisFrontend.userSettings.getProfileSettings(profileName);
-		}
-
-		//set flag to honour a possible user-set ROI
-		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
-			settings.numberOfColumnsOfColonies=1;
-			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
-			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
-		}
-		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
-			settings.numberOfColumnsOfColonies=1;
-			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
-			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
-		}
-
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//2. rotate the whole image
-		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
-			//if no settings loaded
-			//or if this is a single colony image
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
-		}
-		else if(userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
-		}
-		else if(!userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = userProfileSettings.rotationSettings.manualImageRotationDegrees;
-		}
-
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
-
-		//output how much the image needed to be rotated
-		if(imageAngle!=0){
-			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		}
-
-
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
+	public ColonyOpacityProfile(){
+		this(profileName);
+	}
 
-		//3. crop the plate to keep only the colonies
-		ImagePlus croppedImage = null;
 
-		if(userProfileSettings==null){ //default behavior
-			croppedImage = GenericImageCropper.cropPlate(rotatedImage);
-		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
-			//perform no cropping if the user already cropped the picture
-			//or if this is a single-colony picture
-			croppedImage = rotatedImage.duplicate();
-			croppedImage.setRoi(rotatedImage.getRoi());
-		}
-		else if(userProfileSettings.croppingSettings.UseFixedCropping){
-			int x_start = userProfileSettings.croppingSettings.FixedCropping_X_Start;
-			int x_end = userProfileSettings.croppingSettings.FixedCropping_X_End;
-			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
-			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
-
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
-		}
-		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
-			croppedImage = GenericImageCropper.cropPlate(rotatedImage);
-		}
+	/**
+	 * Sets up the stages of this profile, under the given name (as written in the output file,
+	 * and as looked up in the user settings)
+	 * @param profileName_
+	 */
+	protected ColonyOpacityProfile(String profileName_){
+		pipeline = new PlatePipeline(profileName_, settings);
+		pipeline.useUserSettings = true;
 
-		//flush the original picture, we won't be needing it anymore
-		rotatedImage.flush();
+		pipeline.setStage(Stage.LOAD, new SingleColonyLoadStage(settings));
 
+		pipeline.setStage(Stage.ROTATE, new RotateStage());
+		pipeline.setStage(Stage.CROP, new CropStage());
 
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
 
-		//4. pre-process the picture (i.e. make it grayscale)
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
-		colourCroppedImage.setRoi(croppedImage.getRoi());
+			@Override
+			protected void saveGridImage(PlateContext context) {
+				context.colourCroppedImage = ColonyBreathing.paintSegmentedImage(context.colourCroppedImage, context.segmentationOutput);
+				super.saveGridImage(context);
+			}
+		});
+	}
 
-		ImageConverter imageConverter = new ImageConverter(croppedImage);
-		imageConverter.convertToGray8();
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will segment the cropped picture, letting the tile boundaries breathe
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
+		ProfileSettings userProfileSettings = context.userProfileSettings;
 
-		calculateGridSpacing(settings, croppedImage);
+		calculateGridSpacing(settings, context.croppedImage);
 
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
 
 
 		//let the tile boundaries "breathe"
 		if(userProfileSettings==null){//default behavior
 			ColonyBreathing.breathingSpace = 8;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
 			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+			context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 		}
 
-		
-
-		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
 
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
 
-			System.err.print("Image segmentation algorithm failed:\n");
-
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
+			reportSegmentationError(context);
 
 			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(context.croppedImage, context.segmentationOutput); //calculate grid image
+			Toolbox.savePicture(paintedImage, context.filename + ".grid.jpg");
 
-			return;
+			return(false);
 		}
 
-		//6. colony breathing
-		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+		//3. colony breathing
+		context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 
+		appendGridPosition(context);
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+		return(true);
+	}
 
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
 
 
+	/**
+	 * This function will measure the colony of every tile, discarding those that don't pass the colony QC
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(PlateContext context){
 
+		ProfileSettings userProfileSettings = context.userProfileSettings;
 
-		//
-		//--------------------------------------------------
-		//
-		//
-		
 		//retrieve the user-defined detection thresholds
 		float minimumValidColonyCircularity;
 		try{minimumValidColonyCircularity = userProfileSettings.detectionSettings.MinimumValidColonyCircularity;} 
@@ -271,89 +175,76 @@ public class ColonyOpacityProfile extends Profile {
 		try{minimumValidColonySize = userProfileSettings.detectionSettings.MinimumValidColonySize;} 
 		catch(Exception e) {minimumValidColonySize = 50;}
 
-		
 
-		//7. analyze each tile
+
+		//1. analyze each tile
 
 		//create an array of measurement outputs
 		OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				readerOutputs[i][j] = OpacityTileReader.processTile(
-						new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+		context.readerOutputs = readerOutputs;
+		context.opacityReaderOutputs = readerOutputs;
+
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrix
+		final ImagePlus tileSourceImage = context.croppedImage;
+		final BasicImageSegmenterOutput tileSegmentationOutput = context.segmentationOutput;
+		final OpacityTileReaderOutput [][] tileReaderOutputs = readerOutputs;
+		final int minimumColonySize = minimumValidColonySize;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
+				tileReaderOutputs[i][j] = OpacityTileReader.processTile(
+						new OpacityTileReaderInput(tileSourceImage, tileSegmentationOutput.ROImatrix[i][j], settings));
 
 				//each generated tile image is cleaned up inside the tile reader
 				
 				//colony QC
-				if(readerOutputs[i][j].colonySize<minimumValidColonySize ||
-						readerOutputs[i][j].circularity<minimumValidColonyCircularity){
-					readerOutputs[i][j] = new OpacityTileReaderOutput();
+				if(tileReaderOutputs[i][j].colonySize<minimumColonySize ||
+						tileReaderOutputs[i][j].circularity<minimumColonyCircularity){
+					tileReaderOutputs[i][j] = new OpacityTileReaderOutput();
 				}
-
-				
 			}
-		}
+		});
 
 
 
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
+		//2. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
 		if(checkRowsColumnsIncorrectGridding(readerOutputs)){
 			//something was wrong with the gridding.
 			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
+			reportIncorrectGridding(context);
 
 			//calculate and save grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, readerOutputs);
+			Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
 
-			return;
+			return(false);
 		}
 
+		return(true);
+	}
 
 
 
-		//8. output the results
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
 
-		//8.1 output the colony measurements as a text file
-		output.append("row\tcolumn\tsize\tcircularity\topacity\n");
+		ResultsWriter results = context.startResults(ResultsColumns.GROWTH);
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].opacity) + "\n");
+				results.add(i+1).add(j+1)
+						.add(context.opacityReaderOutputs[i][j].colonySize)
+						.add(context.opacityReaderOutputs[i][j].circularity)
+						.add(context.opacityReaderOutputs[i][j].opacity)
+						.endRow();
 			}
 		}
-
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//8.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-		}
-
 	}
 
 
@@ -386,81 +277,4 @@ public class ColonyOpacityProfile extends Profile {
 
 	}
 
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			OpacityTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-
-
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
-
-
-
 }
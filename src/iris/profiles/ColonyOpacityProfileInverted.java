@@ -5,6 +5,12 @@ package iris.profiles;
 
 import ij.IJ;
 import ij.ImagePlus;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlateStage;
+import iris.pipeline.Stage;
+import iris.utils.ImageLoader;
+
+import java.io.File;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -12,7 +18,7 @@ import ij.ImagePlus;
  * @author George Kritikos
  *
  */
-public class ColonyOpacityProfileInverted extends Profile {
+public class ColonyOpacityProfileInverted extends ColonyOpacityProfile {
 
 	/**
 	 * the user-friendly name of this profile (will appear in the drop-down list of the GUI) 
@@ -29,40 +35,56 @@ public class ColonyOpacityProfileInverted extends Profile {
 
 
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of the normal opacity profile (see ColonyOpacityProfile), 
+	 * but the picture is inverted and saved under a new filename before it's loaded, 
+	 * so that the results are written next to the inverted picture
 	 */
-	public void analyzePicture(String filename){
+	public ColonyOpacityProfileInverted(){
+		super(profileName);
+
+		final PlateStage loadStage = pipeline.getStage(Stage.LOAD);
+
+		pipeline.setStage(Stage.LOAD, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				if(!invertPicture(context))
+					return(false);
+
+				return(loadStage.process(context));
+			}
+		});
+	}
+
+
 
-		//just invert picture, save it as temp, and then feed it to the normal opacity profile
+	/**
+	 * This function will invert the picture, and save it under a new filename, which is the one the next stages will use
+	 * @param context
+	 * @return
+	 */
+	private static boolean invertPicture(PlateContext context){
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = ImageLoader.openImage(context.filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
 			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
+			System.err.println("Could not open image file: " + context.filename);
+			return(false);
 		}
-		
-		
+
+
 		//2. invert the picture, and save it under a new filename
-		String invertedFilename = filename+".inverted.jpg";
+		String invertedFilename = context.filename+".inverted.jpg";
 		originalImage.getProcessor().invert();
 		IJ.saveAs(originalImage, "jpg", invertedFilename);
-		
-
-		//3. pass it to the normal opacity profile to analyze
-		ColonyOpacityProfile normalOpacityProfile = new ColonyOpacityProfile();
-		ColonyOpacityProfile.profileName = ColonyOpacityProfileInverted.profileName;
-
-		normalOpacityProfile.analyzePicture(invertedFilename);
-
+		originalImage.flush();
 
+		context.filename = invertedFilename;
+		context.justFilename = new File(invertedFilename).getName();
 
+		return(true);
 	}
 
 
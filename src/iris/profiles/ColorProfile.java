@@ -3,13 +3,18 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.process.ImageConverter;
 import iris.imageCroppers.NaiveImageCropper;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
-import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.LoadStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.Stage;
 import iris.settings.ColorSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput;
@@ -18,12 +23,11 @@ import iris.tileReaderOutputs.ColorTileReaderOutput;
 import iris.tileReaders.BasicTileReader;
 import iris.tileReaders.ColorTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-
 /**
  * @author George Kritikos
  *
@@ -49,132 +53,110 @@ public class ColorProfile extends Profile{
 
 
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load stage, no rotation, cropping a fixed area of the picture,
+	 * then the rising tide segmentation, the colony size and color readers and their output
 	 */
-	public void analyzePicture(String filename){
-
-		File file = new File(filename);
-		String justFilename = file.getName();
-
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//2. crop the plate to keep only the colonies
-		ImagePlus croppedImage = NaiveImageCropper.cropPlate(originalImage);
-
-		//flush the original picture, we won't be needing it anymore
-		originalImage.flush();
-
+	public ColorProfile(){
+		pipeline = new PlatePipeline(profileName, settings);
 
+		pipeline.setStage(Stage.LOAD, new LoadStage());
 
+		pipeline.setStage(Stage.CROP, new CropStage() {
+			@Override
+			protected ImagePlus cropPlateAutomatically(ImagePlus rotatedImage) {
+				return(NaiveImageCropper.cropPlate(rotatedImage));
+			}
 
-		//
-		//--------------------------------------------------
-		//
-		//
+			@Override
+			protected void makeGrayscale(PlateContext context) {
+				//the color copy doesn't keep the ROI of the cropped picture
+				context.colourCroppedImage = context.croppedImage.duplicate();
+				ImageConverter imageConverter = new ImageConverter(context.croppedImage);
+				imageConverter.convertToGray8();
+			}
+		});
 
-		//3. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
-		ImagePlus colourCroppedImage = croppedImage.duplicate();
-		ImageConverter imageConverter = new ImageConverter(croppedImage);
-		imageConverter.convertToGray8();
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
+		});
+	}
 
-		//4. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
 
-		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
 
-			System.err.println("\nColor profile: unable to process picture " + justFilename);
+	/**
+	 * This function will segment the cropped picture
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
-			System.err.print("Image segmentation algorithm failed:\n");
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
 
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
+			reportSegmentationError(context);
 
-			//save the grid before exiting
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			//save the picture before exiting
+			Toolbox.savePicture(context.croppedImage, context.filename + ".grid.jpg");
 
-			return;
+			return(false);
 		}
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
-
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		appendGridPosition(context);
 
+		return(true);
+	}
 
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will measure the colony size and color of every tile
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
-		//5. analyze each tile
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = basicTileReaderOutputs;
+		context.colorReaderOutputs = colourTileReaderOutputs;
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 
 				//first get the colony size (so that the user doesn't have to run 2 profiles for this)
 				basicTileReaderOutputs[i][j] = BasicTileReader.processTile(
-						new BasicTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 
 				//only run the color analysis if there is a colony in the tile
 				if(basicTileReaderOutputs[i][j].colonySize>0){
 					colourTileReaderOutputs[i][j] = ColorTileReader.processTile(
-							new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new ColorTileReaderInput(context.colourCroppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 				}
 				else{
 					colourTileReaderOutputs[i][j] = new ColorTileReaderOutput();
@@ -185,159 +167,60 @@ public class ColorProfile extends Profile{
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
+		//2. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
 		if(checkRowsColumnsIncorrectGridding(basicTileReaderOutputs)){
 			//something was wrong with the gridding.
 			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
+			reportIncorrectGridding(context);
 
 			//calculate and save grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs);
+			Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
 
-			return;
+			return(false);
 		}
 
+		return(true);
+	}
+
 
 
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
 
-		//6. output the results
+		ResultsWriter results = context.startResults(ResultsColumns.BIOFILM);
 
-		//6.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"circularity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"biofilm area ratio\n");
-		
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 
+				BasicTileReaderOutput readerOutput = context.readerOutputs[i][j];
+				ColorTileReaderOutput colorReaderOutput = context.colorReaderOutputs[i][j];
+
 				//calculate the ratio of biofilm size (in pixels) to colony size
 				float biofilmAreaRatio = 0;
-				if(basicTileReaderOutputs[i][j].colonySize!=0){
-					biofilmAreaRatio = (float)colourTileReaderOutputs[i][j].biofilmArea / (float)basicTileReaderOutputs[i][j].colonySize;
+				if(readerOutput.colonySize!=0){
+					biofilmAreaRatio = (float)colorReaderOutput.biofilmArea / (float)readerOutput.colonySize;
 				}
 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", biofilmAreaRatio) + "\n");
+				results.add(i+1).add(j+1)
+						.add(readerOutput.colonySize)
+						.add(readerOutput.circularity)
+						.add(colorReaderOutput.colorIntensitySum)
+						.add(colorReaderOutput.biofilmArea)
+						.add(colorReaderOutput.colorIntensitySumInBiofilmArea)
+						.add(biofilmAreaRatio)
+						.endRow();
 			}
 		}
-
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//6.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-		}
-
-	}
-	
-	
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			BasicTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
 	}
 
 }
-
-
-
-
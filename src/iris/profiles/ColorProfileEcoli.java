@@ -3,32 +3,25 @@
  */
 package iris.profiles;
 
+import java.awt.Rectangle;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
 
-import fiji.threshold.Auto_Local_Threshold;
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.OvalRoi;
-import ij.gui.Roi;
-import ij.measure.Calibration;
-import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper;
 import iris.imageCroppers.GenericImageCropper2;
 import iris.imageCroppers.NaiveImageCropper;
-import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
-import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.RotateStage;
+import iris.pipeline.SingleColonyLoadStage;
+import iris.pipeline.Stage;
 import iris.settings.ColorSettings;
-import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput3;
 import iris.tileReaderInputs.OpacityTileReaderInput;
@@ -41,6 +34,10 @@ import iris.tileReaders.ColorTileReaderHSB;
 import iris.tileReaders.LaplacianFilterTileReader;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.DiagnosticImageWriter;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 /**
  * @author George Kritikos
@@ -67,253 +64,184 @@ public class ColorProfileEcoli extends Profile{
 
 
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load (honouring single colony pictures) and rotate stages,
+	 * cropping to the HSB brightness of the plate, then the rising tide segmentation (trying other croppers if it fails),
+	 * the colony size, color and opacity readers and their output
 	 */
-	public void analyzePicture(String filename){
+	public ColorProfileEcoli(){
+		pipeline = new PlatePipeline(profileName, settings);
+		pipeline.useUserSettings = true;
 
+		pipeline.setStage(Stage.LOAD, new SingleColonyLoadStage(settings));
+		pipeline.setStage(Stage.ROTATE, new RotateStage());
 
-		File file = new File(filename);
-		String path = file.getParent();
-		String justFilename = file.getName();
+		pipeline.setStage(Stage.CROP, new CropStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				//1. crop the plate to keep only the colonies
+				//the rotated picture is kept, in case the segmentation needs the plate cropped differently
+				context.colourCroppedImage = cropPlate(context);
 
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-		//IrisFrontend.writeToLog("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
+				//2. the grayscale picture is the brightness of the HSB color space
+				context.croppedImage = Toolbox.getHSBgrayscaleImageBrightness(context.colourCroppedImage, settings);
 
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-
-		//find any user settings pertaining to this profile
-		ProfileSettings userProfileSettings = null;
-		if(IrisFrontend.userSettings!=null){
-			userProfileSettings = IrisFrontend.userSettings.getProfileSettings(profileName);
-		}
-
-		//set flag to honour a possible user-set ROI
-		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
-			settings.numberOfColumnsOfColonies=1;
-			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
-			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
-		}
-		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
-			settings.numberOfColumnsOfColonies=1;
-			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
-			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
-		}
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//2. rotate the whole image
-		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
-			//if no settings loaded
-			//or if this is a single colony image
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
-		}
-		else if(userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
-		}
-		else if(!userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = userProfileSettings.rotationSettings.manualImageRotationDegrees;
-		}
-
-
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
-		//output how much the image needed to be rotated
-		if(imageAngle!=0){
-			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		}
+				return(true);
+			}
 
+			@Override
+			protected ImagePlus cropPlateAutomatically(ImagePlus rotatedImage) {
+				return(GenericImageCropper2.cropPlate(rotatedImage));
+			}
+		});
 
-		//3. crop the plate to keep only the colonies
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
-		ImagePlus colourCroppedImage = null;
-		if(userProfileSettings==null){ //default behavior
-			colourCroppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
-			//perform no cropping if the user already cropped the picture
-			//or if this is a single-colony picture
-			colourCroppedImage = rotatedImage.duplicate();
-			colourCroppedImage.setRoi(rotatedImage.getRoi());
-		}
-		else if(userProfileSettings.croppingSettings.UseFixedCropping){
-			int x_start = userProfileSettings.croppingSettings.FixedCropping_X_Start;
-			int x_end = userProfileSettings.croppingSettings.FixedCropping_X_End;
-			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
-			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
-
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			colourCroppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
-		}
-		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
-			colourCroppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-		}
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				super.process(context);
 
+				saveColonyPictures(context);
+				return(true);
+			}
 
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
 
+			@Override
+			protected void saveGridImage(PlateContext context) {
+				Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, context.readerOutputs);
+				//now paint also the tile bounds, on a copy of the picture
+				context.colourCroppedImage = ColonyBreathing.paintSegmentedImage(context.colourCroppedImage, context.segmentationOutput);
+				Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
+			}
+		});
+	}
 
-		//
-		//--------------------------------------------------
-		//
-		//
 
-		//4. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
-		//This is how you do it the HSB way		
-		ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will segment the cropped picture, trying a different cropper if that fails,
+	 * then let the tile boundaries breathe
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(grayscaleCroppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
 
 		//check if something went wrong with the segmenting process, then try out different croppers
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
-
-			colourCroppedImage = GenericImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);			
-			segmentationInput = new BasicImageSegmenterInput(grayscaleCroppedImage, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-
+		//(this is usually why the segmentation fails)
+		if(context.segmentationOutput.errorOccurred){
+			segmentPictureCroppedAgain(context, GenericImageCropper.findPlate(context.rotatedImage));
 		}
 
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
-
-			colourCroppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-			segmentationInput = new BasicImageSegmenterInput(grayscaleCroppedImage, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-
+		if(context.segmentationOutput.errorOccurred){
+			segmentPictureCroppedAgain(context, NaiveImageCropper.findPlate(context.rotatedImage));
 		}
-		//flush the original pictures, we won't be needing them anymore
-		rotatedImage.flush();
-		originalImage.flush();
 
-		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
+		//flush the rotated picture, we won't be needing it anymore
+		context.flushRotatedImage();
 
-			System.err.println("\n"+ profileName +" profile: unable to process picture " + justFilename);
 
-			System.err.print("Image segmentation algorithm failed:\n");
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+			reportSegmentationError(context);
 
+			//save the picture before exiting
+			Toolbox.savePicture(context.croppedImage, context.filename + ".grid.jpg");
 
-			//save the grid before exiting
-			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
-			croppedImageSegmented.setRoi(grayscaleCroppedImage.getRoi());
-
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
-
-			croppedImageSegmented.flush();
-			grayscaleCroppedImage.flush();
-
-			return;
+			return(false);
 		}
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
-
-
-		//6. colony breathing
-
-		//let the tile boundaries "breathe"
- 		if(userProfileSettings==null){//default behavior
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+		//3. let the tile boundaries "breathe"
+		if(context.userProfileSettings==null){//default behavior
+			context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 		}
-		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
-			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
+		else if(context.userProfileSettings.segmentationSettings.ColonyBreathing){
+			ColonyBreathing.breathingSpace = context.userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 		}
 
+		appendGridPosition(context);
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
-
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
-
+		return(true);
+	}
 
 
+	/**
+	 * Replaces the cropped pictures with the given area of the rotated picture, and segments it.
+	 * The brightness of the rotated picture is only worked out once, however many croppers are tried.
+	 * @param context
+	 * @param plate
+	 */
+	private void segmentPictureCroppedAgain(PlateContext context, Rectangle plate){
+		context.colourCroppedImage.flush();
+		context.croppedImage.flush();
+
+		context.colourCroppedImage = Toolbox.cropImage(context.rotatedImage, plate);
+		context.croppedImage = context.cropBrightness(plate);
+		context.segmentationInput = new BasicImageSegmenterInput(context.croppedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
+	}
 
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
+	/**
+	 * This function will measure the colony size, color and opacity of every tile,
+	 * then remove the colonies that look too much like the background
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
 		//retrieve the user-defined detection thresholds
 		float minimumValidColonyCircularity;
-		try{minimumValidColonyCircularity = userProfileSettings.detectionSettings.MinimumValidColonyCircularity;} 
+		try{minimumValidColonyCircularity = context.userProfileSettings.detectionSettings.MinimumValidColonyCircularity;}
 		catch(Exception e) {minimumValidColonyCircularity = (float)0.4;}
 
 		int minimumValidColonySize;
-		try{minimumValidColonySize = userProfileSettings.detectionSettings.MinimumValidColonySize;} 
+		try{minimumValidColonySize = context.userProfileSettings.detectionSettings.MinimumValidColonySize;}
 		catch(Exception e) {minimumValidColonySize = 50;}
 
 
-		//6. analyze each tile
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = basicTileReaderOutputs;
+		context.colorReaderOutputs = colourTileReaderOutputs;
+		context.opacityReaderOutputs = opacityTileReaderOutputs;
+
+		final ImagePlus grayscaleCroppedImage = context.croppedImage;
+		final ImagePlus colourCroppedImage = context.colourCroppedImage;
+
+		final int minimumColonySize = minimumValidColonySize;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 
 				//first get the colony size using one method
 
@@ -321,7 +249,7 @@ public class ColorProfileEcoli extends Profile{
 				//v60 (or v66, it's the same)
 				try{
 					basicTileReaderOutputs[i][j] = BasicTileReaderHSB_darkColonies.processTile(
-							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new BasicTileReaderInput(grayscaleCroppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 				} catch (Exception e){
 					IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
@@ -332,11 +260,9 @@ public class ColorProfileEcoli extends Profile{
 				//v69 using Lucia's thresholds
 				if(basicTileReaderOutputs[i][j].colonySize==0 || basicTileReaderOutputs[i][j].circularity<0.4){
 
-					//System.out.println(filename + " " + Integer.toString(i+1) + " " + Integer.toString(j+1));
-
 					try{
 						basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-								new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+								new BasicTileReaderInput(grayscaleCroppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 					} catch (Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
@@ -346,7 +272,7 @@ public class ColorProfileEcoli extends Profile{
 					if(basicTileReaderOutputs[i][j].colonySize==0){
 						try{
 							basicTileReaderOutputs[i][j] = LaplacianFilterTileReader.processTile(
-									new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+									new BasicTileReaderInput(grayscaleCroppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 						} catch(Exception e){
 							IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 							basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
@@ -357,25 +283,9 @@ public class ColorProfileEcoli extends Profile{
 				//v69 end
 
 
-				/*
-				 * for the record, this is how v0.9.6.1 worked
-				basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-						new BasicTileReaderInput(BW_local_thresholded_picture, segmentationOutput.ROImatrix[i][j], settings));
-
-				//try once more using the other
-				if(basicTileReaderOutputs[i][j].colonySize==0){
-					//					basicTileReaderOutputs[i][j] = BasicTileReaderHSB_darkColonies.processTile(
-					//							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
-
-					basicTileReaderOutputs[i][j] = LaplacianFilterTileReader.processTile(
-							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
-
-				}
-				 */
-
 				//colony QC -- user thresholds
-				if(basicTileReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						basicTileReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(basicTileReaderOutputs[i][j].colonySize<minimumColonySize ||
+						basicTileReaderOutputs[i][j].circularity<minimumColonyCircularity){
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 				}
 
@@ -385,8 +295,8 @@ public class ColorProfileEcoli extends Profile{
 					//colour
 					try{
 						colourTileReaderOutputs[i][j] = ColorTileReaderHSB.processDefinedColonyTile(
-								new ColorTileReaderInput3(colourCroppedImage, segmentationOutput.ROImatrix[i][j], 
-										basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, 
+								new ColorTileReaderInput3(colourCroppedImage, context.segmentationOutput.ROImatrix[i][j],
+										basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize,
 										basicTileReaderOutputs[i][j].colonyCenter, settings));
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
@@ -397,7 +307,7 @@ public class ColorProfileEcoli extends Profile{
 					//this is a fix for very dark colonies
 					try{
 						opacityTileReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-								new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+								new OpacityTileReaderInput(grayscaleCroppedImage, context.segmentationOutput.ROImatrix[i][j],
 										basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings), true);
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
@@ -427,14 +337,42 @@ public class ColorProfileEcoli extends Profile{
 				//each generated tile image is cleaned up inside the tile reader
 
 			}
+		});
+
+
+
+		//2. double-check the results
+		removeBackgroundLikeColonies(basicTileReaderOutputs, colourTileReaderOutputs, opacityTileReaderOutputs);
+
+
+		//3. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
+		if(checkRowsColumnsIncorrectGridding(basicTileReaderOutputs)){
+			//something was wrong with the gridding.
+			//just print an error message, save grid for debugging reasons and exit
+			reportIncorrectGridding(context);
+
+			//calculate and save grid image
+			Toolbox.drawColonyBounds(colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs);
+			Toolbox.savePicture(colourCroppedImage, context.filename + ".grid.jpg");
+
+			return(false);
 		}
 
+		return(true);
+	}
 
 
-		//6.2 -- double-check the results
+	/**
+	 * This function empties the tiles of the colonies that are too faint (by size normalized opacity) and not round enough,
+	 * or just too close to the background
+	 * @param basicTileReaderOutputs
+	 * @param colourTileReaderOutputs
+	 * @param opacityTileReaderOutputs
+	 */
+	private void removeBackgroundLikeColonies(BasicTileReaderOutput [][] basicTileReaderOutputs,
+			ColorTileReaderOutput [][] colourTileReaderOutputs, OpacityTileReaderOutput [][] opacityTileReaderOutputs){
 
 		double minimumSizeNormalizedOpacityThreshold=4;
-		double maximumDarkColonySizeNormalizedOpacityThreshold=-1.5;
 		double minimumCircularityThreshold=0.25;
 		boolean colony_flagged=false;
 		//for all rows
@@ -453,28 +391,28 @@ public class ColorProfileEcoli extends Profile{
 
 				double SNO = (double)opacityTileReaderOutputs[i][j].opacity / (double)opacityTileReaderOutputs[i][j].colonySize;
 
-				if( SNO < minimumSizeNormalizedOpacityThreshold 
-						&& 
+				if( SNO < minimumSizeNormalizedOpacityThreshold
+						&&
 						basicTileReaderOutputs[i][j].circularity<minimumCircularityThreshold)
 				{
-					colony_flagged=true; 
+					colony_flagged=true;
 					//discard the colony only if both criteria are met
 					//see https://www.dropbox.com/s/mwkkkeppeqix5lt/Screenshot%202015-07-21%2015.29.34.png?dl=0
 				}
 
 				//second round of filtering
-				if( SNO < 2 
-						&& 
+				if( SNO < 2
+						&&
 						basicTileReaderOutputs[i][j].circularity< 0.2)
 				{
-					colony_flagged=true; 
+					colony_flagged=true;
 					//discard the colony only if both criteria are met
 					//see https://www.dropbox.com/s/mwkkkeppeqix5lt/Screenshot%202015-07-21%2015.29.34.png?dl=0
 				}
 
 				//third round of filtering: remove colonies that are too close to the background
 				//EDIT: ignore this if the user defined the colony
-				if( SNO < 0.5 && SNO > -0.5 && !IrisFrontend.settings.userDefinedRoi)
+				if( SNO < 0.5 && SNO > -0.5 && !settings.userDefinedRoi)
 				{
 					colony_flagged=true;
 				}
@@ -482,8 +420,6 @@ public class ColorProfileEcoli extends Profile{
 
 				//if we flagged the colony in any of the previous steps, remove it from the results
 				if(colony_flagged){
-					//System.err.println("Warning: removing colony "+ (i+1) + " " + (j+1) + " in file "+ justFilename);
-					//System.err.println("Warning: removing colony "+ (i+1) + " " + (j+1) + " SNO= "+ SNO);
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 					basicTileReaderOutputs[i][j].colonySize=0;
 					basicTileReaderOutputs[i][j].circularity=0;
@@ -504,110 +440,62 @@ public class ColorProfileEcoli extends Profile{
 
 			}
 		}
+	}
 
 
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
-		if(checkRowsColumnsIncorrectGridding(basicTileReaderOutputs)){
-			//something was wrong with the gridding.
-			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
-
-			//calculate and save grid image
-			ImagePlus croppedImageSegmented = colourCroppedImage.duplicate();
-			croppedImageSegmented.setRoi(colourCroppedImage.getRoi());
-
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
-
-			croppedImageSegmented.flush();
-			grayscaleCroppedImage.flush();
-
-			return;
-		}
-
-
-
-
-		//7. output the results
 
-		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"circularity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"biofilm area ratio\t" +
-				"size normalized color intensity\t" +
-				"mean sampled color intensity\t" +
-				"average pixel saturation\t" +
-				"opacity\t" + 
-				"max 10% opacity\n");
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
 
+		ResultsWriter results = context.startResults(ResultsColumns.BIOFILM_ECOLI);
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 
+				BasicTileReaderOutput readerOutput = context.readerOutputs[i][j];
+				ColorTileReaderOutput colorReaderOutput = context.colorReaderOutputs[i][j];
+
 				//calculate the ratio of biofilm size (in pixels) to colony size
 				float biofilmAreaRatio = 0;
-				if(basicTileReaderOutputs[i][j].colonySize!=0){
-					biofilmAreaRatio = (float)colourTileReaderOutputs[i][j].biofilmArea / (float)basicTileReaderOutputs[i][j].colonySize;
+				if(readerOutput.colonySize!=0){
+					biofilmAreaRatio = (float)colorReaderOutput.biofilmArea / (float)readerOutput.colonySize;
 				}
 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", biofilmAreaRatio) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].relativeColorIntensity) + "\t" 
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].meanSampleColor) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].averagePixelSaturation) + "\t"
-						+ Integer.toString(opacityTileReaderOutputs[i][j].opacity) + "\t"
-						+ String.format("%.3f", opacityTileReaderOutputs[i][j].max10percentOpacity) + "\n");
+				results.add(i+1).add(j+1)
+						.add(readerOutput.colonySize)
+						.add(readerOutput.circularity)
+						.add(colorReaderOutput.colorIntensitySum)
+						.add(colorReaderOutput.biofilmArea)
+						.add(colorReaderOutput.colorIntensitySumInBiofilmArea)
+						.add(biofilmAreaRatio)
+						.add(colorReaderOutput.relativeColorIntensity)
+						.add(colorReaderOutput.meanSampleColor)
+						.add(colorReaderOutput.averagePixelSaturation)
+						.add(context.opacityReaderOutputs[i][j].opacity)
+						.add(context.opacityReaderOutputs[i][j].max10percentOpacity)
+						.endRow();
 			}
 		}
+	}
 
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
 
-			//TODO: need to make this function return a copy of the picture with the grid drawn on it
 
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			//now paint also the tile bounds 
-			//the original picture will be untouched
-			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+	/**
+	 * In debug mode, this function saves the pictures of the colonies that are not quite round, and of the empty tiles.
+	 * If the colony pictures are packed in a single picture per plate, it's saved at the end.
+	 * @param context
+	 */
+	private void saveColonyPictures(PlateContext context){
 
-			grayscaleCroppedImage.flush();
-		}
-		else
-		{
-			grayscaleCroppedImage.flush();
-		}
+		String path = new File(context.filename).getParent();
+		BasicTileReaderOutput [][] basicTileReaderOutputs = context.readerOutputs;
 
-		//7.3 save any colony picture files, if in debug mode
 		if(IrisFrontend.debug){
 			double circularityThreshold_min = 0.5;
 			double circularityThreshold_max = 0.6;
@@ -624,363 +512,26 @@ public class ColorProfileEcoli extends Profile{
 							basicTileReaderOutputs[i][j].colonySize>sizeThreshold){
 
 						//get the output filename, keep in mind: i and j are zero-based, user wants to see them 1-based
-						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_", 
-								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + justFilename;
+						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_",
+								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + context.justFilename;
 
-						Toolbox.saveColonyPicture(i,j,colourCroppedImage, segmentationOutput, basicTileReaderOutputs, tileFilename);
+						Toolbox.saveColonyPicture(i,j,context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs, tileFilename);
 					}
 
 					//also output all the empty tiles
 					if(basicTileReaderOutputs[i][j].colonySize==0){
 						//get the output filename, keep in mind: i and j are zero-based, user wants to see them 1-based
-						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_", 
-								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + justFilename;
+						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_",
+								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + context.justFilename;
 
-						Toolbox.saveColonyPicture(i,j,colourCroppedImage, segmentationOutput, basicTileReaderOutputs, tileFilename);
+						Toolbox.saveColonyPicture(i,j,context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs, tileFilename);
 					}
 				}
 			}
-
-
-
-		}
-
-		colourCroppedImage.flush();
-
-	}
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
 		}
 
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using a fancy local thresholding algorithm, as described here:
-	 * @see http://www.dentistry.bham.ac.uk/landinig/software/autothreshold/autothreshold.html
-	 * @param 
-	 */
-	private static void turnImageBW_Local_auto(ImagePlus BW_croppedImage){
-		//use the mean algorithm with default values
-		//just use smaller radius (8 instead of default 15)
-		Auto_Local_Threshold.Mean(BW_croppedImage, 65, 0, 0, true);
-		//		BW_croppedImage.updateAndDraw();
-		//		BW_croppedImage.show();
-		//		BW_croppedImage.hide();
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			BasicTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
+		//if the colony pictures are packed in a single picture per plate, it's saved now
+		DiagnosticImageWriter.finishColonyPictures(context.colourCroppedImage, path + File.separator + "tiles_" + context.justFilename);
 	}
 
 }
-
-
-
-
@@ -3,24 +3,20 @@
  */
 package iris.profiles;
 
-import fiji.threshold.Auto_Local_Threshold;
-import ij.IJ;
 import ij.ImagePlus;
-import ij.gui.OvalRoi;
-import ij.gui.Roi;
-import ij.measure.Calibration;
-import ij.process.AutoThresholder;
-import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import ij.process.ImageStatistics;
-import iris.imageCroppers.GenericImageCropper;
 import iris.imageCroppers.GenericImageCropper2;
 import iris.imageCroppers.NaiveImageCropper;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
-import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.RotateStage;
+import iris.pipeline.SingleColonyLoadStage;
+import iris.pipeline.Stage;
 import iris.settings.ColorSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput3;
@@ -33,12 +29,14 @@ import iris.tileReaders.ColorTileReaderHSB;
 import iris.tileReaders.LaplacianFilterTileReader;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.DiagnosticImageWriter;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
+import java.awt.Rectangle;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.ArrayList;
 
 /**
  * @author George Kritikos
@@ -65,211 +63,179 @@ public class ColorProfilePA extends Profile{
 
 
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * Sets up the stages of this profile: the shared load (honouring single colony pictures in single colony runs),
+	 * rotate and crop stages, the HSB brightness of the plate (and a locally thresholded copy of it), then the rising tide
+	 * segmentation (trying other croppers if it fails), the colony size, color and opacity readers and their output
 	 */
-	public void analyzePicture(String filename){
+	public ColorProfilePA(){
+		pipeline = new PlatePipeline(profileName, settings);
 
-		File file = new File(filename);
-		String path = file.getParent();
-		String justFilename = file.getName();
+		pipeline.setStage(Stage.LOAD, new SingleColonyLoadStage(settings, true));
+		pipeline.setStage(Stage.ROTATE, new RotateStage());
 
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-		//IrisFrontend.writeToLog("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
+		pipeline.setStage(Stage.CROP, new CropStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				//1. crop the plate to keep only the colonies
+				//the rotated picture is kept, in case the segmentation needs the plate cropped differently
+				context.colourCroppedImage = cropPlate(context);
 
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
+				//2. the grayscale picture is the brightness of the HSB color space
+				makeGrayscale(context);
 
+				return(true);
+			}
 
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+			@Override
+			protected void makeGrayscale(PlateContext context) {
+				context.croppedImage = Toolbox.getHSBgrayscaleImageBrightness(context.colourCroppedImage, settings);
 
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-		
-		
-		
-		if(IrisFrontend.singleColonyRun==true){
-			if(filename.contains("colony_")){
-				IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
-				originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
+				//get a copy of the picture thresholded using a local algorithm
+				context.thresholdedImage = Toolbox.turnImageBW_Local_auto_mean(context.croppedImage, 65, settings);
 			}
-			else if(filename.contains("tile_")){
-				IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
-				originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
+		});
+
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
 			}
-		}
-		
-		
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//2. rotate the whole image
-		double imageAngle = Toolbox.calculateImageRotation(originalImage);
-
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
-		//output how much the image needed to be rotated
-		if(imageAngle!=0){
-			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		}
+		});
 
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
-		//3. crop the plate to keep only the colonies
-		//		ImagePlus croppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-		ImagePlus colourCroppedImage = GenericImageCropper.cropPlate(rotatedImage);
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				super.process(context);
 
-		//
-		//--------------------------------------------------
-		//
-		//
+				saveColonyPictures(context);
+				return(true);
+			}
 
-		//4. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
-		//This is how you do it the HSB way		
-		ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
 
-		//get a copy of the picture thresholded using a local algorithm
-		ImagePlus BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
+			@Override
+			protected void saveGridImage(PlateContext context) {
+				Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, context.readerOutputs);
+				//now paint also the tile bounds, on a copy of the picture
+				context.colourCroppedImage = ColonyBreathing.paintSegmentedImage(context.colourCroppedImage, context.segmentationOutput);
+				Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
+			}
+		});
+	}
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
 
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(BW_local_thresholded_picture, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+	/**
+	 * This function will segment the thresholded picture, trying a different cropper if that fails,
+	 * then let the tile boundaries breathe
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
+		//1. segment the cropped picture
+		context.segmentationInput = new BasicImageSegmenterInput(context.thresholdedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
 
 		//check if something went wrong with the segmenting process, then try out different croppers
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
-
-			colourCroppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-			BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
-			segmentationInput = new BasicImageSegmenterInput(BW_local_thresholded_picture, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-
+		//(this is usually why the segmentation fails)
+		if(context.segmentationOutput.errorOccurred){
+			segmentPictureCroppedAgain(context, GenericImageCropper2.findPlate(context.rotatedImage));
 		}
 
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
-
-			colourCroppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-			BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
-			segmentationInput = new BasicImageSegmenterInput(BW_local_thresholded_picture, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-
+		if(context.segmentationOutput.errorOccurred){
+			segmentPictureCroppedAgain(context, NaiveImageCropper.findPlate(context.rotatedImage));
 		}
 
-		if(segmentationOutput.errorOccurred){			
+		//flush the rotated picture, we won't be needing it anymore
+		context.flushRotatedImage();
 
-			System.err.println("\n"+ profileName +" profile: unable to process picture " + justFilename);
 
-			System.err.print("Image segmentation algorithm failed:\n");
-
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+		//2. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
+			reportSegmentationError(context);
 
-			//save the grid before exiting
-			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
-			croppedImageSegmented.setRoi(grayscaleCroppedImage.getRoi());
+			//save the picture before exiting
+			Toolbox.savePicture(context.croppedImage, context.filename + ".grid.jpg");
 
-			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
-
-			rotatedImage.flush();//12.01.2014: moved from above 
-			croppedImageSegmented.flush();
-			grayscaleCroppedImage.flush();
-
-			return;
+			return(false);
 		}
 
 
-		rotatedImage.flush();//12.01.2014: moved from above 
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
-
-		//6. colony breathing
-		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
-
-
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
-
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+		//3. colony breathing
+		context.segmentationOutput = ColonyBreathing.segmentPicture(context.segmentationOutput, context.segmentationInput);
 
+		appendGridPosition(context);
 
+		return(true);
+	}
 
 
+	/**
+	 * Replaces the cropped pictures with the given area of the rotated picture, and segments it.
+	 * The brightness of the rotated picture is only worked out once, however many croppers are tried.
+	 * @param context
+	 * @param plate
+	 */
+	private void segmentPictureCroppedAgain(PlateContext context, Rectangle plate){
+		context.colourCroppedImage.flush();
+		context.croppedImage.flush();
+		context.thresholdedImage.flush();
+
+		context.colourCroppedImage = Toolbox.cropImage(context.rotatedImage, plate);
+		context.croppedImage = context.cropBrightness(plate);
+		context.thresholdedImage = Toolbox.turnImageBW_Local_auto_mean(context.croppedImage, 65, settings);
+		context.segmentationInput = new BasicImageSegmenterInput(context.thresholdedImage, settings);
+		context.segmentationOutput = RisingTideSegmenter.segmentPicture(context.segmentationInput);
+	}
 
 
-		//
-		//--------------------------------------------------
-		//
-		//
 
-		//6. analyze each tile
+	/**
+	 * This function will measure the colony size, color and opacity of every tile,
+	 * then remove the colonies that look too much like the background
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
-		//PA uses Hough circles NOT
-		//settings.useHoughCircles = true;
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = basicTileReaderOutputs;
+		context.colorReaderOutputs = colourTileReaderOutputs;
+		context.opacityReaderOutputs = opacityTileReaderOutputs;
+
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 
 				//first get the colony size using one method
 
 				basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-						new BasicTileReaderInput(BW_local_thresholded_picture, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(context.thresholdedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 
 
 
 				//try once more using the other
 				if(basicTileReaderOutputs[i][j].colonySize==0){
 					basicTileReaderOutputs[i][j] = LaplacianFilterTileReader.processTile(
-							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new BasicTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j], settings));
 
 				}
 
@@ -277,13 +243,13 @@ public class ColorProfilePA extends Profile{
 				if(basicTileReaderOutputs[i][j].colonySize>0){
 					//colour
 					colourTileReaderOutputs[i][j] = ColorTileReaderHSB.processDefinedColonyTile(
-							new ColorTileReaderInput3(colourCroppedImage, segmentationOutput.ROImatrix[i][j], 
-									basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, 
+							new ColorTileReaderInput3(context.colourCroppedImage, context.segmentationOutput.ROImatrix[i][j],
+									basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize,
 									basicTileReaderOutputs[i][j].colonyCenter,settings));
 
 					//opacity -- to check if colony darkness correlates with colour information
 					opacityTileReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-							new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+							new OpacityTileReaderInput(context.croppedImage, context.segmentationOutput.ROImatrix[i][j],
 									basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 
 				}
@@ -302,14 +268,42 @@ public class ColorProfilePA extends Profile{
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
+		});
+
+
+
+		//2. double-check the results
+		removeBackgroundLikeColonies(basicTileReaderOutputs, colourTileReaderOutputs, opacityTileReaderOutputs);
+
+
+		//3. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
+		if(checkRowsColumnsIncorrectGridding(basicTileReaderOutputs)){
+			//something was wrong with the gridding.
+			//just print an error message, save grid for debugging reasons and exit
+			reportIncorrectGridding(context);
+
+			//calculate and save grid image
+			Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs);
+			Toolbox.savePicture(context.colourCroppedImage, context.filename + ".grid.jpg");
+
+			return(false);
 		}
-		
-		
 
-		//6.2 -- double-check the results
-		
+		return(true);
+	}
+
+
+	/**
+	 * This function empties the tiles of the colonies that are too faint (by size normalized opacity) and not round enough,
+	 * or just too close to the background
+	 * @param basicTileReaderOutputs
+	 * @param colourTileReaderOutputs
+	 * @param opacityTileReaderOutputs
+	 */
+	private void removeBackgroundLikeColonies(BasicTileReaderOutput [][] basicTileReaderOutputs,
+			ColorTileReaderOutput [][] colourTileReaderOutputs, OpacityTileReaderOutput [][] opacityTileReaderOutputs){
+
 		double minimumSizeNormalizedOpacityThreshold=4;
-		double maximumDarkColonySizeNormalizedOpacityThreshold=-1.5;
 		double minimumCircularityThreshold=0.25;
 		boolean colony_flagged=false;
 		//for all rows
@@ -317,192 +311,121 @@ public class ColorProfilePA extends Profile{
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 				colony_flagged=false;
-				
-				
+
+
 				if(basicTileReaderOutputs[i][j].colonySize==0){
 					continue; //colony is already empty
 				}
-				
-				
-				
-				
+
+
+
+
 				double SNO = (double)opacityTileReaderOutputs[i][j].opacity / (double)opacityTileReaderOutputs[i][j].colonySize;
-				
-				if( SNO < minimumSizeNormalizedOpacityThreshold 
-						&& 
+
+				if( SNO < minimumSizeNormalizedOpacityThreshold
+						&&
 					basicTileReaderOutputs[i][j].circularity<minimumCircularityThreshold)
 				{
-					colony_flagged=true; 
+					colony_flagged=true;
 					//discard the colony only if both criteria are met
 					//see https://www.dropbox.com/s/mwkkkeppeqix5lt/Screenshot%202015-07-21%2015.29.34.png?dl=0
 				}
-				
+
 				//second round of filtering
-				if( SNO < 2 
-						&& 
+				if( SNO < 2
+						&&
 					basicTileReaderOutputs[i][j].circularity< 0.2)
 				{
-					colony_flagged=true; 
+					colony_flagged=true;
 					//discard the colony only if both criteria are met
 					//see https://www.dropbox.com/s/mwkkkeppeqix5lt/Screenshot%202015-07-21%2015.29.34.png?dl=0
 				}
-				
+
 				//third round of filtering: remove colonies that are too close to the background
 				if( SNO < 0.5 && SNO > -0.5)
 				{
 					colony_flagged=true;
 				}
-				
-				/*
-				//check if a colony is too close to the background 
-				if( SNO < maximumDarkColonySizeNormalizedOpacityThreshold){
-					continue; //we spare the very dark colonies
-				}
-				
-				if( SNO < minimumSizeNormalizedOpacityThreshold){					
-					colony_flagged=true; //if not much darker than the background, and also still close to the background, then it's background
-				}
-				
-				if( basicTileReaderOutputs[i][j].circularity < minimumCircularityThreshold){					
-					colony_flagged=true; //if it's really low in circularity, then just discard it
-				}
-				*/
-				
+
 				//if we flagged the colony in any of the previous steps, remove it from the results
 				if(colony_flagged){
-					//System.err.println("Warning: removing colony "+ (i+1) + " " + (j+1) + " in file "+ justFilename);
-					//System.err.println("Warning: removing colony "+ (i+1) + " " + (j+1) + " SNO= "+ SNO);
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 					basicTileReaderOutputs[i][j].colonySize=0;
 					basicTileReaderOutputs[i][j].circularity=0;
 					basicTileReaderOutputs[i][j].colonyROI = null;
 					basicTileReaderOutputs[i][j].emptyTile=true;
-					
+
 					colourTileReaderOutputs[i][j] = new ColorTileReaderOutput();
 					colourTileReaderOutputs[i][j].biofilmArea=0;
 					colourTileReaderOutputs[i][j].colorIntensitySum=0;
 					colourTileReaderOutputs[i][j].meanSampleColor=0;
-					
+
 					opacityTileReaderOutputs[i][j] = new OpacityTileReaderOutput();
 					opacityTileReaderOutputs[i][j].colonySize=0;
 					opacityTileReaderOutputs[i][j].circularity=0;
 					opacityTileReaderOutputs[i][j].opacity=0;
 					opacityTileReaderOutputs[i][j].max10percentOpacity=0;
 				}
-				
-			}
-		}
-
-
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
-		if(checkRowsColumnsIncorrectGridding(basicTileReaderOutputs)){
-			//something was wrong with the gridding.
-			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
-
-			//calculate and save grid image
-			ImagePlus croppedImageSegmented = colourCroppedImage.duplicate();
-			croppedImageSegmented.setRoi(colourCroppedImage.getRoi());
-
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
 
-			croppedImageSegmented.flush();
-			grayscaleCroppedImage.flush();
-
-			return;
+			}
 		}
+	}
 
 
 
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
 
-		//7. output the results
-
-		//7.1 output the colony measurements as a text file
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"circularity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"biofilm area ratio\t" +
-				"size normalized color intensity\t" +
-				"mean sample color intensity\t" +
-				"opacity\n");
-
+		ResultsWriter results = context.startResults(ResultsColumns.BIOFILM_PA);
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 
+				BasicTileReaderOutput readerOutput = context.readerOutputs[i][j];
+				ColorTileReaderOutput colorReaderOutput = context.colorReaderOutputs[i][j];
+
 				//calculate the ratio of biofilm size (in pixels) to colony size
 				float biofilmAreaRatio = 0;
-				if(basicTileReaderOutputs[i][j].colonySize!=0){
-					biofilmAreaRatio = (float)colourTileReaderOutputs[i][j].biofilmArea / (float)basicTileReaderOutputs[i][j].colonySize;
+				if(readerOutput.colonySize!=0){
+					biofilmAreaRatio = (float)colorReaderOutput.biofilmArea / (float)readerOutput.colonySize;
 				}
 
 
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(basicTileReaderOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", basicTileReaderOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colourTileReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", biofilmAreaRatio) + "\t"
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].relativeColorIntensity) + "\t" 
-						+ String.format("%.3f", colourTileReaderOutputs[i][j].meanSampleColor) + "\t" 
-						+ Integer.toString(opacityTileReaderOutputs[i][j].opacity) + "\n");
+				results.add(i+1).add(j+1)
+						.add(readerOutput.colonySize)
+						.add(readerOutput.circularity)
+						.add(colorReaderOutput.colorIntensitySum)
+						.add(colorReaderOutput.biofilmArea)
+						.add(colorReaderOutput.colorIntensitySumInBiofilmArea)
+						.add(biofilmAreaRatio)
+						.add(colorReaderOutput.relativeColorIntensity)
+						.add(colorReaderOutput.meanSampleColor)
+						.add(context.opacityReaderOutputs[i][j].opacity)
+						.endRow();
 			}
 		}
+	}
 
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-			//calculate grid image
-			//ImagePlus croppedImageSegmented = croppedImage.duplicate();
-
-			//RisingTideSegmenter.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			//ColonyBreathing.paintSegmentedImage(grayscaleCroppedImage, segmentationOutput); ///
-
-			//Toolbox.savePicture(grayscaleCroppedImage, filename + ".grid.jpg");
 
-			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			//now paint also the tile bounds 
-			//the original picture will be untouched
-			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
 
-			grayscaleCroppedImage.flush();
-		}
-		else
-		{
-			grayscaleCroppedImage.flush();
-		}
+	/**
+	 * In debug mode, this function saves the pictures of the big colonies that are not round enough,
+	 * in 2 passes (the second one also looking at the size normalized opacity), and of the empty tiles.
+	 * If the colony pictures are packed in a single picture per plate, it's saved at the end.
+	 * @param context
+	 */
+	private void saveColonyPictures(PlateContext context){
 
+		String path = new File(context.filename).getParent();
+		BasicTileReaderOutput [][] basicTileReaderOutputs = context.readerOutputs;
 
-		//7.3 save any colony picture files, if in debug mode
-		//make it a 2-pass thing
 		if(IrisFrontend.debug){
 
-
-			//double circularityThreshold1 = Double.MAX_VALUE;
 			int sizeThreshold1 = 5300;
 			double circularityThreshold1_max = 0.75;
 
@@ -522,13 +445,13 @@ public class ColorProfilePA extends Profile{
 							basicTileReaderOutputs[i][j].circularity<circularityThreshold1_max){
 
 						//get the output filename, keep in mind: i and j are zero-based, user wants to see them 1-based
-						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_", 
-								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + justFilename;
+						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_",
+								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + context.justFilename;
 
-						Toolbox.saveColonyPicture(i,j,colourCroppedImage, segmentationOutput, basicTileReaderOutputs, tileFilename);
+						Toolbox.saveColonyPicture(i,j,context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs, tileFilename);
 					}
 					else{
-						double normalizedOpacity = (double)opacityTileReaderOutputs[i][j].opacity / (double)basicTileReaderOutputs[i][j].colonySize;
+						double normalizedOpacity = (double)context.opacityReaderOutputs[i][j].opacity / (double)basicTileReaderOutputs[i][j].colonySize;
 
 						if(basicTileReaderOutputs[i][j].colonySize>sizeThreshold2 &&
 								basicTileReaderOutputs[i][j].circularity<circularityThreshold2_max &&
@@ -537,363 +460,29 @@ public class ColorProfilePA extends Profile{
 								normalizedOpacity<normalizedOpacityThreshold2_max){
 
 							//get the output filename, keep in mind: i and j are zero-based, user wants to see them 1-based
-							String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_", 
-									basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + justFilename;
+							String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_",
+									basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + context.justFilename;
 
-							Toolbox.saveColonyPicture(i,j,colourCroppedImage, segmentationOutput, basicTileReaderOutputs, tileFilename);
+							Toolbox.saveColonyPicture(i,j,context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs, tileFilename);
 						}
 					}
-					
+
 					//also output all the empty tiles
 					if(basicTileReaderOutputs[i][j].colonySize==0){
 						//get the output filename, keep in mind: i and j are zero-based, user wants to see them 1-based
-						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_", 
-								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + justFilename;
+						String tileFilename = path + File.separator + String.format("tile_%.3f_%04d_%02d_%02d_",
+								basicTileReaderOutputs[i][j].circularity, basicTileReaderOutputs[i][j].colonySize, i+1, j+1) + context.justFilename;
 
-						Toolbox.saveColonyPicture(i,j,colourCroppedImage, segmentationOutput, basicTileReaderOutputs, tileFilename);
+						Toolbox.saveColonyPicture(i,j,context.colourCroppedImage, context.segmentationOutput, basicTileReaderOutputs, tileFilename);
 					}
-					
-					
-				}
-			}
-		}
-
-		colourCroppedImage.flush();
-
-	}
-
-	/**
-	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
-	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
-	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
-	 * @param originalImage
-	 * @return the angle of this picture's rotation 
-	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
-	}
-
-
-	/**
-	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
-	 * @param originalImage
-	 * @param angle
-	 * @return
-	 */
-	private ImagePlus rotateImage(ImagePlus originalImage, double angle) {
-
-		originalImage.deleteRoi();
-		ImagePlus aDuplicate = originalImage.duplicate();//because the caller is going to flush the original image
-
-		aDuplicate.getProcessor().setBackgroundValue(0);
-
-		IJ.run(aDuplicate, "Arbitrarily...", "angle=" + angle + " grid=0 interpolate enlarge");  
-
-		aDuplicate.updateImage();
-
-		return(aDuplicate);
-
-
-
-		//		ImagePlus rotatedOriginalImage = originalImage.duplicate();
-		//		rotatedOriginalImage.getProcessor().rotate(angle);
-		//		rotatedOriginalImage.updateImage();
-		//		
-		//		return(rotatedOriginalImage);
-	}
-
-
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
-	/**
-	 * There has to be a better way guys..
-	 * @param list
-	 * @return
-	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
-		}
-
-		return(sum/(list.size()-1));
-
-	}
-
-
-	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
-	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
-	}
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
 
 
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using a fancy local thresholding algorithm, as described here:
-	 * @see http://www.dentistry.bham.ac.uk/landinig/software/autothreshold/autothreshold.html
-	 * @param 
-	 */
-	private static void turnImageBW_Local_auto(ImagePlus BW_croppedImage){
-		//use the mean algorithm with default values
-		//just use smaller radius (8 instead of default 15)
-		Auto_Local_Threshold.Mean(BW_croppedImage, 65, 0, 0, true);
-		//		BW_croppedImage.updateAndDraw();
-		//		BW_croppedImage.show();
-		//		BW_croppedImage.hide();
-	}
-
-
-	/**
-	 * This function will convert the given picture into black and white
-	 * using the Otsu method. This version will also return the threshold found.
-	 * @param 
-	 */
-	private static int turnImageBW_Otsu(ImagePlus grayscaleImage) {
-		Calibration calibration = new Calibration(grayscaleImage);
-
-		//2 things can go wrong here, the image processor and the 2nd argument (mOptions)
-		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
-
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		imageProcessor.threshold(threshold);
-
-		//BW_croppedImage.updateAndDraw();
-
-		return(threshold);
-	}
-
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			BasicTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
+				}
 			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
 		}
 
-		return(true); //operation succeeded
+		//if the colony pictures are packed in a single picture per plate, it's saved now
+		DiagnosticImageWriter.finishColonyPictures(context.colourCroppedImage, path + File.separator + "tiles_" + context.justFilename);
 	}
 
 }
-
-
-
-
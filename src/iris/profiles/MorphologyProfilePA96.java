@@ -3,17 +3,20 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.Roi;
-import ij.process.ByteProcessor;
 import ij.process.ImageConverter;
-import ij.process.ImageProcessor;
-import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.SimpleImageSegmenter;
+import iris.pipeline.CropStage;
+import iris.pipeline.EmitStage;
+import iris.pipeline.LoadStage;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.PlateStage;
+import iris.pipeline.Stage;
 import iris.settings.ColorSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput3;
@@ -22,12 +25,14 @@ import iris.tileReaderOutputs.MorphologyTileReaderOutput;
 import iris.tileReaders.ColorTileReaderHSB;
 import iris.tileReaders.MorphologyTileReaderStm;
 import iris.ui.IrisFrontend;
+import iris.utils.ColonyOutlines;
+import iris.utils.ResultsColumns;
+import iris.utils.ResultsWriter;
+import iris.utils.TileExecutor;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
+import java.awt.Rectangle;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -54,197 +59,153 @@ public class MorphologyProfilePA96 extends Profile {
 	 */
 	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
 
-
-
-
-
 	/**
-	 * This function will analyze the picture using the basic profile
-	 * The end result will be a file with the same name as the input filename,
-	 * after the addition of a .iris ending
-	 * @param filename
+	 * the area of the picture with the colonies, the rest of the picture is never opened
 	 */
-	public void analyzePicture(String filename){
-
-		File file = new File(filename);
-		String justFilename = file.getName();
-
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
-
-		//initialize results file output
-		StringBuffer output = new StringBuffer();
-		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
-		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
-		output.append("#"+filename+"\n");
-
-
-		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage;
-		try {
-			originalImage  = IJ.openImage(filename);
-		} catch (Exception e) {
-			originalImage = null;
-		}		
-
-		//check that file was opened successfully
-		if(originalImage==null){
-			//TODO: warn the user that the file was not opened successfully
-			System.err.println("Could not open image file: " + filename);
-			return;
-		}
-		//
-		//--------------------------------------------------
-		//
-		//
+	private static final Rectangle plateArea = new Rectangle(470, 330, 4140, 2750);
 
 
-		//2. rotate the whole image
-		//		double imageAngle = Toolbox.calculateImageRotation(originalImage);
-		//
-		//		//create a copy of the original image and rotate it, then clear the original picture
-		//		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		//		originalImage.flush();
-		//
-		//		//output how much the image needed to be rotated
-		//		if(imageAngle!=0){
-		//			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
-		//		}
 
 
-		ImagePlus rotatedImage = originalImage.duplicate();
-		originalImage.flush();
 
+	/**
+	 * Sets up the stages of this profile: the shared load stage, no rotation, cropping a fixed area of the picture,
+	 * then the simple segmentation of the black and white plate, the morphology and color readers and their output
+	 */
+	public MorphologyProfilePA96(){
+		//change the settings, to get a 96 plate segmentation
+		if(settings.singleColonyRun==false){
+			settings.numberOfRowsOfColonies = 8;
+			settings.numberOfColumnsOfColonies = 12;
+		}
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		pipeline = new PlatePipeline(profileName, settings);
 
+		pipeline.setStage(Stage.LOAD, new LoadStage(plateArea));
 
-		//3. crop the plate to keep only the colonies
-		//NaiveImageCropper.keepOnlyColoniesROI = new Roi(480, 520/*580*/, 3330, 2220);
-		//ImagePlus croppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-		//		GenericImageCropper.plateBorderSearchAreaRows = 50;
-		//		GenericImageCropper.plateBorderSearchAreaColumns = 100;
-		//		GenericImageCropper.searchStart = 0.035;
-		//		GenericImageCropper.searchEnd = 0.065;
-		//		GenericImageCropper.skip = 20;
+		pipeline.setStage(Stage.CROP, new CropStage() {
+			@Override
+			protected ImagePlus cropPlate(PlateContext context) {
+				//HACK for PA Ornithine screen
+				//only the plate area was opened (see LoadStage), so the picture is already cropped
+				return(context.rotatedImage);
+			}
 
+			@Override
+			protected void makeGrayscale(PlateContext context) {
+				//the color copy doesn't keep the ROI of the cropped picture
+				context.colourCroppedImage = context.croppedImage.duplicate();
+				ImageConverter imageConverter = new ImageConverter(context.croppedImage);
+				imageConverter.convertToGray8();
+			}
+		});
 
+		pipeline.setStage(Stage.SEGMENT, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(segmentPicture(context));
+			}
+		});
 
-		//HACK for PA Ornithine screen
-		NaiveImageCropper3.keepOnlyColoniesROI = new Roi(470, 330, 4140, 2750);
-		ImagePlus croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+		pipeline.setStage(Stage.READ_TILES, new PlateStage() {
+			@Override
+			public boolean process(PlateContext context) {
+				return(readTiles(context));
+			}
+		});
 
+		pipeline.setStage(Stage.EMIT, new EmitStage() {
+			@Override
+			protected void appendResults(PlateContext context) {
+				appendColonyMeasurements(context);
+			}
 
-		ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
-		//flush the rotated picture, we won't be needing it anymore
-		rotatedImage.flush();
+			@Override
+			protected void saveGridImage(PlateContext context) {
+				//draw the colony bounds, and the in-agar growth bounds
+				Toolbox.drawColonyBounds(context.colourCroppedImage, context.segmentationOutput, context.readerOutputs);
+				drawInAgarGrowthBounds(context.colourCroppedImage, context.segmentationOutput, context.morphologyReaderOutputs);
 
+				//calculate grid image
+				ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(context.colourCroppedImage, context.segmentationOutput);
 
+				Toolbox.savePicture(paintedImage, context.filename + ".grid.jpg");
+			}
+		});
+	}
 
-		//
-		//--------------------------------------------------
-		//
-		//
 
-		//4. pre-process the picture (i.e. make it grayscale)
-		ImageConverter imageConverter = new ImageConverter(croppedImage);
-		imageConverter.convertToGray8();
 
-		//4b. also make BW the input to the image segmenter
-		ImagePlus BWimageToSegment = croppedImage.duplicate();
-		Toolbox.turnImageBW_Otsu_auto(BWimageToSegment);
+	/**
+	 * This function will segment a black and white copy of the cropped picture
+	 * (the tile boundaries don't breathe here, it doesn't play well with the Stm readout)
+	 * @param context
+	 * @return
+	 */
+	private boolean segmentPicture(PlateContext context){
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		//1. make BW the input to the image segmenter
+		context.thresholdedImage = context.croppedImage.duplicate();
+		Toolbox.turnImageBW_Otsu_auto(context.thresholdedImage);
 
 
-		//5. segment the cropped picture
-		//first change the settings, to get a 96 plate segmentation
-		if(IrisFrontend.singleColonyRun==false){
-			settings.numberOfRowsOfColonies = 8;
-			settings.numberOfColumnsOfColonies = 12;
-		}
+		//2. segment the cropped picture
 		SimpleImageSegmenter.offset = 10;
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(BWimageToSegment, settings);
-		//
+		context.segmentationInput = new BasicImageSegmenterInput(context.thresholdedImage, settings);
 
-		segmentationInput.settings.maximumDistanceBetweenRows = 500;
-		segmentationInput.settings.minimumDistanceBetweenRows = 200;
-		//		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-		BasicImageSegmenterOutput segmentationOutput = SimpleImageSegmenter.segmentPicture_width(segmentationInput);
+		context.segmentationInput.settings.maximumDistanceBetweenRows = 500;
+		context.segmentationInput.settings.minimumDistanceBetweenRows = 200;
+		context.segmentationOutput = SimpleImageSegmenter.segmentPicture_width(context.segmentationInput);
 
-		//let the tile boundaries "breathe"
-		//Edit: no, don't do 100, doesn't play well with Stm readout
-		//		ColonyBreathing.breathingSpace = 100;//20;
-		//		segmentationInput = new BasicImageSegmenterInput(croppedImage.duplicate(), settings);
-		//		segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 
-		//		ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-		//		croppedImage.show();
-		//		croppedImage.hide();copyOfTileImage		//check if something went wrong
-		if(segmentationOutput.errorOccurred){
+		//3. check if something went wrong
+		if(context.segmentationOutput.errorOccurred){
 
-			System.err.println("\nOpacity profile: unable to process picture " + justFilename);
+			reportSegmentationError(context);
 
-			System.err.print("Image segmentation algorithm failed:\n");
+			//save the grid before exiting
+			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(context.croppedImage, context.segmentationOutput); //calculate grid image
+			Toolbox.savePicture(paintedImage, context.filename + ".grid.jpg");
 
-			if(segmentationOutput.notEnoughColumnsFound){
-				System.err.print("\tnot enough columns found\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tnot enough rows found\n");
-			}
-			if(segmentationOutput.incorrectColumnSpacing){
-				System.err.print("\tincorrect column spacing\n");
-			}
-			if(segmentationOutput.notEnoughRowsFound){
-				System.err.print("\tincorrect row spacing\n");
-			}			
+			return(false);
+		}
 
+		appendGridPosition(context);
 
-			//save the grid before exiting
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-			croppedImage.flush();
-			BWimageToSegment.flush();
-			return;
-		}
+		return(true);
+	}
 
-		int x = segmentationOutput.getTopLeftRoi().getBounds().x;
-		int y = segmentationOutput.getTopLeftRoi().getBounds().y;
-		output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
 
-		x = segmentationOutput.getBottomRightRoi().getBounds().x;
-		y = segmentationOutput.getBottomRightRoi().getBounds().y;
-		output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
 
+	/**
+	 * This function will measure the morphology of every tile (over the agar only), and the color of the colonies found.
+	 * Too many empty tiles are reported, but the results are written anyway.
+	 * @param context
+	 * @return
+	 */
+	private boolean readTiles(final PlateContext context){
 
-		//
-		//--------------------------------------------------
-		//
-		//
+		final ImagePlus colorCroppedImage = context.colourCroppedImage;
+		final BasicImageSegmenterOutput segmentationOutput = context.segmentationOutput;
 
 		//precalculate the colony centers
-		ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
+		final ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
 
-		//6. analyze each tile
+		//1. analyze each tile
 
 		//create an array of measurement outputs
-		MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		context.readerOutputs = readerOutputs;
+		context.morphologyReaderOutputs = readerOutputs;
+		context.colorReaderOutputs = colorReaderOutputs;
+
+		//all the tiles are read in parallel, each one writing only to it's own cell of the output matrices
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 				try{
 					readerOutputs[i][j] = MorphologyTileReaderStm.processTileOverAgarOnly(colonyCenteredInput[i][j]);
-					//new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
 				}catch(Exception e){
 					System.err.print("\tError getting morphology at tile "+ Integer.toString(i+1) +" "+ Integer.toString(j+1) + "\n");
 					readerOutputs[i][j] = new MorphologyTileReaderOutput();
@@ -261,117 +222,55 @@ public class MorphologyProfilePA96 extends Profile {
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
-
+		});
 
 
-		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
-		//check rows first
+		//2. check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
 		if(checkRowsColumnsIncorrectGridding(readerOutputs)){
 			//something was wrong with the gridding.
-			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
-			System.err.print("Image segmentation algorithm failed:\n");
-			System.err.println("\ttoo many empty rows/columns");
-
-			/*
-			 * HACK: just carry on outputting an iris file, since we know that there's pictures with many
-			 * empty spots 
-			 * 
-			//calculate and save grid image
-			ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
-
-			return;
-			 */
-
+			//HACK: just carry on outputting an iris file, since we know that there's pictures with many empty spots 
+			reportIncorrectGridding(context);
 			System.err.println("\tWarning: writing iris file anyway");
 		}
 
+		return(true);
+	}
+
+
 
-		//7. output the results
-
-
-		//7.1 output the colony measurements as a text file
-		//output.append("row\tcolumn\tcolony size\tcolony circularity\tcolony morphology score\tcolony normalized morphology score\t\n");
-		output.append("row\t" +
-				"column\t" +
-				"colony size\t" +
-				"colony circularity\t" +
-				"colony opacity\t" +
-				"morphology score fixed circles\t" +
-				"morphology score whole colony\t" +
-				"normalized morphology score\t" +
-				"in agar size\t" +
-				"in agar circularity\t" +
-				"in agar opacity\t" + 
-				"whole tile opacity\t" +
-				"colony color intensity\t" +
-				"biofilm area size\t" +
-				"biofilm color intensity\t" +
-				"size normalized color intensity\n");
+	/**
+	 * This function will add the colony measurements to the output, one line per colony
+	 * @param context
+	 */
+	private void appendColonyMeasurements(PlateContext context){
+
+		MorphologyTileReaderOutput [][] readerOutputs = context.morphologyReaderOutputs;
+		ColorTileReaderOutput [][] colorReaderOutputs = context.colorReaderOutputs;
+
+		ResultsWriter results = context.startResults(ResultsColumns.MORPHOLOGY_AND_COLOR);
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			//for all columns
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
-				output.append(Integer.toString(i+1) + "\t" + Integer.toString(j+1) + "\t" 
-						+ Integer.toString(readerOutputs[i][j].colonySize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].circularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].colonyOpacity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].morphologyScoreFixedNumberOfCircles) + "\t"
-						+ Integer.toString(readerOutputs[i][j].morphologyScoreWholeColony) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].normalizedMorphologyScore) + "\t"
-						+ Integer.toString(readerOutputs[i][j].inAgarSize) + "\t"
-						+ String.format("%.3f", readerOutputs[i][j].inAgarCircularity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].inAgarOpacity) + "\t"
-						+ Integer.toString(readerOutputs[i][j].wholeTileOpacity) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].colorIntensitySum) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].biofilmArea) + "\t"
-						+ Integer.toString(colorReaderOutputs[i][j].colorIntensitySumInBiofilmArea) + "\t"
-						+ String.format("%.3f", colorReaderOutputs[i][j].relativeColorIntensity) + "\n");
+				results.add(i+1).add(j+1)
+						.add(readerOutputs[i][j].colonySize)
+						.add(readerOutputs[i][j].circularity)
+						.add(readerOutputs[i][j].colonyOpacity)
+						.add(readerOutputs[i][j].morphologyScoreFixedNumberOfCircles)
+						.add(readerOutputs[i][j].morphologyScoreWholeColony)
+						.add(readerOutputs[i][j].normalizedMorphologyScore)
+						.add(readerOutputs[i][j].inAgarSize)
+						.add(readerOutputs[i][j].inAgarCircularity)
+						.add(readerOutputs[i][j].inAgarOpacity)
+						.add(readerOutputs[i][j].wholeTileOpacity)
+						.add(colorReaderOutputs[i][j].colorIntensitySum)
+						.add(colorReaderOutputs[i][j].biofilmArea)
+						.add(colorReaderOutputs[i][j].colorIntensitySumInBiofilmArea)
+						.add(colorReaderOutputs[i][j].relativeColorIntensity)
+						.endRow();
 			}
 		}
-
-		//check if writing to disk was successful
-		String outputFilename = filename + ".iris";
-		if(!writeOutputFile(outputFilename, output)){
-			System.err.println("Could not write output file " + outputFilename);
-		}
-		else{
-			//System.out.println("Done processing file " + filename + "\n\n");
-			System.out.println("...done processing!");
-		}
-
-
-		//7.2 save any intermediate picture files, if requested
-		//settings.saveGridImage = true;
-		//		if(settings.saveGridImage){
-		//			
-		//			//draw the colony bounds, and the in-agar growth bounds
-		//			//Toolbox.drawColonyBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-		//			drawInAgarGrowthBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-		//			Toolbox.drawColonyRoundBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-		//			//calculate grid image
-		//			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
-		//			
-		//			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-		//		}
-		//		
-		//7.2 save any intermediate picture files, if requested
-		settings.saveGridImage = true;
-		if(settings.saveGridImage){
-
-			//draw the colony bounds, and the in-agar growth bounds
-			Toolbox.drawColonyBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-			drawInAgarGrowthBounds(colorCroppedImage, segmentationOutput, readerOutputs);
-
-			//calculate grid image
-			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
-
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
-		}
-
 	}
 
 
@@ -384,172 +283,18 @@ public class MorphologyProfilePA96 extends Profile {
 	 */
 	private static void drawInAgarGrowthBounds(ImagePlus croppedImage, BasicImageSegmenterOutput segmenterOutput, MorphologyTileReaderOutput [][] tileReaderOutputs){
 
+		Roi[][] inAgarRois = new Roi[tileReaderOutputs.length][tileReaderOutputs[0].length];
 
-		//first, get all the colony bounds into byte processors (one for each tile, having the exact tile size)
-		ByteProcessor[][] colonyBounds = getInAgarGrowthBounds(croppedImage, segmenterOutput, tileReaderOutputs);
-
-
-		//paint those bounds on the original cropped image
-		ImageProcessor bigPictureProcessor = croppedImage.getProcessor();
-		//bigPictureProcessor.setColor(Color.black);
-		bigPictureProcessor.setColor(Color.red);
-		bigPictureProcessor.setLineWidth(1);
-
-
-		//for all rows
 		for(int i=0; i<tileReaderOutputs.length; i++){
-			//for all columns
 			for(int j=0; j<tileReaderOutputs[0].length; j++) {
-
 				if(tileReaderOutputs[i][j].colonySize==0)
-					continue; //don't go through the trouble for emtpy tiles
-
-				//get tile offsets
-				int tile_y_offset = segmenterOutput.ROImatrix[i][j].getBounds().y;
-				int tile_x_offset = segmenterOutput.ROImatrix[i][j].getBounds().x;
-				int tileWidth = segmenterOutput.ROImatrix[i][j].getBounds().width;
-				int tileHeight = segmenterOutput.ROImatrix[i][j].getBounds().height;
-
-
-				//for each pixel, if it is colony bounds, paint it on the big picture
-				for(int x=0; x<tileWidth; x++){
-					for(int y=0; y<tileHeight; y++){
-						if(colonyBounds[i][j].getPixel(x, y)==255){ //it is a colony bounds pixel
-							bigPictureProcessor.drawDot(x+tile_x_offset, y+tile_y_offset); //paint it on the big picture
-						}
-					}
-				}
+					continue; //don't go through the trouble for empty tiles
 
+				inAgarRois[i][j] = tileReaderOutputs[i][j].inAgarROI;
 			}
-
 		}
-	}
-
-
-	/**
-	 * This function will get original picture, segment it into tiles.
-	 * For each one, it will apply the colony ROI on it (except it it was empty -- add an empty ROI).
-	 * Then, it will get the mask from the ROI and find it's bounds.
-	 * At the end, for each original tile, we'll have 0/1 tiles, with 1s where the colony bounds are.
-	 * @param croppedImage
-	 * @param segmenterOutput
-	 * @param colonyRoi
-	 * @return
-	 */
-	private static ByteProcessor[][] getInAgarGrowthBounds(ImagePlus croppedImage, BasicImageSegmenterOutput segmentationOutput, MorphologyTileReaderOutput [][] tileReaderOutputs){
-
-		ByteProcessor[][] colonyBounds = new ByteProcessor[tileReaderOutputs.length][tileReaderOutputs[0].length];
-
-		//for all rows
-		for(int i=0;i<tileReaderOutputs.length; i++){
-			//for all columns
-			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
-
-				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
-
 
-				//apply the ROI, get the mask
-				ImageProcessor tileProcessor = tile.getProcessor();
-				tileProcessor.setRoi(tileReaderOutputs[i][j].inAgarROI);
-
-				tileProcessor.setColor(Color.white);
-				tileProcessor.setBackgroundValue(0);
-				tileProcessor.fill(tileProcessor.getMask());
-				//tileProcessor.fill(tileReaderOutputs[i][j].colonyROI.getMask());
-
-				//get the bounds of the mask, that's it, save it
-				tileProcessor.findEdges();
-				colonyBounds[i][j] = (ByteProcessor) tileProcessor.convertToByte(true);		
-
-
-			}
-		}
-
-		croppedImage.deleteRoi();
-
-		return(colonyBounds);
+		ColonyOutlines.draw(croppedImage, segmenterOutput, inAgarRois, Color.red);
 	}
 
-
-
-
-
-
-	/**
-	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
-	 * If so, it will return true. If everything is ok, it will return false.
-	 * @param readerOutputs
-	 * @return
-	 */
-	private boolean checkRowsColumnsIncorrectGridding(
-			MorphologyTileReaderOutput[][] readerOutputs) {
-
-		int numberOfRows = readerOutputs.length;		
-		if(numberOfRows==0)
-			return(false);//something is definitely wrong, but probably not too many empty tiles
-
-		int numberOfColumns = readerOutputs[0].length;
-
-
-
-		//for all rows
-		for(int i=0; i<numberOfRows; i++){
-			int numberOfEmptyTiles = 0;
-			//for all the columns this row spans
-			for (int j=0; j<numberOfColumns; j++) {
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this row 
-			if(numberOfEmptyTiles>numberOfColumns/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		//do the same for all columns
-		for (int j=0; j<numberOfColumns; j++) {
-			int numberOfEmptyTiles = 0;
-			//for all the rows this column spans
-			for(int i=0; i<numberOfRows; i++){
-				if(readerOutputs[i][j].colonySize==0)
-					numberOfEmptyTiles++;
-			}
-
-			//check the number of empty tiles for this column 
-			if(numberOfEmptyTiles>numberOfRows/2)
-				return(true); //we found one row that more than half of it's colonies are of zero size			
-		}
-
-		return(false);
-	}
-
-
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
-
-
-
 }
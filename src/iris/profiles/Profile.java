@@ -1,50 +1,175 @@
 /**
- * 
+ *
  */
 package iris.profiles;
 
 import ij.ImagePlus;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenterOutput.ImageSegmenterOutput;
+import iris.pipeline.PlateContext;
+import iris.pipeline.PlatePipeline;
 import iris.settings.Settings;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.tileReaderOutputs.TileReaderOutput;
 
 import java.util.ArrayList;
 
 /**
- * 
- * 
+ * A profile analyzes plate pictures of a specific kind.
+ * Profiles configure a PlatePipeline with the stages they need (see iris.pipeline), and the pipeline does the rest.
+ * Older profiles still override analyzePicture, doing all the work themselves.
+ *
  * @author george
  *
  */
 abstract class Profile {
-	
+
 	/**
 	 * this holds the image given to this profile for processing
 	 */
 	public ImagePlus originalImage;
-	
-	
+
+
 	/**
 	 * This holds the Settings object
 	 */
 	public Settings settings;
-	
-	
+
+
 	/**
 	 * This is where the results of the calls to the imageSegmenter are being stored
 	 */
-	public ArrayList<ArrayList<ImageSegmenterOutput>> segmenterOutput; 
-	
-	
-	
+	public ArrayList<ArrayList<ImageSegmenterOutput>> segmenterOutput;
+
+
+
 	/**
 	 * This is where the results of the calls to the tileReadout(s) are being stored
 	 */
 	public ArrayList<ArrayList<TileReaderOutput>> tileReaderOutput;
-	
-	
-	
-		
+
+
+	/**
+	 * the stages this profile analyzes pictures with, set up by the profile's constructor
+	 */
+	protected PlatePipeline pipeline;
+
+
+
+	/**
+	 * This function will analyze the picture using the profile's pipeline
+	 * The end result will be a file with the same name as the input filename,
+	 * after the addition of a .iris ending
+	 * @param filename
+	 */
+	public void analyzePicture(String filename){
+		if(pipeline==null){
+			System.err.println("No analysis stages set for this profile, cannot analyze picture " + filename);
+			return;
+		}
+
+		pipeline.analyzePicture(filename);
+	}
+
+
+
+	/**
+	 * Tells the user that the segmentation of the picture failed, and why
+	 * @param context
+	 */
+	protected static void reportSegmentationError(PlateContext context){
+		BasicImageSegmenterOutput segmentationOutput = context.segmentationOutput;
+
+		System.err.println("\n"+context.profileName+": unable to process picture " + context.justFilename);
+
+		System.err.print("Image segmentation algorithm failed:\n");
+
+		if(segmentationOutput.notEnoughColumnsFound){
+			System.err.print("\tnot enough columns found\n");
+		}
+		if(segmentationOutput.notEnoughRowsFound){
+			System.err.print("\tnot enough rows found\n");
+		}
+		if(segmentationOutput.incorrectColumnSpacing){
+			System.err.print("\tincorrect column spacing\n");
+		}
+		if(segmentationOutput.notEnoughRowsFound){
+			System.err.print("\tincorrect row spacing\n");
+		}
+	}
+
+
+	/**
+	 * Tells the user that too many tiles were empty, so the gridding must have gone wrong
+	 * @param context
+	 */
+	protected static void reportIncorrectGridding(PlateContext context){
+		System.err.println("\n"+context.profileName+": unable to process picture " + context.justFilename);
+		System.err.print("Image segmentation algorithm failed:\n");
+		System.err.println("\ttoo many empty rows/columns");
+	}
+
+
+	/**
+	 * Adds the position of the top left and bottom right tiles to the output
+	 * @param context
+	 */
+	protected static void appendGridPosition(PlateContext context){
+		int x = context.segmentationOutput.getTopLeftRoi().getBounds().x;
+		int y = context.segmentationOutput.getTopLeftRoi().getBounds().y;
+		context.output.append("#top left of the grid found at (" +x+ " , " +y+ ")\n");
+
+		x = context.segmentationOutput.getBottomRightRoi().getBounds().x;
+		y = context.segmentationOutput.getBottomRightRoi().getBounds().y;
+		context.output.append("#bottom right of the grid found at (" +x+ " , " +y+ ")\n");
+	}
+
+
+	/**
+	 * This function will check if there is any row or any column with more than half of it's tiles being empty.
+	 * If so, it will return true. If everything is ok, it will return false.
+	 * @param readerOutputs
+	 * @return
+	 */
+	protected static boolean checkRowsColumnsIncorrectGridding(BasicTileReaderOutput[][] readerOutputs) {
+
+		int numberOfRows = readerOutputs.length;
+		if(numberOfRows==0)
+			return(false);//something is definitely wrong, but probably not too many empty tiles
+
+		int numberOfColumns = readerOutputs[0].length;
+
+
+
+		//for all rows
+		for(int i=0; i<numberOfRows; i++){
+			int numberOfEmptyTiles = 0;
+			//for all the columns this row spans
+			for (int j=0; j<numberOfColumns; j++) {
+				if(readerOutputs[i][j].colonySize==0)
+					numberOfEmptyTiles++;
+			}
+
+			//check the number of empty tiles for this row
+			if(numberOfEmptyTiles>numberOfColumns/2)
+				return(true); //we found one row that more than half of it's colonies are of zero size
+		}
+
+		//do the same for all columns
+		for (int j=0; j<numberOfColumns; j++) {
+			int numberOfEmptyTiles = 0;
+			//for all the rows this column spans
+			for(int i=0; i<numberOfRows; i++){
+				if(readerOutputs[i][j].colonySize==0)
+					numberOfEmptyTiles++;
+			}
+
+			//check the number of empty tiles for this column
+			if(numberOfEmptyTiles>numberOfRows/2)
+				return(true); //we found one row that more than half of it's colonies are of zero size
+		}
+
+		return(false);
+	}
+
 }
-	
-	
@@ -75,6 +75,15 @@ public class BasicSettings /*extends Settings*/ implements Serializable{
 	 * In this case, the user-defined ROI will be honoured instead of the iris-detected colony ROI.
 	 */
 	public boolean userDefinedRoi = false;
+
+
+	/**
+	 * If the picture is that of a single colony (or a single tile), rather than a whole plate.
+	 * It's set for the whole run in single colony mode (see IrisFrontend.singleColonyRun), or just for the plate
+	 * whose picture is named as a single colony or tile picture (see SingleColonyLoadStage).
+	 * Each plate has it's own copy of the settings, so this should be read from there, not from IrisFrontend.
+	 */
+	public boolean singleColonyRun = false;
 	
 	
 	
@@ -95,6 +104,9 @@ public class BasicSettings /*extends Settings*/ implements Serializable{
 		this.numberOfRowsOfColonies = that.numberOfRowsOfColonies;
 		this.saveGridImage = that.saveGridImage;
 		this.threshold = that.threshold;
+		this.useHoughCircles = that.useHoughCircles;
+		this.userDefinedRoi = that.userDefinedRoi;
+		this.singleColonyRun = that.singleColonyRun;
 	}
 
 }
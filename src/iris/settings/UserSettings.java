@@ -130,9 +130,7 @@ public class UserSettings {
 
 		//set number of rows and columns
 		if(loadedSettings.SingleColony){
-			IrisFrontend.singleColonyRun = true;
-			IrisFrontend.settings.numberOfRowsOfColonies = 1;
-			IrisFrontend.settings.numberOfColumnsOfColonies = 1;
+			IrisFrontend.setSingleColonyRun();
 		}
 		else{
 			switch (loadedSettings.ArrayFormat) {
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package iris.test;
+
+import fiji.threshold.Auto_Local_Threshold;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.process.ImageConverter;
+import iris.utils.LocalThresholder;
+
+/**
+ * This compares LocalThresholder with the Auto_Local_Threshold methods it replaces (Mean, Niblack and Sauvola),
+ * on the grayscale version of a plate picture. Every differing pixel is reported.
+ * The picture is the first argument, or images/easy.jpeg if none is given.
+ *
+ * @author George Kritikos
+ *
+ */
+public class TestLocalThresholder {
+
+	/**
+	 * the radii tried, from the tile readers' to the whole plate thresholding of Toolbox.turnImageBW_Local_auto_mean
+	 */
+	private static final int[] radii = {1, 8, 20, 65};
+
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		String filename = "images/easy.jpeg";
+		if(args.length>0)
+			filename = args[0];
+
+		//open the original file and make it grayscale
+		ImagePlus grayscalePicture = IJ.openImage(filename);
+		if(grayscalePicture==null){
+			System.err.println("Could not open image file: " + filename);
+			return;
+		}
+		ImageConverter imageConverter = new ImageConverter(grayscalePicture);
+		imageConverter.convertToGray8();
+
+		int differingRuns = 0;
+
+		for (int radius : radii) {
+			for (int white=0; white<2; white++) {
+				boolean whiteObjects = white==1;
+
+				//mean, with the offsets the profiles use and a non-zero one
+				for (int cValue : new int[]{0, 5, -10}) {
+					ImagePlus expected = grayscalePicture.duplicate();
+					ImagePlus actual = grayscalePicture.duplicate();
+					//Auto_Local_Threshold.Mean takes it's offset as the first parameter
+					Auto_Local_Threshold.Mean(expected, radius, cValue, 0, whiteObjects);
+					LocalThresholder.mean(actual, radius, cValue, whiteObjects);
+					differingRuns += compare("Mean radius=" + radius + " c=" + cValue + " white=" + whiteObjects, expected, actual);
+				}
+
+				//Niblack, with the recommended k for either kind of objects
+				for (double kValue : new double[]{0.2, -0.2}) {
+					ImagePlus expected = grayscalePicture.duplicate();
+					ImagePlus actual = grayscalePicture.duplicate();
+					Auto_Local_Threshold.Niblack(expected, radius, kValue, 3, whiteObjects);
+					LocalThresholder.niblack(actual, radius, kValue, 3, whiteObjects);
+					differingRuns += compare("Niblack radius=" + radius + " k=" + kValue + " white=" + whiteObjects, expected, actual);
+				}
+
+				//Sauvola, with the recommended parameters and a smaller dynamic range
+				for (double rValue : new double[]{128, 32}) {
+					ImagePlus expected = grayscalePicture.duplicate();
+					ImagePlus actual = grayscalePicture.duplicate();
+					//Sauvola isn't public, it's only reached through exec
+					new Auto_Local_Threshold().exec(expected, "Sauvola", radius, 0.5, rValue, whiteObjects);
+					LocalThresholder.sauvola(actual, radius, 0.5, rValue, whiteObjects);
+					differingRuns += compare("Sauvola radius=" + radius + " r=" + rValue + " white=" + whiteObjects, expected, actual);
+				}
+			}
+		}
+
+		if(differingRuns==0)
+			System.out.println("all thresholded pictures are the same");
+		else
+			System.out.println(differingRuns + " thresholded pictures differ");
+	}
+
+
+	/**
+	 * Prints how many pixels of the two thresholded pictures differ, along with the first few of them
+	 * @return 1 if any pixels differ, 0 otherwise
+	 */
+	private static int compare(String description, ImagePlus expected, ImagePlus actual){
+		byte[] expectedPixels = (byte[]) expected.getProcessor().getPixels();
+		byte[] actualPixels = (byte[]) actual.getProcessor().getPixels();
+		int width = expected.getWidth();
+
+		int differingPixels = 0;
+		for(int i=0; i<expectedPixels.length; i++){
+			if(expectedPixels[i]==actualPixels[i])
+				continue;
+
+			if(differingPixels<5){
+				System.out.println(description + ": pixel (" + i%width + ", " + i/width + ") is "
+						+ (actualPixels[i]&0xFF) + " instead of " + (expectedPixels[i]&0xFF));
+			}
+			differingPixels++;
+		}
+
+		System.out.println(description + ": " + differingPixels + " differing pixels");
+
+		expected.flush();
+		actual.flush();
+		return(differingPixels>0 ? 1 : 0);
+	}
+
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package iris.test;
+
+import iris.utils.ResultsWriter;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This compares the decimal numbers ResultsWriter writes in the .iris files with the String.format("%.3f") it replaces
+ * (with a point as the decimal separator, like ResultsWriter always uses).
+ * It tries the numbers where the two could differ: negative numbers and -0, halfway between two results and a few
+ * ulps around it, numbers that are only halfway in their shortest decimal form (1.0005), floats turned into doubles,
+ * numbers around the size where ResultsWriter leaves the rounding to String.format, NaN and the infinities,
+ * and then a few million random ones. Every differing number is reported.
+ *
+ * @author George Kritikos
+ *
+ */
+public class TestResultsWriter {
+
+	private static int numbersTried = 0;
+	private static int numbersDiffering = 0;
+
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		ArrayList<Double> values = new ArrayList<Double>();
+
+		//1. special values
+		double[] specialValues = {0.0, -0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, Float.MAX_VALUE,
+				1e-300, 0.0004, 0.0005, 0.0015, 0.0625, 1.0005, 2.0005, 0.1235, 1.2345, 2.675, 1.9995, 9.9995, 99.9995,
+				-0.0004, -0.0005, -0.0015, -1.0005, -1.2345, -2.675, -0.9999, -1e-9};
+		for (double value : specialValues) {
+			values.add(value);
+		}
+
+		//2. every number of the form k/2000 (halfway between two results when k is odd), and a few ulps around it
+		for(int k=0; k<200000; k++){
+			addAround(values, k/2000.0, 3);
+			addAround(values, -k/2000.0, 1);
+		}
+
+		//3. the same around the size where ResultsWriter stops writing the numbers itself (1e9 after multiplying by 1000)
+		for(double value=999990; value<1000010; value+=0.0005){
+			addAround(values, value, 2);
+		}
+		for(double value : new double[]{1e6, 1e7, 1e9, 1e12, 1e15, 1e17, 1e20, 123456789.0125}){
+			addAround(values, value, 2);
+			addAround(values, -value, 2);
+		}
+
+		for (double value : values) {
+			check(value);
+		}
+
+		//4. floats turned into doubles (the circularities are floats), and random numbers of all sizes
+		Random random = new Random(42);
+		for(int i=0; i<2000000; i++){
+			check((double) (random.nextFloat()*random.nextInt(1000)));
+			check(random.nextDouble());
+			check(random.nextDouble()*Math.pow(10, random.nextInt(12)) - (random.nextInt(10)==0 ? 5 : 0));
+			check(Double.longBitsToDouble(random.nextLong()));
+		}
+
+		System.out.println(numbersTried + " numbers tried, " + numbersDiffering + " written differently");
+	}
+
+
+	/**
+	 * Adds the number, and the numbers up to ulps ulps above and below it
+	 */
+	private static void addAround(ArrayList<Double> values, double value, int ulps){
+		values.add(value);
+		double up = value;
+		double down = value;
+		for(int i=0; i<ulps; i++){
+			up = Math.nextUp(up);
+			down = Math.nextAfter(down, Double.NEGATIVE_INFINITY);
+			values.add(up);
+			values.add(down);
+		}
+	}
+
+
+	/**
+	 * Writes the number both with ResultsWriter.appendDecimal and in a ResultsWriter table,
+	 * and compares them with String.format
+	 */
+	private static void check(double value){
+		numbersTried++;
+
+		String expected = String.format(Locale.ROOT, "%.3f", value);
+
+		StringBuilder text = new StringBuilder();
+		ResultsWriter.appendDecimal(text, value, ResultsWriter.DECIMALS);
+
+		StringBuffer output = new StringBuffer();
+		ResultsWriter results = new ResultsWriter(output, new String[]{"value"});
+		results.add(value).endRow();
+		String row = output.substring("value\n".length(), output.length()-1);
+
+		if(!expected.equals(text.toString()) || !expected.equals(row)){
+			numbersDiffering++;
+			if(numbersDiffering<=20){
+				System.out.println(Double.toString(value) + " (" + Long.toHexString(Double.doubleToRawLongBits(value)) + "): "
+						+ "String.format " + expected + ", appendDecimal " + text + ", ResultsWriter " + row);
+			}
+		}
+	}
+
+}
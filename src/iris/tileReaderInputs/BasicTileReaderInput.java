@@ -5,10 +5,12 @@ package iris.tileReaderInputs;
 
 import ij.ImagePlus;
 import ij.gui.Roi;
+import ij.process.ByteProcessor;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 
 /**
  * This class holds information required by the TileReader
@@ -20,6 +22,12 @@ public class BasicTileReaderInput extends TileReaderInput {
 	public ImagePlus tileImage;
 	public Point colonyCenter = null;
 
+	/**
+	 * a view of the same tile on the pixels of the (8-bit) cropped plate, for tile readers that only need to read the tile.
+	 * This is null for color plates and for tiles that were given to us as pictures
+	 */
+	public TileView tileView = null;
+
 	/**
 	 * Creates a BasicTileReaderInput obect, given the cropped, grayscaled whole image and the ROI
 	 * corresponding to the image tile to be processed.
@@ -31,22 +39,19 @@ public class BasicTileReaderInput extends TileReaderInput {
 	 */
 	public BasicTileReaderInput(ImagePlus croppedImage, Roi roi, BasicSettings settings_){
 
-		if(IrisFrontend.singleColonyRun==true){
+		if(settings_.singleColonyRun==true){
 			//single colony: tile is the croppedImage itself
 			this.tileImage = croppedImage.duplicate(); 
+			this.tileView = createTileView(croppedImage, croppedImage.getProcessor().getRoi());
 
-			if(IrisFrontend.settings.userDefinedRoi==true){
+			if(settings_.userDefinedRoi==true){
 				//preserve the user-defined ROI
 				this.tileImage.setRoi(croppedImage.getRoi());
 			}
 		}
 		else{		
-			synchronized(settings_){
-				croppedImage.setRoi(roi);
-				croppedImage.copy(false);
-
-				this.tileImage = ImagePlus.getClipboard();
-			}
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
+			this.tileView = createTileView(croppedImage, roi.getBounds());
 		}
 		this.settings = settings_;
 	}
@@ -66,8 +71,9 @@ public class BasicTileReaderInput extends TileReaderInput {
 	 * @param tileImage_
 	 * @param settings_
 	 */
-	private BasicTileReaderInput(ImagePlus tileImage_, BasicSettings settings_, Point colonyCenter_){
+	private BasicTileReaderInput(ImagePlus tileImage_, TileView tileView_, BasicSettings settings_, Point colonyCenter_){
 		tileImage = tileImage_;
+		tileView = tileView_;
 		settings = settings_;
 		colonyCenter = new Point(colonyCenter_);
 	}
@@ -81,12 +87,8 @@ public class BasicTileReaderInput extends TileReaderInput {
 	 */
 	public BasicTileReaderInput(ImagePlus croppedImage, Roi roi,
 			BasicSettings settings_, Point colonyCenter_) {
-		synchronized(settings_){
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
-		}
+		this.tileImage = Toolbox.cropImage(croppedImage, roi);
+		this.tileView = createTileView(croppedImage, roi.getBounds());
 		this.settings = settings_;
 
 		colonyCenter = new Point(colonyCenter_);
@@ -104,7 +106,17 @@ public class BasicTileReaderInput extends TileReaderInput {
 	 * Create a proper copy of this object
 	 */
 	public BasicTileReaderInput clone(){
-		return(new BasicTileReaderInput(this.tileImage.duplicate(), this.settings, new Point(this.colonyCenter)));
+		return(new BasicTileReaderInput(this.tileImage.duplicate(), this.tileView, this.settings, new Point(this.colonyCenter)));
+	}
+
+
+	/**
+	 * Returns a view of the given rectangle of the plate, or null if the plate isn't an 8-bit picture
+	 */
+	private static TileView createTileView(ImagePlus croppedImage, Rectangle rectangle){
+		if(!(croppedImage.getProcessor() instanceof ByteProcessor))
+			return(null);
+		return(new TileView(croppedImage, rectangle));
 	}
 }
 
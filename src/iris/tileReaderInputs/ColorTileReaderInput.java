@@ -6,7 +6,7 @@ package iris.tileReaderInputs;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.ColorSettings;
-import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -30,15 +30,12 @@ public class ColorTileReaderInput extends TileReaderInput {
 	 */
 	public ColorTileReaderInput(ImagePlus croppedImage, Roi roi, ColorSettings settings_){
 
-		if(IrisFrontend.settings.userDefinedRoi==true){
+		if(settings_.userDefinedRoi==true){
 			this.tileImage = croppedImage.duplicate(); // otherwise I'd have to delete the user-defined ROI
 			this.tileImage.setRoi(croppedImage.getRoi());
 		}
 		else{
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		}
 		this.settings = settings_;
 	}
@@ -63,15 +60,12 @@ public class ColorTileReaderInput extends TileReaderInput {
 	public ColorTileReaderInput(ImagePlus croppedImage, Roi roi,
 			ColorSettings settings_, Point colonyCenter_) {
 
-		if(IrisFrontend.settings.userDefinedRoi==true){
+		if(settings_.userDefinedRoi==true){
 			this.tileImage = croppedImage.duplicate(); // otherwise I'd have to delete the user-defined ROI
 			this.tileImage.setRoi(croppedImage.getRoi());
 		}
 		else{
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		}
 		this.settings = settings_;
 
@@ -6,7 +6,7 @@ package iris.tileReaderInputs;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.ColorSettings;
-import iris.ui.IrisFrontend;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -32,12 +32,12 @@ public class ColorTileReaderInput3 extends TileReaderInput {
 	 */
 	public ColorTileReaderInput3(ImagePlus croppedImage, Roi tileRoi, Roi colonyRoi_, int colonySize_, Point colonyCenter_, ColorSettings settings_){
 
-		if(IrisFrontend.singleColonyRun==true){
+		if(settings_.singleColonyRun==true){
 			//single colony: tile is the croppedImage itself
 			this.tileImage = croppedImage.duplicate();
 			this.colonyRoi = colonyRoi_;
 			
-			if(IrisFrontend.settings.userDefinedRoi==true){
+			if(settings_.userDefinedRoi==true){
 				//preserve the user-defined ROI
 				this.tileImage.setRoi(croppedImage.getRoi());
 				this.colonyRoi = croppedImage.getRoi();
@@ -45,9 +45,7 @@ public class ColorTileReaderInput3 extends TileReaderInput {
 		}	
 		else{
 			//normally, copy the tileRoi section of the cropped image into the tile image
-			croppedImage.setRoi(tileRoi);
-			croppedImage.copy(false);
-			this.tileImage = ImagePlus.getClipboard();
+			this.tileImage = Toolbox.cropImage(croppedImage, tileRoi);
 			this.colonyRoi = colonyRoi_;
 		}
 		
@@ -67,7 +65,7 @@ public class ColorTileReaderInput3 extends TileReaderInput {
 	//		this.colonyRoi = colonyRoi_;
 	//		this.colonyCenter = colonyCenter_;
 	//
-	//		if(IrisFrontend.settings.userDefinedRoi){
+	//		if(settings_.userDefinedRoi){
 	//			//get the user-defined ROI from the tile image 
 	//			//(this is where its normally saved when user selects the roi
 	//			this.colonyRoi = this.tileImage.getRoi(); 
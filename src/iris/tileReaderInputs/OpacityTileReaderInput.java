@@ -6,7 +6,6 @@ package iris.tileReaderInputs;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
 
 import java.awt.Point;
 
@@ -48,7 +47,7 @@ public class OpacityTileReaderInput extends BasicTileReaderInput {
 		this.colonyRoi = colonyRoi_;
 		this.colonySize = colonySize_;
 		
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(settings_.userDefinedRoi){
 			//get the user-defined ROI from the tile image 
 			//(this is where its normally saved when user selects the roi
 			this.colonyRoi = this.tileImage.getRoi(); 
@@ -57,6 +56,7 @@ public class OpacityTileReaderInput extends BasicTileReaderInput {
 
 	public OpacityTileReaderInput(BasicTileReaderInput that){
 		super(that.tileImage, that.settings);
+		this.tileView = that.tileView;
 		if(that.colonyCenter==null)
 			this.colonyCenter=null;
 		else
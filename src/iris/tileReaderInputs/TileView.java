@@ -0,0 +1,167 @@
+/**
+ *
+ */
+package iris.tileReaderInputs;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import iris.utils.ScratchBuffers;
+
+import java.awt.Rectangle;
+
+/**
+ * This class is a window on the pixels of an 8-bit picture, usually one tile of the cropped plate.
+ * No pixels are copied: pixel (x,y) of the tile is pixels[offset + y*stride + x] of the plate picture.
+ * <br>
+ * Tile readers use views for the measurements that only read the tile (histograms, sums, medians).
+ * The pixels are shared with the plate, so they should never be changed through a view;
+ * anything that changes pixels (thresholding, filling, dilating) should work on a copy, see toScratchImage.
+ *
+ * @author George Kritikos
+ *
+ */
+public class TileView {
+
+	/**
+	 * the pixels of the whole picture the tile is in
+	 */
+	public final byte[] pixels;
+
+	/**
+	 * where the top left pixel of the tile is in the pixels array
+	 */
+	public final int offset;
+
+	/**
+	 * how far apart two rows of the tile are in the pixels array (the width of the whole picture)
+	 */
+	public final int stride;
+
+	public final int width;
+	public final int height;
+
+
+
+	/**
+	 * Creates a view of the whole picture
+	 * @param image an 8-bit picture
+	 */
+	public TileView(ImagePlus image){
+		this(image, new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+	}
+
+
+	/**
+	 * Creates a view of the given rectangle of the picture. Only the part of the rectangle that is inside the picture is kept,
+	 * and if nothing is left the whole picture is used, just like Toolbox.cropImage does.
+	 * @param image an 8-bit picture
+	 * @param rectangle
+	 */
+	public TileView(ImagePlus image, Rectangle rectangle){
+		ByteProcessor processor = (ByteProcessor) image.getProcessor();
+		int imageWidth = processor.getWidth();
+		int imageHeight = processor.getHeight();
+
+		Rectangle bounds = rectangle.intersection(new Rectangle(0, 0, imageWidth, imageHeight));
+		if(bounds.width<=0 || bounds.height<=0)
+			bounds = new Rectangle(0, 0, imageWidth, imageHeight);
+
+		pixels = (byte[]) processor.getPixels();
+		stride = imageWidth;
+		offset = bounds.y*stride + bounds.x;
+		width = bounds.width;
+		height = bounds.height;
+	}
+
+
+	private TileView(byte[] pixels_, int offset_, int stride_, int width_, int height_){
+		pixels = pixels_;
+		offset = offset_;
+		stride = stride_;
+		width = width_;
+		height = height_;
+	}
+
+
+	/**
+	 * Returns a view of the given rectangle of this tile (in tile coordinates), again clipped to the tile.
+	 * If nothing is left, the whole tile is used.
+	 * @param rectangle
+	 * @return
+	 */
+	public TileView getSubView(Rectangle rectangle){
+		Rectangle bounds = rectangle.intersection(new Rectangle(0, 0, width, height));
+		if(bounds.width<=0 || bounds.height<=0)
+			return(this);
+
+		return(new TileView(pixels, offset + bounds.y*stride + bounds.x, stride, bounds.width, bounds.height));
+	}
+
+
+	/**
+	 * Returns the (unsigned) value of the (x,y) pixel of the tile
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int getPixel(int x, int y){
+		return(pixels[offset + y*stride + x]&0xFF);
+	}
+
+
+	/**
+	 * Returns the number of pixels of each value (0...255) in the tile
+	 * @return
+	 */
+	public int[] getHistogram(){
+		int[] histogram = new int[256];
+
+		for(int y=0; y<height; y++){
+			int rowStart = offset + y*stride;
+			for(int i=rowStart; i<rowStart+width; i++){
+				histogram[pixels[i]&0xFF]++;
+			}
+		}
+
+		return(histogram);
+	}
+
+
+	/**
+	 * Copies the pixels of the tile into the given array (which should hold at least width*height pixels)
+	 * and returns it, row by row, the way a ByteProcessor of the tile would hold them.
+	 * If the array is null or too small, a new one is created.
+	 * @param buffer
+	 * @return
+	 */
+	public byte[] copyTo(byte[] buffer){
+		if(buffer==null || buffer.length<width*height)
+			buffer = new byte[width*height];
+
+		for(int y=0; y<height; y++){
+			System.arraycopy(pixels, offset + y*stride, buffer, y*width, width);
+		}
+
+		return(buffer);
+	}
+
+
+	/**
+	 * Returns a new 8-bit picture of the tile, that can be changed without changing the plate
+	 * @return
+	 */
+	public ImagePlus toImagePlus(){
+		return(new ImagePlus("", new ByteProcessor(width, height, copyTo(null))));
+	}
+
+
+	/**
+	 * Returns an 8-bit picture of the tile like toImagePlus, but with its pixels in a scratch array of this thread.
+	 * It should be given back with ScratchBuffers.release when it's not needed anymore.
+	 * @return
+	 */
+	public ImagePlus toScratchImage(){
+		byte[] scratch = ScratchBuffers.getBytes(width*height);
+		return(new ImagePlus("", new ByteProcessor(width, height, copyTo(scratch))));
+	}
+}
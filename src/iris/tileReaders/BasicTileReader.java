@@ -3,15 +3,11 @@
  */
 package iris.tileReaders;
 
-import ij.ImagePlus;
-import ij.gui.Roi;
-import ij.measure.Measurements;
-import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.utils.ConnectedComponentLabeller;
+import iris.utils.TileHistogram;
 import iris.utils.Toolbox;
 
 /**
@@ -33,47 +29,33 @@ public class BasicTileReader {
 
 
 		//1. apply a threshold at the tile, using the Otsu algorithm
-		ImagePlus originalTileImage = input.tileImage.duplicate();
-		Toolbox.turnImageBW_Otsu_auto(input.tileImage);
+		//the histogram is kept, since the empty tile check needs the same threshold
+		TileHistogram tileHistogram = new TileHistogram(input.tileImage);
+		Toolbox.turnImageBW_Otsu_auto(input.tileImage, tileHistogram);
 
 
 
-		//2. perform particle analysis on the thresholded tile
+		//2. find the particles of the thresholded tile
+		ConnectedComponentLabeller particles = ConnectedComponentLabeller.getThreadLabeller(5);
+		particles.analyze(input.tileImage);
 
-		//create the results table, where the results of the particle analysis will be shown
-		ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
 
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
-		
-		ParticleAnalyzer.setRoiManager(roiManager);
-
-		particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
-
-		Roi[] rois = roiManager.getRoisAsArray();
-
-
-		//3.1 check if the returned results table is empty
-		if(resultsTable.getCounter()==0){
+		//3.1 check if there were any particles at all
+		if(particles.getCount()==0){
 			output.emptyResulsTable = true; // this is highly abnormal
 			output.colonySize = 0;//return a colony size of zero
 
 			input.cleanup(); //clear the tile image here, since we don't need it anymore
-			originalTileImage.flush();
 			
 			return(output);
 		}
 
 		//3.2 check to see if the tile was empty. If so, return a colony size of zero
-		if(isTileEmpty(resultsTable, originalTileImage)){
+		if(isTileEmpty(particles, tileHistogram)){
 			output.emptyTile = true;
 			output.colonySize = 0;//return a colony size of zero
 
 			input.cleanup(); //clear the tile image here, since we don't need it anymore
-			originalTileImage.flush();
 			
 			return(output);
 		}
@@ -83,19 +65,17 @@ public class BasicTileReader {
 		//3.2 if there was a colony there, return the area of the biggest particle
 		//this should also clear away contaminations, because normally the contamination
 		//area will be smaller than the colony area, so the contamination will never be reported
-		int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
-		output.colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
-		output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-		output.colonyROI = rois[indexOfBiggestParticle];
+		int indexOfBiggestParticle = particles.getIndexOfBiggestParticle();
+		output.colonySize = getBiggestParticleAreaPlusPerimeter(particles, indexOfBiggestParticle);
+		output.circularity = getBiggestParticleCircularity(particles, indexOfBiggestParticle);
+		output.colonyROI = particles.getBiggestParticleRoi();
 		
 		
-		originalTileImage.flush();
-		
 		return(output);//returns the biggest result
 
 
 		//TODO: still there is no way to filter out contaminations in case the tile is empty
-		//this should be straight forward to do, since the center of mass (see ResultsTable) of the contamination
+		//this should be straight forward to do, since the center of mass (see ConnectedComponentLabeller) of the contamination
 		//should be very far from the center of the tile
 
 	}
@@ -103,7 +83,7 @@ public class BasicTileReader {
 
 
 	/**
-	 * This function uses the results table produced by the particle analyzer to
+	 * This function uses the particles found by the labeller to
 	 * find out whether this tile has a colony in it or it's empty.
 	 * This function uses 3 sorts of filters, trying to pick up empty spots:
 	 * 1. how many particles were found
@@ -111,19 +91,15 @@ public class BasicTileReader {
 	 * 3. the coordinates of the bounding rectangle of the biggest particle
 	 * Returns true if the tile was empty, false if there is a colony in it.
 	 */
-	private static boolean isTileEmpty(ResultsTable resultsTable, ImagePlus tile) {
-
-		//get the columns that we're interested in out of the results table
-		int numberOfParticles = resultsTable.getCounter();
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));//get the areas of all the particles the particle analyzer has found
-		float X_bounding_rectangles[] = resultsTable.getColumn(resultsTable.getColumnIndex("BX"));//get the X of the bounding rectangles of all the particles
-		float Y_bounding_rectangles[] = resultsTable.getColumn(resultsTable.getColumnIndex("BY"));//get the Y of the bounding rectangles of all the particles
-		float X_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("XM"));//get the X of the center of mass of all the particles
-		float Y_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("YM"));//get the Y of the center of mass of all the particles
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));//get the circularities of all the particles
-		float aspect_ratios[] = resultsTable.getColumn(resultsTable.getColumnIndex("AR"));//get the aspect ratios of all the particles
-
-		int threshold = Toolbox.getThreshold(tile, Method.Otsu);
+	private static boolean isTileEmpty(ConnectedComponentLabeller particles, TileHistogram tileHistogram) {
+
+		//get the measurements that we're interested in out of the labeller
+		int numberOfParticles = particles.getCount();
+		int X_bounding_rectangles[] = particles.getBoundsX();//get the X of the bounding rectangles of all the particles
+		int Y_bounding_rectangles[] = particles.getBoundsY();//get the Y of the bounding rectangles of all the particles
+		float circularities[] = particles.getCircularities();//get the circularities of all the particles
+
+		int threshold = tileHistogram.getThreshold(Method.Otsu);
 		
 		/**
 		 * Penalty is a number given to this tile if some of it's attributes (e.g. circularity of biggest particle)
@@ -134,12 +110,6 @@ public class BasicTileReader {
 		int penalty = 0;
 
 
-		//get the width and height of the tile
-		int tileDimensions[] = tile.getDimensions();
-		int tileWidth = tileDimensions[0];
-		int tileHeight = tileDimensions[1];
-
-
 		//check for the number of detected particles. 
 		//Normally, if there is a colony there, the number of results should not be more than 20.
 		//We set a limit of 40, since empty spots usually have more than 70 particles.
@@ -166,19 +136,20 @@ public class BasicTileReader {
 
 		//for the following, we only check the largest particle
 		//which is the one who would be reported either way if we decide that this spot is not empty
-		int indexOfMax = getIndexOfMaximumElement(areas);
+		int indexOfMax = particles.getIndexOfBiggestParticle();
+		float aspect_ratio = particles.getBiggestParticleAspectRatio();
 
 
 		//check for unusually high aspect ratio
 		//Normal colonies would have an aspect ratio around 1, but contaminations have much higher aspect ratios (around 4)
-		if(aspect_ratios[indexOfMax]>2){
+		if(aspect_ratio>2){
 			return(true); 
 			//the tile is empty, the particle was just a contamination
 			//TODO: notify the user that there has been a contamination in the plate in this spot
 		}
 
 		//borderline situation
-		if(aspect_ratios[indexOfMax]>1.2){
+		if(aspect_ratio>1.2){
 			penalty++;
 		}
 
@@ -236,37 +207,16 @@ public class BasicTileReader {
 	}
 
 	
-	private static int getIndexOfBiggestParticle(ResultsTable resultsTable){
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = getIndexOfMaximumElement(areas);
-		
-		return(indexOfMax);
-	}
-
-
 	/**
-	 * Returns the area of the biggest particle in the results table
+	 * Returns the area of the biggest particle
 	 */
-	private static int getBiggestParticleArea(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-		
-		
-		int largestParticleArea = Math.round(areas[indexOfBiggestParticle]);
-
-		return(largestParticleArea);
+	private static int getBiggestParticleArea(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
+		return(particles.getAreas()[indexOfBiggestParticle]);
 	}
 	
 	
 	/**
-	 * Returns the area of the biggest particle in the results table.
+	 * Returns the area of the biggest particle.
 	 * This function compensates for a mildly stringent thresholding algorithm (such as Otsu),
 	 * in which it is known that the outer pixels of the colony are missing.
 	 * By adding back pixels that equal the periphery in number, we compensate for those missing pixels.
@@ -274,18 +224,11 @@ public class BasicTileReader {
 	 * shape (such as colonies that form a biofilm), this could add much more than just an outer layer of pixels,
 	 * thus overcorrecting the stringency of the thresholding algorithm. 
 	 */
-	private static int getBiggestParticleAreaPlusPerimeter(ResultsTable resultsTable, int indexOfBiggestParticle) {
+	private static int getBiggestParticleAreaPlusPerimeter(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
 
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float perimeters[] = resultsTable.getColumn(resultsTable.getColumnIndex("Perim."));
-		
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-		
 		//get the area and perimeter of the biggest particle
-		int largestParticleArea = Math.round(areas[indexOfMax]);
-		int largestParticlePerimeter = Math.round(perimeters[indexOfMax]);
+		int largestParticleArea = particles.getAreas()[indexOfBiggestParticle];
+		int largestParticlePerimeter = Math.round(particles.getPerimeters()[indexOfBiggestParticle]);
 
 		return(largestParticleArea+largestParticlePerimeter);
 	}
@@ -293,38 +236,10 @@ public class BasicTileReader {
 	
 	
 	/**
-	 * Returns the circularity of the biggest particle in the results table.
+	 * Returns the circularity of the biggest particle.
 	 */
-	private static float getBiggestParticleCircularity(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));
-		
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-		return(circularities[indexOfMax]);
-	}
-
-
-
-	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the largest element
-	 */
-	private static int getIndexOfMaximumElement(float[] areas) {
-		int index = -1;
-		float max = -Float.MAX_VALUE;
-
-		for (int i = 0; i < areas.length; i++) {
-			if(areas[i]>max){
-				max = areas[i];
-				index = i;
-			}
-		}
-
-		return(index);
+	private static float getBiggestParticleCircularity(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
+		return(particles.getCircularities()[indexOfBiggestParticle]);
 	}
 
 }
@@ -12,15 +12,14 @@ import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.Hough_Circles;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
-import iris.ui.IrisFrontend;
 import iris.utils.StdStats;
+import iris.utils.TileParticleAnalyzer;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -57,7 +56,7 @@ public class BasicTileReaderHSB {
 		BasicTileReaderOutput output = new BasicTileReaderOutput();
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 
 
 			//1. apply a threshold at the tile, using a local thresholding algorithm
@@ -70,17 +69,15 @@ public class BasicTileReaderHSB {
 
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = new RoiManager(true);
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER, 
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
 
-			ParticleAnalyzer.setRoiManager(roiManager);
 			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
 
-			Roi[] rois = roiManager.getRoisAsArray();
+			Roi[] rois = particleAnalyzer.getRoisAsArray();
 
 
 
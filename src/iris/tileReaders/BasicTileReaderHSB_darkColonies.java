@@ -11,17 +11,15 @@ import ij.gui.Roi;
 import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.Binary;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
-import iris.ui.IrisFrontend;
 import iris.utils.StdStats;
+import iris.utils.TileParticleAnalyzer;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -58,7 +56,7 @@ public class BasicTileReaderHSB_darkColonies {
 		BasicTileReaderOutput output = new BasicTileReaderOutput();
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 
 			//1. check if the tile is empty or not
 			boolean emptyTile_simple = isTileEmpty_simple(tileCopy);
@@ -83,19 +81,17 @@ public class BasicTileReaderHSB_darkColonies {
 
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = new RoiManager(true);
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			//old//ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER,
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
-					//new, showing results //ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_OUTLINES +ParticleAnalyzer.SHOW_RESULTS /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
+			//old//TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER,
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
+					//new, showing results //TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_OUTLINES +ParticleAnalyzer.SHOW_RESULTS /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
 
-			ParticleAnalyzer.setRoiManager(roiManager);
 			particleAnalyzer.analyze(tileCopy); //it gets the image processor internally
 
-			Roi[] rois = roiManager.getRoisAsArray();
+			Roi[] rois = particleAnalyzer.getRoisAsArray();
 
 			//3.1 check if the returned results table is empty
 			if(resultsTable.getCounter()==0){
@@ -260,11 +256,7 @@ public class BasicTileReaderHSB_darkColonies {
 		//Toolbox.show(tileImage, "threshold");
 
 
-		Binary binaryTools = new Binary();
-
-
-		binaryTools.setup("open", tileImage);
-		binaryTools.run(tileImage.getProcessor());
+		Toolbox.openBinary(tileImage);
 		//tileImage.updateImage();
 
 		//	Toolbox.show(tileImage, "close");
@@ -275,9 +267,8 @@ public class BasicTileReaderHSB_darkColonies {
 		//		Toolbox.show(tileImage, "edge removed");
 
 
-		binaryTools.setup("fill", tileImage);
-		binaryTools.run(tileImage.getProcessor());
-		binaryTools.run(tileImage.getProcessor());
+		//(filling the holes a second time doesn't change anything)
+		Toolbox.fillHoles(tileImage);
 
 		tileImage.updateImage();
 
@@ -8,13 +8,14 @@ import ij.gui.Roi;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.ColorTileReaderOutput;
+import iris.utils.TileParticleAnalyzer;
+import iris.utils.Toolbox;
 
 /**
  * This class provides with methods that output the color of a colony.
@@ -56,18 +57,16 @@ public class ColorTileReader {
 		ResultsTable resultsTable = new ResultsTable();
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
+		TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
 				Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
 		
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
 
 		particleAnalyzer.analyze(grayTile); //it gets the image processor internally
 
 		//2.2 pick the largest particle, the check if there is something in the tile has already been performed
 		int biggestParticleIndex = getBiggestParticleAreaIndex(resultsTable);
 		
-		Roi colonyRoi = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+		Roi colonyRoi = particleAnalyzer.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
 		
 		//
 		//--------------------------------------------------
@@ -102,9 +101,7 @@ public class ColorTileReader {
 			
 		
 		//dilate 3 times to remove the colony periphery
-		input.tileImage.getProcessor().dilate();
-		input.tileImage.getProcessor().dilate();
-		input.tileImage.getProcessor().dilate();
+		Toolbox.dilate(input.tileImage, 3);
 		//
 		//--------------------------------------------------
 		//
@@ -3,14 +3,12 @@
  */
 package iris.tileReaders;
 
-import fiji.threshold.Auto_Local_Threshold;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
@@ -20,10 +18,14 @@ import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput2;
 import iris.tileReaderInputs.ColorTileReaderInput3;
 import iris.tileReaderOutputs.ColorTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.LocalThresholder;
+import iris.utils.ScratchBuffers;
+import iris.utils.TileParticleAnalyzer;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -56,29 +58,32 @@ public class ColorTileReaderHSB {
 		//down to processThresholdedTile
 
 		//1. get a grayscale image as a copy
-		ImagePlus grayTile = input.tileImage.duplicate();
+		ImagePlus colorTileCopy = ScratchBuffers.duplicate(input.tileImage);
 
-		ImageProcessor ip =  grayTile.getProcessor();
+		ImageProcessor ip =  colorTileCopy.getProcessor();
 
 		ColorProcessor cp = (ColorProcessor)ip;
 
 		//get the number of pixels in the tile
 		//		ip.snapshot(); // override ColorProcessor bug in 1.32c
-		int width = grayTile.getWidth();
-		int height = grayTile.getHeight();
+		int width = colorTileCopy.getWidth();
+		int height = colorTileCopy.getHeight();
 		int numPixels = width*height;
 
 		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
+		byte[] hSource = ScratchBuffers.getBytes(numPixels);
+		byte[] sSource = ScratchBuffers.getBytes(numPixels);
+		byte[] bSource = ScratchBuffers.getBytes(numPixels);
 
 		//saves the channels of the cp into the h, s, bSource
 		cp.getHSB(hSource,sSource,bSource);
+		ScratchBuffers.giveBack(hSource);
+		ScratchBuffers.giveBack(sSource);
+		ScratchBuffers.release(colorTileCopy);
 
 		//creates a new image using the bSource (brightness)
 		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
-		grayTile = new ImagePlus("", bpBri);
+		ImagePlus grayTile = new ImagePlus("", bpBri);
 
 		//
 		//--------------------------------------------------
@@ -90,7 +95,7 @@ public class ColorTileReaderHSB {
 		//get the coordinates of its perimeter pixels
 		ImagePlus thresholded_tile = grayTile.duplicate();
 		turnImageBW_Local_auto(thresholded_tile);
-		grayTile.flush();
+		ScratchBuffers.release(grayTile);
 
 		ColorTileReaderInput2 input2 = new ColorTileReaderInput2(input.tileImage, thresholded_tile, input.settings, input.colonyCenter);
 
@@ -108,7 +113,7 @@ public class ColorTileReaderHSB {
 	public static ColorTileReaderOutput processThresholdedTile(ColorTileReaderInput2 input){
 
 		//0. create the output object and make a copy of the color picture for later
-		ImagePlus colorTile = input.tileImage.duplicate();
+		ImagePlus colorTile = ScratchBuffers.duplicate(input.tileImage);
 		colorTile.setRoi(input.tileImage.getRoi());
 
 		ColorTileReaderOutput output = new ColorTileReaderOutput();
@@ -119,7 +124,7 @@ public class ColorTileReaderHSB {
 		ImageConverter imageConverter = new ImageConverter(grayscaleTileCopy);
 		imageConverter.convertToGray8();
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 			
 			//1. get the thresholded tile ready from the input
 			ImagePlus BW_tile = input.thresholdedTileImage;
@@ -128,25 +133,21 @@ public class ColorTileReaderHSB {
 
 			//2.1 perform particle analysis on the thresholded tile
 
-			//create the results table, where the results of the particle analysis will be shown
-			ResultsTable resultsTable = new ResultsTable();
-
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-					Measurements.CENTER_OF_MASS+Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
-
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
+			//only the area and perimeter of the biggest particle are needed here, so no results table is used
+			//arguments: some weird ParticleAnalyzer.* options, minimum particle size, maximum particle size
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
+					5, Integer.MAX_VALUE);
 
 			particleAnalyzer.analyze(BW_tile); //it gets the image processor internally
 
 			//2.2 pick the largest particle, the check if there is something in the tile has already been performed
-			int biggestParticleIndex = getBiggestParticleAreaIndex(resultsTable);
+			int biggestParticleIndex = particleAnalyzer.getIndexOfBiggestParticle();
 
-			output.colonyROI = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+			output.colonyROI = particleAnalyzer.getRoisAsArray()[biggestParticleIndex];
 
 
-			int colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, biggestParticleIndex);
+			//adding the perimeter to the area compensates for the outer pixels of the colony lost to the thresholding
+			int colonySize = Math.round(particleAnalyzer.getArea(biggestParticleIndex)) + Math.round(particleAnalyzer.getPerimeter(biggestParticleIndex));
 			//
 			//--------------------------------------------------
 			//
@@ -163,6 +164,8 @@ public class ColorTileReaderHSB {
 				output.errorOccurred=true;
 
 				input.cleanup();
+				ScratchBuffers.release(colorTile);
+				ScratchBuffers.release(grayscaleTileCopy);
 				return(output);
 			}
 
@@ -186,6 +189,8 @@ public class ColorTileReaderHSB {
 			output.errorOccurred=true;
 
 			input.cleanup();
+			ScratchBuffers.release(colorTile);
+			ScratchBuffers.release(grayscaleTileCopy);
 			return(output);
 		}
 
@@ -200,7 +205,8 @@ public class ColorTileReaderHSB {
 		//
 
 		//4. separate the color channels, calculate relative color intensity of red
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(input.tileImage, 2, 1, (float)1, (float)2); ///
+		int[] tilePixels = (int[]) input.tileImage.getProcessor().getPixels();
+		float[] hsb = new float[3];
 		//byte[] relativeColorIntensity_includingBrightness = calculateRelativeColorIntensity(input.tileImage, 2, 1);
 
 		//but because colonies get darker with accumulation of congo red..		
@@ -225,9 +231,9 @@ public class ColorTileReaderHSB {
 		int biofilmPixelCount = 0;
 		int biofilmColorSum = 0;
 
-		for(int i=0;i<pixelBiofilmScores.length;i++){
+		for(int i=0;i<tilePixels.length;i++){
 
-			int pixelBiofilmScoreByteValue = pixelBiofilmScores[i]&0xFF;
+			int pixelBiofilmScoreByteValue = getPixelBiofilmScore(tilePixels[i], hsb, 2, 1, (float)1, (float)2);
 
 			colonyColorSum += pixelBiofilmScoreByteValue;
 
@@ -249,7 +255,9 @@ public class ColorTileReaderHSB {
 
 		//also get the center area color
 		if(input.colonyCenter==null){
-			output.colonyCenter = Toolbox.getParticleUltimateErosionPoint(grayscaleTileCopy.duplicate());//Toolbox.getBiggestParticleCenterOfMass(resultsTable, biggestParticleIndex);
+			ImagePlus erosionTile = ScratchBuffers.duplicate(grayscaleTileCopy);
+			output.colonyCenter = Toolbox.getParticleUltimateErosionPoint(erosionTile);//Toolbox.getBiggestParticleCenterOfMass(resultsTable, biggestParticleIndex);
+			ScratchBuffers.release(erosionTile);
 		}
 		else{
 			output.colonyCenter = new Point(input.colonyCenter);
@@ -266,7 +274,9 @@ public class ColorTileReaderHSB {
 				diameter, diameter);
 
 		//get minimum radius
-		Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(input.tileImage.duplicate(), output.colonyROI);
+		ImagePlus edgeTile = ScratchBuffers.duplicate(input.tileImage);
+		Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(edgeTile, output.colonyROI);
+		ScratchBuffers.release(edgeTile);
 		double minimumDistance = Toolbox.getMinimumPointDistance(output.colonyCenter, colonyRoiPerimeter);
 		//double medianDistance = Toolbox.getMedianPointDistance(output.colonyCenter, colonyRoiPerimeter);
 
@@ -290,7 +300,8 @@ public class ColorTileReaderHSB {
 		}
 
 
-		colorTile.flush();
+		ScratchBuffers.release(colorTile);
+		ScratchBuffers.release(grayscaleTileCopy);
 		input.cleanup();
 		return output;
 	}
@@ -305,7 +316,7 @@ public class ColorTileReaderHSB {
 	 */
 	private static double getAverageCenterAreaOpacity(ImagePlus grayscaleTile, Point colonyCenter, int diameter) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+		ImagePlus grayscaleTileCopy = ScratchBuffers.duplicate(grayscaleTile);
 
 		//1. find the background level, which is the threshold set by Otsu
 		//EDIT: don't correct for background level here, this is mainly to account for lighting spatial effects and can be corrected for later
@@ -324,6 +335,7 @@ public class ColorTileReaderHSB {
 		try {
 			grayscaleTileCopy.getProcessor().fillOutside(centerRoi);
 		} catch (Exception e) {
+			ScratchBuffers.release(grayscaleTileCopy);
 			return(0);
 		}
 
@@ -353,7 +365,7 @@ public class ColorTileReaderHSB {
 			sumOfBrightness += Math.max(0, pixelValue-background_level);
 		}
 
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 
 		return ((double)sumOfBrightness/(double)size);
 	}
@@ -372,7 +384,7 @@ public class ColorTileReaderHSB {
 		//0. create the output object
 		ColorTileReaderOutput output = new ColorTileReaderOutput();
 
-		ImagePlus tileImageCopy = input.tileImage.duplicate();
+		ImagePlus tileImageCopy = ScratchBuffers.duplicate(input.tileImage);
 
 		//set the pre-calculated ROI (of the largest particle = colony) on the original picture and fill everything around it with black
 		tileImageCopy.setRoi(input.colonyRoi);
@@ -389,14 +401,13 @@ public class ColorTileReaderHSB {
 			output.errorOccurred=true;
 
 			input.cleanup();
+			ScratchBuffers.release(tileImageCopy);
 			return(output);
 		}
 
 
 		//dilate 3 times to remove the colony periphery
-		tileImageCopy.getProcessor().dilate();		
-		tileImageCopy.getProcessor().dilate();
-		tileImageCopy.getProcessor().dilate();
+		Toolbox.dilate(tileImageCopy, 3);
 		//
 		//--------------------------------------------------
 		//
@@ -430,45 +441,13 @@ public class ColorTileReaderHSB {
 		int biofilmColorSum = 0;
 
 
-		//get pixel color values again, this time by means of integer values
-		Float[] pixelBiofilmScores_float = calculateRelativeColorIntensityUsingSaturationAndBrightness_float(tileImageCopy, input.colonyRoi, 2, 1, (float)1, (float)2);
-
-		//		for(int i=0;i<pixelBiofilmScores_float.length;i++){
-		//
-		//			float pixelBiofilmScoreByteValue = pixelBiofilmScores_float[i];
-		//
-		//			if(pixelBiofilmScoreByteValue>0){
-		//				colonyColorSum += (int)Math.round(pixelBiofilmScoreByteValue);
-		//			}
-		//			else{
-		//				continue;
-		//			}
-		//
-		//			if(pixelBiofilmScoreByteValue>input.settings.colorThreshold){
-		//				biofilmPixelCount++;
-		//				biofilmColorSum += (int)Math.round(pixelBiofilmScoreByteValue);
-		//			}
-		//		}
-
-
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(tileImageCopy, 2, 1, (float)1, (float)2); ///
-
-		for(int i=0;i<pixelBiofilmScores.length;i++){
+		//score all the pixels of the tile in one go, see scoreColonyPixels
+		ColonyPixelScores colonyPixelScores = scoreColonyPixels((ColorProcessor) tileImageCopy.getProcessor(), input.colonyRoi, input.settings.colorThreshold);
+		colonyColorSum = colonyPixelScores.colonyColorSum;
+		biofilmPixelCount = colonyPixelScores.biofilmPixelCount;
+		biofilmColorSum = colonyPixelScores.biofilmColorSum;
 
-			float pixelBiofilmScoreByteValue = pixelBiofilmScores[i];
-
-			if(pixelBiofilmScoreByteValue>0){
-				colonyColorSum += (int)Math.round(pixelBiofilmScoreByteValue);
-			}
-			else{
-				continue;
-			}
-
-			if(pixelBiofilmScoreByteValue>input.settings.colorThreshold){
-				biofilmPixelCount++;
-				biofilmColorSum += (int)Math.round(pixelBiofilmScoreByteValue);
-			}
-		}
+		float[] pixelBiofilmScores_float = colonyPixelScores.pixelBiofilmScores;
 
 
 
@@ -524,8 +503,10 @@ public class ColorTileReaderHSB {
 		imageConverter.convertToGray8();
 
 		if(input.colonyCenter==null){
-			try{ output.colonyCenter = Toolbox.getParticleUltimateErosionPoint(grayscaleTileCopy.duplicate()); }//getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
+			ImagePlus erosionTile = ScratchBuffers.duplicate(grayscaleTileCopy);
+			try{ output.colonyCenter = Toolbox.getParticleUltimateErosionPoint(erosionTile); }//getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
 			catch(Exception e){ output.colonyCenter = null; }
+			ScratchBuffers.release(erosionTile);
 		}
 		else{
 			output.colonyCenter = new Point(input.colonyCenter);
@@ -543,10 +524,11 @@ public class ColorTileReaderHSB {
 
 
 		//just returns the average pixel saturation over all pixels in the colony bounds
-		output.averagePixelSaturation = getAveragePixelSaturation(tileImageCopy, output.colonyROI);
-
+		output.averagePixelSaturation = colonyPixelScores.saturationSum/colonyPixelScores.pixelBiofilmScores.length/255;//I want it in a 0 to 1 range
 
 
+		ScratchBuffers.release(tileImageCopy);
+		ScratchBuffers.release(grayscaleTileCopy);
 
 		input.cleanup();
 		return output;
@@ -561,7 +543,7 @@ public class ColorTileReaderHSB {
 	 */
 	private static double getAverageCenterAreaColor(ImagePlus colorTile, Point colonyCenter, int diameter) {
 
-		ImagePlus colorTileCopy = colorTile.duplicate();
+		ImagePlus colorTileCopy = ScratchBuffers.duplicate(colorTile);
 
 
 		//3. get the colony center of mass, this will be the center of the circle
@@ -576,21 +558,22 @@ public class ColorTileReaderHSB {
 		try {
 			colorTileCopy.getProcessor().fillOutside(centerRoi);
 		} catch (Exception e) {
+			ScratchBuffers.release(colorTileCopy);
 			return(0);
 		}
 
 
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(colorTileCopy, 2, 1, (float)1, (float)2); ///
+		int[] tilePixels = (int[]) colorTileCopy.getProcessor().getPixels();
+		float[] hsb = new float[3];
 
 
-		int size = pixelBiofilmScores.length;
+		int size = tilePixels.length;
 
 		int sumOfColor = 0;
 		//		int sumOfNonZeroColorPixels = 0;
 
 		for(int i=0;i<size;i++){
-			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
-			int pixelValue = pixelBiofilmScores[i]&0xFF;
+			int pixelValue = getPixelBiofilmScore(tilePixels[i], hsb, 2, 1, (float)1, (float)2);
 
 			sumOfColor += pixelValue;
 
@@ -600,40 +583,13 @@ public class ColorTileReaderHSB {
 		}
 
 
-		colorTileCopy.flush();
+		ScratchBuffers.release(colorTileCopy);
 
 		return ((double)sumOfColor/(double)size);
 	}
 
 
 
-	/**
-	 * Returns the area of the biggest particle in the results table.
-	 * This function compensates for a mildly stringent thresholding algorithm (such as Otsu),
-	 * in which it is known that the outer pixels of the colony are missing.
-	 * By adding back pixels that equal the periphery in number, we compensate for those missing pixels.
-	 * This in round colonies equals to the increase in diameter by 1. Warning: in colonies of highly abnormal
-	 * shape (such as colonies that form a biofilm), this could add much more than just an outer layer of pixels,
-	 * thus overcorrecting the stringency of the thresholding algorithm. 
-	 */
-	private static int getBiggestParticleAreaPlusPerimeter(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float perimeters[] = resultsTable.getColumn(resultsTable.getColumnIndex("Perim."));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-		//get the area and perimeter of the biggest particle
-		int largestParticleArea = Math.round(areas[indexOfMax]);
-		int largestParticlePerimeter = Math.round(perimeters[indexOfMax]);
-
-		return(largestParticleArea+largestParticlePerimeter);
-	}
-
-
-
 	/**
 	 * This function gets the 3 separate channels, and calculates a per-pixel relative intensity on the color.
 	 * Default value of the red gain is 2, default value of the blue/green gain is 1
@@ -658,124 +614,136 @@ public class ColorTileReaderHSB {
 
 
 	/**
-	 * This function gets the 3 separate channels, and calculates a per-pixel relative intensity on the color.
-	 * Default value of the red gain is 2, default value of the blue/green gain is 1.
-	 * This version also takes into account the colony's brightness, since we know now that the more colonies
-	 * accumulate congo red, the darker they become.
-	 * @param channels
-	 * @return
+	 * This function calculates the biofilm score of a single pixel, using the relative color intensity of red
+	 * plus the difference of the saturation and the brightness (colonies get darker with accumulation of congo red).
+	 * Every step is capped to 0...255, just as if it was done on 8-bit channel images.
+	 * @param rgb the packed RGB value of the pixel
+	 * @param hsb a float[3] to hold the HSB values of the pixel, so that it's not allocated for every pixel
+	 * @return the score of the pixel, from 0 to 255
 	 */
-	private static byte[] calculateRelativeColorIntensityUsingSaturationAndBrightness(ImagePlus tile, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
-		ColorProcessor processor = (ColorProcessor) tile.getProcessor();
-
-		byte[] red = processor.getChannel(1);
-		byte[] green = processor.getChannel(2);
-		byte[] blue = processor.getChannel(3);
-
-
-		byte[] redWithGain = multiply(red_gain,red);
-		byte[] green_and_blue = multiply(blue_green_gain, add(green, blue));
-		byte[] relative_colour_intensity = subtract(redWithGain, green_and_blue);
-
-
-		//end of color calculations
-		//------
-		//start calculating brightness contribution
+	private static int getPixelBiofilmScore(int rgb, float[] hsb, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+		int red = (rgb&0xff0000)>>16;
+		int green = (rgb&0xff00)>>8;
+		int blue = rgb&0xff;
 
-		ImageProcessor ip =  tile.getProcessor();
-		ColorProcessor cp = (ColorProcessor)ip;
-
-		//get the number of pixels in the tile
-		int width = tile.getWidth();
-		int height = tile.getHeight();
-		int numPixels = width*height;
+		int redWithGain = (int)Math.min(red*red_gain, 255);
+		int green_and_blue = (int)Math.min(Math.min(green+blue, 255)*blue_green_gain, 255);
+		int relative_colour_intensity = Math.max(redWithGain-green_and_blue, 0);
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
+		//saturation and brightness in 0...255, truncated like ColorProcessor.getHSB does
+		java.awt.Color.RGBtoHSB(red, green, blue, hsb);
+		int saturation = (int)(hsb[1]*255.0);
+		int brightness = (int)(hsb[2]*255.0);
+		int saturationMinusBrightness = Math.max(saturation-brightness, 0);
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		int relative_colour_intensity_with_gain = (int)Math.min(relative_colour_intensity*color_gain, 255);
+		int colonySaturationBrightness_with_gain = (int)Math.min(saturationMinusBrightness*brightness_gain, 255);
 
-		byte[] saturationMinusBrightness = subtract(sSource, bSource);
+		return(Math.min(relative_colour_intensity_with_gain+colonySaturationBrightness_with_gain, 255));
+	}
 
-		byte[] relative_colour_intensity_with_gain = multiply(color_gain, relative_colour_intensity);
-		byte[] colonySaturationBrightness_with_gain = multiply(brightness_gain, saturationMinusBrightness);
 
-		byte[] total_biofilm_score = add(relative_colour_intensity_with_gain, colonySaturationBrightness_with_gain);
+	/**
+	 * This function calculates the biofilm score of a single pixel without capping any of the steps.
+	 * Instead of the saturation minus the brightness, it adds the saturation to the darkness (255-brightness).
+	 * The HSB values of the pixel must already be in hsb.
+	 * @return
+	 */
+	private static float getPixelBiofilmScore_float(int rgb, float[] hsb, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+		int red = (rgb&0xff0000)>>16;
+		int green = (rgb&0xff00)>>8;
+		int blue = rgb&0xff;
 
+		float relative_colour_intensity = Math.max(red*red_gain - (green+blue)*blue_green_gain, 0);
 
+		float saturation = hsb[1]*(float)255;
+		float darkness = Math.max(Math.min(255-hsb[2]*(float)255, 255), 0);
 
-		return total_biofilm_score;
+		return(relative_colour_intensity*color_gain + (saturation+darkness)*brightness_gain);
 	}
 
 
-
-
 	/**
-	 * This just returns a no-frills 0-255 representation of the colony pixels in an array
-	 * @param tile
-	 * @param colonyRoi
-	 * @return
+	 * The color measurements of a colony, see scoreColonyPixels
 	 */
-	private static float getAveragePixelSaturation(ImagePlus tile, Roi colonyRoi){
-		Float[] allRoiPixelsSaturation = Toolbox.getRoiPixels(tile, colonyRoi, 'S');
-
-		float saturationSum = 0;
-		for (int i = 0; i < allRoiPixelsSaturation.length; i++) {
-			saturationSum += allRoiPixelsSaturation[i].floatValue();
-		}
+	private static class ColonyPixelScores {
+		/**
+		 * sums of the 8-bit biofilm scores of the tile
+		 */
+		int colonyColorSum = 0;
+		int biofilmPixelCount = 0;
+		int biofilmColorSum = 0;
 
-		float averagePixelSaturation0to255 = saturationSum/allRoiPixelsSaturation.length;
+		/**
+		 * the uncapped biofilm scores of the pixels inside the colony ROI, row by row
+		 */
+		float[] pixelBiofilmScores;
 
-		return(averagePixelSaturation0to255/255);//I want it in a 0 to 1 range
+		/**
+		 * the sum of the saturation (0...255) of the pixels inside the colony ROI
+		 */
+		float saturationSum = 0;
 	}
 
 
 	/**
-	 * This function gets the 3 separate channels, and calculates a per-pixel relative intensity on the color.
-	 * Default value of the red gain is 2, default value of the blue/green gain is 1.
-	 * This version also takes into account the colony's brightness, since we know now that the more colonies
-	 * accumulate congo red, the darker they become.
-	 * This version uses integer-converted byte values, that are easier to work with, and also don't have the issue that we need to limit our values to 255
-	 * @param channels
+	 * This function goes over the pixels of the tile once, calculating the biofilm score of every pixel straight from it's RGB value.
+	 * The 8-bit scores (see getPixelBiofilmScore) are summed up over the whole tile, which is black outside the colony anyway,
+	 * while the uncapped scores and the saturation (see getPixelBiofilmScore_float) are kept for the pixels inside the colony ROI.
+	 * @param processor
+	 * @param colonyRoi
+	 * @param colorThreshold pixels with a score above this are counted as biofilm
 	 * @return
 	 */
-	private static Float[] calculateRelativeColorIntensityUsingSaturationAndBrightness_float(ImagePlus tile, Roi colonyRoi, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+	private static ColonyPixelScores scoreColonyPixels(ColorProcessor processor, Roi colonyRoi, int colorThreshold){
 
-		//Float[] roiPixels_brightness = Toolbox.getRoiPixels(tile, colonyRoi, 'l');
-		Float[] roiPixels_red = Toolbox.getRoiPixels(tile, colonyRoi, 'r');
-		Float[] roiPixels_green = Toolbox.getRoiPixels(tile, colonyRoi, 'g');
-		Float[] roiPixels_blue = Toolbox.getRoiPixels(tile, colonyRoi, 'b');
+		ColonyPixelScores scores = new ColonyPixelScores();
 
-		Float[] redWithGain = multiply(red_gain, roiPixels_red);
-		Float[] green_and_blue = multiply(blue_green_gain, add(roiPixels_green, roiPixels_blue));
-		Float[] relative_colour_intensity = subtract(redWithGain, green_and_blue);
+		int width = processor.getWidth();
+		int height = processor.getHeight();
+		int[] pixels = (int[]) processor.getPixels();
 
+		if (colonyRoi!=null && !colonyRoi.isArea()) colonyRoi = null;
+		ImageProcessor mask = colonyRoi!=null?colonyRoi.getMask():null;
+		Rectangle r = colonyRoi!=null?colonyRoi.getBounds():new Rectangle(0,0,width,height);
 
-		//end of color calculations
-		//------
-		//start calculating brightness contribution
+		float[] pixelBiofilmScores = new float[r.width*r.height];
+		int numberOfColonyPixels = 0;
+		float[] hsb = new float[3];
 
+		for (int y=0; y<height; y++) {
+			for (int x=0; x<width; x++) {
+				int rgb = pixels[y*width+x];
 
-		Float[] roiPixels_saturation = Toolbox.getRoiPixels(tile, colonyRoi, 'S');
-		Float[] roiPixels_brightness = Toolbox.getRoiPixels(tile, colonyRoi, 'B');
+				//the 8-bit score is read back as a signed byte, so scores above 127 are not counted
+				float pixelBiofilmScoreByteValue = (byte) getPixelBiofilmScore(rgb, hsb, 2, 1, (float)1, (float)2);
 
-		Float[] roiPixels_darkness = negate_skippingZeros(roiPixels_brightness);
+				if(pixelBiofilmScoreByteValue>0){
+					scores.colonyColorSum += (int)Math.round(pixelBiofilmScoreByteValue);
 
-		Float[] saturationAndDarkness = add(roiPixels_saturation, roiPixels_darkness);
-
-		//		Float[] saturationMinusBrightness = subtract(roiPixels_saturation, roiPixels_brightness);
-		//				
-		Float[] relative_colour_intensity_with_gain = multiply(color_gain, relative_colour_intensity);
-		Float[] colonySaturationBrightness_with_gain = multiply(brightness_gain, saturationAndDarkness);//saturationMinusBrightness);
+					if(pixelBiofilmScoreByteValue>colorThreshold){
+						scores.biofilmPixelCount++;
+						scores.biofilmColorSum += (int)Math.round(pixelBiofilmScoreByteValue);
+					}
+				}
 
-		Float[] total_biofilm_score = add(relative_colour_intensity_with_gain, colonySaturationBrightness_with_gain);
+				//is this pixel inside the colony?
+				int xInRoi = x-r.x;
+				int yInRoi = y-r.y;
+				if(xInRoi<0 || yInRoi<0 || xInRoi>=r.width || yInRoi>=r.height)
+					continue;
+				if(mask!=null && mask.getPixel(xInRoi, yInRoi)==0)
+					continue;
 
+				//hsb still holds the HSB values of this pixel
+				pixelBiofilmScores[numberOfColonyPixels++] = getPixelBiofilmScore_float(rgb, hsb, 2, 1, (float)1, (float)2);
+				scores.saturationSum += hsb[1]*(float)255;
+			}
+		}
 
+		scores.pixelBiofilmScores = Arrays.copyOf(pixelBiofilmScores, numberOfColonyPixels);
 
-		return total_biofilm_score;
+		return(scores);
 	}
 
 
@@ -1022,29 +990,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function will return the negative of the given array: 255-array[i].
-	 * At the same time, it will skip zeros, meaning that the pixels outside of the colony will
-	 * remain 0. This is because afterwards we will add those values together with the color intensity values.
-	 * @param array
-	 * @return
-	 */
-	private static Float[] negate_skippingZeros(Float[] array){
-		Float[] result = new Float[array.length];
-
-		for(int i=0;i<array.length;i++){
-
-			if(array[i]==(int)0)
-				result[i]=(float)0; //keep it zero
-
-			result[i] =  Math.min(255-array[i], 255);
-			result[i] = Math.max(result[i], 0); //make sure the result is positive
-		}
-		return(result);
-	}
-
-
-
 	/**
 	 * This helper function multiplies a int array by a constant factor
 	 * @param factor
@@ -1062,24 +1007,6 @@ public class ColorTileReaderHSB {
 		return(result);
 	}
 
-	/**
-	 * This helper function multiplies a int array by a constant factor
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] multiply(float factor, Float[] array){
-		Float[] result = new Float[array.length];
-
-		for(int i=0;i<array.length;i++){
-
-			result[i] =  (Float)(array[i]*factor);
-
-		}
-		return(result);
-	}
-
-
 	/**
 	 * This helper function adds 2 int arrays
 	 * @param factor
@@ -1101,27 +1028,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function adds 2 int arrays
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] add(Float[] array1, Float[] array2){
-
-		//if the 2 arrays are not of equal length, this will crash..
-
-		Float[] result = new Float[array1.length];
-		for(int i=0;i<array1.length;i++){
-
-			//just add the values
-			result[i] = array1[i] + array2[i];
-		}
-
-		return(result);
-	}
-
-
 	/**
 	 * This helper function subtracts 2 int arrays, taking into account that
 	 * negative values are given the minimum value (0)
@@ -1145,30 +1051,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function subtracts 2 int arrays, taking into account that
-	 * negative values are given the minimum value (0)
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] subtract(Float[] array1, Float[] array2){
-
-		//if the 2 arrays are not of equal length, this will crash..
-
-		Float[] result = new Float[array1.length];
-		for(int i=0;i<array1.length;i++){
-
-			//subtract the values, but avoid underflow
-			result[i] = (Math.max( array1[i] - array2[i] , 0));
-
-		}
-
-		return(result);
-	}
-
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using a fancy local thresholding algorithm, as described here:
@@ -1178,7 +1060,7 @@ public class ColorTileReaderHSB {
 	private static void turnImageBW_Local_auto(ImagePlus BW_croppedImage){
 		//use the mean algorithm with default values
 		//just use smaller radius (8 instead of default 15)
-		Auto_Local_Threshold.Mean(BW_croppedImage, 65, 0, 0, true);
+		LocalThresholder.mean(BW_croppedImage, 65, 0, true);
 		//		BW_croppedImage.updateAndDraw();
 		//		BW_croppedImage.show();
 		//		BW_croppedImage.hide();
@@ -1334,30 +1216,6 @@ public class ColorTileReaderHSB {
 
 
 
-	/**
-	 * Returns the area of the biggest particle in the results table.
-	 * This function compensates for a mildly stringent thresholding algorithm (such as Otsu),
-	 * in which it is known that the outer pixels of the colony are missing.
-	 * By adding back pixels that equal the periphery in number, we compensate for those missing pixels.
-	 * This in round colonies equals to the increase in diameter by 1. Warning: in colonies of highly abnormal
-	 * shape (such as colonies that form a biofilm), this could add much more than just an outer layer of pixels,
-	 * thus overcorrecting the stringency of the thresholding algorithm. 
-	 */
-	private static int getBiggestParticleAreaIndex(ResultsTable resultsTable) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float perimeters[] = resultsTable.getColumn(resultsTable.getColumnIndex("Perim."));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = getIndexOfMaximumElement(areas);
-
-
-		return(indexOfMax);
-	}
-
-
-
 	/**
 	 * This method simply iterates through this array and finds the index
 	 * of the largest element
@@ -12,7 +12,6 @@ import ij.gui.OvalRoi;
 import ij.gui.Roi;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.RankFilters;
-import ij.plugin.frame.RoiManager;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import imagescience.feature.Laplacian;
@@ -20,7 +19,6 @@ import imagescience.image.Image;
 import imagescience.segment.ZeroCrosser;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
-import iris.ui.IrisFrontend;
 import iris.utils.Toolbox;
 
 /**
@@ -41,7 +39,7 @@ public class LaplacianFilterTileReader {
 
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 
 			//median filter radius
 			double radius = 2.0;
@@ -143,9 +141,9 @@ public class LaplacianFilterTileReader {
 
 			//analyze the particles in the image, this includes filling in holes (which we expect using the above pipeline)
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = Toolbox.particleAnalysis_fillHoles(tileImageLaplacianZeroCrossed, resultsTable);
+			Roi[] colonyRois = Toolbox.particleAnalysis_fillHoles(tileImageLaplacianZeroCrossed, resultsTable);
 
-			if(roiManager==null){ //no particles found
+			if(colonyRois==null){ //no particles found
 				output.emptyResulsTable = true; // this is highly abnormal
 				output.colonySize = 0;//return a colony size of zero
 
@@ -160,7 +158,7 @@ public class LaplacianFilterTileReader {
 			output.colonySize = Toolbox.getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
 			output.circularity = Toolbox.getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
 			output.colonyCenter = Toolbox.getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = roiManager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = colonyRois[indexOfBiggestParticle];
 
 			//input.cleanup(); //clear the tile image here, since we don't need it anymore
 			//laplacianDifference.flush();
@@ -5,22 +5,27 @@ package iris.tileReaders;
 
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
+import ij.gui.PolygonRoi;
 import ij.gui.Roi;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.MorphologyTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.ScratchBuffers;
 import iris.utils.StdStats;
+import iris.utils.TileParticleAnalyzer;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author George Kritikos
@@ -66,6 +71,11 @@ public class MorphologyTileReader {
 	 */
 	private static int circlesToIgnore = 1;
 
+	/**
+	 * the circle points of every radius used so far, centered at (0,0) (see getCircleOffsets)
+	 */
+	private static ConcurrentHashMap<Integer, int[][]> circleOffsets = new ConcurrentHashMap<Integer, int[][]>();
+
 	/**
 	 * This tile reader is specialized in capturing the colony morphology. It returns a measure of how
 	 * "wrinkly" a colony is. Flat colonies would get a low morphology score, whereas colonies featuring a complicated structure
@@ -83,7 +93,7 @@ public class MorphologyTileReader {
 		MorphologyTileReaderOutput output = new MorphologyTileReaderOutput();
 
 		//get a copy of this tile, before it gets thresholded
-		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
+		ImagePlus grayscaleTileCopy = ScratchBuffers.duplicate(input.tileImage);
 		//
 		//--------------------------------------------------
 		//
@@ -91,7 +101,7 @@ public class MorphologyTileReader {
 
 		Roi colonyRoi;
 		Point colonyCenter;
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 
 			//1. apply a threshold at the tile, using the Otsu algorithm
 			turnImageBW_Otsu_auto(input.tileImage);		
@@ -110,14 +120,10 @@ public class MorphologyTileReader {
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
 			//this version includes flood filling for holes; this is necessary given the weird morphology of candida colonies
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
 
-
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
 			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
 			//
 			//--------------------------------------------------
@@ -130,7 +136,7 @@ public class MorphologyTileReader {
 				output.colonySize = 0;//return a colony size of zero
 
 				input.cleanup(); //clear the tile image here, since we don't need it anymore
-				grayscaleTileCopy.flush();
+				ScratchBuffers.release(grayscaleTileCopy);
 
 				return(output);
 			}
@@ -154,7 +160,7 @@ public class MorphologyTileReader {
 				output.normalizedMorphologyScore = 0;
 
 				input.cleanup(); //clear the tile image here, since we don't need it anymore
-				grayscaleTileCopy.flush();
+				ScratchBuffers.release(grayscaleTileCopy);
 
 				return(output);
 			}
@@ -174,7 +180,7 @@ public class MorphologyTileReader {
 			//3.4 get the morphology score of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 			grayscaleTileCopy.setRoi(colonyRoi);
 			//ImagePlus blah = Toolbox.cropImage(copyOfTileImage, colonyRoi);
 
@@ -217,7 +223,7 @@ public class MorphologyTileReader {
 
 
 		input.cleanup(); //clear the tile image here, since we don't need it anymore
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 
 		return(output);
 
@@ -247,8 +253,8 @@ public class MorphologyTileReader {
 
 
 		//get a copy of this tile, before it gets thresholded
-		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
-		ImagePlus grayscaleTileCopy2 = input.tileImage.duplicate();
+		ImagePlus grayscaleTileCopy = ScratchBuffers.duplicate(input.tileImage);
+		ImagePlus grayscaleTileCopy2 = ScratchBuffers.duplicate(input.tileImage);
 		if(input.tileImage.getRoi()==null)
 			grayscaleTileCopy.setRoi(input.colonyRoi);
 		else
@@ -260,7 +266,7 @@ public class MorphologyTileReader {
 
 		Roi colonyRoi;
 		Point colonyCenter;
-		if(!IrisFrontend.settings.userDefinedRoi && input.colonyRoi==null){
+		if(!input.settings.userDefinedRoi && input.colonyRoi==null){
 
 			//1. apply a threshold at the tile, using the Otsu algorithm
 			turnImageBW_Otsu_auto(grayscaleTileCopy);		
@@ -279,14 +285,10 @@ public class MorphologyTileReader {
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
 			//this version includes flood filling for holes; this is necessary given the weird morphology of candida colonies
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
 
-
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
 			particleAnalyzer.analyze(grayscaleTileCopy); //it gets the image processor internally
 			//
 			//--------------------------------------------------
@@ -299,7 +301,8 @@ public class MorphologyTileReader {
 				output.colonySize = 0;//return a colony size of zero
 
 				input.cleanup(); //clear the tile image here, since we don't need it anymore
-				grayscaleTileCopy.flush();
+				ScratchBuffers.release(grayscaleTileCopy);
+				ScratchBuffers.release(grayscaleTileCopy2);
 
 				return(output);
 			}
@@ -323,7 +326,8 @@ public class MorphologyTileReader {
 				output.normalizedMorphologyScore = 0;
 
 				input.cleanup(); //clear the tile image here, since we don't need it anymore
-				grayscaleTileCopy.flush();
+				ScratchBuffers.release(grayscaleTileCopy);
+				ScratchBuffers.release(grayscaleTileCopy2);
 
 				return(output);
 			}
@@ -343,7 +347,7 @@ public class MorphologyTileReader {
 			//3.4 get the morphology score of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 			grayscaleTileCopy.setRoi(colonyRoi);
 			//ImagePlus blah = Toolbox.cropImage(copyOfTileImage, colonyRoi);
 
@@ -399,7 +403,8 @@ public class MorphologyTileReader {
 
 
 		input.cleanup(); //clear the tile image here, since we don't need it anymore
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
+		ScratchBuffers.release(grayscaleTileCopy2);
 
 		return(output);
 
@@ -453,7 +458,7 @@ public class MorphologyTileReader {
 			return(outputSimple);
 		}
 
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(input.settings.userDefinedRoi){
 			return(outputSimple);
 		}
 
@@ -477,11 +482,9 @@ public class MorphologyTileReader {
 
 		//4A. perform particle analysis on the thresholded tile
 		ResultsTable resultsTable = new ResultsTable();
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+		TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
 		particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -491,7 +494,7 @@ public class MorphologyTileReader {
 		int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 		output.inAgarSize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 		output.inAgarCircularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-		output.inAgarROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+		output.inAgarROI = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 		output.inAgarOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.inAgarROI, inAgarBrightnessThreshold);
 
 
@@ -520,11 +523,9 @@ public class MorphologyTileReader {
 
 		//4B. perform particle analysis on the thresholded tile
 		resultsTable = new ResultsTable();
-		particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+		particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
-		manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
 		particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -534,7 +535,7 @@ public class MorphologyTileReader {
 		indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 		output.colonySize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 		output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-		output.colonyROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+		output.colonyROI = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 		output.colonyOpacity = getBiggestParticleOpacity(input.tileImage, output.colonyROI, colonyBrightnessThreshold);
 
 
@@ -596,7 +597,7 @@ public class MorphologyTileReader {
 	public static MorphologyTileReaderOutput getWholeTileMorphology(OpacityTileReaderInput input){
 
 
-		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
+		ImagePlus grayscaleTileCopy = ScratchBuffers.duplicate(input.tileImage);
 		MorphologyTileReaderOutput output = new MorphologyTileReaderOutput();
 
 		//delete any existing colony ROI, and set it as the whole tile ROI
@@ -621,7 +622,7 @@ public class MorphologyTileReader {
 			output.morphologyScoreWholeColony = sumElevationCounts(elevationCounts, circlesToIgnore );
 		}
 
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 
 		return(output);
 
@@ -648,6 +649,19 @@ public class MorphologyTileReader {
 
 		ArrayList<Integer> elevationCounts = new ArrayList<Integer>();
 
+		//the brightness averages are read straight from the pixels
+		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();
+		byte[] pixels = (byte[]) grayscale_image_ip.getPixels();
+		int width = grayscale_image_ip.getWidth();
+		int height = grayscale_image_ip.getHeight();
+
+		//particle outlines would otherwise build a new polygon for every point checked
+		Rectangle colonyBounds = colonyRoi.getBounds();
+		Polygon colonyPolygon = getColonyPolygon(colonyRoi);
+
+		//this holds the brightness averages of the current circle, it's big enough for the biggest one
+		int[] meanPixelValues = new int[getCircleOffsets(initialRadius + (maximumNumberOfCircles-1) * radiusStep)[0].length];
+
 
 		//for every circle
 		while(number_of_circles<maximumNumberOfCircles){
@@ -655,16 +669,23 @@ public class MorphologyTileReader {
 			int radius = initialRadius + number_of_circles * radiusStep;
 
 			//first of all, we need to get the coordinates of the circle
-			ArrayList<Point> circleCoordinates = getCircleCoordinates(colonyCenter, radius);
-			ArrayList<Integer> meanPixelValues = new ArrayList<Integer>(); 
+			int[][] circleOffsets = getCircleOffsets(radius);
+			int[] xOffsets = circleOffsets[0];
+			int[] yOffsets = circleOffsets[1];
 
 			//now, we need to traverse these circle coordinates to get the brightness elevations
-			for (Point point : circleCoordinates) {
+			for (int i = 0; i < xOffsets.length; i++) {
+				int x = colonyCenter.x + xOffsets[i];
+				int y = colonyCenter.y + yOffsets[i];
+
 				//first, check if the point is out of bounds
-				if(!colonyRoi.contains(point.x, point.y)){
-					//grayscale_image.show();
-					//grayscale_image.hide();
+				boolean insideColony;
+				if(colonyPolygon!=null)
+					insideColony = colonyBounds.contains(x, y) && colonyPolygon.contains(x, y);
+				else
+					insideColony = colonyRoi.contains(x, y);
 
+				if(!insideColony){
 					//if it was found to be out of bounds,
 					//return the sum of the elevation counts for all circles except the previous
 					//the current one is never saved, but also the one before is likely to get high elevation counts 
@@ -672,10 +693,10 @@ public class MorphologyTileReader {
 					//return(sumElevationCounts(elevationCounts, 1));
 					return(elevationCounts);
 				}
-				meanPixelValues.add(getBrightnessAverage9pixels(grayscale_image, point));
+				meanPixelValues[i] = getBrightnessAverage9pixels(pixels, width, height, x, y);
 			}
 
-			elevationCounts.add(new Integer(countBrightnessChanges(meanPixelValues, minimumBrightnessStep, 2)));
+			elevationCounts.add(new Integer(countBrightnessChanges(meanPixelValues, xOffsets.length, minimumBrightnessStep, 2)));
 
 			number_of_circles++;
 		}
@@ -687,6 +708,27 @@ public class MorphologyTileReader {
 	}
 
 
+	/**
+	 * Returns the outline of the colony, if it is a traced particle (the outline of a particle analyzer ROI),
+	 * or null for any other kind of ROI. For the pixels in it's bounding rectangle, the outline contains exactly
+	 * the same pixels as the ROI.
+	 * @param colonyRoi
+	 * @return
+	 */
+	private static Polygon getColonyPolygon(Roi colonyRoi){
+		if(!(colonyRoi instanceof PolygonRoi))
+			return(null);
+
+		PolygonRoi polygonRoi = (PolygonRoi) colonyRoi;
+
+		//subpixel and spline fitted outlines aren't kept as integer pixel coordinates
+		if(polygonRoi.subPixelResolution() || polygonRoi.isSplineFit())
+			return(null);
+
+		return(polygonRoi.getPolygon());
+	}
+
+
 	/**
 	 * This function just sums the elements of the given ArrayList, ignoring the last circlesToIgnore elements
 	 * @param elevationCounts
@@ -724,16 +766,17 @@ public class MorphologyTileReader {
 	 * This function will get a sequence of measurements and count the times there's a difference
 	 * greater or equal to threshold, when subtracting a measurement from it's previous
 	 * @param series:	the pixel brightness values
+	 * @param seriesLength:	the number of measurements in series
 	 * @param threshold:	above which brightness difference is it going to be picked up as a brightness change
 	 * @param offset:	skip these number of pixels. Default value is 1	
 	 * @return
 	 */
-	private static int countBrightnessChanges(ArrayList<Integer> series, int threshold, int offset){
+	private static int countBrightnessChanges(int[] series, int seriesLength, int threshold, int offset){
 
 		int changesOverThreshold = 0;
 
-		for (int i = 0; i < series.size()-offset; i++) {
-			int difference = Math.abs(series.get(i+offset) - series.get(i));
+		for (int i = 0; i < seriesLength-offset; i++) {
+			int difference = Math.abs(series[i+offset] - series[i]);
 			if(difference>threshold){
 				changesOverThreshold++;
 			}
@@ -745,31 +788,32 @@ public class MorphologyTileReader {
 
 	/**
 	 * This function will return the average brightness of +/- 1 pixels around the requested point
-	 * @param grayscale_image
-	 * @param colonyRoi
-	 * @param pixelToGet
+	 * @param pixels:	the pixels of the grayscale picture
+	 * @param width
+	 * @param height
+	 * @param pixelX
+	 * @param pixelY
 	 * @return
 	 */
-	private static int getBrightnessAverage9pixels(ImagePlus grayscale_image, Point pixelToGet){
+	private static int getBrightnessAverage9pixels(byte[] pixels, int width, int height, int pixelX, int pixelY){
 
 		//count the number of pixels actually retrieved and added to the sum		
 		int pixelsAdded = 0;
 		int sumOfPixelIntensity = 0;
 
-		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();  
-
-		for (int x = -1; x <= 1; x++) {
-			for (int y = -1; y <= 1; y++) {
-				int pixelIntensity = 0;
-				try{
-					pixelIntensity = grayscale_image_ip.getPixel(pixelToGet.x + x, pixelToGet.y + y);					
-				}
-				catch(Exception e){
+		for (int y = pixelY-1; y <= pixelY+1; y++) {
+			if(y<0 || y>=height){
+				continue;
+			}
+			for (int x = pixelX-1; x <= pixelX+1; x++) {
+				if(x<0 || x>=width){
 					continue;
 				}
 
+				int pixelIntensity = pixels[y*width + x]&0xFF;
+
 				if(pixelIntensity==0){
-					continue;//because getPixel() gives a zero if the requested pixel coordinates are out of bounds
+					continue;//zero pixels are left out, just like the out of bounds ones (getPixel() gives them as zeros)
 				}
 
 				//all went all right, we add up the pixel intensity and increase the pixelsAdded counter
@@ -807,13 +851,49 @@ public class MorphologyTileReader {
 	 * @see http://en.wikipedia.org/wiki/Midpoint_circle_algorithm
 	 */
 	public static ArrayList<Point> getCircleCoordinates(Point center, int radius){
+		int[][] circleOffsets = getCircleOffsets(radius);
+
+		ArrayList<Point> pointsToReturn = new ArrayList<Point>(circleOffsets[0].length);
+
+		for(int i=0; i<circleOffsets[0].length; i++){
+			pointsToReturn.add(new Point(center.x + circleOffsets[0][i], center.y + circleOffsets[1][i]));
+		}
+
+		return(pointsToReturn);
+	}
+
+
+	/**
+	 * Returns the circle points of getCircleCoordinates for a circle centered at (0,0), as {x offsets, y offsets}.
+	 * The offsets of each radius are calculated once and then shared by all the tiles (and threads), so they should only be read.
+	 * @param radius
+	 * @return
+	 */
+	public static int[][] getCircleOffsets(int radius){
+		int[][] offsets = circleOffsets.get(radius);
+
+		if(offsets==null){
+			offsets = calculateCircleOffsets(radius);
+			circleOffsets.putIfAbsent(radius, offsets);
+		}
+
+		return(offsets);
+	}
+
+
+	/**
+	 * Calculates the circle points of getCircleCoordinates for a circle centered at (0,0)
+	 * @param radius
+	 * @return {x offsets, y offsets}
+	 */
+	private static int[][] calculateCircleOffsets(int radius){
 		// Compute first the number of points
 		int octant_size = (int) Math.floor((Math.sqrt(2)*(radius-1)+4)/2);
 		int n_points = 8 * octant_size;
 
 
-		int x0 = center.x;
-		int y0 = center.y;
+		int x0 = 0;
+		int y0 = 0;
 
 		// Iterate a second time, and this time retrieve coordinates.
 		// We "zig-zag" through indices, so that we reconstruct a continuous
@@ -912,17 +992,12 @@ public class MorphologyTileReader {
 
 		}
 
-		//ready, now prepare the output
-		ArrayList<Point> pointsToReturn = new ArrayList<Point>();
-
-		for(int i=1; i<n_points+1; i++){
-			pointsToReturn.add(new Point(xc[i], yc[i]));
-		}
-
-
-		return(pointsToReturn);
-
+		//ready, now shift the points back to the 0...n-1 notation
+		int[][] offsetsToReturn = new int[2][];
+		offsetsToReturn[0] = Arrays.copyOfRange(xc, 1, n_points+1);
+		offsetsToReturn[1] = Arrays.copyOfRange(yc, 1, n_points+1);
 
+		return(offsetsToReturn);
 	}
 
 
@@ -9,15 +9,15 @@ import ij.gui.Roi;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.MorphologyTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.ScratchBuffers;
 import iris.utils.StdStats;
+import iris.utils.TileParticleAnalyzer;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -127,14 +127,10 @@ public class MorphologyTileReaderStm {
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
 		//this version includes flood filling for holes; this is necessary given the weird morphology of candida colonies
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+		TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
 
-
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
-
 		particleAnalyzer.analyze(grayscaleTileCopy); //it gets the image processor internally
 		//
 		//--------------------------------------------------
@@ -186,7 +182,9 @@ public class MorphologyTileReaderStm {
 		//this will give us that the circles will not start in an awkward location, even in cases where
 		//we might have oddly shaped colonies (e.g. budding shaped)
 		if(input.colonyCenter==null){
-			output.colonyCenter = Toolbox.getParticleUltimateErosionPoint(grayscaleTileCopy.duplicate());//getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
+			ImagePlus erosionTile = ScratchBuffers.duplicate(grayscaleTileCopy);
+			output.colonyCenter = Toolbox.getParticleUltimateErosionPoint(erosionTile);//getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
+			ScratchBuffers.release(erosionTile);
 		}
 		else{
 			output.colonyCenter = new Point(input.colonyCenter);
@@ -196,7 +194,7 @@ public class MorphologyTileReaderStm {
 		//3.4 get the morphology score of the colony
 		//for this, we need the Roi (region of interest) that corresponds to the colony
 		//so as to exclude the brightness of any contaminations
-		Roi colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+		Roi colonyRoi = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 		grayscaleTileCopy.setRoi(colonyRoi);
 
 		ArrayList<Integer> elevationCounts = getBiggestParticleElevationCounts(grayscaleTileCopy, colonyRoi, output.colonyCenter);
@@ -327,11 +325,9 @@ public class MorphologyTileReaderStm {
 
 			//4A. perform particle analysis on the thresholded tile
 			ResultsTable resultsTable = new ResultsTable();
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 			particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -341,7 +337,7 @@ public class MorphologyTileReaderStm {
 			int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 			output.inAgarSize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 			output.inAgarCircularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-			output.inAgarROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+			output.inAgarROI = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 			output.inAgarOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.inAgarROI, inAgarBrightnessThreshold);
 
 
@@ -373,11 +369,9 @@ public class MorphologyTileReaderStm {
 
 			//4B. perform particle analysis on the thresholded tile
 			resultsTable = new ResultsTable();
-			particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
-			manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 			particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -387,7 +381,7 @@ public class MorphologyTileReaderStm {
 			indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 			output.colonySize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 			output.colonyOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.colonyROI, colonyBrightnessThreshold);
 
 
@@ -468,15 +462,13 @@ public class MorphologyTileReaderStm {
 		int colonyBrightnessThreshold = Toolbox.getThreshold(grayscaleTileCopy, Method.Minimum);
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 
 			//4B. perform particle analysis on the thresholded tile
 			ResultsTable resultsTable = new ResultsTable();
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 			particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -489,7 +481,7 @@ public class MorphologyTileReaderStm {
 			}
 			output.colonySize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = particleAnalyzer.getRoisAsArray()[indexOfBiggestParticle];
 			output.colonyOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.colonyROI, colonyBrightnessThreshold);
 
 			
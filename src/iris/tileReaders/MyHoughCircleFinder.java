@@ -3,16 +3,16 @@
  */
 package iris.tileReaders;
 
-import fiji.threshold.Auto_Local_Threshold;
 import ij.ImagePlus;
 import ij.Prefs;
 import ij.gui.OvalRoi;
-import ij.plugin.Hough_Circles;
-import ij.plugin.filter.Binary;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.utils.GradientHoughTransform;
+import iris.utils.LocalThresholder;
+import iris.utils.Toolbox;
 
 import java.awt.geom.Ellipse2D;
 
@@ -110,23 +110,20 @@ class MyHoughCircleFinder {
 		//		adaptiveThresholder.setup("", tileImage);
 		//		adaptiveThresholder.my_run(ip, 20, 0);
 
-		Auto_Local_Threshold.Mean(tileImage, 20, 0, 0, false);
+		LocalThresholder.mean(tileImage, 20, 0, false);
 //		tileImage.show();		
 //		tileImage.hide();
 
 
 
-		Binary binaryTools = new Binary();
-		binaryTools.setup("close", tileImage);
-		binaryTools.run(tileImage.getProcessor());
+		Toolbox.closeBinary(tileImage);
 
 //		tileImage.show();		
 //		tileImage.hide();
 
 
 		//	Prefs.blackBackground = true;
-		binaryTools.setup("fill", tileImage);
-		binaryTools.run(tileImage.getProcessor());
+		Toolbox.fillHoles(tileImage);
 
 //		tileImage.show();		
 //		tileImage.hide();
@@ -135,22 +132,7 @@ class MyHoughCircleFinder {
 		Prefs.blackBackground = true;
 		tileImage.getProcessor().invert();
 
-		//3. apply edge detection (Sobel)
-
-		ImageProcessor ip = tileImage.getProcessor();
-		ip.setSnapshotCopyMode(true);
-		ip.findEdges();
-		ip.setSnapshotCopyMode(false);
-		
-		tileImage.updateImage();
-//		tileImage.show();
-//		tileImage.hide();
-
-
-		//
-		//
-//		tileImage.show();		
-//		tileImage.hide();
+		//3. edge detection (Sobel) is done by the Hough transform itself, it needs the gradient directions
 
 		//
 		//--------------------------------------------------
@@ -158,19 +140,16 @@ class MyHoughCircleFinder {
 		//
 
 		//5. apply the Hough algorithm for circle detection
-		Hough_Circles my_Hough = new Hough_Circles();
-		//tileImage.setRoi(input.tileImage.getRoi(), false);
-		//tileImage.getProcessor().setRoi(input.tileImage.getRoi());
-		Ellipse2D biggestCircle = my_Hough.my_run(tileImage.getProcessor());
-		//my_Hough.run(tileImage.getProcessor());
-
-
-		//		Hough_Circles_IMMI immi_Hough = new Hough_Circles_IMMI();
-		//		immi_Hough.run(tileImage.getProcessor());
-		//		
-		//		int[] blah = immi_Hough.getRadius();
-		//		Point[] blah2 = immi_Hough.getCirclesCentre();
-
+		//the radius is limited to half the width of the selection, just like Hough_Circles did
+		ImageProcessor ip = tileImage.getProcessor();
+		Ellipse2D biggestCircle = GradientHoughTransform.findBiggestCircle(ip, 15, ip.getRoi().width/2, 2, 15);
+
+		if(biggestCircle==null){
+			//the tile is too small for the circles we're looking for
+			output.emptyTile = true;
+			output.colonySize = 0;
+			return(output);
+		}
 
 
 		double topleftX = biggestCircle.getX() - biggestCircle.getWidth() / 2.0;
@@ -4,27 +4,23 @@
 package iris.tileReaders;
 
 import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.awt.Rectangle;
 
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
 import ij.measure.Calibration;
-import ij.measure.Measurements;
-import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.tileReaderInputs.OpacityTileReaderInput;
+import iris.tileReaderInputs.TileView;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.ConnectedComponentLabeller;
+import iris.utils.ScratchBuffers;
+import iris.utils.TileHistogram;
 import iris.utils.Toolbox;
 
 /**
@@ -46,60 +42,51 @@ public class OpacityTileReader {
 		//0. create the output object
 		OpacityTileReaderOutput output = new OpacityTileReaderOutput();
 
-		//get a copy of this tile, before it gets thresholded
-		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
-		grayscaleTileCopy.setRoi(input.tileImage.getRoi());
+		//get a view of this tile, that won't be thresholded
+		TileView grayscaleTile = getGrayscaleTile(input);
+		Roi tileRoi = input.tileImage.getRoi();
+		grayscaleTile = getDuplicatedArea(grayscaleTile, tileRoi);
 		//
 		//--------------------------------------------------
 		//
 		//
 
 
+		//the Otsu threshold of the tile is needed for both the thresholding and the center area opacity
+		TileHistogram tileHistogram = new TileHistogram(input.tileImage);
+
 		Roi colonyRoi;
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!input.settings.userDefinedRoi){
 
 
 			//1. apply a threshold at the tile, using the Otsu algorithm
-			Toolbox.turnImageBW_Otsu_auto(input.tileImage);
+			Toolbox.turnImageBW_Otsu_auto(input.tileImage, tileHistogram);
 			//
 			//--------------------------------------------------
 			//
 			//
 
-			//2. perform particle analysis on the thresholded tile
-
-			//create the results table, where the results of the particle analysis will be shown
-			ResultsTable resultsTable = new ResultsTable();
-
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-					resultsTable, 5, Integer.MAX_VALUE);
-
-
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
-			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
+			//2. find the particles of the thresholded tile
+			ConnectedComponentLabeller particles = ConnectedComponentLabeller.getThreadLabeller(5);
+			particles.analyze(input.tileImage);
 			//
 			//--------------------------------------------------
 			//
 			//
 
-			//3.1 check if the returned results table is empty
-			if(resultsTable.getCounter()==0){
+			//3.1 check if there were any particles at all
+			if(particles.getCount()==0){
 				output.emptyResulsTable = true; // this is highly abnormal
 				output.colonySize = 0;//return a colony size of zero
 
 				input.cleanup(); //clear the tile image here, since we don't need it anymore
-				grayscaleTileCopy.flush();
 
 				return(output);
 			}
 
 			//3.2 check to see if the tile was empty. If so, return a colony size of zero
-			//if(isTileEmpty(resultsTable, input.tileImage)){
-			if(Toolbox.isTileEmpty_simple2(resultsTable, input.tileImage)){
+			//if(isTileEmpty(particles, input.tileImage)){
+			if(Toolbox.isTileEmpty_simple2(particles, input.tileImage, input.settings)){
 				//if(OpacityTileReaderForHazyColonies_old.isTileEmpty_simple(input.tileImage)){
 				output.emptyTile = true;
 				output.colonySize = 0;//return a colony size of zero
@@ -107,7 +94,6 @@ public class OpacityTileReader {
 				output.opacity = 0;
 
 				input.cleanup(); //clear the tile image here, since we don't need it anymore
-				grayscaleTileCopy.flush();
 
 				return(output);
 			}
@@ -116,34 +102,34 @@ public class OpacityTileReader {
 			//3.3 if there was a colony there, return the area of the biggest particle
 			//this should also clear away contaminations, because normally the contamination
 			//area will be smaller than the colony area, so the contamination will never be reported
-			int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
+			int indexOfBiggestParticle = particles.getIndexOfBiggestParticle();
 			//3.4 get the opacity of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = particles.getBiggestParticleRoi();
 
-			output.colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
-			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
+			output.colonySize = getBiggestParticleAreaPlusPerimeter(particles, indexOfBiggestParticle);
+			output.circularity = getBiggestParticleCircularity(particles, indexOfBiggestParticle);
 
 			if(input.colonyCenter==null){ //if the center's preset for us, don't recalculate it
-				output.colonyCenter = getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);	
+				output.colonyCenter = getBiggestParticleCenterOfMass(particles, indexOfBiggestParticle);	
 			} else {
 				output.colonyCenter = new Point(input.colonyCenter);
 			}
 
-			output.opacity = getBiggestParticleOpacity(grayscaleTileCopy, colonyRoi);
-			output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTileCopy, colonyRoi);
-			output.centerAreaOpacity = getCenterAreaOpacity(grayscaleTileCopy, output.colonyCenter, diameter);
+			output.opacity = getBiggestParticleOpacity(grayscaleTile, tileRoi, colonyRoi);
+			output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTile, tileRoi, colonyRoi);
+			output.centerAreaOpacity = getCenterAreaOpacity(grayscaleTile, tileRoi, tileHistogram, output.colonyCenter, diameter);
 			output.colonyROI = colonyRoi;
 		}
 		else { //user defined colony
 			colonyRoi = (OvalRoi) input.tileImage.getRoi();
 			output.colonySize = (int) Toolbox.getRoiArea(input.tileImage);
 			output.circularity = 1; ///HACK: 1 means user-set ROI for now, need to change it to a proper circularity measurement
-			output.opacity = totalColonyBrightnessMinusBackground(grayscaleTileCopy, colonyRoi);
-			output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTileCopy, colonyRoi);
+			output.opacity = totalColonyBrightnessMinusBackground(grayscaleTile, colonyRoi);
+			output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTile, tileRoi, colonyRoi);
 			output.colonyCenter = new Point(colonyRoi.getBounds().width/2, colonyRoi.getBounds().height/2);
-			output.centerAreaOpacity = getCenterAreaOpacity(grayscaleTileCopy, output.colonyCenter, diameter);
+			output.centerAreaOpacity = getCenterAreaOpacity(grayscaleTile, tileRoi, tileHistogram, output.colonyCenter, diameter);
 			output.colonyROI = colonyRoi;
 		}
 
@@ -154,7 +140,6 @@ public class OpacityTileReader {
 		}
 
 		input.cleanup(); //clear the tile image here, since we don't need it anymore
-		grayscaleTileCopy.flush();
 
 		output.centerROI = new OvalRoi(
 				output.colonyCenter.x-diameter/2, 
@@ -165,7 +150,7 @@ public class OpacityTileReader {
 
 
 		//TODO: still there is no way to filter out contaminations in case the tile is empty
-		//this should be straight forward to do, since the center of mass (see ResultsTable) of the contamination
+		//this should be straight forward to do, since the center of mass (see ConnectedComponentLabeller) of the contamination
 		//should be very far from the center of the tile
 
 	}
@@ -217,9 +202,9 @@ public class OpacityTileReader {
 	public static OpacityTileReaderOutput processDefinedColonyTile(OpacityTileReaderInput input, boolean useDarkColonies){
 
 		//in case no-one's done this for us, get the ROI the traditional way
-		if(input.colonyRoi==null && !IrisFrontend.settings.userDefinedRoi){
+		if(input.colonyRoi==null && !input.settings.userDefinedRoi){
 			return(processTile(input));
-		} else if(IrisFrontend.settings.userDefinedRoi){
+		} else if(input.settings.userDefinedRoi){
 			input.colonyRoi=input.tileImage.getRoi();
 		}
 
@@ -227,9 +212,8 @@ public class OpacityTileReader {
 		//0. create the output object
 		OpacityTileReaderOutput output = new OpacityTileReaderOutput();
 
-		//get a copy of this tile, before it gets thresholded
-		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
-		grayscaleTileCopy.setRoi(input.colonyRoi);
+		//get a view of this tile
+		TileView grayscaleTile = getDuplicatedArea(getGrayscaleTile(input), input.tileImage.getRoi());
 		//
 		//--------------------------------------------------
 		//
@@ -260,10 +244,10 @@ public class OpacityTileReader {
 		//			output.opacity = getBiggestParticleOpacity(grayscaleTileCopy, input.colonyRoi);
 		//		}
 
-		output.opacity = totalColonyBrightnessMinusBackground(grayscaleTileCopy, input.colonyRoi);
+		output.opacity = totalColonyBrightnessMinusBackground(grayscaleTile, input.colonyRoi);
 
 
-		output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTileCopy, input.colonyRoi);
+		output.max10percentOpacity = getLargestTenPercentOpacityMedian(grayscaleTile, input.colonyRoi, input.colonyRoi);
 
 
 		output.colonyROI = input.colonyRoi;
@@ -275,7 +259,6 @@ public class OpacityTileReader {
 		}
 
 		input.cleanup(); //clear the tile image here, since we don't need it anymore
-		grayscaleTileCopy.flush();
 
 		return(output);
 
@@ -284,23 +267,49 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param grayscaleTileCopy
+	 * Returns a view of the tile the input is about, before it gets thresholded.
+	 * Inputs that weren't cut out of a plate have no view, so we get a copy of their tile instead.
+	 * @param input
+	 * @return
+	 */
+	private static TileView getGrayscaleTile(OpacityTileReaderInput input){
+		if(input.tileView!=null)
+			return(input.tileView);
+
+		return(new TileView(input.tileImage.duplicate()));
+	}
+
+
+	/**
+	 * Returns the part of the tile that ImagePlus.duplicate would copy, if the tile picture had this roi set:
+	 * that's the bounding rectangle of the roi, or the whole tile if it has no (area) roi
+	 * @param tile
+	 * @param tileRoi
+	 * @return
+	 */
+	private static TileView getDuplicatedArea(TileView tile, Roi tileRoi){
+		if(tileRoi==null || !tileRoi.isArea())
+			return(tile);
+
+		return(tile.getSubView(tileRoi.getBounds()));
+	}
+
+
+
+	/**
+	 * @param grayscaleTile
 	 * @param colonyRoi
 	 * @return
 	 */
 	private static int totalColonyBrightnessMinusBackground(
-			ImagePlus tileImage, Roi colonyROI) {
+			TileView grayscaleTile, Roi colonyROI) {
 
 		try{
-			FloatProcessor backgroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-			backgroundPixels.setRoi(colonyROI);
-			backgroundPixels.setValue(0);
-			backgroundPixels.setBackgroundValue(0);
-
-			backgroundPixels.fill(backgroundPixels.getMask());
-			//		(new ImagePlus("keep-background mask",backgroundPixels)).show();
+			int backgroundMedian = getBackgroundMedian(getBackgroundHistogram(grayscaleTile, colonyROI));
 
-			FloatProcessor foregroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
+			//only the foreground gets painted, so it needs its own copy of the tile
+			ImagePlus foreground = grayscaleTile.toScratchImage();
+			ImageProcessor foregroundPixels = foreground.getProcessor();
 			foregroundPixels.setRoi(colonyROI);
 			foregroundPixels.setValue(0);
 			foregroundPixels.setBackgroundValue(0);
@@ -308,13 +317,10 @@ public class OpacityTileReader {
 			foregroundPixels.fillOutside(colonyROI);
 			//		(new ImagePlus("keep-foreground mask",foregroundPixels)).show();
 
+			foregroundPixels.resetRoi();
+			int sumColonyBrightness = sumPixelOverBackgroundBrightness(foregroundPixels.getHistogram(), backgroundMedian);
 
-
-
-			int backgroundMedian = getBackgroundMedian(backgroundPixels);
-
-			int sumColonyBrightness = sumPixelOverBackgroundBrightness(foregroundPixels, backgroundMedian);
-
+			ScratchBuffers.release(foreground);
 
 			return(sumColonyBrightness);
 		} catch (Exception e){
@@ -324,92 +330,108 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param ip
+	 * Sums the brightness of all pixels over the background, leaving out the black pixels (outside the colony)
+	 * and the white (saturated) ones
+	 * @param histogram
 	 * @return
 	 */
-	private static int sumPixelOverBackgroundBrightness(FloatProcessor ip, int backgroundMedian) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
+	private static int sumPixelOverBackgroundBrightness(int[] histogram, int backgroundMedian) {
 
 		int sum = 0;
-		for(Float thisPixel : nonZeroPixels){
-			sum += Math.round(thisPixel)-backgroundMedian;
+		for(int pixelValue=1; pixelValue<255; pixelValue++){
+			sum += histogram[pixelValue]*(pixelValue-backgroundMedian);
 		}
 
-
 		return(sum);
 	}
 
 
 
 	/**
-	 * @param ip
+	 * Returns the histogram of the pixels of the tile that are not in the colony.
+	 * These are all the pixels outside the bounding rectangle of the colony Roi, plus the ones inside it that are not in the Roi's mask.
+	 * If the colony Roi has no mask (e.g. rectangles), the whole bounding rectangle is left out.
+	 * @param grayscaleTile
+	 * @param colonyRoi
 	 * @return
 	 */
-	private static int getBackgroundMedian(FloatProcessor ip) {
+	private static int[] getBackgroundHistogram(TileView grayscaleTile, Roi colonyRoi) {
 
-		float[] pixels = (float[]) ip.getPixels();
+		if(colonyRoi==null)
+			return(new int[256]); //the whole tile is taken as the colony
 
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
+		int[] histogram = grayscaleTile.getHistogram();
 
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
+		Rectangle bounds = colonyRoi.getBounds();
+		ImageProcessor mask = colonyRoi.getMask();
+		if(mask!=null && (mask.getWidth()!=bounds.width || mask.getHeight()!=bounds.height))
+			mask = null;
+
+		//only the part of the Roi that is in the tile
+		Rectangle colonyArea = bounds.intersection(new Rectangle(0, 0, grayscaleTile.width, grayscaleTile.height));
 
+		for(int y=colonyArea.y; y<colonyArea.y+colonyArea.height; y++){
+			for(int x=colonyArea.x; x<colonyArea.x+colonyArea.width; x++){
+				if(mask==null || mask.get(x-bounds.x, y-bounds.y)!=0)
+					histogram[grayscaleTile.getPixel(x, y)]--;
+			}
+		}
 
-		return(Math.round(getMedian(nonZeroPixels.toArray(new Float[nonZeroPixels.size()]))));
+		return(histogram);
 	}
 
+
 	/**
-	 * just gets the median, nothing to see here
-	 * @param inputArray
+	 * Returns the median of the pixels in the histogram, leaving out the black (0) and white (255) pixels
+	 * @param histogram
 	 * @return
 	 */
-	private static float getMedian(Float[] inputArray){
+	private static int getBackgroundMedian(int[] histogram) {
 
-		if(inputArray.length==0)
+		int numberOfPixels = 0;
+		for(int pixelValue=1; pixelValue<255; pixelValue++){
+			numberOfPixels += histogram[pixelValue];
+		}
+
+		if(numberOfPixels==0)
 			return(0);
 
-		Arrays.sort(inputArray);
 		double median;
-		if (inputArray.length % 2 == 0)
-			median = ((double)inputArray[inputArray.length/2] + (double)inputArray[inputArray.length/2 - 1])/2;
+		if (numberOfPixels % 2 == 0)
+			median = ((double)getNthPixelValue(histogram, numberOfPixels/2) + (double)getNthPixelValue(histogram, numberOfPixels/2 - 1))/2;
 		else
-			median = (double) inputArray[inputArray.length/2];
+			median = (double) getNthPixelValue(histogram, numberOfPixels/2);
+
+		return(Math.round((float)median));
+	}
 
-		return((float)median);
+
+	/**
+	 * Returns the value of the n-th pixel (counting from 0), if the pixels between 1 and 254 were sorted
+	 * @param histogram
+	 * @param n
+	 * @return
+	 */
+	private static int getNthPixelValue(int[] histogram, int n){
+		int pixelsSoFar = 0;
+		for(int pixelValue=1; pixelValue<255; pixelValue++){
+			pixelsSoFar += histogram[pixelValue];
+			if(pixelsSoFar>n)
+				return(pixelValue);
+		}
+		return(254);
 	}
 
 
 
 	/**
-	 * Returns the center of mass of the biggest particle in the results table
+	 * Returns the center of mass of the biggest particle
 	 */
-	private static Point getBiggestParticleCenterOfMass(ResultsTable resultsTable, int indexOfBiggestParticle) {
+	private static Point getBiggestParticleCenterOfMass(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
 
-		//get the coordinates of all the particles the particle analyzer has found		
-		float X_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("XM"));//get the X of the center of mass of all the particles
-		float Y_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("YM"));//get the Y of the center of mass of all the particles
+		//get the coordinates of all the particles the labeller has found		
+		float X_center_of_mass[] = particles.getCentersOfMassX();//get the X of the center of mass of all the particles
+		float Y_center_of_mass[] = particles.getCentersOfMassY();//get the Y of the center of mass of all the particles
 
 
 		//get the index of the biggest particle (in area in pixels)
@@ -423,17 +445,22 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param grayscaleTileCopy
+	 * @param grayscaleTile
+	 * @param tileRoi
+	 * @param tileHistogram the histogram of the whole grayscaleTile
 	 * @param colonyRoi
 	 * @param i
 	 * @return
 	 */
-	private static int getCenterAreaOpacity(ImagePlus grayscaleTile, Point colonyCenter, int diameter) {
+	private static int getCenterAreaOpacity(TileView grayscaleTile, Roi tileRoi, TileHistogram tileHistogram, Point colonyCenter, int diameter) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+		TileView centerArea = getDuplicatedArea(grayscaleTile, tileRoi);
 
 		//1. find the background level, which is the threshold set by Otsu
-		int background_level = getThresholdOtsu(grayscaleTileCopy);
+		//unless there's a Roi to crop to, this is the threshold the tile was thresholded with
+		if(centerArea!=grayscaleTile)
+			tileHistogram = new TileHistogram(centerArea.getHistogram());
+		int background_level = tileHistogram.getThreshold(Method.Otsu);
 
 
 		//3. get the colony center of mass, this will be the center of the circle
@@ -444,10 +471,12 @@ public class OpacityTileReader {
 				diameter, diameter);
 
 		//4. set the center Roi and paint eveything outside it as black
+		ImagePlus grayscaleTileCopy = centerArea.toScratchImage();
 		grayscaleTileCopy.setRoi(centerRoi);
 		try {
 			grayscaleTileCopy.getProcessor().fillOutside(centerRoi);
 		} catch (Exception e) {
+			ScratchBuffers.release(grayscaleTileCopy);
 			return(0);
 		}
 
@@ -472,29 +501,25 @@ public class OpacityTileReader {
 			sumOfBrightness += Math.max(0, pixelValue-background_level);
 		}
 
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 
 		return (sumOfBrightness);
 	}
 
 
 	/**
-	 * This method finds the Otsu threshold of the picture.
-	 * Then, it sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
-	 * The background level is determined using the Otsu algorithm and subtracted from each pixel before the sum is calculated.
-	 * @param grayscaleTileCopy
+	 * This method finds the background level (the median of all the pixels of the tile).
+	 * Then, it takes the brightest 10% of the pixels that are inside the colony and returns
+	 * their mean brightness over the background level.
+	 * @param grayscaleTile
+	 * @param tileRoi
+	 * @param colonyRoi
 	 * @return
 	 */
-	private static double getLargestTenPercentOpacityMedian(ImagePlus grayscaleTile, Roi colonyRoi) {
-
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+	private static double getLargestTenPercentOpacityMedian(TileView grayscaleTile, Roi tileRoi, Roi colonyRoi) {
 
 		//1. find the background level
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(grayscaleTile.getHistogram());
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
@@ -502,64 +527,54 @@ public class OpacityTileReader {
 		}
 
 		//3. set the Roi and paint eveything outside it as black
+		ImagePlus grayscaleTileCopy = getDuplicatedArea(grayscaleTile, tileRoi).toScratchImage();
 		grayscaleTileCopy.setRoi(colonyRoi);
 		try {
 			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
 		} catch (Exception e) {
+			ScratchBuffers.release(grayscaleTileCopy);
 			return(0);
 		}
 
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		//sort the bytes according to opacity
-		Arrays.sort(imageBytes);
-		ArrayList<Integer> pixelIntValues = new ArrayList<Integer>();
+		//4. get the pixel values of the image, sorted according to opacity
+		ImageProcessor processor = grayscaleTileCopy.getProcessor();
+		processor.resetRoi();
+		int[] histogram = processor.getHistogram();
 
-		for(int i=0;i<size;i++){
-			int pixelValue = imageBytes[i]&0xFF;
-			pixelIntValues.add(pixelValue);
-		}
+		int size = processor.getWidth()*processor.getHeight();
 
-		Collections.sort(pixelIntValues, Collections.reverseOrder());
 		//get the mean of the top 10%
 		int sumOfBrightness = 0;
 		int size_subset = (int)Math.ceil((double)size/(double)10);
-		for(int i=0;i<size_subset;i++){
-			sumOfBrightness += Math.max(0, pixelIntValues.get(i)-background_level);
+		int pixelsLeft = size_subset;
+		for(int pixelValue=255; pixelValue>=0 && pixelsLeft>0; pixelValue--){
+			int pixelsTaken = Math.min(histogram[pixelValue], pixelsLeft);
+			sumOfBrightness += pixelsTaken * Math.max(0, pixelValue-background_level);
+			pixelsLeft -= pixelsTaken;
 		}
 		//int top10percentMean = (int) Math.round((double)sumOfBrightness/(double)size_subset);
 		double top10percentMean = (double)sumOfBrightness/(double)size_subset;
 
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 		return(top10percentMean);
 	}
 
 
 
 	/**
-	 * This method finds the Otsu threshold of the picture.
+	 * This method finds the background level, which is the median of the pixels not in the colony.
 	 * Then, it sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
-	 * The background level is determined using the Otsu algorithm and subtracted from each pixel before the sum is calculated.
-	 * @param grayscaleTileCopy
+	 * The background level is subtracted from each pixel before the sum is calculated.
+	 * @param grayscaleTile
+	 * @param tileRoi
+	 * @param colonyRoi
 	 * @return
 	 * @deprecated, see sumPixelOverBackgroundBrightness
 	 */
-	private static int getBiggestParticleOpacity(ImagePlus grayscaleTile, Roi colonyRoi) {
-
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+	private static int getBiggestParticleOpacity(TileView grayscaleTile, Roi tileRoi, Roi colonyRoi) {
 
 		//1. find the background level, which is the median of the pixels not in the ROI
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-
-		backgroundPixels.fill(backgroundPixels.getMask());
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(getBackgroundHistogram(grayscaleTile, colonyRoi));
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
@@ -567,10 +582,12 @@ public class OpacityTileReader {
 		}
 
 		//3. set the Roi and paint eveything outside it as black
+		ImagePlus grayscaleTileCopy = getDuplicatedArea(grayscaleTile, tileRoi).toScratchImage();
 		grayscaleTileCopy.setRoi(colonyRoi);
 		try {
 			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
 		} catch (Exception e) {
+			ScratchBuffers.release(grayscaleTileCopy);
 			return(0);
 		}
 
@@ -595,7 +612,7 @@ public class OpacityTileReader {
 			sumOfBrightness += Math.max(0, pixelValue-background_level);
 		}
 
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 
 		return (sumOfBrightness);
 	}
@@ -606,22 +623,18 @@ public class OpacityTileReader {
 	/**
 	 * @deprecated, see sumPixelOverBackgroundBrightness
 	 * 
-	 * This method finds the Otsu threshold of the picture.
+	 * This method finds the background level (the median of all the pixels of the tile).
 	 * Then, it sums the brightness (0 to 255) value of each pixel in the image, as long as it's inside the colony.
-	 * The background level is determined using the Otsu algorithm and subtracted from each pixel before the sum is calculated.
-	 * @param grayscaleTileCopy
+	 * The background level is subtracted from each pixel before the sum is calculated.
+	 * @param grayscaleTile
+	 * @param tileRoi
+	 * @param colonyRoi
 	 * @return
 	 */
-	private static int getBiggestParticleOpacity_darkColonies(ImagePlus grayscaleTile, Roi colonyRoi) {
-
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+	private static int getBiggestParticleOpacity_darkColonies(TileView grayscaleTile, Roi tileRoi, Roi colonyRoi) {
 
 		//1. find the background level
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(grayscaleTile.getHistogram());
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
@@ -629,10 +642,12 @@ public class OpacityTileReader {
 		}
 
 		//3. set the Roi and paint eveything outside it as black
+		ImagePlus grayscaleTileCopy = getDuplicatedArea(grayscaleTile, tileRoi).toScratchImage();
 		grayscaleTileCopy.setRoi(colonyRoi);
 		try {
 			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
 		} catch (Exception e) {
+			ScratchBuffers.release(grayscaleTileCopy);
 			return(0);
 		}
 
@@ -660,7 +675,7 @@ public class OpacityTileReader {
 			sumOfBrightness += pixelValue-background_level;
 		}
 
-		grayscaleTileCopy.flush();
+		ScratchBuffers.release(grayscaleTileCopy);
 
 
 		return (sumOfBrightness);
@@ -669,27 +684,6 @@ public class OpacityTileReader {
 
 
 
-	/**
-	 * This method will return the threshold found by the Otsu method and do nothing else
-	 * @param grayscale_image
-	 * @return
-	 */
-	private static int getThresholdOtsu(ImagePlus grayscale_image){
-
-		//get all the objects required: calibration, imageProcessor and histogram
-		Calibration calibration = new Calibration(grayscale_image);		
-		ImageProcessor imageProcessor = grayscale_image.getProcessor();
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		//use that histogram to find a threshold
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(Method.Otsu, histogram);
-
-		return(threshold);
-	}
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using the image's histogram. This version will also return the threshold found.
@@ -764,7 +758,7 @@ public class OpacityTileReader {
 
 
 	/**
-	 * This function uses the results table produced by the particle analyzer to
+	 * This function uses the particles found by the labeller to
 	 * find out whether this tile has a colony in it or it's empty.
 	 * This function uses 3 sorts of filters, trying to pick up empty spots:
 	 * 1. how many particles were found
@@ -772,17 +766,13 @@ public class OpacityTileReader {
 	 * 3. the coordinates of the bounding rectangle of the biggest particle
 	 * Returns true if the tile was empty, false if there is a colony in it.
 	 */
-	private static boolean isTileEmpty(ResultsTable resultsTable, ImagePlus tile) {
-
-		//get the columns that we're interested in out of the results table
-		int numberOfParticles = resultsTable.getCounter();
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));//get the areas of all the particles the particle analyzer has found
-		float X_bounding_rectangles[] = resultsTable.getColumn(resultsTable.getColumnIndex("BX"));//get the X of the bounding rectangles of all the particles
-		float Y_bounding_rectangles[] = resultsTable.getColumn(resultsTable.getColumnIndex("BY"));//get the Y of the bounding rectangles of all the particles
-		float X_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("XM"));//get the X of the center of mass of all the particles
-		float Y_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("YM"));//get the Y of the center of mass of all the particles
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));//get the circularities of all the particles
-		float aspect_ratios[] = resultsTable.getColumn(resultsTable.getColumnIndex("AR"));//get the aspect ratios of all the particles
+	private static boolean isTileEmpty(ConnectedComponentLabeller particles, ImagePlus tile) {
+
+		//get the measurements that we're interested in out of the labeller
+		int numberOfParticles = particles.getCount();
+		int X_bounding_rectangles[] = particles.getBoundsX();//get the X of the bounding rectangles of all the particles
+		int Y_bounding_rectangles[] = particles.getBoundsY();//get the Y of the bounding rectangles of all the particles
+		float circularities[] = particles.getCircularities();//get the circularities of all the particles
 
 		/**
 		 * Penalty is a number given to this tile if some of it's attributes (e.g. circularity of biggest particle)
@@ -813,19 +803,20 @@ public class OpacityTileReader {
 
 		//for the following, we only check the largest particle
 		//which is the one who would be reported either way if we decide that this spot is not empty
-		int indexOfMax = getIndexOfMaximumElement(areas);
+		int indexOfMax = particles.getIndexOfBiggestParticle();
+		float aspect_ratio = particles.getBiggestParticleAspectRatio();
 
 
 		//check for unusually high aspect ratio
 		//Normal colonies would have an aspect ratio around 1, but contaminations have much higher aspect ratios (around 4)
-		if(aspect_ratios[indexOfMax]>2){
+		if(aspect_ratio>2){
 			return(true); 
 			//the tile is empty, the particle was just a contamination
 			//TODO: notify the user that there has been a contamination in the plate in this spot
 		}
 
 		//borderline situation
-		if(aspect_ratios[indexOfMax]>1.2){
+		if(aspect_ratio>1.2){
 			penalty++;
 		}
 
@@ -883,37 +874,16 @@ public class OpacityTileReader {
 	}
 
 
-	private static int getIndexOfBiggestParticle(ResultsTable resultsTable){
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = getIndexOfMaximumElement(areas);
-
-		return(indexOfMax);
-	}
-
-
 	/**
-	 * Returns the area of the biggest particle in the results table
+	 * Returns the area of the biggest particle
 	 */
-	private static int getBiggestParticleArea(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-
-		int largestParticleArea = Math.round(areas[indexOfBiggestParticle]);
-
-		return(largestParticleArea);
+	private static int getBiggestParticleArea(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
+		return(particles.getAreas()[indexOfBiggestParticle]);
 	}
 
 
 	/**
-	 * Returns the area of the biggest particle in the results table.
+	 * Returns the area of the biggest particle.
 	 * This function compensates for a mildly stringent thresholding algorithm (such as Otsu),
 	 * in which it is known that the outer pixels of the colony are missing.
 	 * By adding back pixels that equal the periphery in number, we compensate for those missing pixels.
@@ -921,18 +891,11 @@ public class OpacityTileReader {
 	 * shape (such as colonies that form a biofilm), this could add much more than just an outer layer of pixels,
 	 * thus overcorrecting the stringency of the thresholding algorithm. 
 	 */
-	private static int getBiggestParticleAreaPlusPerimeter(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float perimeters[] = resultsTable.getColumn(resultsTable.getColumnIndex("Perim."));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
+	private static int getBiggestParticleAreaPlusPerimeter(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
 
 		//get the area and perimeter of the biggest particle
-		int largestParticleArea = Math.round(areas[indexOfMax]);
-		int largestParticlePerimeter = Math.round(perimeters[indexOfMax]);
+		int largestParticleArea = particles.getAreas()[indexOfBiggestParticle];
+		int largestParticlePerimeter = Math.round(particles.getPerimeters()[indexOfBiggestParticle]);
 
 		return(largestParticleArea+largestParticlePerimeter);
 	}
@@ -940,38 +903,10 @@ public class OpacityTileReader {
 
 
 	/**
-	 * Returns the circularity of the biggest particle in the results table.
+	 * Returns the circularity of the biggest particle.
 	 */
-	private static float getBiggestParticleCircularity(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-		return(circularities[indexOfMax]);
-	}
-
-
-
-	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the largest element
-	 */
-	private static int getIndexOfMaximumElement(float[] areas) {
-		int index = -1;
-		float max = -Float.MAX_VALUE;
-
-		for (int i = 0; i < areas.length; i++) {
-			if(areas[i]>max){
-				max = areas[i];
-				index = i;
-			}
-		}
-
-		return(index);
+	private static float getBiggestParticleCircularity(ConnectedComponentLabeller particles, int indexOfBiggestParticle) {
+		return(particles.getCircularities()[indexOfBiggestParticle]);
 	}
 
 }
@@ -48,7 +48,7 @@ class ColonyPickerFrontendBigMem {
 			if(args.length>=2){
 				//args[0] is the profile name (like in Iris)
 				IrisFrontend.selectedProfile = args[0];
-				IrisFrontend.singleColonyRun=true;
+				IrisFrontend.setSingleColonyRun();
 				colonyPicker.invokeIris = true;
 
 				colonyPicker.run(args[1]); //args[1] is the folder/filename to open
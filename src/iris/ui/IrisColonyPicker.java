@@ -35,6 +35,8 @@ import javax.swing.text.Document;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 
+import iris.utils.AsyncLog;
+
 /**
  * @author George Kritikos
  *
@@ -303,11 +305,11 @@ class IrisColonyPicker extends JFrame implements ActionListener, PropertyChangeL
 	}
 
 	private void updateTextPaneAndLog_err(final String text) {
+		//first, append this entry to the log file, here in the thread that wrote it, so that the log knows which plate it's about
+		AsyncLog.logErrorOutput(text);
+
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
-				//first, append this entry to the log file
-				IrisFrontend.writeToLog(text);
-
 				//then update the text pane
 				Document doc = textPane.getDocument();
 
@@ -9,6 +9,9 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.HashSet;
 
+import iris.utils.AsyncLog;
+import iris.utils.DiagnosticImageWriter;
+
 /**
  * 
  * @author George Kritikos
@@ -51,6 +54,7 @@ class IrisConsole {
 		System.out.println("\tSingle colony mode:\t"+IrisFrontend.singleColonyRun);
 		System.out.println("\tnumber of rows:\t"+IrisFrontend.settings.numberOfRowsOfColonies);
 		System.out.println("\tnumber of columns:\t"+IrisFrontend.settings.numberOfColumnsOfColonies);
+		System.out.println("\tworker threads:\t"+IrisFrontend.numberOfThreads);
 		
 		
 		
@@ -75,6 +79,7 @@ class IrisConsole {
 			if(filter.accept(null, folderLocation)){
 				try {
 					ProcessFolderWorker.processSingleFile(fileOrFolder);
+					DiagnosticImageWriter.waitForPendingWrites();
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
@@ -133,8 +138,8 @@ class IrisConsole {
 
 
 	private static void updateLog_err(final String text) {
-		//first, append this entry to the log file
-		IrisFrontend.writeToLog(text);
+		//first, append this entry to the log file (a line at a time, with the plate this thread is working on)
+		AsyncLog.logErrorOutput(text);
 		//also write it to the standard output
 		System.out.println(text);
 
@@ -3,12 +3,10 @@
  */
 package iris.ui;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -16,6 +14,9 @@ import java.util.concurrent.ExecutorService;
 
 import iris.settings.BasicSettings;
 import iris.settings.UserSettings;
+import iris.utils.AsyncLog;
+import iris.utils.DiagnosticImageWriter;
+import iris.utils.ResultsStore;
 
 /**
  * This class acts as the decision point between console and GUI versions
@@ -42,11 +43,19 @@ public class IrisFrontend {
 
 	/**
 	 * these are added specially for the multithreading case
+	 * multiple plates are processed at once only if the user asks for more than one thread
+	 * on the command line (e.g. "threads=4" or "threads=auto")
 	 */
 	public static boolean multiThreaded = false;
 	static ExecutorService executorService;
 	public static List<Callable<Object>> todoThread;
-	public static int numberOfThreads = 4;
+	public static int numberOfThreads = 1;
+
+	/**
+	 * if true, the stage timings of folder runs are also written in the .iris files, not just the log (see StageTimer).
+	 * Off by default, since the timings change from run to run; turned on with the "stageTimesInOutput" argument
+	 */
+	public static boolean stageTimesInOutput = false;
 
 
 	/**
@@ -66,13 +75,6 @@ public class IrisFrontend {
 	static String selectedProfile = IrisFrontend.profileCollection[0];
 
 
-	/**
-	 * This is the name of the log file to be written. 
-	 * Iris opens it for appending on every invocation of the software, writing a header with the time.
-	 * It closes it after a run is done.
-	 */
-	private static BufferedWriter logFile = null;
-
 	/**
 	 * This string holds the software version that is defined here once to be used whenever it needs to be displayed.
 	 */
@@ -103,6 +105,16 @@ public class IrisFrontend {
 		//apply user settings
 		UserSettings.applyUserSettings(userSettings);
 
+		//strip out the number of threads argument, if given, so that it doesn't interfere with the rest of the arguments
+		args = parseNumberOfThreads(args);
+
+		//same for the settings of the diagnostic pictures
+		args = parseDiagnosticImageOptions(args);
+
+		//and for the results store and the stage timings
+		args = parseResultsStoreOption(args);
+		args = parseStageTimesOption(args);
+
 		int argumentOffset = 0;
 		//first check if we need to turn on debug mode
 		if(args.length>0 && args[args.length-1].equalsIgnoreCase("DEBUG")){
@@ -112,7 +124,7 @@ public class IrisFrontend {
 
 		for(int i=1; i<args.length; i++){
 			if(args[i].equalsIgnoreCase("singleColony")){
-				IrisFrontend.singleColonyRun=true;
+				IrisFrontend.setSingleColonyRun();
 			}
 		}
 		
@@ -139,45 +151,190 @@ public class IrisFrontend {
 	}
 
 
+	/**
+	 * Turns on single colony mode, where every picture is that of a single colony (or tile).
+	 * The settings every plate copies are set to a single tile, so this should only be called 
+	 * before any picture is processed.
+	 */
+	public static void setSingleColonyRun(){
+		singleColonyRun = true;
+		settings.singleColonyRun = true;
+		settings.numberOfRowsOfColonies = 1;
+		settings.numberOfColumnsOfColonies = 1;
+	}
+
+
+	/**
+	 * This function looks for an argument of the form "threads=N" (or "threads=auto"),
+	 * sets the number of plates that will be processed in parallel accordingly,
+	 * and returns the rest of the arguments in their original order
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseNumberOfThreads(String[] args){
+
+		List<String> remainingArguments = new ArrayList<String>();
+
+		for (String argument : args) {
+			if(!argument.toLowerCase().startsWith("threads=")){
+				remainingArguments.add(argument);
+				continue;
+			}
+
+			String value = argument.substring("threads=".length());
+			try{
+				if(value.equalsIgnoreCase("auto")){
+					numberOfThreads = Runtime.getRuntime().availableProcessors();
+				}
+				else{
+					numberOfThreads = Integer.parseInt(value);
+				}
+			} catch(NumberFormatException e){
+				System.err.println("Ignoring invalid number of threads: " + value);
+				numberOfThreads = 1;
+			}
+
+			numberOfThreads = Math.max(1, numberOfThreads);
+			multiThreaded = numberOfThreads>1;
+		}
+
+		return(remainingArguments.toArray(new String[remainingArguments.size()]));
+	}
+
+
+	/**
+	 * This function looks for the arguments that set how the diagnostic pictures are saved (see DiagnosticImageWriter):
+	 * "jpegQuality=N" (0-100), "gridScale=F" (e.g. 0.5 saves the grid pictures at half size),
+	 * "colonyAtlas" (the colony pictures of each plate are packed in a single picture)
+	 * and "vectorOutlines" (the colony outlines are saved in an SVG file next to the grid picture, instead of painted on it).
+	 * It returns the rest of the arguments in their original order
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseDiagnosticImageOptions(String[] args){
+
+		List<String> remainingArguments = new ArrayList<String>();
+
+		for (String argument : args) {
+			String lowerCaseArgument = argument.toLowerCase();
+
+			if(lowerCaseArgument.startsWith("jpegquality=")){
+				String value = argument.substring("jpegQuality=".length());
+				try{
+					DiagnosticImageWriter.jpegQuality = Math.min(100, Math.max(0, Integer.parseInt(value)));
+				} catch(NumberFormatException e){
+					System.err.println("Ignoring invalid JPEG quality: " + value);
+				}
+			}
+			else if(lowerCaseArgument.startsWith("gridscale=")){
+				String value = argument.substring("gridScale=".length());
+				try{
+					double scale = Double.parseDouble(value);
+					if(scale>0 && scale<=1)
+						DiagnosticImageWriter.pictureScale = scale;
+					else
+						System.err.println("Ignoring invalid grid picture scale: " + value);
+				} catch(NumberFormatException e){
+					System.err.println("Ignoring invalid grid picture scale: " + value);
+				}
+			}
+			else if(lowerCaseArgument.equals("colonyatlas")){
+				DiagnosticImageWriter.packColonyPictures = true;
+			}
+			else if(lowerCaseArgument.equals("vectoroutlines")){
+				DiagnosticImageWriter.vectorOutlines = true;
+			}
+			else{
+				remainingArguments.add(argument);
+			}
+		}
+
+		return(remainingArguments.toArray(new String[remainingArguments.size()]));
+	}
+
+
+	/**
+	 * This function looks for the argument "resultsStore", which makes the folder runs keep the results of all the plates
+	 * in a single binary file as well (see ResultsStore). It returns the rest of the arguments in their original order
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseResultsStoreOption(String[] args){
+
+		List<String> remainingArguments = new ArrayList<String>();
+
+		for (String argument : args) {
+			if(argument.equalsIgnoreCase("resultsStore"))
+				ResultsStore.enabled = true;
+			else
+				remainingArguments.add(argument);
+		}
+
+		return(remainingArguments.toArray(new String[remainingArguments.size()]));
+	}
+
+
+	/**
+	 * This function looks for the argument "stageTimesInOutput", which makes the folder runs write the stage timings
+	 * in the .iris files as well as in the log (see StageTimer). It returns the rest of the arguments in their original order
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseStageTimesOption(String[] args){
+
+		List<String> remainingArguments = new ArrayList<String>();
+
+		for (String argument : args) {
+			if(argument.equalsIgnoreCase("stageTimesInOutput"))
+				stageTimesInOutput = true;
+			else
+				remainingArguments.add(argument);
+		}
+
+		return(remainingArguments.toArray(new String[remainingArguments.size()]));
+	}
+
+
 	/**
 	 * This function will create a unique log filename and open it for writing
 	 */
 	static void openLog(String path){		
 		String uniqueLogFilename = path + File.separator + getUniqueLogFilename();
-		try {
-			logFile = new BufferedWriter(new FileWriter(uniqueLogFilename));
-		} catch (IOException e) {
+		if(!AsyncLog.open(uniqueLogFilename))
 			System.err.println("Could not open log file");
-			logFile = null;
-		}
 	}
 
 	/**
-	 * Does what it says in the box
+	 * Does what it says in the box.
+	 * The text is written in the background (see AsyncLog), this never waits for the disk.
 	 */
 	public static void writeToLog(String text){
-		try {
-			if(logFile!=null){
-				logFile.write(text);
-				logFile.flush();//write immediately
-			}
-		} catch (IOException e) {
-			//System.err.println("Error writing log file");
-			//fail silently, because the standard error is redirected to this function
-		}
+		AsyncLog.write(text);
 	}	
 
 	/**
-	 * Does what it says in the box
+	 * Writes everything still waiting to be written, and closes the log file
 	 */
 	static void closeLog(){
+		AsyncLog.close();
+	}
 
-		try {
-			if(logFile!=null) 
-				logFile.close();
-		} catch (IOException e) {
-			System.err.println("Error writing log file");
-		}
+
+
+	/**
+	 * This function will create the results store of a run (see ResultsStore), named like the log file
+	 */
+	static void openResultsStore(String path){
+		String uniqueStoreFilename = path + File.separator + "iris_v"+IrisFrontend.IrisVersion+"_"+getDateTime()+".results";
+		if(!ResultsStore.open(uniqueStoreFilename))
+			System.err.println("Could not open results store");
+	}
+
+	/**
+	 * Writes the plate index and closes the results store
+	 */
+	static void closeResultsStore(){
+		ResultsStore.close();
 	}
 
 
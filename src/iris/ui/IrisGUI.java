@@ -34,6 +34,7 @@ import javax.swing.text.StyleConstants;
 import org.apache.commons.lang3.SystemUtils;
 
 import iris.settings.UserSettings;
+import iris.utils.AsyncLog;
 
 /**
  * @author George Kritikos
@@ -220,11 +221,11 @@ class IrisGUI extends JFrame implements ActionListener, PropertyChangeListener {
 	}
 
 	private void updateTextPaneAndLog_err(final String text) {
+		//first, append this entry to the log file, here in the thread that wrote it, so that the log knows which plate it's about
+		AsyncLog.logErrorOutput(text);
+
 		SwingUtilities.invokeLater(new Runnable() {
 			public void run() {
-				//first, append this entry to the log file
-				IrisFrontend.writeToLog(text);
-
 				//then update the text pane
 				Document doc = textPane.getDocument();
 
@@ -6,14 +6,19 @@ package iris.ui;
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.SwingWorker;
 
+import iris.pipeline.PlatePipeline;
+import iris.pipeline.StageTimer;
 import iris.profiles.BasicProfile;
 import iris.profiles.BasicProfileInverted;
 import iris.profiles.BasicProfileNoEmptyCheck;
@@ -37,6 +42,9 @@ import iris.profiles.MorphologyProfileStm96;
 import iris.profiles.OpacityProfile;
 import iris.profiles.OpacityProfile2;
 import iris.profiles.XgalProfile;
+import iris.utils.AsyncLog;
+import iris.utils.DiagnosticImageWriter;
+import iris.utils.ResultsStore;
 
 /**
  * @author George Kritikos
@@ -48,6 +56,16 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 	//public IrisGUI parentJFrame;
 	File directory;
 
+	/**
+	 * how many files have been processed so far in this run, updated by all worker threads
+	 */
+	private final AtomicInteger filesDone = new AtomicInteger(0);
+
+	/**
+	 * when did this run start, used to report the throughput in plates per minute
+	 */
+	private long startTime = System.nanoTime();
+
 
 
 
@@ -82,32 +100,41 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 		//get a list of the files in the directory, keeping only image files
 		File[] filesInDirectory = directory.listFiles(new PicturesFilenameFilter());
 
-		int i=0;
-		int max = filesInDirectory.length;
-
-		for (File file : filesInDirectory) {
+		//keep the results of all the plates in a single file too, if asked to
+		if(ResultsStore.enabled)
+			IrisFrontend.openResultsStore(directory.getAbsolutePath());
 
-			if(!file.exists())
-				continue;
+		filesDone.set(0);
+		startTime = System.nanoTime();
 
-			if(file.isDirectory())
-				continue;
+		//time every stage of every picture, see StageTimer
+		StageTimer stageTimer = new StageTimer(IrisFrontend.stageTimesInOutput);
+		PlatePipeline.addStageListener(stageTimer);
+		IrisFrontend.writeToLog(StageTimer.HEADER + "\n");
 
-			try{
-				processSingleFile(file);
+		try{
+			//every plate keeps it's own copy of the settings, so single colony runs can be parallel too
+			if(IrisFrontend.multiThreaded && filesInDirectory.length>1){
+				processFilesInParallel(filesInDirectory);
 			}
-			catch(Exception e){
-				System.out.println("Error processing file!\n");
-				e.printStackTrace(System.err);
+			else{
+				for (File file : filesInDirectory) {
+					processFileAndReportProgress(file, filesInDirectory.length);
+				}
 			}
+		}
+		finally{
+			PlatePipeline.removeStageListener(stageTimer);
+			IrisFrontend.closeResultsStore();
+		}
 
-			i++;
-			int progress = Math.min(i*100/max, 100);
-			setProgress(progress);
-			System.out.println(i + " / " + max + "\t(" + progress +"% done)" +  "\n\n");
+		//the grid pictures are saved in the background, the run isn't over until they're all on disk
+		DiagnosticImageWriter.waitForPendingWrites();
 
-			publish("...done! " + "\n\n\n");
-		}
+		//report the throughput of this run
+		IrisFrontend.writeToLog("\n-- Processed " + filesDone.get() + " files using " + getNumberOfWorkers(filesInDirectory.length) 
+				+ " worker thread(s), " + String.format("%.2f", getPlatesPerMinute()) + " plates per minute --\n");
+		IrisFrontend.writeToLog(stageTimer.getSummary());
 
 		//IrisFrontend.closeLog();
 		//close the log file
@@ -119,21 +146,104 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 	}
 
 
-	public static void processSingleFile(File file){
+	/**
+	 * This function will process all the given files using a fixed pool of worker threads.
+	 * Each worker creates it's own profile object (and thus it's own copy of the settings) for every file,
+	 * so the number of plates held in memory at any time is bounded by the number of workers.
+	 * @param filesInDirectory
+	 */
+	private void processFilesInParallel(final File[] filesInDirectory){
 
+		int numberOfWorkers = getNumberOfWorkers(filesInDirectory.length);
+		System.out.println("Processing " + filesInDirectory.length + " files using " + numberOfWorkers + " worker threads\n");
 
-		String filename = file.getAbsolutePath();
+		IrisFrontend.executorService = Executors.newFixedThreadPool(numberOfWorkers);
+		IrisFrontend.todoThread = new ArrayList<Callable<Object>>(filesInDirectory.length);
 
-		//if we set it here, then it will be called both on GUI or console s/w invocation
-		if(IrisFrontend.singleColonyRun==true){
-			IrisFrontend.settings.numberOfRowsOfColonies = 1;
-			IrisFrontend.settings.numberOfColumnsOfColonies = 1;
+		for (final File file : filesInDirectory) {
+			IrisFrontend.todoThread.add(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					processFileAndReportProgress(file, filesInDirectory.length);
+					return(null);
+				}
+			});
+		}
 
-			if(filename.contains("colony_")){
-				IrisFrontend.settings.userDefinedRoi=true;
-			}
+		waitForThreads(IrisFrontend.todoThread);
+	}
+
+
+	/**
+	 * This function processes one file, catching any errors, and then updates the progress bar
+	 * as well as the throughput report (plates per minute).
+	 * It is called by all the worker threads at once, so it should not touch any non-thread-safe state.
+	 * @param file
+	 * @param max
+	 */
+	private void processFileAndReportProgress(File file, int max){
+
+		if(!file.exists())
+			return;
 
+		if(file.isDirectory())
+			return;
+
+		//anything this thread logs from now on is about this file
+		AsyncLog.setContext(file.getName(), IrisFrontend.selectedProfile);
+
+		try{
+			processSingleFile(file);
 		}
+		catch(Exception e){
+			System.out.println("Error processing file!\n");
+			e.printStackTrace(System.err);
+		}
+		finally{
+			AsyncLog.clearContext();
+		}
+
+		int i = filesDone.incrementAndGet();
+		int progress = Math.min(i*100/max, 100);
+		setProgress(progress);
+		System.out.println(i + " / " + max + "\t(" + progress +"% done, " 
+				+ String.format("%.2f", getPlatesPerMinute()) + " plates per minute)" +  "\n\n");
+
+		publish("...done! " + "\n\n\n");
+	}
+
+
+	/**
+	 * Returns the number of plates processed per minute since the start of this run
+	 * @return
+	 */
+	private double getPlatesPerMinute(){
+		double elapsedMinutes = (System.nanoTime() - startTime) / 60e9;
+		if(elapsedMinutes<=0)
+			return(0);
+		return(filesDone.get() / elapsedMinutes);
+	}
+
+
+	/**
+	 * Returns how many worker threads will be used, there's no point in having more threads than files
+	 * @param numberOfFiles
+	 * @return
+	 */
+	private static int getNumberOfWorkers(int numberOfFiles){
+		if(!IrisFrontend.multiThreaded)
+			return(1);
+		return(Math.max(1, Math.min(IrisFrontend.numberOfThreads, numberOfFiles)));
+	}
+
+
+	public static void processSingleFile(File file){
+
+
+		String filename = file.getAbsolutePath();
+
+		//single colony runs set up the settings once, before any picture is processed (see IrisFrontend.setSingleColonyRun),
+		//while the user-defined ROI of "colony_" pictures is honoured in the settings of that plate only (see LoadStage)
 
 		//publish("Now processing file " + "\n");
 		//System.out.println("Now processing file " + "\n");
@@ -0,0 +1,260 @@
+/**
+ *
+ */
+package iris.ui;
+
+import iris.utils.ResultsStore;
+import iris.utils.ResultsStoreReader;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This is a command line tool for the results stores that Iris writes with the "resultsStore" option.
+ * <br>
+ * ResultsStoreTool store.results list					lists the plates in the store
+ * <br>
+ * ResultsStoreTool store.results [output folder]		writes the .iris files of all the plates again,
+ * in the output folder if one is given, or where they were written originally
+ * <br>
+ * ResultsStoreTool store.results import a.iris b.iris ...	makes a new results store out of .iris files,
+ * e.g. ones from a run without the "resultsStore" option. This is the only place the text of .iris files is read back into numbers,
+ * Iris itself stores the numbers the tables were written with.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ResultsStoreTool {
+
+	public static void main(String[] args) {
+
+		if(args.length<1){
+			System.out.println("Usage: ResultsStoreTool <results store> [list | output folder | import <.iris files>]");
+			return;
+		}
+
+		//0. make a store out of .iris files
+		if(args.length>1 && args[1].equalsIgnoreCase("import")){
+			importIrisFiles(args[0], Arrays.copyOfRange(args, 2, args.length));
+			return;
+		}
+
+		List<ResultsStoreReader.Plate> plates;
+		try {
+			plates = ResultsStoreReader.read(args[0]);
+		} catch (IOException e) {
+			System.err.println("Could not read results store " + args[0] + ": " + e.getMessage());
+			return;
+		}
+
+		//1. just list the plates
+		if(args.length>1 && args[1].equalsIgnoreCase("list")){
+			for (ResultsStoreReader.Plate plate : plates) {
+				System.out.println(plate.irisFilename + "\t" + plate.numberOfColonies + " colonies\t" + plate.columnNames.length + " columns");
+			}
+			System.out.println(plates.size() + " plates");
+			return;
+		}
+
+		//2. write the .iris files again
+		File outputFolder = args.length>1 ? new File(args[1]) : null;
+		int filesWritten = 0;
+
+		for (ResultsStoreReader.Plate plate : plates) {
+			File irisFile = new File(plate.irisFilename);
+			if(outputFolder!=null)
+				irisFile = new File(outputFolder, irisFile.getName());
+
+			try {
+				FileWriter writer = new FileWriter(irisFile);
+				writer.write(plate.toIrisText());
+				writer.close();
+				filesWritten++;
+			} catch (IOException e) {
+				System.err.println("Could not write output file " + irisFile.getPath());
+			}
+		}
+
+		System.out.println("Wrote " + filesWritten + " of " + plates.size() + " .iris files");
+	}
+
+
+
+	/**
+	 * Creates the results store with the tables of the given .iris files, one plate per file
+	 * @param storeFilename
+	 * @param irisFilenames
+	 */
+	private static void importIrisFiles(String storeFilename, String[] irisFilenames){
+		if(!ResultsStore.open(storeFilename)){
+			System.err.println("Could not create results store " + storeFilename);
+			return;
+		}
+
+		int filesRead = 0;
+		for (String irisFilename : irisFilenames) {
+			try {
+				String output = new String(Files.readAllBytes(new File(irisFilename).toPath()));
+				addIrisText(irisFilename, output);
+				filesRead++;
+			} catch (IOException e) {
+				System.err.println("Could not read input file " + irisFilename);
+			}
+		}
+
+		ResultsStore.close();
+		System.out.println("Stored " + filesRead + " of " + irisFilenames.length + " .iris files");
+	}
+
+
+	/**
+	 * Turns the text of an .iris file into columns, and adds it to the store.
+	 * The first line that isn't a comment is the header, the lines after it are the colonies.
+	 * Colonies are read as long as every cell is a plain number (or NaN) and every column keeps the same number of decimals,
+	 * anything from the first line that doesn't is kept as text, so it can still be written back.
+	 */
+	private static void addIrisText(String irisFilename, String output){
+
+		//1. the comment lines before the table
+		int headerStart = 0;
+		while(headerStart<output.length() && output.charAt(headerStart)=='#'){
+			int endOfLine = output.indexOf('\n', headerStart);
+			if(endOfLine<0){
+				headerStart = output.length();
+				break;
+			}
+			headerStart = endOfLine+1;
+		}
+		String preamble = output.substring(0, headerStart);
+
+		String[] columnNames = new String[0];
+		List<long[]> colonies = new ArrayList<long[]>();
+		int[] decimals = new int[0];
+		int tableEnd = headerStart;
+
+		int headerEnd = output.indexOf('\n', headerStart);
+		if(headerEnd>headerStart){
+			String header = output.substring(headerStart, headerEnd);
+			if(header.indexOf('\r')<0){
+				columnNames = header.split("\t", -1);
+				decimals = new int[columnNames.length];
+				Arrays.fill(decimals, -1);
+				tableEnd = headerEnd+1;
+
+				//2. the colonies, as many as can be stored exactly
+				while(tableEnd<output.length()){
+					int endOfLine = output.indexOf('\n', tableEnd);
+					if(endOfLine<0)
+						break;
+
+					long[] colony = parseColony(output.substring(tableEnd, endOfLine), decimals);
+					if(colony==null)
+						break;
+
+					colonies.add(colony);
+					tableEnd = endOfLine+1;
+				}
+			}
+		}
+		String postamble = output.substring(tableEnd);
+
+		//3. the store keeps the values by column
+		long[][] columns = new long[columnNames.length][colonies.size()];
+		for(int i=0; i<colonies.size(); i++){
+			for(int j=0; j<columnNames.length; j++){
+				columns[j][i] = colonies.get(i)[j];
+			}
+		}
+
+		ResultsStore.addPlate(irisFilename, preamble, columnNames, decimals, columns, colonies.size(), postamble);
+	}
+
+
+	/**
+	 * Reads the cells of a line of the table as fixed-point numbers (NaN is Long.MIN_VALUE).
+	 * The decimals of the columns not seen yet are set from this line.
+	 * @return null if the line can't be stored exactly, in which case the decimals are left untouched
+	 */
+	private static long[] parseColony(String line, int[] decimals){
+		String[] cells = line.split("\t", -1);
+		if(cells.length!=decimals.length)
+			return(null);
+
+		long[] values = new long[cells.length];
+		int[] lineDecimals = decimals.clone();
+
+		for(int j=0; j<cells.length; j++){
+			String cell = cells[j];
+
+			if(cell.equals("NaN")){
+				values[j] = Long.MIN_VALUE;
+				continue;
+			}
+
+			int cellDecimals = countDecimals(cell);
+			if(cellDecimals<0)
+				return(null);
+			if(lineDecimals[j]<0)
+				lineDecimals[j] = cellDecimals;
+			else if(lineDecimals[j]!=cellDecimals)
+				return(null);
+
+			values[j] = parseFixedPoint(cell);
+			if(values[j]==Long.MIN_VALUE)
+				return(null);
+		}
+
+		System.arraycopy(lineDecimals, 0, decimals, 0, decimals.length);
+		return(values);
+	}
+
+
+	/**
+	 * Returns the number of decimals of a number written as [-]digits[.digits],
+	 * or -1 if the text isn't written like that (or wouldn't be written the same way again, like 007 or -0)
+	 */
+	private static int countDecimals(String cell){
+		int start = cell.startsWith("-") ? 1 : 0;
+		int dot = cell.indexOf('.');
+		int integerEnd = dot<0 ? cell.length() : dot;
+
+		if(integerEnd==start || integerEnd-start>18)
+			return(-1);
+		if(cell.charAt(start)=='0' && integerEnd-start>1)
+			return(-1);
+		if(dot>=0 && (dot==cell.length()-1 || cell.length()-dot-1>9))
+			return(-1);
+
+		boolean allZeros = true;
+		for(int i=start; i<cell.length(); i++){
+			char character = cell.charAt(i);
+			if(i==dot)
+				continue;
+			if(character<'0' || character>'9')
+				return(-1);
+			if(character!='0')
+				allZeros = false;
+		}
+		if(start==1 && allZeros)
+			return(-1);
+
+		return(dot<0 ? 0 : cell.length()-dot-1);
+	}
+
+
+	/**
+	 * Returns the number without its decimal point (1.250 becomes 1250), Long.MIN_VALUE if it doesn't fit in a long
+	 */
+	private static long parseFixedPoint(String cell){
+		try {
+			return(Long.parseLong(cell.replace(".", "")));
+		} catch (NumberFormatException e) {
+			return(Long.MIN_VALUE);
+		}
+	}
+}
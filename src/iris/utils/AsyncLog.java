@@ -0,0 +1,374 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class writes the log file of a run. Whoever logs something only puts it in a ring buffer and goes on,
+ * a single background thread takes the entries out, formats them and writes them to the file.
+ * The file is flushed when enough has been written since the last flush, or after a short while, instead of on every write.
+ * <br>
+ * Putting an entry in the buffer takes no locks (just a compare-and-set on the write position), so the plates never wait for the log.
+ * If the buffer is full (the disk can't keep up), the entry is dropped, and the log says how many entries were dropped.
+ * <br>
+ * Each thread can set the plate it's working on (see setContext), and the entries logged with a level carry that with them,
+ * so the errors of plates processed at the same time can be told apart.
+ *
+ * @author George Kritikos
+ *
+ */
+public class AsyncLog {
+
+	public enum Level { DEBUG, INFO, WARNING, ERROR }
+
+	/**
+	 * entries with a lower level than this are not logged
+	 */
+	public static volatile Level minimumLevel = Level.INFO;
+
+	/**
+	 * the number of entries the ring buffer holds, a power of 2
+	 */
+	private static final int CAPACITY = 1<<14;
+
+	/**
+	 * the file is flushed once this many characters have been written since the last flush...
+	 */
+	private static final int FLUSH_SIZE = 32*1024;
+
+	/**
+	 * ...or when there's anything unflushed and this much time has passed since the last flush
+	 */
+	private static final long FLUSH_INTERVAL_MS = 200;
+
+	/**
+	 * how long the writer thread sleeps when there's nothing to write
+	 */
+	private static final long IDLE_WAIT_MS = 20;
+
+	/**
+	 * the ring buffer, a slot is null until the entry put there is ready to be read
+	 */
+	private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<Entry>(CAPACITY);
+
+	/**
+	 * the number of entries ever put in the ring buffer (the position of the next one)
+	 */
+	private static final AtomicLong writePosition = new AtomicLong(0);
+
+	/**
+	 * the number of entries ever taken out of the ring buffer, only the writer thread changes it
+	 */
+	private static volatile long readPosition = 0;
+
+	/**
+	 * the number of entries dropped because the buffer was full, not yet reported in the log
+	 */
+	private static final AtomicLong droppedEntries = new AtomicLong(0);
+
+	/**
+	 * the thread writing the current log file, null if no log file is open
+	 */
+	private static volatile Thread writerThread = null;
+
+	/**
+	 * set when the log is being closed, the writer thread then writes whatever is left and closes the file
+	 */
+	private static volatile boolean closing = false;
+
+	/**
+	 * true while entries are accepted (i.e. a log file is open)
+	 */
+	private static volatile boolean accepting = false;
+
+	private static boolean shutdownHookAdded = false;
+
+	/**
+	 * the plate each thread is working on
+	 */
+	private static final ThreadLocal<Context> context = new ThreadLocal<Context>();
+
+	/**
+	 * the part of the last line each thread wrote to the standard error that hasn't ended yet (see logErrorOutput)
+	 */
+	private static final ThreadLocal<StringBuilder> unfinishedErrorLine = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return(new StringBuilder());
+		}
+	};
+
+
+
+	/**
+	 * What a thread is working on: the picture, the profile and the thread's name
+	 */
+	private static class Context {
+		final String file;
+		final String profile;
+		final String worker;
+
+		Context(String file_, String profile_, String worker_){
+			file = file_;
+			profile = profile_;
+			worker = worker_;
+		}
+
+		@Override
+		public String toString() {
+			return(worker + ", " + file + ", " + profile);
+		}
+	}
+
+
+	/**
+	 * An entry of the log. Entries without a level are written just as they are.
+	 */
+	private static class Entry {
+		final Level level;
+		final Context context;
+		final String text;
+
+		Entry(Level level_, Context context_, String text_){
+			level = level_;
+			context = context_;
+			text = text_;
+		}
+	}
+
+
+
+	/**
+	 * Opens the given file and starts the thread that writes to it. Any log already open is closed first.
+	 * @param filename
+	 * @return false if the file could not be opened
+	 */
+	public static synchronized boolean open(String filename){
+		close();
+
+		final BufferedWriter logFile;
+		try {
+			logFile = new BufferedWriter(new FileWriter(filename));
+		} catch (IOException e) {
+			return(false);
+		}
+
+		closing = false;
+		writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeEntries(logFile);
+			}
+		}, "Iris log writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+		accepting = true;
+
+		//the writer thread doesn't keep Iris running, so the log is closed on the way out
+		if(!shutdownHookAdded){
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					close();
+				}
+			}));
+			shutdownHookAdded = true;
+		}
+
+		return(true);
+	}
+
+
+	/**
+	 * Writes whatever is still in the buffer, and closes the log file.
+	 * Anything logged after this is ignored, until a log file is opened again.
+	 */
+	public static synchronized void close(){
+		Thread thread = writerThread;
+		if(thread==null)
+			return;
+
+		accepting = false;
+		closing = true;
+		LockSupport.unpark(thread);
+
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writerThread = null;
+	}
+
+
+	/**
+	 * Writes the text in the log just as it is
+	 * @param text
+	 */
+	public static void write(String text){
+		if(accepting)
+			offer(new Entry(null, null, text));
+	}
+
+
+	/**
+	 * Writes the message in the log as a line of its own, with the level and what this thread is working on (if set)
+	 * @param level
+	 * @param message
+	 */
+	public static void log(Level level, String message){
+		if(accepting && level.compareTo(minimumLevel)>=0)
+			offer(new Entry(level, context.get(), message));
+	}
+
+
+	/**
+	 * This is for whatever is written to the standard error, which comes in bits and pieces (sometimes a character at a time).
+	 * The pieces are put together, and every line is logged as an error once it's complete (empty lines are left out).
+	 * @param text
+	 */
+	public static void logErrorOutput(String text){
+		StringBuilder line = unfinishedErrorLine.get();
+
+		for(int i=0; i<text.length(); i++){
+			char character = text.charAt(i);
+			if(character=='\n'){
+				if(line.length()>0)
+					log(Level.ERROR, line.toString());
+				line.setLength(0);
+			}
+			else if(character!='\r'){
+				line.append(character);
+			}
+		}
+	}
+
+
+	/**
+	 * Sets what this thread is working on, until clearContext is called
+	 * @param file
+	 * @param profile
+	 */
+	public static void setContext(String file, String profile){
+		context.set(new Context(file, profile, Thread.currentThread().getName()));
+	}
+
+
+	public static void clearContext(){
+		context.remove();
+	}
+
+
+
+	/**
+	 * Puts the entry in the ring buffer, or drops it if the buffer is full
+	 */
+	private static void offer(Entry entry){
+		while(true){
+			long position = writePosition.get();
+
+			if(position-readPosition >= CAPACITY){
+				droppedEntries.incrementAndGet();
+				return;
+			}
+
+			if(writePosition.compareAndSet(position, position+1)){
+				ring.set((int) (position & (CAPACITY-1)), entry);
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * This is what the writer thread does until the log is closed
+	 */
+	private static void writeEntries(BufferedWriter logFile){
+		StringBuilder formattedEntry = new StringBuilder();
+		long unflushedCharacters = 0;
+		long lastFlush = System.nanoTime();
+
+		try {
+			while(true){
+				//1. write all the entries that are ready
+				boolean closingNow = closing;
+				int entriesWritten = 0;
+
+				while(true){
+					int slot = (int) (readPosition & (CAPACITY-1));
+					Entry entry = ring.get(slot);
+
+					if(entry==null){
+						//either there's nothing more, or an entry has been given a place but isn't there yet
+						if(readPosition==writePosition.get())
+							break;
+						Thread.yield();
+						continue;
+					}
+
+					ring.set(slot, null);
+					readPosition++;
+
+					formattedEntry.setLength(0);
+					format(entry, formattedEntry);
+					logFile.append(formattedEntry);
+					unflushedCharacters += formattedEntry.length();
+					entriesWritten++;
+				}
+
+				long dropped = droppedEntries.getAndSet(0);
+				if(dropped>0){
+					String notice = "-- " + dropped + " log entries were dropped, the log file couldn't keep up --\n";
+					logFile.write(notice);
+					unflushedCharacters += notice.length();
+				}
+
+				//2. flush if enough was written, or enough time has passed
+				long now = System.nanoTime();
+				if(unflushedCharacters>=FLUSH_SIZE ||
+						(unflushedCharacters>0 && now-lastFlush>=TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS))){
+					logFile.flush();
+					unflushedCharacters = 0;
+					lastFlush = now;
+				}
+
+				//3. stop once everything logged before closing has been written
+				if(closingNow)
+					break;
+
+				if(entriesWritten==0)
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS));
+			}
+		} catch (IOException e) {
+			//nowhere to report this, the standard error ends up here
+		} finally {
+			try {
+				logFile.close();
+			} catch (IOException e) {
+				//same as above
+			}
+		}
+	}
+
+
+	/**
+	 * Formats the entry the way it appears in the log file
+	 */
+	private static void format(Entry entry, StringBuilder formattedEntry){
+		if(entry.level==null){
+			formattedEntry.append(entry.text);
+			return;
+		}
+
+		formattedEntry.append('[').append(entry.level).append(']');
+		if(entry.context!=null)
+			formattedEntry.append(" [").append(entry.context).append(']');
+		formattedEntry.append(' ').append(entry.text).append('\n');
+	}
+}
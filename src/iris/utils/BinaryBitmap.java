@@ -0,0 +1,351 @@
+/**
+ *
+ */
+package iris.utils;
+
+/**
+ * This class is a black and white picture with one bit per pixel, 64 pixels of a row in every long.
+ * The morphology operations work on whole longs at a time, instead of looking at the 3x3 neighbourhood of every pixel:
+ * a row is shifted left and right and or-ed (or and-ed) with itself, and then the same is done with the rows above and below.
+ * Several iterations of dilate or erode are done in one go, since k iterations with the 3x3 square
+ * are the same as one with a (2k+1)x(2k+1) square.
+ * <br>
+ * Bit x of a row is pixel x, the bits after the end of a row (in its last long) are always 0.
+ *
+ * @author George Kritikos
+ *
+ */
+public class BinaryBitmap {
+
+	public final int width;
+	public final int height;
+
+	/**
+	 * how many longs each row takes
+	 */
+	private final int wordsPerRow;
+
+	/**
+	 * the pixels, row after row
+	 */
+	private long[] bits;
+
+
+
+	/**
+	 * Creates an empty (all clear) bitmap
+	 * @param width_
+	 * @param height_
+	 */
+	public BinaryBitmap(int width_, int height_){
+		width = width_;
+		height = height_;
+		wordsPerRow = (width+63)>>>6;
+		bits = new long[wordsPerRow*height];
+	}
+
+
+	/**
+	 * Creates a bitmap where the pixels that have the given value are set
+	 * @param pixels the pixels of an 8-bit picture
+	 * @param width
+	 * @param height
+	 * @param value
+	 * @return
+	 */
+	public static BinaryBitmap fromPixels(byte[] pixels, int width, int height, int value){
+		BinaryBitmap bitmap = new BinaryBitmap(width, height);
+		byte valueAsByte = (byte) value;
+
+		for(int y=0; y<height; y++){
+			int rowStart = y*width;
+			int wordStart = y*bitmap.wordsPerRow;
+			for(int x=0; x<width; x++){
+				if(pixels[rowStart+x]==valueAsByte)
+					bitmap.bits[wordStart+(x>>>6)] |= 1L<<(x&63);
+			}
+		}
+
+		return(bitmap);
+	}
+
+
+	/**
+	 * Writes the bitmap into the pixels of an 8-bit picture of the same size
+	 * @param pixels
+	 * @param setValue the value of the pixels that are set
+	 * @param clearValue the value of the rest
+	 */
+	public void toPixels(byte[] pixels, int setValue, int clearValue){
+		byte setByte = (byte) setValue;
+		byte clearByte = (byte) clearValue;
+
+		for(int y=0; y<height; y++){
+			int rowStart = y*width;
+			int wordStart = y*wordsPerRow;
+			for(int x=0; x<width; x++){
+				boolean isSet = (bits[wordStart+(x>>>6)] & (1L<<(x&63))) != 0;
+				pixels[rowStart+x] = isSet ? setByte : clearByte;
+			}
+		}
+	}
+
+
+	public boolean get(int x, int y){
+		return((bits[y*wordsPerRow+(x>>>6)] & (1L<<(x&63))) != 0);
+	}
+
+
+	public void set(int x, int y){
+		bits[y*wordsPerRow+(x>>>6)] |= 1L<<(x&63);
+	}
+
+
+	/**
+	 * Sets the clear pixels and clears the set ones
+	 */
+	public void invert(){
+		for(int i=0; i<bits.length; i++){
+			bits[i] = ~bits[i];
+		}
+		clearPadding(bits);
+	}
+
+
+
+	/**
+	 * Grows the set pixels by the given number of pixels (in all 8 directions), like as many 3x3 dilations would.
+	 * Nothing comes in from outside the picture.
+	 * @param iterations
+	 */
+	public void dilate(int iterations){
+		if(iterations<1)
+			return;
+
+		long[] rowResult = new long[bits.length];
+		filterRows(bits, rowResult, iterations, false, false);
+		filterColumns(rowResult, bits, iterations, false, false);
+	}
+
+
+	/**
+	 * Shrinks the set pixels by the given number of pixels (in all 8 directions), like as many 3x3 erosions would.
+	 * @param iterations
+	 * @param edgesAreBackground if true, the pixels outside the picture count as clear, so the set pixels
+	 * along the edges get eroded as well; if false they are ignored (as if the edge pixels went on outside the picture)
+	 */
+	public void erode(int iterations, boolean edgesAreBackground){
+		if(iterations<1)
+			return;
+
+		long[] rowResult = new long[bits.length];
+		filterRows(bits, rowResult, iterations, true, edgesAreBackground);
+		filterColumns(rowResult, bits, iterations, true, edgesAreBackground);
+	}
+
+
+	/**
+	 * Keeps only the set pixels that are connected (4-connected, through set pixels) to the edges of the picture,
+	 * as if the background was flooded from all the edge pixels at once
+	 */
+	public void keepBorderConnected(){
+		long[] reached = new long[bits.length];
+
+		//1. the seeds: all the set pixels on the edges
+		for(int j=0; j<wordsPerRow; j++){
+			reached[j] = bits[j];
+			reached[(height-1)*wordsPerRow+j] = bits[(height-1)*wordsPerRow+j];
+		}
+		long firstBit = 1L;
+		long lastBit = 1L<<((width-1)&63);
+		int lastWord = (width-1)>>>6;
+		for(int y=0; y<height; y++){
+			int wordStart = y*wordsPerRow;
+			reached[wordStart] |= bits[wordStart] & firstBit;
+			reached[wordStart+lastWord] |= bits[wordStart+lastWord] & lastBit;
+		}
+
+		//2. flood down and up the rows (and along each row) until nothing changes
+		boolean changed = true;
+		while(changed){
+			changed = false;
+			for(int y=0; y<height; y++){
+				changed |= floodRow(reached, y, y-1);
+			}
+			for(int y=height-1; y>=0; y--){
+				changed |= floodRow(reached, y, y+1);
+			}
+		}
+
+		bits = reached;
+	}
+
+
+	/**
+	 * Sets all the clear pixels that can't be reached from the edges of the picture through clear pixels
+	 * (4-connected), i.e. fills the holes of the objects made of set pixels
+	 */
+	public void fillHoles(){
+		invert();
+		keepBorderConnected();
+		invert();
+	}
+
+
+
+	/**
+	 * Brings the reached pixels of the neighbour row into row y (where it's set), and then spreads them along row y
+	 * @return true if anything new was reached
+	 */
+	private boolean floodRow(long[] reached, int y, int neighbourRow){
+		int wordStart = y*wordsPerRow;
+		boolean changed = false;
+
+		//1. from the neighbour row
+		if(neighbourRow>=0 && neighbourRow<height){
+			int neighbourStart = neighbourRow*wordsPerRow;
+			for(int j=0; j<wordsPerRow; j++){
+				long newlyReached = reached[neighbourStart+j] & bits[wordStart+j] & ~reached[wordStart+j];
+				if(newlyReached!=0){
+					reached[wordStart+j] |= newlyReached;
+					changed = true;
+				}
+			}
+		}
+
+		//2. along the row, towards the right (the carry of an addition runs through a stretch of set bits)
+		long carry = 0;
+		for(int j=0; j<wordsPerRow; j++){
+			long mask = bits[wordStart+j];
+			long seeds = (reached[wordStart+j] | carry) & mask;
+			long filled = (((mask + seeds) ^ mask) & mask) | seeds;
+			if(filled!=reached[wordStart+j]){
+				reached[wordStart+j] = filled;
+				changed = true;
+			}
+			carry = filled>>>63;
+		}
+
+		//3. and towards the left, the same with the bits reversed
+		carry = 0;
+		for(int j=wordsPerRow-1; j>=0; j--){
+			long mask = Long.reverse(bits[wordStart+j]);
+			long seeds = (Long.reverse(reached[wordStart+j]) | carry) & mask;
+			long filled = Long.reverse((((mask + seeds) ^ mask) & mask) | seeds);
+			if(filled!=reached[wordStart+j]){
+				reached[wordStart+j] = filled;
+				changed = true;
+			}
+			carry = filled & 1L;
+		}
+
+		return(changed);
+	}
+
+
+	/**
+	 * Or's (or and's, for erode) each pixel of every row with the pixels up to radius away from it on the same row
+	 */
+	private void filterRows(long[] source, long[] destination, int radius, boolean erode, boolean edgesAreBackground){
+		//outside the picture: nothing for dilate, and for erode either clear pixels or pixels that don't change the result
+		boolean outside = erode && !edgesAreBackground;
+
+		for(int y=0; y<height; y++){
+			int wordStart = y*wordsPerRow;
+			for(int j=0; j<wordsPerRow; j++){
+				int firstPixel = j<<6;
+				long result = erode ? -1L : 0L;
+				for(int shift=-radius; shift<=radius; shift++){
+					long shifted = get64(source, wordStart, firstPixel+shift, outside);
+					if(erode)
+						result &= shifted;
+					else
+						result |= shifted;
+				}
+				destination[wordStart+j] = result;
+			}
+		}
+		clearPadding(destination);
+	}
+
+
+	/**
+	 * Or's (or and's, for erode) each row with the rows up to radius away from it
+	 */
+	private void filterColumns(long[] source, long[] destination, int radius, boolean erode, boolean edgesAreBackground){
+		for(int y=0; y<height; y++){
+			int wordStart = y*wordsPerRow;
+			int firstRow = y-radius;
+			int lastRow = y+radius;
+
+			if(erode && edgesAreBackground && (firstRow<0 || lastRow>=height)){
+				//the window reaches outside the picture, where everything is clear
+				for(int j=0; j<wordsPerRow; j++){
+					destination[wordStart+j] = 0;
+				}
+				continue;
+			}
+			firstRow = Math.max(firstRow, 0);
+			lastRow = Math.min(lastRow, height-1);
+
+			for(int j=0; j<wordsPerRow; j++){
+				long result = erode ? -1L : 0L;
+				for(int row=firstRow; row<=lastRow; row++){
+					if(erode)
+						result &= source[row*wordsPerRow+j];
+					else
+						result |= source[row*wordsPerRow+j];
+				}
+				destination[wordStart+j] = result;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the 64 pixels of a row starting from pixel firstPixel (which may be outside the row),
+	 * with the pixels outside the row set to outside
+	 */
+	private long get64(long[] source, int wordStart, int firstPixel, boolean outside){
+		int word = firstPixel>>6;
+		int offset = firstPixel&63;
+
+		long result = getWord(source, wordStart, word) >>> offset;
+		if(offset!=0)
+			result |= getWord(source, wordStart, word+1) << (64-offset);
+
+		if(outside){
+			//the bits of pixels before 0 or after width-1
+			int firstInside = Math.max(0, -firstPixel);
+			int lastInside = Math.min(63, width-1-firstPixel);
+			long insideMask = 0;
+			if(firstInside<=lastInside)
+				insideMask = (-1L >>> (63-lastInside+firstInside)) << firstInside;
+			result |= ~insideMask;
+		}
+
+		return(result);
+	}
+
+
+	private long getWord(long[] source, int wordStart, int word){
+		if(word<0 || word>=wordsPerRow)
+			return(0);
+		return(source[wordStart+word]);
+	}
+
+
+	/**
+	 * Clears the bits after the end of every row
+	 */
+	private void clearPadding(long[] words){
+		int usedBits = width&63;
+		if(usedBits==0)
+			return;
+
+		long mask = (1L<<usedBits)-1;
+		for(int y=0; y<height; y++){
+			words[y*wordsPerRow+wordsPerRow-1] &= mask;
+		}
+	}
+}
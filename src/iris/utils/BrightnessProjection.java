@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+import java.awt.Rectangle;
+
+/**
+ * This class holds the sums of brightness of every row and every column of a picture (it's projections),
+ * which is what the croppers, the rotation search and the rising tide segmentation work on.
+ * Both sums are calculated together, in a single pass over the pixels of the picture, row after row.
+ * <br>
+ * It also holds the few helper functions (minimum, mean, variance) that used to be written over and over
+ * for lists of Integers, here working on the plain arrays.
+ *
+ * @author George Kritikos
+ *
+ */
+public class BrightnessProjection {
+
+	/**
+	 * the sum of brightness of every row (one for each y)
+	 */
+	public int[] sumOfRows;
+
+	/**
+	 * the sum of brightness of every column (one for each x)
+	 */
+	public int[] sumOfColumns;
+
+
+
+	/**
+	 * Calculates the sums of brightness of all the rows and columns of the given picture
+	 * @param image
+	 * @return
+	 */
+	public static BrightnessProjection calculate(ImagePlus image){
+		return(calculate(image, new Rectangle(0, 0, image.getWidth(), image.getHeight())));
+	}
+
+
+	/**
+	 * Calculates the sums of brightness of the rows and columns of the given rectangle of the picture.
+	 * sumOfRows[0] is the sum of the top row of the rectangle, sumOfColumns[0] the sum of it's leftmost column.
+	 * Pixels of the rectangle that fall outside the picture count as zero.
+	 * <br>
+	 * The brightness of a pixel is the same as ImagePlus.getPixel(x, y)[0]; for 8-bit grayscale pictures
+	 * it's read straight from the pixel array.
+	 * @param image
+	 * @param rectangle
+	 * @return
+	 */
+	public static BrightnessProjection calculate(ImagePlus image, Rectangle rectangle){
+
+		BrightnessProjection projection = new BrightnessProjection();
+		projection.sumOfRows = new int[rectangle.height];
+		projection.sumOfColumns = new int[rectangle.width];
+
+		//1. only the part of the rectangle inside the picture contributes to the sums
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		int startX = Math.max(rectangle.x, 0);
+		int endX = Math.min(rectangle.x+rectangle.width, width);
+		int startY = Math.max(rectangle.y, 0);
+		int endY = Math.min(rectangle.y+rectangle.height, height);
+
+		if(startX>=endX || startY>=endY)
+			return(projection);
+
+
+		//2. grayscale pictures: go through the pixel array, row by row
+		if(image.getType()==ImagePlus.GRAY8 && image.getProcessor() instanceof ByteProcessor){
+			byte[] pixels = (byte[]) image.getProcessor().getPixels();
+			int[] sumOfColumns = projection.sumOfColumns;
+
+			for(int y=startY; y<endY; y++){
+				int sum = 0;
+				int offset = y*width;
+
+				for(int x=startX; x<endX; x++){
+					int pixelValue = pixels[offset+x]&0xFF;
+					sum += pixelValue;
+					sumOfColumns[x-rectangle.x] += pixelValue;
+				}
+
+				projection.sumOfRows[y-rectangle.y] = sum;
+			}
+			return(projection);
+		}
+
+
+		//3. anything else (e.g. RGB, where this is the red channel) goes through getPixel
+		for(int y=startY; y<endY; y++){
+			int sum = 0;
+
+			for(int x=startX; x<endX; x++){
+				int pixelValue = image.getPixel(x, y)[0];
+				sum += pixelValue;
+				projection.sumOfColumns[x-rectangle.x] += pixelValue;
+			}
+
+			projection.sumOfRows[y-rectangle.y] = sum;
+		}
+
+		return(projection);
+	}
+
+
+
+	/**
+	 * Returns the index of the smallest of the sums[from] .. sums[to-1], relative to from.
+	 * If there's a tie, the first one is returned. Returns -1 if the range is empty.
+	 * @param sums
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public static int getIndexOfMinimumElement(int[] sums, int from, int to){
+		int index = -1;
+		int min = Integer.MAX_VALUE;
+
+		for(int i=from; i<to; i++){
+			if(sums[i]<min){
+				min = sums[i];
+				index = i-from;
+			}
+		}
+
+		return(index);
+	}
+
+
+	/**
+	 * Returns the mean of the sums[from] .. sums[to-1].
+	 * Just like the list versions this replaces, the sum is divided as an integer, so the mean is rounded down.
+	 * @param sums
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public static double getMean(int[] sums, int from, int to){
+		int sum = 0;
+
+		for(int i=from; i<to; i++){
+			sum += sums[i];
+		}
+
+		return(sum/(to-from));
+	}
+
+
+	/**
+	 * Returns the (sample) variance of the sums, around the mean given by getMean
+	 * @param sums
+	 * @return
+	 */
+	public static double getVariance(int[] sums){
+		double mean = getMean(sums, 0, sums.length);
+
+		double sum = 0;
+
+		for(int i=0; i<sums.length; i++){
+			double difference = sums[i]-mean;
+			sum += difference*difference;
+		}
+
+		return(sum/(sums.length-1));
+	}
+}
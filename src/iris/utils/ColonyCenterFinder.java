@@ -0,0 +1,386 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * This class finds the center of a colony in a black and white tile as the ultimate erosion point
+ * (the point furthest inside the colony), the same point Toolbox.getParticleUltimateErosionPoint used to get
+ * with EDM.makeFloatEDM and MaximumFinder.getMaxima.
+ * <br>
+ * The distance map is the exact one EDM makes (two passes over the rows, each one left-to-right and right-to-left,
+ * carrying along the nearest background point), and the maximum is picked the way MaximumFinder picks it,
+ * so the centers don't move. The difference is that everything happens on arrays that are reused from tile to tile
+ * (see ScratchBuffers): there's no FloatProcessor, pixel type picture or Polygon of the maxima,
+ * and the search stops at the first maximum that qualifies, which is the only one that was ever used.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ColonyCenterFinder {
+
+	/**
+	 * no nearest background point yet (the points are kept as x | y<<16)
+	 */
+	private static final int NO_POINT = -1;
+
+	//the pixel types MaximumFinder uses while going through the maxima
+	private static final byte MAXIMUM = (byte) 1;
+	private static final byte LISTED = (byte) 2;
+	private static final byte PROCESSED = (byte) 4;
+	private static final byte EQUAL = (byte) 8;
+
+	/**
+	 * the 8 neighbours of a pixel, in the order MaximumFinder goes through them
+	 */
+	private static final int[] DIRECTION_X = new int[] {  0,  1,  1,  1,  0, -1, -1, -1 };
+	private static final int[] DIRECTION_Y = new int[] { -1, -1,  0,  1,  1,  1,  0, -1 };
+
+
+
+	/**
+	 * Returns the ultimate erosion point of the picture, with the picture's edges counting as background.
+	 * Object pixels are all the non-zero pixels.
+	 * The point is the one MaximumFinder.getMaxima(EDM, EDM maximum - 1, true) would return first:
+	 * the center of the highest plateau of the distance map that doesn't reach the edges of the picture.
+	 * @param binaryImage an 8-bit black and white picture
+	 * @return the point, or null if there is no such maximum (e.g. the colony touches the edges)
+	 */
+	public static Point getUltimateErosionPoint(ImageProcessor binaryImage){
+		byte[] pixels = (byte[]) ((ByteProcessor) binaryImage).getPixels();
+		int width = binaryImage.getWidth();
+		int height = binaryImage.getHeight();
+		int numberOfPixels = width*height;
+
+		float[] distances = ScratchBuffers.getFloats(numberOfPixels);
+		byte[] types = ScratchBuffers.getBytes(numberOfPixels);
+		int[] pixelList = ScratchBuffers.getInts(numberOfPixels);
+
+		try {
+			//1. get the distance of every object pixel to the nearest background pixel
+			getDistanceMap(pixels, width, height, distances);
+
+			//2. find the maxima of the distance map and pick the first one that qualifies
+			return(getFirstMaximum(distances, width, height, types, pixelList));
+		}
+		finally {
+			ScratchBuffers.giveBack(pixelList);
+			ScratchBuffers.giveBack(types);
+			ScratchBuffers.giveBack(distances);
+		}
+	}
+
+
+
+	/**
+	 * Fills in the euclidean distance map of the picture (0 for the background), just like EDM.makeFloatEDM(ip, 0, true)
+	 */
+	private static void getDistanceMap(byte[] pixels, int width, int height, float[] distances){
+		int numberOfPixels = width*height;
+
+		//1. start from "infinitely far" for all object pixels, the squared distances only go down from there
+		for(int i=0; i<numberOfPixels; i++){
+			distances[i] = pixels[i]!=0 ? Float.MAX_VALUE : 0;
+		}
+
+		//the nearest background points of the previous row, for the left-to-right and the right-to-left pass
+		int[] pointBuffer = ScratchBuffers.getInts(2*width);
+
+		//2. rows from the top down
+		Arrays.fill(pointBuffer, NO_POINT);
+		for(int y=0; y<height; y++){
+			distanceMapRow(pixels, distances, pointBuffer, width, y, y+1);
+		}
+
+		//3. rows from the bottom up
+		Arrays.fill(pointBuffer, NO_POINT);
+		for(int y=height-1; y>=0; y--){
+			distanceMapRow(pixels, distances, pointBuffer, width, y, height-y);
+		}
+
+		ScratchBuffers.giveBack(pointBuffer);
+
+		//4. from squared distances to distances
+		for(int i=0; i<numberOfPixels; i++){
+			float squaredDistance = distances[i];
+			distances[i] = squaredDistance<=0 ? 0 : (float) Math.sqrt(squaredDistance);
+		}
+	}
+
+
+	/**
+	 * Goes through one row left-to-right and then right-to-left, updating the squared distances of its object pixels
+	 * from the nearest background points found so far (EDM.edmLine)
+	 * @param yDistance the distance of the row from the picture edge the pass started from
+	 */
+	private static void distanceMapRow(byte[] pixels, float[] distances, int[] pointBuffer, int width, int y, int yDistance){
+		int offset = y*width;
+
+		//1. left-to-right, with the first half of the point buffer
+		int previousPoint = NO_POINT;
+		int diagonalPoint = NO_POINT;
+		for(int x=0; x<width; x++, offset++){
+			int nextDiagonalPoint = pointBuffer[x];
+			if(pixels[offset]==0){
+				pointBuffer[x] = x | y<<16;
+			}
+			else {
+				int edgeDistance = (x+1 < yDistance) ? (x+1)*(x+1) : yDistance*yDistance;
+				float squaredDistance = getMinimumSquaredDistance(pointBuffer, 0, previousPoint, diagonalPoint, x, y, edgeDistance);
+				if(distances[offset] > squaredDistance)
+					distances[offset] = squaredDistance;
+			}
+			previousPoint = pointBuffer[x];
+			diagonalPoint = nextDiagonalPoint;
+		}
+
+		//2. right-to-left, with the second half of the point buffer
+		offset--;
+		previousPoint = NO_POINT;
+		diagonalPoint = NO_POINT;
+		for(int x=width-1; x>=0; x--, offset--){
+			int nextDiagonalPoint = pointBuffer[width+x];
+			if(pixels[offset]==0){
+				pointBuffer[width+x] = x | y<<16;
+			}
+			else {
+				int edgeDistance = (width-x < yDistance) ? (width-x)*(width-x) : yDistance*yDistance;
+				float squaredDistance = getMinimumSquaredDistance(pointBuffer, width, previousPoint, diagonalPoint, x, y, edgeDistance);
+				if(distances[offset] > squaredDistance)
+					distances[offset] = squaredDistance;
+			}
+			previousPoint = pointBuffer[width+x];
+			diagonalPoint = nextDiagonalPoint;
+		}
+	}
+
+
+	/**
+	 * Returns the smallest squared distance of (x,y) from the edge (squaredDistance), the nearest point of the same x in the previous row,
+	 * the diagonal point and the previous point of this row, in that order (EDM.minDist2).
+	 * The nearest of these points is kept in the point buffer for the next row.
+	 */
+	private static float getMinimumSquaredDistance(int[] pointBuffer, int bufferStart, int previousPoint, int diagonalPoint,
+			int x, int y, int squaredDistance){
+
+		int abovePoint = pointBuffer[bufferStart+x];
+		int nearestPoint = abovePoint;
+
+		if(abovePoint!=NO_POINT){
+			int squaredDistance1 = getSquaredDistance(abovePoint, x, y);
+			if(squaredDistance1 < squaredDistance)
+				squaredDistance = squaredDistance1;
+		}
+		if(diagonalPoint!=abovePoint && diagonalPoint!=NO_POINT){
+			int squaredDistance1 = getSquaredDistance(diagonalPoint, x, y);
+			if(squaredDistance1 < squaredDistance){
+				nearestPoint = diagonalPoint;
+				squaredDistance = squaredDistance1;
+			}
+		}
+		if(previousPoint!=diagonalPoint && previousPoint!=NO_POINT){
+			int squaredDistance1 = getSquaredDistance(previousPoint, x, y);
+			if(squaredDistance1 < squaredDistance){
+				nearestPoint = previousPoint;
+				squaredDistance = squaredDistance1;
+			}
+		}
+
+		pointBuffer[bufferStart+x] = nearestPoint;
+		return((float) squaredDistance);
+	}
+
+
+	private static int getSquaredDistance(int point, int x, int y){
+		int pointX = point&0xffff;
+		int pointY = (point>>16)&0xffff;
+		return((x-pointX)*(x-pointX) + (y-pointY)*(y-pointY));
+	}
+
+
+
+	/**
+	 * Goes through the local maxima of the distance map from the highest down, the same way MaximumFinder.analyzeAndMarkMaxima does
+	 * (with a tolerance of the highest distance minus 1, and the maxima that reach the edges left out),
+	 * and returns the point MaximumFinder would give for the first one that qualifies.
+	 */
+	private static Point getFirstMaximum(float[] distances, int width, int height, byte[] types, int[] pixelList){
+		int numberOfPixels = width*height;
+
+		//1. the range of the distances
+		float globalMin = Float.MAX_VALUE;
+		float globalMax = -Float.MAX_VALUE;
+		for(int i=0; i<numberOfPixels; i++){
+			float distance = distances[i];
+			if(globalMin>distance) globalMin = distance;
+			if(globalMax<distance) globalMax = distance;
+		}
+
+		double tolerance = (double)globalMax - 1;
+		float maxSortingError = 1.1f * (globalMax-globalMin)/2e9f;
+
+		//2. the local maxima, sorted by height
+		Arrays.fill(types, 0, numberOfPixels, (byte) 0);
+		long[] maxima = getSortedMaxima(distances, width, height, types, globalMin, globalMax);
+
+		//3. flood each one down to the tolerance, and keep the first one that reaches neither the edges nor a higher point
+		for(int iMax=maxima.length-1; iMax>=0; iMax--){
+			int offset0 = (int) maxima[iMax];
+			if((types[offset0]&PROCESSED)!=0)
+				continue;//this maximum was reached from a higher one
+
+			int x0 = offset0 % width;
+			int y0 = offset0 / width;
+			float v0 = distances[offset0];
+			boolean sortingError;
+
+			do {
+				pixelList[0] = offset0;
+				types[offset0] |= (EQUAL|LISTED);
+				int listLength = 1;
+				int listIndex = 0;
+				sortingError = false;
+				boolean maxPossible = true;
+				double xEqual = x0;
+				double yEqual = y0;
+				int numberEqual = 1;
+
+				do {
+					int offset = pixelList[listIndex];
+					int x = offset % width;
+					int y = offset / width;
+
+					for(int d=0; d<8; d++){
+						int x2 = x+DIRECTION_X[d];
+						int y2 = y+DIRECTION_Y[d];
+						if(x2<0 || x2>=width || y2<0 || y2>=height)
+							continue;
+
+						int offset2 = y2*width + x2;
+						if((types[offset2]&LISTED)!=0)
+							continue;
+
+						if((types[offset2]&PROCESSED)!=0){
+							maxPossible = false;//reached a point processed before, this one can't be a maximum
+							break;
+						}
+
+						float v2 = distances[offset2];
+						if(v2 > v0 + maxSortingError){
+							maxPossible = false;//reached a higher point
+							break;
+						}
+						else if(v2 >= v0-(float)tolerance){
+							if(v2 > v0){
+								//the sorting wasn't exact, start over from the higher point
+								sortingError = true;
+								offset0 = offset2;
+								v0 = v2;
+								x0 = x2;
+								y0 = y2;
+							}
+							pixelList[listLength] = offset2;
+							listLength++;
+							types[offset2] |= LISTED;
+
+							if(x2==0 || x2==width-1 || y2==0 || y2==height-1){
+								maxPossible = false;//reached the edges
+								break;
+							}
+							if(v2==v0){
+								types[offset2] |= EQUAL;
+								xEqual += x2;
+								yEqual += y2;
+								numberEqual++;
+							}
+						}
+					}
+					listIndex++;
+				} while(listIndex < listLength);
+
+				if(sortingError){
+					for(listIndex=0; listIndex<listLength; listIndex++)
+						types[pixelList[listIndex]] = 0;
+				}
+				else if(maxPossible){
+					//the point of the plateau nearest to it's center
+					xEqual /= numberEqual;
+					yEqual /= numberEqual;
+					double minDistance2 = 1e20;
+					int nearestIndex = 0;
+					for(listIndex=0; listIndex<listLength; listIndex++){
+						int offset = pixelList[listIndex];
+						if((types[offset]&EQUAL)!=0){
+							int x = offset % width;
+							int y = offset / width;
+							double distance2 = (xEqual-x)*(xEqual-x) + (yEqual-y)*(yEqual-y);
+							if(distance2 < minDistance2){
+								minDistance2 = distance2;
+								nearestIndex = listIndex;
+							}
+						}
+					}
+
+					int offset = pixelList[nearestIndex];
+					return(new Point(offset % width, offset / width));
+				}
+				else {
+					for(listIndex=0; listIndex<listLength; listIndex++)
+						types[pixelList[listIndex]] = PROCESSED;
+				}
+			} while(sortingError);
+		}
+
+		return(null);
+	}
+
+
+	/**
+	 * Marks the local maxima of the distance map (leaving out the edges and the lowest value) and returns them sorted by height,
+	 * as (height scaled to an int)<<32 | offset, the way MaximumFinder.getSortedMaxPoints does
+	 */
+	private static long[] getSortedMaxima(float[] distances, int width, int height, byte[] types, float globalMin, float globalMax){
+		int numberOfMaxima = 0;
+
+		//1. mark the local maxima (only the inner pixels, so all 8 neighbours are there)
+		for(int y=1; y<height-1; y++){
+			for(int x=1, i=y*width+1; x<width-1; x++, i++){
+				float v = distances[i];
+				if(v==globalMin)
+					continue;
+
+				boolean isMax = true;
+				for(int d=0; d<8; d++){
+					if(distances[i + DIRECTION_Y[d]*width + DIRECTION_X[d]] > v){
+						isMax = false;
+						break;
+					}
+				}
+				if(isMax){
+					types[i] = MAXIMUM;
+					numberOfMaxima++;
+				}
+			}
+		}
+
+		//2. sort them
+		float vFactor = (float)(2e9/(globalMax-globalMin));
+		long[] maxima = new long[numberOfMaxima];
+		int iMax = 0;
+		for(int i=0; i<width*height; i++){
+			if(types[i]==MAXIMUM){
+				int iValue = (int)((distances[i]-globalMin)*vFactor);
+				maxima[iMax++] = (long)iValue<<32 | i;
+			}
+		}
+		Arrays.sort(maxima);
+
+		return(maxima);
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.Overlay;
+import ij.gui.Roi;
+import ij.process.ImageProcessor;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+
+/**
+ * This class draws the outlines of the colonies on the grid pictures.
+ * Before, every tile was cut out of the plate, its colony filled in white and its edges found (a Sobel filter over the whole tile),
+ * and then the edge pixels were looked up one by one. Here the outline comes straight from the mask of the colony ROI:
+ * it's the pixels of the mask that touch a pixel outside it, and the pixels outside that touch the mask
+ * (the two pixels wide line the edge filter used to give), painted directly on the plate picture.
+ * <br>
+ * If DiagnosticImageWriter.vectorOutlines is set, the ROIs are added to the picture's overlay instead,
+ * and the writer saves them next to the grid picture as an SVG file, leaving the picture itself untouched.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ColonyOutlines {
+
+	/**
+	 * This function will draw the outline of each colony ROI on the picture, with the color given.
+	 * The ROIs are in the coordinates of their tiles (as the tile readers give them), the tiles are in the segmenterOutput.
+	 * The tiles with no ROI (null) are skipped.
+	 * @param croppedImage
+	 * @param segmenterOutput
+	 * @param colonyRois
+	 * @param color
+	 */
+	public static void draw(ImagePlus croppedImage, BasicImageSegmenterOutput segmenterOutput, Roi[][] colonyRois, Color color){
+
+		if(DiagnosticImageWriter.vectorOutlines){
+			addToOverlay(croppedImage, segmenterOutput, colonyRois, color);
+			return;
+		}
+
+		ImageProcessor bigPictureProcessor = croppedImage.getProcessor();
+		bigPictureProcessor.setColor(color);
+
+		//for all rows
+		for(int i=0; i<colonyRois.length; i++){
+			//for all columns
+			for(int j=0; j<colonyRois[i].length; j++) {
+				if(colonyRois[i][j]==null)
+					continue;
+
+				drawOutline(bigPictureProcessor, segmenterOutput.ROImatrix[i][j].getBounds(), colonyRois[i][j]);
+			}
+		}
+	}
+
+
+	/**
+	 * Paints the outline of a single colony. Only the bounding rectangle of the ROI is looked at,
+	 * just like the edge filter only ran there.
+	 */
+	private static void drawOutline(ImageProcessor bigPictureProcessor, Rectangle tile, Roi colonyRoi){
+
+		//1. get the part of the ROI's rectangle that's in the tile
+		Rectangle roiBounds = colonyRoi.getBounds();
+		Rectangle area = roiBounds.intersection(new Rectangle(0, 0, tile.width, tile.height));
+		if(area.isEmpty())
+			return;
+
+		//2. copy the mask, with a 1 pixel border around the area, so that every pixel has all 8 neighbours
+		//(outside the tile, the neighbours are the closest pixel in the tile, like the edge filter did)
+		ImageProcessor mask = colonyRoi.getMask();
+		int paddedWidth = area.width+2;
+		int paddedHeight = area.height+2;
+		boolean[] inside = new boolean[paddedWidth*paddedHeight];
+
+		for(int py=0; py<paddedHeight; py++){
+			int y = Math.min(Math.max(area.y+py-1, 0), tile.height-1);
+			for(int px=0; px<paddedWidth; px++){
+				int x = Math.min(Math.max(area.x+px-1, 0), tile.width-1);
+				inside[py*paddedWidth+px] = isInMask(mask, roiBounds, x, y);
+			}
+		}
+
+		//3. an outline pixel is one on the other side of the mask's edge from one of its 8 neighbours
+		for(int py=1; py<=area.height; py++){
+			for(int px=1; px<=area.width; px++){
+				int i = py*paddedWidth+px;
+				boolean pixel = inside[i];
+
+				if(inside[i-paddedWidth-1]!=pixel || inside[i-paddedWidth]!=pixel || inside[i-paddedWidth+1]!=pixel ||
+						inside[i-1]!=pixel || inside[i+1]!=pixel ||
+						inside[i+paddedWidth-1]!=pixel || inside[i+paddedWidth]!=pixel || inside[i+paddedWidth+1]!=pixel){
+					bigPictureProcessor.drawPixel(area.x+px-1+tile.x, area.y+py-1+tile.y);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Returns true if pixel x,y of the tile is inside the ROI (a null mask means the whole rectangle)
+	 */
+	private static boolean isInMask(ImageProcessor mask, Rectangle roiBounds, int x, int y){
+		if(!roiBounds.contains(x, y))
+			return(false);
+		if(mask==null)
+			return(true);
+		return(mask.get(x-roiBounds.x, y-roiBounds.y)!=0);
+	}
+
+
+	/**
+	 * Adds a copy of each colony ROI, moved to where its tile is on the plate, to the overlay of the picture
+	 */
+	private static void addToOverlay(ImagePlus croppedImage, BasicImageSegmenterOutput segmenterOutput, Roi[][] colonyRois, Color color){
+		Overlay overlay = croppedImage.getOverlay();
+		if(overlay==null)
+			overlay = new Overlay();
+
+		for(int i=0; i<colonyRois.length; i++){
+			for(int j=0; j<colonyRois[i].length; j++) {
+				if(colonyRois[i][j]==null)
+					continue;
+
+				Rectangle tile = segmenterOutput.ROImatrix[i][j].getBounds();
+				Rectangle roiBounds = colonyRois[i][j].getBounds();
+
+				Roi outline = (Roi) colonyRois[i][j].clone();
+				outline.setLocation(roiBounds.x+tile.x, roiBounds.y+tile.y);
+				outline.setStrokeColor(color);
+				overlay.add(outline);
+			}
+		}
+
+		croppedImage.setOverlay(overlay);
+	}
+}
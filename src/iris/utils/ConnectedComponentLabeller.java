@@ -0,0 +1,486 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.gui.Wand;
+import ij.process.ByteProcessor;
+import ij.process.EllipseFitter;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * This class finds the particles (8-connected components) of a thresholded 8-bit tile,
+ * and measures them straight into primitive arrays, without going through ImageJ's ParticleAnalyzer,
+ * it's ImageStatistics and it's ResultsTable.
+ * <br>
+ * The measurements are the same as the ones the tile readers used to get from the particle analyzer
+ * (area, traced perimeter, circularity, bounding rectangle, center of mass), and the particles come in the same order
+ * (the order their top-left pixel is found when scanning the tile row by row).
+ * The ROI, mask and aspect ratio are only worked out for the biggest particle, which is the one the tile readers report.
+ * <br>
+ * A labeller can be re-used for many tiles, every call to analyze forgets the previous tile.
+ * The tile readers don't create their own, they use the one labeller of their thread (see getThreadLabeller),
+ * so that the label and flood fill arrays are only allocated again when a bigger tile comes along.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ConnectedComponentLabeller {
+
+	/**
+	 * the labeller of each thread, so the tiles that are read in parallel don't share one
+	 */
+	private static final ThreadLocal<ConnectedComponentLabeller> threadLabeller = new ThreadLocal<ConnectedComponentLabeller>() {
+		@Override
+		protected ConnectedComponentLabeller initialValue() {
+			return(new ConnectedComponentLabeller(0));
+		}
+	};
+
+	/**
+	 * particles smaller than this (in pixels) are ignored
+	 */
+	private int minSize;
+
+	/**
+	 * the tile being analyzed, and the range of pixel values that are considered part of a particle
+	 */
+	private ImageProcessor ip;
+	private byte[] pixels;
+	private int width;
+	private int height;
+	private int lowerThreshold;
+	private int upperThreshold;
+
+	/**
+	 * the component each pixel belongs to, 0 for the background.
+	 * The pixel stack is used by the flood fill. Both are kept from tile to tile and only grow,
+	 * only the first width*height elements are used for the current tile.
+	 */
+	private int[] labels = new int[0];
+	private int[] stack = new int[0];
+
+	/**
+	 * the measurements of the particles, only the first getCount() elements are valid
+	 */
+	private int count;
+	private int[] particleLabels = new int[8];
+	private int[] firstPixels = new int[8];
+	private int[] areas = new int[8];
+	private float[] perimeters = new float[8];
+	private float[] circularities = new float[8];
+	private float[] centersOfMassX = new float[8];
+	private float[] centersOfMassY = new float[8];
+	private int[] boundsX = new int[8];
+	private int[] boundsY = new int[8];
+	private int[] boundsWidth = new int[8];
+	private int[] boundsHeight = new int[8];
+
+	/**
+	 * the biggest particle, -1 if there were no particles
+	 */
+	private int indexOfBiggestParticle;
+	private ByteProcessor biggestParticleMask;
+	private Roi biggestParticleRoi;
+	private float biggestParticleAspectRatio;
+
+
+
+	/**
+	 * Creates a labeller that ignores particles smaller than minSize pixels
+	 * @param minSize
+	 */
+	public ConnectedComponentLabeller(int minSize) {
+		this.minSize = minSize;
+	}
+
+
+
+	/**
+	 * Returns the labeller of the calling thread, set to ignore particles smaller than minSize pixels.
+	 * The measurements it returns are only good until the next call to analyze from the same thread,
+	 * so don't hold on to it (or it's arrays) after the tile is done.
+	 * @param minSize
+	 * @return
+	 */
+	public static ConnectedComponentLabeller getThreadLabeller(int minSize) {
+		ConnectedComponentLabeller labeller = threadLabeller.get();
+		labeller.minSize = minSize;
+		return(labeller);
+	}
+
+
+
+	/**
+	 * Finds and measures all the particles of the given tile.
+	 * The particles are the pixels inside the threshold levels of the tile's processor (as set by e.g. Toolbox.turnImageBW_Otsu_auto),
+	 * or the white (255) pixels if no threshold was set.
+	 * The center of mass is weighted by the pixel values of the tile, just like ImageJ's XM and YM.
+	 * @param tile
+	 */
+	public void analyze(ImagePlus tile){
+
+		count = 0;
+		indexOfBiggestParticle = -1;
+		biggestParticleMask = null;
+		biggestParticleRoi = null;
+		biggestParticleAspectRatio = 0;
+
+		if(!(tile.getProcessor() instanceof ByteProcessor)){
+			System.err.println("ConnectedComponentLabeller: only 8-bit tiles can be analyzed, got " + tile.getTitle());
+			return;
+		}
+
+
+		//1. get the pixels and the threshold levels
+		ip = tile.getProcessor();
+		pixels = (byte[]) ip.getPixels();
+		width = ip.getWidth();
+		height = ip.getHeight();
+
+		if(ip.getMinThreshold()==ImageProcessor.NO_THRESHOLD){
+			lowerThreshold = 255;
+			upperThreshold = 255;
+		}
+		else{
+			lowerThreshold = (int) Math.ceil(ip.getMinThreshold());
+			upperThreshold = (int) Math.floor(ip.getMaxThreshold());
+		}
+
+		int size = width*height;
+		if(labels.length<size){
+			labels = new int[size];
+			stack = new int[size];
+		}
+		else{
+			Arrays.fill(labels, 0, size, 0);
+		}
+
+
+		//2. label the components, scanning the tile row by row
+		int nextLabel = 0;
+		for(int i=0; i<size; i++){
+			if(labels[i]==0 && isInside(i)){
+				nextLabel++;
+				labelComponent(i, nextLabel);
+			}
+		}
+
+
+		//3. trace the outline of every particle to get it's perimeter
+		if(count==0)
+			return;
+
+		Wand wand = new Wand(ip);
+		for(int i=0; i<count; i++){
+			wand.autoOutline(firstPixels[i]%width, firstPixels[i]/width, lowerThreshold, upperThreshold, Wand.LEGACY_MODE);
+
+			double perimeter = getTracedPerimeter(wand.xpoints, wand.ypoints, wand.npoints);
+			double circularity = perimeter==0.0 ? 0.0 : 4.0*Math.PI*(areas[i]/(perimeter*perimeter));
+			if(circularity>1.0)
+				circularity = 1.0;
+
+			perimeters[i] = (float) perimeter;
+			circularities[i] = (float) circularity;
+		}
+
+
+		//4. the biggest particle also gets it's ROI, mask and aspect ratio
+		indexOfBiggestParticle = 0;
+		for(int i=1; i<count; i++){
+			if(areas[i]>areas[indexOfBiggestParticle])
+				indexOfBiggestParticle = i;
+		}
+
+		wand.autoOutline(firstPixels[indexOfBiggestParticle]%width, firstPixels[indexOfBiggestParticle]/width,
+				lowerThreshold, upperThreshold, Wand.LEGACY_MODE);
+		biggestParticleRoi = new PolygonRoi(Arrays.copyOf(wand.xpoints, wand.npoints), Arrays.copyOf(wand.ypoints, wand.npoints),
+				wand.npoints, Roi.TRACED_ROI);
+
+		biggestParticleMask = getParticleMask(indexOfBiggestParticle);
+		biggestParticleAspectRatio = getAspectRatio(biggestParticleMask);
+	}
+
+
+
+	/**
+	 * Flood fills the component starting at the given pixel, and records it as a particle if it's big enough
+	 * @param firstPixel
+	 * @param label
+	 */
+	private void labelComponent(int firstPixel, int label){
+
+		int area = 0;
+		int minX = width, minY = height, maxX = -1, maxY = -1;
+		double sum = 0, xSum = 0, ySum = 0;
+
+		int stackSize = 0;
+		stack[stackSize++] = firstPixel;
+		labels[firstPixel] = label;
+
+		while(stackSize>0){
+			int pixel = stack[--stackSize];
+			int x = pixel%width;
+			int y = pixel/width;
+
+			area++;
+			if(x<minX) minX = x;
+			if(x>maxX) maxX = x;
+			if(y<minY) minY = y;
+			if(y>maxY) maxY = y;
+
+			//same as ImageJ, so that pixels of zero value don't lead to a division by zero
+			double value = (pixels[pixel]&0xFF) + Double.MIN_VALUE;
+			sum += value;
+			xSum += x*value;
+			ySum += y*value;
+
+			//push the 8 neighbours that are inside and not labelled yet
+			for(int ny=Math.max(y-1, 0); ny<=Math.min(y+1, height-1); ny++){
+				for(int nx=Math.max(x-1, 0); nx<=Math.min(x+1, width-1); nx++){
+					int neighbour = ny*width + nx;
+					if(labels[neighbour]==0 && isInside(neighbour)){
+						labels[neighbour] = label;
+						stack[stackSize++] = neighbour;
+					}
+				}
+			}
+		}
+
+		if(area<minSize)
+			return;
+
+		if(count==areas.length)
+			growArrays();
+
+		particleLabels[count] = label;
+		firstPixels[count] = firstPixel;
+		areas[count] = area;
+		centersOfMassX[count] = (float) (xSum/sum + 0.5);
+		centersOfMassY[count] = (float) (ySum/sum + 0.5);
+		boundsX[count] = minX;
+		boundsY[count] = minY;
+		boundsWidth[count] = maxX - minX + 1;
+		boundsHeight[count] = maxY - minY + 1;
+		count++;
+	}
+
+
+	/**
+	 * Returns true if this pixel is within the threshold levels
+	 * @param pixel
+	 * @return
+	 */
+	private boolean isInside(int pixel){
+		int value = pixels[pixel]&0xFF;
+		return(value>=lowerThreshold && value<=upperThreshold);
+	}
+
+
+	/**
+	 * Returns a mask the size of the particle's bounding rectangle, 255 for the pixels of the particle, 0 everywhere else
+	 * @param index
+	 * @return
+	 */
+	private ByteProcessor getParticleMask(int index){
+		int maskWidth = boundsWidth[index];
+		int maskHeight = boundsHeight[index];
+		int label = particleLabels[index];
+
+		ByteProcessor mask = new ByteProcessor(maskWidth, maskHeight);
+		byte[] maskPixels = (byte[]) mask.getPixels();
+
+		for(int y=0; y<maskHeight; y++){
+			int offset = (boundsY[index]+y)*width + boundsX[index];
+			for(int x=0; x<maskWidth; x++){
+				if(labels[offset+x]==label)
+					maskPixels[y*maskWidth+x] = (byte) 255;
+			}
+		}
+		return(mask);
+	}
+
+
+	/**
+	 * Returns the ratio of the major to the minor axis of the ellipse fitted to the mask, just like ImageJ's AR.
+	 * As in the particle analyzer, particles only one pixel wide or high are fitted by their bounding rectangle.
+	 * @param mask
+	 * @return
+	 */
+	private static float getAspectRatio(ByteProcessor mask){
+		int maskWidth = mask.getWidth();
+		int maskHeight = mask.getHeight();
+
+		if(maskWidth<=1 || maskHeight<=1){
+			return((float) Math.max(maskWidth, maskHeight) / Math.min(maskWidth, maskHeight));
+		}
+
+		ByteProcessor fitProcessor = new ByteProcessor(maskWidth, maskHeight);
+		fitProcessor.setMask(mask);
+		EllipseFitter ellipseFitter = new EllipseFitter();
+		ellipseFitter.fit(fitProcessor, null);
+
+		return((float) (ellipseFitter.major/ellipseFitter.minor));
+	}
+
+
+	/**
+	 * Returns the perimeter of an outline traced by the wand, the same way PolygonRoi does it for traced ROIs:
+	 * the length of the outline, with a correction for every corner.
+	 * @param xpoints
+	 * @param ypoints
+	 * @param npoints
+	 * @return
+	 */
+	private static double getTracedPerimeter(int[] xpoints, int[] ypoints, int npoints){
+		if(npoints==0)
+			return(0);
+
+		int sumdx = 0;
+		int sumdy = 0;
+		int nCorners = 0;
+		int dx1 = xpoints[0] - xpoints[npoints-1];
+		int dy1 = ypoints[0] - ypoints[npoints-1];
+		int side1 = Math.abs(dx1) + Math.abs(dy1); //one of these is 0
+		boolean corner = false;
+
+		for(int i=0; i<npoints; i++){
+			int nexti = i+1;
+			if(nexti==npoints)
+				nexti = 0;
+			int dx2 = xpoints[nexti] - xpoints[i];
+			int dy2 = ypoints[nexti] - ypoints[i];
+			sumdx += Math.abs(dx1);
+			sumdy += Math.abs(dy1);
+			int side2 = Math.abs(dx2) + Math.abs(dy2);
+			if(side1>1 || !corner){
+				corner = true;
+				nCorners++;
+			}
+			else
+				corner = false;
+			dx1 = dx2;
+			dy1 = dy2;
+			side1 = side2;
+		}
+
+		return(sumdx + sumdy - (nCorners*(2.0-Math.sqrt(2.0))));
+	}
+
+
+	/**
+	 * doubles the size of the measurement arrays
+	 */
+	private void growArrays(){
+		int newLength = areas.length*2;
+
+		particleLabels = Arrays.copyOf(particleLabels, newLength);
+		firstPixels = Arrays.copyOf(firstPixels, newLength);
+		areas = Arrays.copyOf(areas, newLength);
+		perimeters = Arrays.copyOf(perimeters, newLength);
+		circularities = Arrays.copyOf(circularities, newLength);
+		centersOfMassX = Arrays.copyOf(centersOfMassX, newLength);
+		centersOfMassY = Arrays.copyOf(centersOfMassY, newLength);
+		boundsX = Arrays.copyOf(boundsX, newLength);
+		boundsY = Arrays.copyOf(boundsY, newLength);
+		boundsWidth = Arrays.copyOf(boundsWidth, newLength);
+		boundsHeight = Arrays.copyOf(boundsHeight, newLength);
+	}
+
+
+
+	/**
+	 * Returns the number of particles found
+	 * @return
+	 */
+	public int getCount(){
+		return(count);
+	}
+
+	/**
+	 * Returns the index of the particle with the largest area (the first one, if there's a tie), or -1 if there were no particles
+	 * @return
+	 */
+	public int getIndexOfBiggestParticle(){
+		return(indexOfBiggestParticle);
+	}
+
+	/**
+	 * The following return the measurement arrays themselves, only the first getCount() elements are valid
+	 */
+	public int[] getAreas(){
+		return(areas);
+	}
+
+	public float[] getPerimeters(){
+		return(perimeters);
+	}
+
+	public float[] getCircularities(){
+		return(circularities);
+	}
+
+	public float[] getCentersOfMassX(){
+		return(centersOfMassX);
+	}
+
+	public float[] getCentersOfMassY(){
+		return(centersOfMassY);
+	}
+
+	public int[] getBoundsX(){
+		return(boundsX);
+	}
+
+	public int[] getBoundsY(){
+		return(boundsY);
+	}
+
+	public int[] getBoundsWidth(){
+		return(boundsWidth);
+	}
+
+	public int[] getBoundsHeight(){
+		return(boundsHeight);
+	}
+
+	/**
+	 * Returns the bounding rectangle of the given particle
+	 * @param index
+	 * @return
+	 */
+	public Rectangle getBounds(int index){
+		return(new Rectangle(boundsX[index], boundsY[index], boundsWidth[index], boundsHeight[index]));
+	}
+
+	/**
+	 * Returns the traced outline of the biggest particle, the same ROI the particle analyzer would give for it
+	 * @return
+	 */
+	public Roi getBiggestParticleRoi(){
+		return(biggestParticleRoi);
+	}
+
+	/**
+	 * Returns the mask of the biggest particle, the size of it's bounding rectangle, 255 inside the particle.
+	 * Unlike the traced ROI, any holes in the particle are left out of the mask.
+	 * @return
+	 */
+	public ByteProcessor getBiggestParticleMask(){
+		return(biggestParticleMask);
+	}
+
+	/**
+	 * Returns the aspect ratio of the ellipse fitted to the biggest particle
+	 * @return
+	 */
+	public float getBiggestParticleAspectRatio(){
+		return(biggestParticleAspectRatio);
+	}
+}
@@ -0,0 +1,512 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.Overlay;
+import ij.gui.Roi;
+import ij.gui.ShapeRoi;
+import ij.io.FileSaver;
+import ij.plugin.JpegWriter;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * This class saves the diagnostic pictures (the grid pictures and the colony pictures of debug mode) in the background.
+ * The picture is copied when it's handed over, so the plate can go on (and its pictures can be changed or flushed)
+ * while the JPEG is encoded and written to disk by a single writer thread.
+ * <br>
+ * The pictures wait for the writer in a short queue: if the plates are processed faster than their pictures are saved,
+ * whoever hands over a picture waits for a free place, instead of piling up full-size copies in memory.
+ * <br>
+ * With the default settings the files are exactly the ones FileSaver.saveAsJpeg writes.
+ *
+ * @author George Kritikos
+ *
+ */
+public class DiagnosticImageWriter {
+
+	/**
+	 * the JPEG quality (0-100) of all the pictures saved here
+	 */
+	public static int jpegQuality = FileSaver.getJpegQuality();
+
+	/**
+	 * the pictures saved with savePicture (i.e. the grid pictures) are scaled down by this factor, 1 keeps them at full size
+	 */
+	public static double pictureScale = 1.0;
+
+	/**
+	 * if set to true, the colony pictures of each plate are put together in a single picture (see finishColonyPictures),
+	 * instead of one file per colony
+	 */
+	public static boolean packColonyPictures = false;
+
+	/**
+	 * if set to true, the colony outlines are not painted on the grid pictures, but saved next to them as an SVG file
+	 * (see ColonyOutlines), which shows them on top of the grid picture
+	 */
+	public static boolean vectorOutlines = false;
+
+	/**
+	 * the number of pictures that can wait for the writer
+	 */
+	private static final int QUEUE_CAPACITY = 8;
+
+	/**
+	 * the pictures waiting to be saved, the writer thread and queue are started the first time they're needed
+	 */
+	private static BlockingQueue<PictureToSave> queue = null;
+
+	/**
+	 * the number of pictures handed over that haven't been saved yet, including the one being saved
+	 */
+	private static int pendingPictures = 0;
+
+	/**
+	 * the colony pictures waiting to be packed, by the plate picture they came from
+	 */
+	private static IdentityHashMap<ImagePlus, List<ColonyPicture>> colonyPicturesByPlate = new IdentityHashMap<ImagePlus, List<ColonyPicture>>();
+
+
+
+	/**
+	 * Something that the writer thread will save
+	 */
+	private static abstract class PictureToSave {
+		abstract void save();
+	}
+
+
+	/**
+	 * A colony picture waiting to be packed, and the filename it would have had on its own
+	 */
+	private static class ColonyPicture {
+		final ImageProcessor picture;
+		final String filename;
+
+		ColonyPicture(ImageProcessor picture_, String filename_){
+			picture = picture_;
+			filename = filename_;
+		}
+	}
+
+
+
+	/**
+	 * Saves the picture as a JPEG in the background, scaled down by pictureScale.
+	 * The picture can be changed or flushed as soon as this returns.
+	 * @param inputImage
+	 * @param path
+	 */
+	public static void savePicture(ImagePlus inputImage, String path){
+		final ImagePlus snapshot = getSnapshot(inputImage);
+		final String filename = path;
+		final int quality = jpegQuality;
+		final double scale = pictureScale;
+		final boolean overlayAsSvg = vectorOutlines && snapshot.getOverlay()!=null;
+
+		enqueue(new PictureToSave() {
+			void save() {
+				if(overlayAsSvg){
+					//the overlay goes in its own file, the picture is saved without it
+					Overlay overlay = snapshot.getOverlay();
+					snapshot.setOverlay(null);
+					writeSvg(overlay, snapshot.getWidth(), snapshot.getHeight(), filename);
+				}
+				writeJpeg(scaleDown(snapshot, scale), filename, quality);
+			}
+		});
+	}
+
+
+	/**
+	 * Saves the picture of a single colony in the background, at full size.
+	 * If packColonyPictures is set, the picture is only kept until finishColonyPictures is called for the same plate picture.
+	 * @param plateImage the picture the colony picture was cut out of
+	 * @param colonyImage
+	 * @param path
+	 */
+	public static void saveColonyPicture(ImagePlus plateImage, ImagePlus colonyImage, String path){
+		if(!packColonyPictures){
+			final ImagePlus snapshot = getSnapshot(colonyImage);
+			final String filename = path;
+			final int quality = jpegQuality;
+
+			enqueue(new PictureToSave() {
+				void save() {
+					writeJpeg(snapshot, filename, quality);
+				}
+			});
+			return;
+		}
+
+		ColonyPicture colonyPicture = new ColonyPicture(colonyImage.getProcessor().duplicate(), path);
+		synchronized (colonyPicturesByPlate) {
+			List<ColonyPicture> colonyPictures = colonyPicturesByPlate.get(plateImage);
+			if(colonyPictures==null){
+				colonyPictures = new ArrayList<ColonyPicture>();
+				colonyPicturesByPlate.put(plateImage, colonyPictures);
+			}
+			colonyPictures.add(colonyPicture);
+		}
+	}
+
+
+	/**
+	 * If packColonyPictures is set, this saves all the colony pictures of the given plate picture side by side, in a single JPEG,
+	 * and next to it a text file (same filename plus .txt) with the filename each colony picture would have had
+	 * and where it is in the packed picture. Nothing is saved if there are no colony pictures for this plate.
+	 * @param plateImage the picture the colony pictures were cut out of
+	 * @param path
+	 */
+	public static void finishColonyPictures(ImagePlus plateImage, String path){
+		final List<ColonyPicture> colonyPictures;
+		synchronized (colonyPicturesByPlate) {
+			colonyPictures = colonyPicturesByPlate.remove(plateImage);
+		}
+		if(colonyPictures==null || colonyPictures.isEmpty())
+			return;
+
+		final String filename = path;
+		final int quality = jpegQuality;
+
+		enqueue(new PictureToSave() {
+			void save() {
+				saveColonyAtlas(colonyPictures, filename, quality);
+			}
+		});
+	}
+
+
+	/**
+	 * Returns when all the pictures handed over so far have been saved
+	 */
+	public static void waitForPendingWrites(){
+		synchronized (DiagnosticImageWriter.class) {
+			while(pendingPictures>0){
+				try {
+					DiagnosticImageWriter.class.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+
+
+	/**
+	 * Returns a copy of the picture, with its own pixels (and overlay, if any) that nobody else will touch
+	 */
+	private static ImagePlus getSnapshot(ImagePlus inputImage){
+		ImagePlus snapshot = new ImagePlus(inputImage.getTitle(), inputImage.getProcessor().duplicate());
+
+		Overlay overlay = inputImage.getOverlay();
+		if(overlay!=null && !inputImage.getHideOverlay())
+			snapshot.setOverlay(overlay.duplicate());
+
+		return(snapshot);
+	}
+
+
+	/**
+	 * Returns the picture scaled down by the given factor (with any overlay drawn on it), or the picture itself if the factor is 1 or more
+	 */
+	private static ImagePlus scaleDown(ImagePlus picture, double scale){
+		if(scale>=1.0 || scale<=0.0)
+			return(picture);
+
+		if(picture.getOverlay()!=null)
+			picture = picture.flatten();
+
+		ImageProcessor processor = picture.getProcessor();
+		int width = Math.max(1, (int) Math.round(processor.getWidth()*scale));
+		int height = Math.max(1, (int) Math.round(processor.getHeight()*scale));
+
+		processor.setInterpolationMethod(ImageProcessor.BILINEAR);
+		return(new ImagePlus(picture.getTitle(), processor.resize(width, height, true)));
+	}
+
+
+	/**
+	 * Puts the colony pictures side by side in a grid of equal cells (the size of the biggest picture),
+	 * saves that, and writes where each of them is in the index file
+	 */
+	private static void saveColonyAtlas(List<ColonyPicture> colonyPictures, String path, int quality){
+		//1. get the size of the cells
+		int cellWidth = 1;
+		int cellHeight = 1;
+		for (ColonyPicture colonyPicture : colonyPictures) {
+			cellWidth = Math.max(cellWidth, colonyPicture.picture.getWidth());
+			cellHeight = Math.max(cellHeight, colonyPicture.picture.getHeight());
+		}
+
+		int numberOfColumns = (int) Math.ceil(Math.sqrt(colonyPictures.size()));
+		int numberOfRows = (colonyPictures.size()+numberOfColumns-1)/numberOfColumns;
+
+		//2. copy every picture in its cell, row by row
+		ColorProcessor atlas = new ColorProcessor(numberOfColumns*cellWidth, numberOfRows*cellHeight);
+		StringBuilder index = new StringBuilder("#filename\tx\ty\twidth\theight\n");
+
+		for(int i=0; i<colonyPictures.size(); i++){
+			ColonyPicture colonyPicture = colonyPictures.get(i);
+			int x = (i%numberOfColumns)*cellWidth;
+			int y = (i/numberOfColumns)*cellHeight;
+
+			atlas.insert(colonyPicture.picture.convertToRGB(), x, y);
+
+			index.append(new File(colonyPicture.filename).getName()).append('\t')
+			.append(x).append('\t').append(y).append('\t')
+			.append(colonyPicture.picture.getWidth()).append('\t').append(colonyPicture.picture.getHeight()).append('\n');
+		}
+
+		//3. save the picture and the index
+		writeJpeg(new ImagePlus(new File(path).getName(), atlas), path, quality);
+
+		BufferedWriter indexFile = null;
+		try {
+			indexFile = new BufferedWriter(new FileWriter(path + ".txt"));
+			indexFile.write(index.toString());
+		} catch (IOException e) {
+			System.err.println("Could not write the colony picture index " + path + ".txt");
+		} finally {
+			if(indexFile!=null){
+				try {
+					indexFile.close();
+				} catch (IOException e) {
+					System.err.println("Could not write the colony picture index " + path + ".txt");
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Saves the ROIs of the overlay as the outlines of an SVG file (path plus .svg), drawn over the picture saved in path.
+	 * The coordinates are those of the full size picture, even if the picture itself is saved scaled down.
+	 */
+	private static void writeSvg(Overlay overlay, int width, int height, String path){
+		StringBuilder svg = new StringBuilder();
+		svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"")
+		.append(" width=\"").append(width).append("\" height=\"").append(height)
+		.append("\" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">\n");
+		svg.append("<image xlink:href=\"").append(new File(path).getName())
+		.append("\" width=\"").append(width).append("\" height=\"").append(height).append("\"/>\n");
+
+		for(int i=0; i<overlay.size(); i++){
+			Roi roi = overlay.get(i);
+			Color color = roi.getStrokeColor()!=null ? roi.getStrokeColor() : Color.cyan;
+
+			svg.append("<path fill=\"none\" stroke=\"").append(String.format("#%06x", color.getRGB()&0xffffff))
+			.append("\" d=\"").append(getSvgPath(roi)).append("\"/>\n");
+		}
+		svg.append("</svg>\n");
+
+		BufferedWriter svgFile = null;
+		try {
+			svgFile = new BufferedWriter(new FileWriter(path + ".svg"));
+			svgFile.write(svg.toString());
+		} catch (IOException e) {
+			System.err.println("Could not write the outlines file " + path + ".svg");
+		} finally {
+			if(svgFile!=null){
+				try {
+					svgFile.close();
+				} catch (IOException e) {
+					System.err.println("Could not write the outlines file " + path + ".svg");
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the outline of the ROI as the path data of an SVG path element
+	 */
+	private static String getSvgPath(Roi roi){
+		Shape shape;
+		if(roi instanceof ShapeRoi){
+			//the shape of a ShapeRoi is relative to its bounding rectangle
+			Rectangle bounds = roi.getBounds();
+			shape = AffineTransform.getTranslateInstance(bounds.x, bounds.y).createTransformedShape(((ShapeRoi) roi).getShape());
+		}
+		else{
+			shape = roi.getPolygon();
+		}
+
+		//the traced outlines are made of horizontal and vertical steps of whole pixels,
+		//so the lines are written relative to the previous point (h, v or l), which keeps the file small
+		StringBuilder path = new StringBuilder();
+		float[] coordinates = new float[6];
+		float lastX = 0;
+		float lastY = 0;
+		float moveX = 0;
+		float moveY = 0;
+
+		for(PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()){
+			int segmentType = iterator.currentSegment(coordinates);
+
+			switch(segmentType){
+			case PathIterator.SEG_MOVETO:
+				path.append('M');
+				appendCoordinates(path, coordinates, 2);
+				moveX = coordinates[0];
+				moveY = coordinates[1];
+				break;
+			case PathIterator.SEG_LINETO:
+				float dx = coordinates[0]-lastX;
+				float dy = coordinates[1]-lastY;
+				if(dy==0){
+					path.append('h');
+					appendCoordinates(path, new float[]{dx}, 1);
+				}
+				else if(dx==0){
+					path.append('v');
+					appendCoordinates(path, new float[]{dy}, 1);
+				}
+				else{
+					path.append('l');
+					appendCoordinates(path, new float[]{dx, dy}, 2);
+				}
+				break;
+			case PathIterator.SEG_QUADTO:
+				path.append('Q');
+				appendCoordinates(path, coordinates, 4);
+				break;
+			case PathIterator.SEG_CUBICTO:
+				path.append('C');
+				appendCoordinates(path, coordinates, 6);
+				break;
+			case PathIterator.SEG_CLOSE:
+				path.append('Z');
+				break;
+			}
+
+			//the end point of the segment is the last pair of coordinates, a close goes back to where the last move went
+			if(segmentType==PathIterator.SEG_CLOSE){
+				lastX = moveX;
+				lastY = moveY;
+			}
+			else{
+				int numberOfCoordinates = segmentType==PathIterator.SEG_QUADTO ? 4 : segmentType==PathIterator.SEG_CUBICTO ? 6 : 2;
+				lastX = coordinates[numberOfCoordinates-2];
+				lastY = coordinates[numberOfCoordinates-1];
+			}
+		}
+
+		return(path.toString());
+	}
+
+
+	/**
+	 * Appends the first numberOfCoordinates coordinates, separated by spaces,
+	 * whole numbers without decimals and anything else rounded to 1/100 of a pixel
+	 */
+	private static void appendCoordinates(StringBuilder path, float[] coordinates, int numberOfCoordinates){
+		for(int i=0; i<numberOfCoordinates; i++){
+			if(i>0)
+				path.append(' ');
+			float coordinate = Math.round(coordinates[i]*100)/100f;
+			if(coordinate==(int) coordinate)
+				path.append((int) coordinate);
+			else
+				path.append(coordinate);
+		}
+	}
+
+
+	/**
+	 * This is what FileSaver.saveAsJpeg does, without touching the original picture
+	 */
+	private static void writeJpeg(ImagePlus picture, String path, int quality){
+		JpegWriter.save(picture, path, quality);
+	}
+
+
+
+	/**
+	 * Hands the picture over to the writer thread, waiting for a free place in the queue if needed
+	 */
+	private static void enqueue(PictureToSave pictureToSave){
+		BlockingQueue<PictureToSave> writerQueue = getQueue();
+
+		synchronized (DiagnosticImageWriter.class) {
+			pendingPictures++;
+		}
+
+		try {
+			writerQueue.put(pictureToSave);
+		} catch (InterruptedException e) {
+			//save it here, rather than lose it
+			Thread.currentThread().interrupt();
+			saveAndCountDown(pictureToSave);
+		}
+	}
+
+
+	/**
+	 * Returns the queue of the writer thread, starting the thread the first time
+	 */
+	private static synchronized BlockingQueue<PictureToSave> getQueue(){
+		if(queue!=null)
+			return(queue);
+
+		queue = new ArrayBlockingQueue<PictureToSave>(QUEUE_CAPACITY);
+		final BlockingQueue<PictureToSave> writerQueue = queue;
+
+		Thread writerThread = new Thread(new Runnable() {
+			public void run() {
+				while(true){
+					try {
+						saveAndCountDown(writerQueue.take());
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "Iris diagnostic image writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		//the writer doesn't keep Iris running, so make sure whatever is still in the queue gets saved on the way out
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				waitForPendingWrites();
+			}
+		}));
+
+		return(queue);
+	}
+
+
+	private static void saveAndCountDown(PictureToSave pictureToSave){
+		try {
+			pictureToSave.save();
+		} catch (Exception e) {
+			System.err.println("Could not save diagnostic picture: " + e);
+		} finally {
+			synchronized (DiagnosticImageWriter.class) {
+				pendingPictures--;
+				DiagnosticImageWriter.class.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Point;
+import java.awt.geom.Ellipse2D;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class finds circles in a black and white tile picture with the Hough transform, like Hough_Circles does,
+ * but only the pixels on the edge of the objects vote, and only for centers along their edge normal
+ * (the direction of the brightness gradient, found with the Sobel operator), instead of all around them.
+ * <br>
+ * The votes are counted in an int array that every thread keeps from tile to tile. It only grows,
+ * and only the part the current tile needs is cleared.
+ * The r*cos, r*sin look-up table of each radius range is calculated once and shared by all the tiles.
+ *
+ * @author George Kritikos
+ *
+ */
+public class GradientHoughTransform {
+
+	/**
+	 * the number of gradient directions the look-up tables have
+	 */
+	private static final int NUMBER_OF_ANGLES = 64;
+
+	/**
+	 * each edge pixel votes for the directions this many steps either side of it's gradient direction,
+	 * since the Sobel directions of a pixelated edge are only roughly right
+	 */
+	private static final int ANGLE_SPREAD = 2;
+
+	/**
+	 * the look-up tables made so far, by radius range (see getLookUpTable)
+	 */
+	private static ConcurrentHashMap<String, int[][]> lookUpTables = new ConcurrentHashMap<String, int[][]>();
+
+	/**
+	 * the vote accumulator of each thread, as big as the biggest tile that thread has seen so far
+	 */
+	private static final ThreadLocal<int[]> accumulator = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return(new int[0]);
+		}
+	};
+
+
+
+	/**
+	 * This function will find the biggest circle that fits in the picture, out of the best maxCircles circles found.
+	 * The picture should be black and white (e.g. a thresholded tile), the edges of the objects are found here.
+	 * The circle is given just like Hough_Circles.my_run does: x and y are the center of the circle (in the coordinates
+	 * of the selection, if any), and the width and height are the diameter.
+	 * @param binaryImage
+	 * @param radiusMin
+	 * @param radiusMax
+	 * @param radiusInc
+	 * @param maxCircles
+	 * @return the circle, or null if the radius range is empty
+	 */
+	public static Ellipse2D findBiggestCircle(ImageProcessor binaryImage, int radiusMin, int radiusMax, int radiusInc, int maxCircles){
+
+		int depth = ((radiusMax-radiusMin)/radiusInc)+1;
+		if(depth<1 || maxCircles<1)
+			return(null);
+
+		//0. get the pixels of the selection
+		ImageProcessor area = binaryImage.crop();
+		if(!(area instanceof ByteProcessor))
+			area = area.convertToByte(false);
+		byte[] pixels = (byte[]) area.getPixels();
+		int width = area.getWidth();
+		int height = area.getHeight();
+
+		int[][] lookUpTable = getLookUpTable(radiusMin, radiusMax, radiusInc);
+
+		int[] houghValues = getAccumulator(width*height*depth);
+
+		//1. let the edge pixels vote
+		houghTransform(pixels, width, height, lookUpTable, depth, houghValues);
+
+		//2. get the best circles, and keep the biggest one that is inside the picture
+		Point[] centers = new Point[maxCircles];
+		int[] radius = new int[maxCircles];
+		int[] votes = new int[maxCircles];
+		getCenterPoints(houghValues, width, height, radiusMin, radiusInc, depth, centers, radius, votes);
+
+		int maxIndex = getIndexOfMaximumCircleInbounds(radius, votes, centers, width, height);
+
+		return(new Ellipse2D.Double(centers[maxIndex].x, centers[maxIndex].y, 2*radius[maxIndex], 2*radius[maxIndex]));
+	}
+
+
+	/**
+	 * Returns the accumulator of the calling thread, with (at least) the first size votes set to zero.
+	 * A new, bigger accumulator is only made when this tile needs more room than any tile before it.
+	 */
+	private static int[] getAccumulator(int size){
+		int[] houghValues = accumulator.get();
+
+		if(houghValues.length<size){
+			houghValues = new int[size];
+			accumulator.set(houghValues);
+		}
+		else{
+			Arrays.fill(houghValues, 0, size, 0);
+		}
+
+		return(houghValues);
+	}
+
+
+	/**
+	 * Returns the look-up table of the given radius range: for radius index r, the pair (rcos, rsin)
+	 * of direction a is in table[r][2*a], table[r][2*a+1]
+	 */
+	private static int[][] getLookUpTable(int radiusMin, int radiusMax, int radiusInc){
+		String key = radiusMin + "," + radiusMax + "," + radiusInc;
+
+		int[][] lookUpTable = lookUpTables.get(key);
+		if(lookUpTable==null){
+			int depth = ((radiusMax-radiusMin)/radiusInc)+1;
+			lookUpTable = new int[depth][2*NUMBER_OF_ANGLES];
+
+			for(int indexR=0; indexR<depth; indexR++){
+				int radius = radiusMin + indexR*radiusInc;
+				for(int a=0; a<NUMBER_OF_ANGLES; a++){
+					double angle = (2*Math.PI * a) / NUMBER_OF_ANGLES;
+					lookUpTable[indexR][2*a] = (int) Math.round(radius * Math.cos(angle));
+					lookUpTable[indexR][2*a+1] = (int) Math.round(radius * Math.sin(angle));
+				}
+			}
+
+			lookUpTables.putIfAbsent(key, lookUpTable);
+		}
+
+		return(lookUpTable);
+	}
+
+
+	/**
+	 * Every pixel on an edge (where the Sobel gradient isn't zero) votes for the centers at each radius
+	 * along it's gradient, on both sides of the edge. The pixels on the picture border don't vote, just like in Hough_Circles.
+	 */
+	private static void houghTransform(byte[] pixels, int width, int height, int[][] lookUpTable, int depth, int[] houghValues){
+		int planeSize = width*height;
+
+		for(int y = 1; y < height-1; y++) {
+			for(int x = 1; x < width-1; x++) {
+				int i = y*width + x;
+
+				int topLeft = pixels[i-width-1]&0xFF, top = pixels[i-width]&0xFF, topRight = pixels[i-width+1]&0xFF;
+				int left = pixels[i-1]&0xFF, right = pixels[i+1]&0xFF;
+				int bottomLeft = pixels[i+width-1]&0xFF, bottom = pixels[i+width]&0xFF, bottomRight = pixels[i+width+1]&0xFF;
+
+				int gradientX = (topRight + 2*right + bottomRight) - (topLeft + 2*left + bottomLeft);
+				int gradientY = (bottomLeft + 2*bottom + bottomRight) - (topLeft + 2*top + topRight);
+
+				if(gradientX==0 && gradientY==0)
+					continue;//not an edge pixel
+
+				double angle = Math.atan2(gradientY, gradientX);
+				int direction = (int) Math.round(angle / (2*Math.PI) * NUMBER_OF_ANGLES);
+
+				for(int indexR = 0; indexR < depth; indexR++) {
+					int[] offsets = lookUpTable[indexR];
+					int planeStart = indexR*planeSize;
+
+					for(int spread = -ANGLE_SPREAD; spread <= ANGLE_SPREAD; spread++) {
+						int a = (direction + spread + NUMBER_OF_ANGLES) % NUMBER_OF_ANGLES;
+						int rcos = offsets[2*a];
+						int rsin = offsets[2*a+1];
+
+						//the center can be on either side of the edge
+						int centerX = x + rcos;
+						int centerY = y + rsin;
+						if(centerX>=0 && centerX<width && centerY>=0 && centerY<height)
+							houghValues[planeStart + centerY*width + centerX]++;
+
+						centerX = x - rcos;
+						centerY = y - rsin;
+						if(centerX>=0 && centerX<width && centerY>=0 && centerY<height)
+							houghValues[planeStart + centerY*width + centerX]++;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Finds the centers.length best circles, clearing the votes around each one before looking for the next,
+	 * the same way Hough_Circles does. The number of votes of each circle goes in votes.
+	 */
+	private static void getCenterPoints(int[] houghValues, int width, int height, int radiusMin, int radiusInc, int depth,
+			Point[] centers, int[] radius, int[] votes){
+
+		int xMax = 0;
+		int yMax = 0;
+		int rMax = 0;
+
+		for(int c = 0; c < centers.length; c++) {
+			int counterMax = -1;
+
+			for(int indexR = 0; indexR < depth; indexR++) {
+				int planeStart = indexR*width*height;
+				for(int i = 0; i < width*height; i++) {
+					if(houghValues[planeStart + i] > counterMax) {
+						counterMax = houghValues[planeStart + i];
+						xMax = i % width;
+						yMax = i / width;
+						rMax = radiusMin + indexR*radiusInc;
+					}
+				}
+			}
+
+			centers[c] = new Point(xMax, yMax);
+			radius[c] = rMax;
+			votes[c] = counterMax;
+
+			clearNeighbours(houghValues, width, height, depth, xMax, yMax, rMax);
+		}
+	}
+
+
+	/**
+	 * Clears the votes closer than radius/2 to a circle center found, at all radii
+	 */
+	private static void clearNeighbours(int[] houghValues, int width, int height, int depth, int x, int y, int radius){
+		double halfRadius = radius / 2.0F;
+		double halfSquared = halfRadius*halfRadius;
+
+		int y1 = Math.max((int) Math.floor(y - halfRadius), 0);
+		int y2 = Math.min((int) Math.ceil(y + halfRadius) + 1, height);
+		int x1 = Math.max((int) Math.floor(x - halfRadius), 0);
+		int x2 = Math.min((int) Math.ceil(x + halfRadius) + 1, width);
+
+		for(int indexR = 0; indexR < depth; indexR++) {
+			int planeStart = indexR*width*height;
+			for(int i = y1; i < y2; i++) {
+				for(int j = x1; j < x2; j++) {
+					if((j-x)*(j-x) + (i-y)*(i-y) < halfSquared) {
+						houghValues[planeStart + i*width + j] = 0;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the index of the biggest circle that lies completely inside the picture,
+	 * or 0 (the best circle) if none of them does.
+	 * Only the circles with at least half the votes of the best one are taken into account:
+	 * with the votes along the gradient, the weak circles are mostly made up of the rest of the edge pixels.
+	 */
+	private static int getIndexOfMaximumCircleInbounds(int[] radius, int[] votes, Point[] centers, int width, int height){
+		int[] candidateRadius = radius.clone();
+		for(int c=1; c<candidateRadius.length; c++){
+			if(2*votes[c] < votes[0])
+				candidateRadius[c] = 0;
+		}
+
+		for(int i=1; i<candidateRadius.length; i++){
+			int maxIndex = Toolbox.getIndexOfMaximumElement(candidateRadius);
+			if(candidateRadius[maxIndex]==0)
+				break;//no candidates left
+
+			if(centers[maxIndex].y - candidateRadius[maxIndex] < 0 ||
+					centers[maxIndex].y + candidateRadius[maxIndex] > height ||
+					centers[maxIndex].x - candidateRadius[maxIndex] < 0 ||
+					centers[maxIndex].x + candidateRadius[maxIndex] > width){
+				candidateRadius[maxIndex] = 0;
+				continue;
+			}
+
+			return(maxIndex);
+		}
+
+		return(0);
+	}
+}
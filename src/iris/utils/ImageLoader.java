@@ -0,0 +1,183 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.io.Opener;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * This class opens the plate pictures. IJ.openImage decodes a picture into an AWT image, which is then copied
+ * into a new pixel array, so for a moment there are two full-size copies of every picture in memory.
+ * Here the decoder writes straight into the array that ImageJ then uses.
+ * For profiles that always keep the same area of the picture, the decoder can also be asked for only that rectangle,
+ * so the rest of the picture is never held in memory.
+ * <br>
+ * Pictures that ImageIO can't read are opened by IJ.openImage, just like before.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ImageLoader {
+
+	/**
+	 * Opens the given picture, in color.
+	 * This gives exactly the same picture as IJ.openImage (grayscale JPEGs are opened as 8-bit pictures as well),
+	 * without the extra full-size copy.
+	 * Returns null if the picture could not be opened.
+	 * @param filename
+	 * @return
+	 */
+	public static ImagePlus openImage(String filename){
+		return(openImage(filename, null));
+	}
+
+
+	/**
+	 * Opens only the given rectangle of the picture, in color. This is the same picture Toolbox.cropImage would crop
+	 * out of the whole one (only the part of the rectangle inside the picture is kept, and a rectangle completely
+	 * outside it keeps the whole picture), but only the rectangle is ever decoded into memory.
+	 * A null region opens the whole picture, see openImage(String).
+	 * Returns null if the picture could not be opened.
+	 * @param filename
+	 * @param region
+	 * @return
+	 */
+	public static ImagePlus openImage(String filename, Rectangle region){
+
+		ImageReader reader = getReader(filename);
+		if(reader==null)
+			return(openImageWithImageJ(filename, region));
+
+		try{
+			//1. have the decoder write straight into an RGB int array, that's what ColorProcessor uses
+			ImageReadParam readParam = reader.getDefaultReadParam();
+			int width = reader.getWidth(0);
+			int height = reader.getHeight(0);
+
+			//keep only the part of the region inside the picture, just like Toolbox.cropImage
+			if(region!=null){
+				Rectangle bounds = region.intersection(new Rectangle(0, 0, width, height));
+				if(bounds.width>0 && bounds.height>0){
+					readParam.setSourceRegion(bounds);
+					width = bounds.width;
+					height = bounds.height;
+				}
+			}
+
+			//grayscale pictures (the decoder's first choice of type is 8-bit gray) are decoded into an 8-bit array instead
+			BufferedImage destination = null;
+			boolean isGrayscale = reader.getImageTypes(0).next().getBufferedImageType()==BufferedImage.TYPE_BYTE_GRAY;
+
+			if(isGrayscale){
+				destination = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			}
+			else{
+				destination = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			}
+			readParam.setDestination(destination);
+			reader.read(0, readParam);
+
+
+			//2. wrap the decoded pixels into an ImagePlus, without copying them
+			ImagePlus image = null;
+			if(isGrayscale){
+				byte[] pixels = ((DataBufferByte) destination.getRaster().getDataBuffer()).getData();
+				image = new ImagePlus(new File(filename).getName(), new ByteProcessor(width, height, pixels, null));
+			}
+			else{
+				int[] pixels = ((DataBufferInt) destination.getRaster().getDataBuffer()).getData();
+
+				//ImageJ keeps the (opaque) alpha bits in it's color pixels
+				for(int i=0; i<pixels.length; i++){
+					pixels[i] |= 0xff000000;
+				}
+
+				image = new ImagePlus(new File(filename).getName(), new ColorProcessor(width, height, pixels));
+
+				//same as IJ.openImage: a color JPEG that only has gray pixels (in the region opened) is opened as an 8-bit picture
+				Opener.convertGrayJpegTo8Bits(image);
+			}
+
+			return(image);
+		}
+		catch(Exception e){
+			//not a picture the ImageIO decoder can handle this way (e.g. one with transparency), leave it to ImageJ
+			return(openImageWithImageJ(filename, region));
+		}
+		finally{
+			disposeReader(reader);
+		}
+	}
+
+
+	/**
+	 * Opens the picture with IJ.openImage, then crops the given rectangle out of it (if not null)
+	 */
+	private static ImagePlus openImageWithImageJ(String filename, Rectangle region){
+		ImagePlus image = IJ.openImage(filename);
+		if(image==null || region==null)
+			return(image);
+
+		ImagePlus croppedImage = Toolbox.cropImage(image, region);
+		image.flush();
+		return(croppedImage);
+	}
+
+
+
+	/**
+	 * Returns an ImageIO reader, with the given picture as it's input, or null if there's no reader for that picture
+	 */
+	private static ImageReader getReader(String filename){
+		try{
+			ImageInputStream inputStream = ImageIO.createImageInputStream(new File(filename));
+			if(inputStream==null)
+				return(null);
+
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+			if(!readers.hasNext()){
+				inputStream.close();
+				return(null);
+			}
+
+			ImageReader reader = readers.next();
+			reader.setInput(inputStream, true, true);
+			return(reader);
+		}
+		catch(Exception e){
+			return(null);
+		}
+	}
+
+
+	/**
+	 * Closes the reader's input stream and frees any memory the decoder holds
+	 */
+	private static void disposeReader(ImageReader reader){
+		try{
+			Object input = reader.getInput();
+			if(input instanceof ImageInputStream)
+				((ImageInputStream) input).close();
+		}
+		catch(Exception e){
+			//nothing more to do
+		}
+		reader.dispose();
+	}
+}
@@ -0,0 +1,249 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+import java.util.Arrays;
+
+/**
+ * This class does the mean, Niblack and Sauvola local thresholds of Auto_Local_Threshold, without the
+ * 32-bit copies of the picture and the RankFilters passes it needs for every statistic.
+ * <br>
+ * The sum and sum of squares of every window come from running sums along the rows of the picture:
+ * each row is summed up once, and then the part of any row that falls in a window is just a difference of two sums.
+ * The windows are the same circles RankFilters uses (with the edge pixels repeated outside the picture),
+ * and the sums are exact integers, so the result is pixel for pixel the same as Auto_Local_Threshold's.
+ * <br>
+ * The picture is thresholded in place, in bands of rows that are spread over the tile pool (see TileExecutor).
+ *
+ * @author George Kritikos
+ *
+ */
+public class LocalThresholder {
+
+	/**
+	 * the number of rows in each band of the picture that is thresholded on it's own
+	 */
+	private static final int ROWS_PER_BAND = 32;
+
+
+	private enum Method { MEAN, NIBLACK, SAUVOLA }
+
+
+
+	/**
+	 * Same as Auto_Local_Threshold.Mean: a pixel is an object pixel if it is brighter than
+	 * the mean of the pixels around it minus cValue
+	 * @param grayscaleImage an 8-bit picture, it will be thresholded in place
+	 * @param radius
+	 * @param cValue
+	 * @param whiteObjects if true, objects become white (255) and the background black (0)
+	 */
+	public static void mean(ImagePlus grayscaleImage, int radius, int cValue, boolean whiteObjects){
+		threshold(grayscaleImage, radius, Method.MEAN, 0, cValue, whiteObjects);
+	}
+
+
+	/**
+	 * Same as Auto_Local_Threshold.Niblack: a pixel is an object pixel if it is brighter than
+	 * mean + kValue*standard deviation - cValue of the pixels around it.
+	 * Niblack recommends kValue = 0.2 for white objects and -0.2 for black objects.
+	 * @param grayscaleImage an 8-bit picture, it will be thresholded in place
+	 * @param radius
+	 * @param kValue
+	 * @param cValue
+	 * @param whiteObjects if true, objects become white (255) and the background black (0)
+	 */
+	public static void niblack(ImagePlus grayscaleImage, int radius, double kValue, int cValue, boolean whiteObjects){
+		threshold(grayscaleImage, radius, Method.NIBLACK, kValue, cValue, whiteObjects);
+	}
+
+
+	/**
+	 * Same as Auto_Local_Threshold's Sauvola: a pixel is an object pixel if it is brighter than
+	 * mean * (1 + kValue*(standard deviation/rValue - 1)) of the pixels around it.
+	 * Sauvola recommends kValue = 0.5 and rValue = 128.
+	 * @param grayscaleImage an 8-bit picture, it will be thresholded in place
+	 * @param radius
+	 * @param kValue
+	 * @param rValue
+	 * @param whiteObjects if true, objects become white (255) and the background black (0)
+	 */
+	public static void sauvola(ImagePlus grayscaleImage, int radius, double kValue, double rValue, boolean whiteObjects){
+		threshold(grayscaleImage, radius, Method.SAUVOLA, kValue, rValue, whiteObjects);
+	}
+
+
+
+	/**
+	 * Thresholds the whole picture (the selection is ignored, like Auto_Local_Threshold does)
+	 */
+	private static void threshold(ImagePlus grayscaleImage, int radius, final Method method, final double par1, final double par2, boolean whiteObjects){
+		ByteProcessor processor = (ByteProcessor) grayscaleImage.getProcessor();
+		final int width = processor.getWidth();
+		final int height = processor.getHeight();
+		final byte[] pixels = (byte[]) processor.getPixels();
+
+		final int[] lineRadii = getLineRadii(radius);
+		final byte object = whiteObjects ? (byte) 255 : (byte) 0;
+		final byte background = whiteObjects ? (byte) 0 : (byte) 255;
+
+		//1. the pixels are overwritten as we go, so the windows are read from a copy of the original
+		//(this and the band sums are plate-sized, so they are allocated per call rather than kept in ScratchBuffers)
+		final byte[] original = new byte[pixels.length];
+		System.arraycopy(pixels, 0, original, 0, pixels.length);
+
+		//2. threshold each band of rows
+		int numberOfBands = (height+ROWS_PER_BAND-1)/ROWS_PER_BAND;
+
+		TileExecutor.processAllTiles(numberOfBands, 1, new TileExecutor.TileTask() {
+			public void processTile(int band, int column) {
+				int firstRow = band*ROWS_PER_BAND;
+				int lastRow = Math.min(firstRow+ROWS_PER_BAND, height)-1;
+				thresholdBand(original, pixels, width, height, firstRow, lastRow, lineRadii, method, par1, par2, object, background);
+			}
+		});
+	}
+
+
+	/**
+	 * Thresholds rows firstRow...lastRow of the picture, writing them in pixels
+	 */
+	private static void thresholdBand(byte[] original, byte[] pixels, int width, int height, int firstRow, int lastRow,
+			int[] lineRadii, Method method, double par1, double par2, byte object, byte background){
+
+		int kRadius = lineRadii.length/2;
+		int kNPoints = getNumberOfPoints(lineRadii);
+		boolean squaresNeeded = method!=Method.MEAN;
+
+		//1. sum up every row this band's windows reach (from the left edge, with the edge pixels repeated kRadius times on each side)
+		int firstSummedRow = Math.max(firstRow-kRadius, 0);
+		int lastSummedRow = Math.min(lastRow+kRadius, height-1);
+		int sumsWidth = width + 2*kRadius + 1;
+		int numberOfSums = (lastSummedRow-firstSummedRow+1)*sumsWidth;
+
+		int[] sums = new int[numberOfSums];
+		//the squares may overflow an int for very wide pictures, but the difference of two of them
+		//(the sum of at most 2*kRadius+1 squares) is still right
+		int[] squareSums = squaresNeeded ? new int[numberOfSums] : null;
+
+		for(int y=firstSummedRow; y<=lastSummedRow; y++){
+			int rowStart = y*width;
+			int sumsStart = (y-firstSummedRow)*sumsWidth;
+			int sum = 0;
+			int squareSum = 0;
+			sums[sumsStart] = 0;
+			if(squaresNeeded)
+				squareSums[sumsStart] = 0;
+
+			for(int i=0; i<sumsWidth-1; i++){
+				int x = Math.min(Math.max(i-kRadius, 0), width-1);
+				int value = original[rowStart+x]&0xFF;
+				sum += value;
+				sums[sumsStart+i+1] = sum;
+				if(squaresNeeded){
+					squareSum += value*value;
+					squareSums[sumsStart+i+1] = squareSum;
+				}
+			}
+		}
+
+		//2. add up the windows of a whole row at a time, one line of the window after the other
+		//(this goes through the row sums in order, instead of jumping between rows for every pixel)
+		int[] windowSums = new int[width];
+		long[] windowSquareSums = squaresNeeded ? new long[width] : null;
+
+		for(int y=firstRow; y<=lastRow; y++){
+			Arrays.fill(windowSums, 0);
+			if(squaresNeeded)
+				Arrays.fill(windowSquareSums, 0);
+
+			for(int line=0; line<lineRadii.length; line++){
+				int windowRow = Math.min(Math.max(y+line-kRadius, 0), height-1);
+				int rowStart = (windowRow-firstSummedRow)*sumsWidth + kRadius;
+				int right = rowStart + lineRadii[line] + 1;
+				int left = rowStart - lineRadii[line];
+
+				for(int x=0; x<width; x++){
+					windowSums[x] += sums[right+x] - sums[left+x];
+				}
+				if(squaresNeeded){
+					for(int x=0; x<width; x++){
+						windowSquareSums[x] += squareSums[right+x] - squareSums[left+x];
+					}
+				}
+			}
+
+			//3. compare each pixel with it's window
+			for(int x=0; x<width; x++){
+				int sum = windowSums[x];
+				long squareSum = squaresNeeded ? windowSquareSums[x] : 0;
+
+				int i = y*width + x;
+				int value = original[i]&0xFF;
+
+				//these are the same (float) statistics and comparisons Auto_Local_Threshold makes
+				float mean = (float)((double)sum/kNPoints);
+				boolean isObject;
+
+				if(method==Method.MEAN){
+					isObject = value > (int)(mean - (int)par2);
+				}
+				else {
+					double sumAsDouble = sum;
+					float variance = (float)((squareSum - sumAsDouble*sumAsDouble/kNPoints)/kNPoints);
+
+					if(method==Method.NIBLACK)
+						isObject = value > (int)(mean + par1*Math.sqrt(variance) - (int)par2);
+					else
+						isObject = value > (int)(mean * (1.0 + par1*((Math.sqrt(variance)/par2) - 1.0)));
+				}
+
+				pixels[i] = isObject ? object : background;
+			}
+		}
+	}
+
+
+
+	/**
+	 * Returns how far the circular window reaches left and right on each of its rows (top to bottom),
+	 * the same circle as RankFilters makes for this radius
+	 * @param radius
+	 * @return
+	 */
+	private static int[] getLineRadii(double radius){
+		if(radius>=1.5 && radius<1.75)
+			radius = 1.75;
+		else if(radius>=2.5 && radius<2.85)
+			radius = 2.85;
+
+		int r2 = (int) (radius*radius) + 1;
+		int kRadius = (int) (Math.sqrt(r2+1e-10));
+
+		int[] lineRadii = new int[2*kRadius+1];
+		lineRadii[kRadius] = kRadius;
+		for(int y=1; y<=kRadius; y++){
+			int dx = (int) (Math.sqrt(r2-y*y+1e-10));
+			lineRadii[kRadius-y] = dx;
+			lineRadii[kRadius+y] = dx;
+		}
+
+		return(lineRadii);
+	}
+
+
+	/**
+	 * Returns the number of pixels in the window
+	 */
+	private static int getNumberOfPoints(int[] lineRadii){
+		int numberOfPoints = 0;
+		for(int dx : lineRadii){
+			numberOfPoints += 2*dx+1;
+		}
+		return(numberOfPoints);
+	}
+}
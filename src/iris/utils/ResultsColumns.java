@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package iris.utils;
+
+/**
+ * This class holds the columns of the .iris files, i.e. the header line of the table each profile writes.
+ * The profiles that measure the same things share the same columns, and the ones that measure more
+ * add their columns after those of a simpler profile, so every column name is written here once.
+ * See ResultsWriter for how the table is written.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ResultsColumns {
+
+	/**
+	 * the colony size alone
+	 */
+	public static final String[] SIZE = {
+		"row",
+		"column",
+		"size"
+	};
+
+	/**
+	 * the colony size, circularity and opacity, the output of most growth profiles
+	 */
+	public static final String[] GROWTH = join(SIZE,
+			"circularity",
+			"opacity");
+
+	/**
+	 * growth, along with the opacity of the center of the colony and of its most opaque 10% (the 384 opacity profiles)
+	 */
+	public static final String[] GROWTH_WITH_CENTER_OPACITY = join(GROWTH,
+			"center opacity",
+			"max 10% opacity");
+
+	/**
+	 * the colony and its biofilm (the color profiles)
+	 */
+	public static final String[] BIOFILM = {
+		"row",
+		"column",
+		"colony size",
+		"circularity",
+		"colony color intensity",
+		"biofilm area size",
+		"biofilm color intensity",
+		"biofilm area ratio"
+	};
+
+	/**
+	 * biofilm, along with the colony opacity and the color normalized in a few ways (Biofilm formation Ecoli)
+	 */
+	public static final String[] BIOFILM_ECOLI = join(BIOFILM,
+			"size normalized color intensity",
+			"mean sampled color intensity",
+			"average pixel saturation",
+			"opacity",
+			"max 10% opacity");
+
+	/**
+	 * Biofilm formation Ecoli Natural Isolates
+	 */
+	public static final String[] BIOFILM_ECOLI_NATURAL_ISOLATES = join(BIOFILM,
+			"size normalized color intensity",
+			"opacity");
+
+	/**
+	 * Biofilm formation PA
+	 */
+	public static final String[] BIOFILM_PA = join(BIOFILM,
+			"size normalized color intensity",
+			"mean sample color intensity",
+			"opacity");
+
+	/**
+	 * the colony and its morphology (wrinkles), the start of every morphology profile's table
+	 */
+	private static final String[] COLONY_MORPHOLOGY = {
+		"row",
+		"column",
+		"colony size",
+		"colony circularity",
+		"colony opacity",
+		"morphology score fixed circles",
+		"morphology score whole colony",
+		"normalized morphology score"
+	};
+
+	/**
+	 * the colony morphology, along with the growth inside the agar and the opacity of the whole tile (Morphology profile)
+	 */
+	public static final String[] MORPHOLOGY = join(COLONY_MORPHOLOGY,
+			"in agar size",
+			"in agar circularity",
+			"in agar opacity",
+			"whole tile opacity");
+
+	/**
+	 * morphology, along with the color of the colony (the 96-plate morphology profiles of Pseudomonas and Salmonella)
+	 */
+	public static final String[] MORPHOLOGY_AND_COLOR = join(MORPHOLOGY,
+			"colony color intensity",
+			"biofilm area size",
+			"biofilm color intensity",
+			"size normalized color intensity");
+
+	/**
+	 * the colony morphology and color, along with the size and morphology of the whole tile, without the in agar growth
+	 * (Morphology&Color profile)
+	 */
+	public static final String[] MORPHOLOGY_AND_COLOR_WHOLE_TILE = join(COLONY_MORPHOLOGY,
+			"colony color intensity",
+			"biofilm area size",
+			"biofilm color intensity",
+			"size normalized color intensity",
+			"brightness corrected size normalized color intensity",
+			"average pixel saturation",
+			"whole tile opacity",
+			"whole tile size",
+			"whole tile morphology fixed circles",
+			"whole tile morphology");
+
+	/**
+	 * the colony, and the dye in it and in its tile (CPRG profile)
+	 */
+	public static final String[] CPRG = {
+		"row",
+		"column",
+		"size",
+		"opacity",
+		"circularity",
+		"avg. dye intensity in colony",
+		"avg. dye intensity in tile",
+		"hsv avg. dye intensity in colony",
+		"hsv avg. dye intensity in tile"
+	};
+
+	/**
+	 * B.subtilis sporulation
+	 */
+	public static final String[] SPORULATION = {
+		"row",
+		"column",
+		"colony size",
+		"colony size round",
+		"circularity",
+		"sporulation score",
+		"sporulation score round",
+		"center sporulation score",
+		"center opacity score"
+	};
+
+
+
+	/**
+	 * Returns the columns given, followed by the more columns
+	 */
+	private static String[] join(String[] columns, String... moreColumns){
+		String[] joined = new String[columns.length + moreColumns.length];
+		System.arraycopy(columns, 0, joined, 0, columns.length);
+		System.arraycopy(moreColumns, 0, joined, columns.length, moreColumns.length);
+		return(joined);
+	}
+}
@@ -0,0 +1,332 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps the measurements of all the plates of a run in a single binary file, next to the .iris files.
+ * Every plate's table is stored column by column, each column an array of fixed-width integers,
+ * so that the file can be memory-mapped and a column of a plate read without parsing any text (see ResultsStoreReader).
+ * <br>
+ * The numbers are stored exactly as they were written in the .iris file: a number with 3 decimals is stored as
+ * the integer 1000 times bigger, and the number of decimals is kept with the column. NaN is stored as the smallest
+ * value of the column's type (each column of a plate takes as few bytes per value as its numbers need). Together with the comment lines at the top of the .iris file (also kept),
+ * this is enough to write the .iris file again, character for character (see ResultsStoreTool).
+ * <br>
+ * The numbers come straight from the ResultsWriter that wrote the table, the text of the .iris file is never read back here.
+ * <br>
+ * The layout of the file (all numbers little-endian, every plate and every column starting at a multiple of 8 bytes):
+ * <pre>
+ * "IRISRES1"                                    the magic, 8 bytes
+ * plate, plate, ...                             as the plates are finished, in no particular order
+ * plate index                                   for every plate: the offset of the plate in the file (int64),
+ *                                               its number of colonies (int32) and its number of columns (int32)
+ * footer                                        the offset of the plate index (int64), the number of plates (int32),
+ *                                               4 bytes of padding and "IRISIDX1"
+ *
+ * plate:
+ *   length of the plate in bytes (int64), number of colonies (int32), number of columns (int32),
+ *   offset of the first column from the start of the plate (int32),
+ *   the .iris filename, the text before the table, the text after the table (strings)
+ *   for every column: its name (string), its width in bytes (byte, 1, 2, 4 or 8), its number of decimals (byte)
+ *   padding, then the columns one after the other, each padded to a multiple of 8 bytes
+ *
+ * string: its length in bytes (int32), then the characters in UTF-8
+ * </pre>
+ * If the run didn't finish (no index), the plates can still be read one after the other, from their lengths.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ResultsStore {
+
+	/**
+	 * if set to true, the folder runs also write their results in a results store
+	 */
+	public static boolean enabled = false;
+
+	static final byte[] MAGIC = "IRISRES1".getBytes(Charset.forName("US-ASCII"));
+	static final byte[] INDEX_MAGIC = "IRISIDX1".getBytes(Charset.forName("US-ASCII"));
+	static final int FOOTER_SIZE = 24;
+	static final int INDEX_ENTRY_SIZE = 16;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * the file the plates are written to, null if no store is open
+	 */
+	private static FileChannel storeFile = null;
+
+	/**
+	 * where the next plate will be written
+	 */
+	private static long endOfFile = 0;
+
+	/**
+	 * the offset, number of colonies and number of columns of each plate written so far
+	 */
+	private static List<long[]> plateIndex = new ArrayList<long[]>();
+
+
+
+	/**
+	 * Creates the results store file, any store already open is closed first
+	 * @param filename
+	 * @return false if the file could not be created
+	 */
+	public static synchronized boolean open(String filename){
+		close();
+
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "rw");
+			file.setLength(0);
+			storeFile = file.getChannel();
+			writeFully(ByteBuffer.wrap(MAGIC), 0);
+			endOfFile = MAGIC.length;
+			plateIndex.clear();
+		} catch (IOException e) {
+			storeFile = null;
+			return(false);
+		}
+
+		return(true);
+	}
+
+
+	public static synchronized boolean isOpen(){
+		return(storeFile!=null);
+	}
+
+
+	/**
+	 * Adds the results of a plate to the store, if one is open.
+	 * The table is taken from the numbers it's writer kept, only the text before and after it is copied from the output.
+	 * @param irisFilename
+	 * @param output the contents of the .iris file
+	 * @param results the writer of the table in the output, null if the output has no table (then all of it is kept as text)
+	 */
+	public static void addPlate(String irisFilename, CharSequence output, ResultsWriter results){
+		if(!isOpen())
+			return;
+
+		if(results==null || !results.isKeepingValues()){
+			addPlate(irisFilename, output.toString(), new String[0], new int[0], new long[0][], 0, "");
+			return;
+		}
+
+		addPlate(irisFilename, output.subSequence(0, results.getTableStart()).toString(),
+				results.getColumnNames(), results.getDecimals(), results.getColumnValues(), results.getNumberOfRows(),
+				output.subSequence(results.getTableEnd(), output.length()).toString());
+	}
+
+
+	/**
+	 * Adds a plate to the store, if one is open.
+	 * The plate is put together on the calling thread, only the writing itself is done one plate at a time.
+	 * @param irisFilename
+	 * @param preamble the text of the .iris file before the header line of the table
+	 * @param columnNames
+	 * @param decimals the number of decimals of each column, -1 for a column that's all NaN
+	 * @param columns the values of each column, the number without it's decimal point (Long.MIN_VALUE for NaN)
+	 * @param numberOfColonies how many values of each column are used
+	 * @param postamble the text of the .iris file after the last colony that's in the columns
+	 */
+	public static void addPlate(String irisFilename, String preamble, String[] columnNames, int[] decimals, long[][] columns,
+			int numberOfColonies, String postamble){
+		if(!isOpen())
+			return;
+
+		ByteBuffer plate = encodePlate(irisFilename, preamble, columnNames, decimals, columns, numberOfColonies, postamble);
+
+		synchronized (ResultsStore.class) {
+			if(storeFile==null)
+				return;
+
+			try {
+				long offset = endOfFile;
+				writeFully(plate, offset);
+				endOfFile += plate.capacity();
+				plateIndex.add(new long[]{offset, plate.getInt(8), plate.getInt(12)});
+			} catch (IOException e) {
+				System.err.println("Could not write the results of " + irisFilename + " to the results store");
+			}
+		}
+	}
+
+
+	/**
+	 * Writes the plate index at the end of the store, and closes it
+	 */
+	public static synchronized void close(){
+		if(storeFile==null)
+			return;
+
+		try {
+			ByteBuffer index = ByteBuffer.allocate(plateIndex.size()*INDEX_ENTRY_SIZE + FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			for (long[] plate : plateIndex) {
+				index.putLong(plate[0]);
+				index.putInt((int) plate[1]);
+				index.putInt((int) plate[2]);
+			}
+			index.putLong(endOfFile);
+			index.putInt(plateIndex.size());
+			index.putInt(0);
+			index.put(INDEX_MAGIC);
+			index.flip();
+
+			writeFully(index, endOfFile);
+			storeFile.close();
+		} catch (IOException e) {
+			System.err.println("Could not finish writing the results store");
+		}
+
+		storeFile = null;
+		plateIndex.clear();
+	}
+
+
+
+	/**
+	 * Puts together a plate of the store
+	 */
+	static ByteBuffer encodePlate(String irisFilename, String preamble, String[] columnNames, int[] columnDecimals, long[][] columns,
+			int numberOfColonies, String postamble){
+
+		//1. columns where every value was NaN have no decimals of their own
+		int[] decimals = new int[columnDecimals.length];
+		for(int j=0; j<decimals.length; j++){
+			decimals[j] = Math.max(columnDecimals[j], 0);
+		}
+
+		//2. each column takes as few bytes per value as its biggest number needs (row and column fit in one)
+		int[] widths = new int[columnNames.length];
+		for(int j=0; j<columnNames.length; j++){
+			widths[j] = 1;
+			for(int i=0; i<numberOfColonies; i++){
+				while(columns[j][i]!=Long.MIN_VALUE && widths[j]<8 && !fitsIn(columns[j][i], widths[j]))
+					widths[j] *= 2;
+			}
+		}
+
+		//3. put it all together
+		byte[] filenameBytes = irisFilename.getBytes(UTF8);
+		byte[] preambleBytes = preamble.getBytes(UTF8);
+		byte[] postambleBytes = postamble.getBytes(UTF8);
+		byte[][] nameBytes = new byte[columnNames.length][];
+
+		int headerSize = 8+4+4+4 + 4+filenameBytes.length + 4+preambleBytes.length + 4+postambleBytes.length;
+		for(int j=0; j<columnNames.length; j++){
+			nameBytes[j] = columnNames[j].getBytes(UTF8);
+			headerSize += 4+nameBytes[j].length + 2;
+		}
+		int dataOffset = padTo8(headerSize);
+
+		long plateSize = dataOffset;
+		for(int j=0; j<columnNames.length; j++){
+			plateSize += padTo8(numberOfColonies*widths[j]);
+		}
+
+		ByteBuffer plate = ByteBuffer.allocate((int) plateSize).order(ByteOrder.LITTLE_ENDIAN);
+		plate.putLong(plateSize);
+		plate.putInt(numberOfColonies);
+		plate.putInt(columnNames.length);
+		plate.putInt(dataOffset);
+		putBytes(plate, filenameBytes);
+		putBytes(plate, preambleBytes);
+		putBytes(plate, postambleBytes);
+		for(int j=0; j<columnNames.length; j++){
+			putBytes(plate, nameBytes[j]);
+			plate.put((byte) widths[j]);
+			plate.put((byte) decimals[j]);
+		}
+
+		int columnStart = dataOffset;
+		for(int j=0; j<columnNames.length; j++){
+			plate.position(columnStart);
+			for(int i=0; i<numberOfColonies; i++){
+				//NaN is the smallest number of the type, which the other numbers never are (see fitsIn)
+				long value = columns[j][i]==Long.MIN_VALUE ? -(1L<<(8*widths[j]-1)) : columns[j][i];
+				switch (widths[j]) {
+				case 1:
+					plate.put((byte) value);
+					break;
+				case 2:
+					plate.putShort((short) value);
+					break;
+				case 4:
+					plate.putInt((int) value);
+					break;
+				default:
+					plate.putLong(value);
+				}
+			}
+			columnStart += padTo8(numberOfColonies*widths[j]);
+		}
+
+		plate.clear();
+		return(plate);
+	}
+
+
+	/**
+	 * Returns true if the number fits in a signed integer of the given number of bytes, without being its smallest value (NaN)
+	 */
+	private static boolean fitsIn(long value, int width){
+		long smallest = -(1L<<(8*width-1));
+		return(value>smallest && value<=-(smallest+1));
+	}
+
+
+	/**
+	 * Writes a fixed-point number the way it was read: value 1250 with 3 decimals is 1.250
+	 */
+	static void appendFixedPoint(StringBuilder text, long value, int decimals){
+		if(value==Long.MIN_VALUE){
+			text.append("NaN");
+			return;
+		}
+
+		if(value<0)
+			text.append('-');
+		String digits = Long.toString(Math.abs(value));
+
+		if(decimals==0){
+			text.append(digits);
+			return;
+		}
+
+		//pad with zeros so that there's at least one digit before the decimal point
+		while(digits.length()<=decimals){
+			digits = "0" + digits;
+		}
+		int integerDigits = digits.length()-decimals;
+		text.append(digits, 0, integerDigits).append('.').append(digits, integerDigits, digits.length());
+	}
+
+
+
+	private static void writeFully(ByteBuffer buffer, long position) throws IOException{
+		while(buffer.hasRemaining()){
+			position += storeFile.write(buffer, position);
+		}
+	}
+
+
+	private static void putBytes(ByteBuffer buffer, byte[] bytes){
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+	}
+
+
+	static int padTo8(int size){
+		return((size+7) & ~7);
+	}
+}
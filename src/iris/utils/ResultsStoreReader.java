@@ -0,0 +1,292 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class reads a results store (see ResultsStore for the layout of the file).
+ * The file is memory-mapped, and every plate is a view on the mapped file: the columns are only read when asked for.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ResultsStoreReader {
+
+	/**
+	 * the file is mapped in pieces of about this size, since a single mapping can't be bigger than 2GB
+	 */
+	private static final long MAPPING_SIZE = 1L<<30;
+
+
+	/**
+	 * A plate of the results store
+	 */
+	public static class Plate {
+
+		/**
+		 * the plate's part of the mapped file, starting at the plate
+		 */
+		private final ByteBuffer buffer;
+
+		public final String irisFilename;
+		public final int numberOfColonies;
+		public final String[] columnNames;
+
+		private final String preamble;
+		private final String postamble;
+		private final int[] columnOffsets;
+		private final int[] columnWidths;
+		private final int[] columnDecimals;
+
+
+		Plate(ByteBuffer buffer_){
+			buffer = buffer_;
+
+			numberOfColonies = buffer.getInt(8);
+			int numberOfColumns = buffer.getInt(12);
+			int dataOffset = buffer.getInt(16);
+
+			buffer.position(20);
+			irisFilename = getString(buffer);
+			preamble = getString(buffer);
+			postamble = getString(buffer);
+
+			columnNames = new String[numberOfColumns];
+			columnOffsets = new int[numberOfColumns];
+			columnWidths = new int[numberOfColumns];
+			columnDecimals = new int[numberOfColumns];
+
+			int columnStart = dataOffset;
+			for(int j=0; j<numberOfColumns; j++){
+				columnNames[j] = getString(buffer);
+				columnWidths[j] = buffer.get();
+				columnDecimals[j] = buffer.get();
+				columnOffsets[j] = columnStart;
+				columnStart += ResultsStore.padTo8(numberOfColonies*columnWidths[j]);
+			}
+		}
+
+
+		/**
+		 * Returns the index of the column with the given name, -1 if the plate doesn't have it
+		 * @param name
+		 * @return
+		 */
+		public int getColumnIndex(String name){
+			return(Arrays.asList(columnNames).indexOf(name));
+		}
+
+
+		/**
+		 * Returns the values of a column, as they were in the .iris file (NaN where they were NaN)
+		 * @param column
+		 * @return
+		 */
+		public double[] getColumn(int column){
+			double[] values = new double[numberOfColonies];
+			double scale = Math.pow(10, columnDecimals[column]);
+
+			for(int i=0; i<numberOfColonies; i++){
+				long value = getFixedPoint(column, i);
+				values[i] = value==Long.MIN_VALUE ? Double.NaN : value/scale;
+			}
+
+			return(values);
+		}
+
+
+		/**
+		 * Returns the value of a colony as it was stored: the number without its decimal point, Long.MIN_VALUE for NaN
+		 * @param column
+		 * @param colony
+		 * @return
+		 */
+		public long getFixedPoint(int column, int colony){
+			int offset = columnOffsets[column];
+			long value;
+
+			switch (columnWidths[column]) {
+			case 1:
+				value = buffer.get(offset + colony);
+				return(value==Byte.MIN_VALUE ? Long.MIN_VALUE : value);
+			case 2:
+				value = buffer.getShort(offset + 2*colony);
+				return(value==Short.MIN_VALUE ? Long.MIN_VALUE : value);
+			case 4:
+				value = buffer.getInt(offset + 4*colony);
+				return(value==Integer.MIN_VALUE ? Long.MIN_VALUE : value);
+			default:
+				return(buffer.getLong(offset + 8*colony));
+			}
+		}
+
+
+		/**
+		 * Writes the contents of the .iris file this plate came from
+		 * @return
+		 */
+		public String toIrisText(){
+			StringBuilder text = new StringBuilder(preamble.length() + postamble.length() + 16*numberOfColonies*columnNames.length);
+			text.append(preamble);
+
+			if(columnNames.length>0){
+				for(int j=0; j<columnNames.length; j++){
+					if(j>0)
+						text.append('\t');
+					text.append(columnNames[j]);
+				}
+				text.append('\n');
+
+				for(int i=0; i<numberOfColonies; i++){
+					for(int j=0; j<columnNames.length; j++){
+						if(j>0)
+							text.append('\t');
+						ResultsStore.appendFixedPoint(text, getFixedPoint(j, i), columnDecimals[j]);
+					}
+					text.append('\n');
+				}
+			}
+
+			text.append(postamble);
+			return(text.toString());
+		}
+	}
+
+
+
+	/**
+	 * Maps the results store and returns its plates, in the order they were written.
+	 * If the store has no plate index (the run didn't finish), the plates are found one after the other.
+	 * @param filename
+	 * @return
+	 * @throws IOException if the file can't be read, or isn't a results store
+	 */
+	public static List<Plate> read(String filename) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+
+		try {
+			FileChannel channel = file.getChannel();
+			long fileSize = channel.size();
+
+			//1. check that it's a results store
+			ByteBuffer start = map(channel, 0, Math.min(fileSize, ResultsStore.MAGIC.length));
+			byte[] magic = new byte[ResultsStore.MAGIC.length];
+			if(start.remaining()<magic.length)
+				throw new IOException(filename + " is not a results store");
+			start.get(magic);
+			if(!Arrays.equals(magic, ResultsStore.MAGIC))
+				throw new IOException(filename + " is not a results store");
+
+			//2. find where the plates are
+			List<Long> plateOffsets = readPlateIndex(channel, fileSize);
+			if(plateOffsets==null)
+				plateOffsets = findPlates(channel, fileSize);
+
+			//3. map them, a big piece of the file at a time
+			List<Plate> plates = new ArrayList<Plate>();
+			ByteBuffer mapping = null;
+			long mappingStart = 0;
+
+			for (Long plateOffset : plateOffsets) {
+				long plateSize = readLong(channel, plateOffset);
+
+				if(mapping==null || plateOffset<mappingStart || plateOffset+plateSize>mappingStart+mapping.capacity()){
+					mappingStart = plateOffset;
+					mapping = map(channel, mappingStart, Math.min(Math.max(MAPPING_SIZE, plateSize), fileSize-mappingStart));
+				}
+
+				ByteBuffer plateBuffer = mapping.duplicate();
+				plateBuffer.position((int) (plateOffset-mappingStart));
+				plateBuffer.limit((int) (plateOffset-mappingStart+plateSize));
+				plates.add(new Plate(plateBuffer.slice().order(ByteOrder.LITTLE_ENDIAN)));
+			}
+
+			return(plates);
+		}
+		finally {
+			//the mappings stay valid after the file is closed
+			file.close();
+		}
+	}
+
+
+	/**
+	 * Returns the offsets of the plates in the index at the end of the store, null if there's no index
+	 */
+	private static List<Long> readPlateIndex(FileChannel channel, long fileSize) throws IOException{
+		if(fileSize<ResultsStore.MAGIC.length + ResultsStore.FOOTER_SIZE)
+			return(null);
+
+		ByteBuffer footer = map(channel, fileSize-ResultsStore.FOOTER_SIZE, ResultsStore.FOOTER_SIZE);
+		byte[] magic = new byte[ResultsStore.INDEX_MAGIC.length];
+		footer.position(16);
+		footer.get(magic);
+		if(!Arrays.equals(magic, ResultsStore.INDEX_MAGIC))
+			return(null);
+
+		long indexOffset = footer.getLong(0);
+		int numberOfPlates = footer.getInt(8);
+		ByteBuffer index = map(channel, indexOffset, (long) numberOfPlates*ResultsStore.INDEX_ENTRY_SIZE);
+
+		List<Long> plateOffsets = new ArrayList<Long>(numberOfPlates);
+		for(int i=0; i<numberOfPlates; i++){
+			plateOffsets.add(index.getLong(i*ResultsStore.INDEX_ENTRY_SIZE));
+		}
+		return(plateOffsets);
+	}
+
+
+	/**
+	 * Returns the offsets of the plates, going from each plate to the next using their lengths.
+	 * A plate cut short at the end of the file is left out.
+	 */
+	private static List<Long> findPlates(FileChannel channel, long fileSize) throws IOException{
+		List<Long> plateOffsets = new ArrayList<Long>();
+
+		long offset = ResultsStore.MAGIC.length;
+		while(offset+8<=fileSize){
+			long plateSize = readLong(channel, offset);
+			if(plateSize<20 || offset+plateSize>fileSize)
+				break;
+
+			plateOffsets.add(offset);
+			offset += plateSize;
+		}
+
+		return(plateOffsets);
+	}
+
+
+	private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException{
+		return(channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+
+	/**
+	 * Reads a single number without mapping anything, mapping every plate's length would use up the mappings the system allows
+	 */
+	private static long readLong(FileChannel channel, long offset) throws IOException{
+		ByteBuffer number = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		while(number.hasRemaining()){
+			if(channel.read(number, offset+number.position())<0)
+				throw new IOException("Unexpected end of the results store");
+		}
+		return(number.getLong(0));
+	}
+
+
+	private static String getString(ByteBuffer buffer){
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return(new String(bytes, ResultsStore.UTF8));
+	}
+}
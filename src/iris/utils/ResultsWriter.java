@@ -0,0 +1,392 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * This class writes the table of colony measurements of an .iris file: the header line, then one line per colony.
+ * Each line is put together in a buffer that's reused for every colony, and the numbers are written into it directly,
+ * instead of making a string for every number (String.format in particular is slow, it parses the format every time).
+ * <br>
+ * The decimal numbers come out exactly as String.format("%.3f") writes them, except that the decimal separator is always
+ * a point, whatever the language settings of the computer.
+ * <br>
+ * If a results store is open, the writer also keeps every value as the fixed-point number it wrote (1.250 is kept as 1250),
+ * column by column, so that ResultsStore.addPlate gets the table without reading the text back.
+ * The rows are kept up to the first one that can't be stored exactly (e.g. -0.000), that one and the rest stay text only.
+ * <br>
+ * Use:
+ * <pre>
+ * ResultsWriter results = new ResultsWriter(output, ResultsColumns.GROWTH);
+ * results.add(i+1).add(j+1).add(colonySize).add(circularity).add(opacity).endRow();
+ * </pre>
+ *
+ * @author George Kritikos
+ *
+ */
+public class ResultsWriter {
+
+	/**
+	 * the number of decimals of all the decimal numbers in the .iris files
+	 */
+	public static final int DECIMALS = 3;
+
+	private static final double[] POWERS_OF_TEN = {1, 10, 100, 1000, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+
+	/**
+	 * the numbers are written directly only below this (after multiplying by the power of 10),
+	 * so that the rounding errors of the multiplication are far smaller than the distance checked in appendDecimal
+	 */
+	private static final double LARGEST_DIRECT = 1e9;
+
+	/**
+	 * the output of the profile, where the lines are added
+	 */
+	private final StringBuffer output;
+
+	private final int numberOfColumns;
+
+	/**
+	 * the line being written
+	 */
+	private final StringBuilder line = new StringBuilder(256);
+
+	/**
+	 * how many values have been added to the line being written
+	 */
+	private int valuesInLine = 0;
+
+
+	/**
+	 * true if the values are also kept as numbers, for the results store
+	 */
+	private final boolean keepValues;
+
+	private final String[] columnNames;
+
+	/**
+	 * where the header line starts in the output, and where the last row kept as numbers ends
+	 */
+	private final int tableStart;
+	private int tableEnd;
+
+	/**
+	 * the values kept so far, by column (only the first numberOfRows of each are used), and the number of decimals of each column,
+	 * -1 if all it's values so far were NaN
+	 */
+	private long[][] columnValues;
+	private final int[] decimals;
+	private int numberOfRows = 0;
+
+	/**
+	 * the values of the line being written, with the decimals of the columns including this line
+	 */
+	private final long[] rowValues;
+	private final int[] rowDecimals;
+	private boolean rowCanBeKept = true;
+
+	/**
+	 * false from the first row that could not be kept as numbers on
+	 */
+	private boolean keepingRows = true;
+
+
+
+	/**
+	 * Starts the table, writing its header line to the output
+	 * @param output_
+	 * @param columns the column names, see ResultsColumns
+	 */
+	public ResultsWriter(StringBuffer output_, String[] columns){
+		output = output_;
+		numberOfColumns = columns.length;
+
+		keepValues = ResultsStore.isOpen();
+		columnNames = columns.clone();
+		tableStart = output.length();
+		columnValues = new long[numberOfColumns][keepValues ? 64 : 0];
+		decimals = new int[numberOfColumns];
+		Arrays.fill(decimals, -1);
+		rowValues = new long[numberOfColumns];
+		rowDecimals = decimals.clone();
+
+		for(int j=0; j<columns.length; j++){
+			if(j>0)
+				line.append('\t');
+			line.append(columns[j]);
+		}
+		line.append('\n');
+		output.append(line);
+		line.setLength(0);
+		tableEnd = output.length();
+	}
+
+
+	/**
+	 * Adds a whole number to the line being written
+	 * @param value
+	 * @return
+	 */
+	public ResultsWriter add(int value){
+		startValue();
+		line.append(value);
+		keepValue(value, 0);
+		return(this);
+	}
+
+
+	/**
+	 * Adds a decimal number to the line being written, with 3 decimals
+	 * @param value
+	 * @return
+	 */
+	public ResultsWriter add(double value){
+		startValue();
+
+		long rounded = roundDirectly(value, DECIMALS);
+		if(rounded>=0){
+			appendFixedPoint(line, rounded, DECIMALS);
+			keepValue(rounded, DECIMALS);
+		}
+		else{
+			line.append(String.format(Locale.ROOT, "%." + DECIMALS + "f", value));
+			keepDecimal(value);
+		}
+		return(this);
+	}
+
+
+	/**
+	 * Ends the line being written, and adds it to the output
+	 */
+	public void endRow(){
+		if(valuesInLine!=numberOfColumns)
+			throw new IllegalStateException("Wrote " + valuesInLine + " values in a table of " + numberOfColumns + " columns");
+
+		boolean rowKept = keepValues && keepRow();
+
+		line.append('\n');
+		output.append(line);
+		line.setLength(0);
+		valuesInLine = 0;
+
+		if(rowKept)
+			tableEnd = output.length();
+	}
+
+
+
+	/**
+	 * Returns true if the values are kept as numbers (a results store was open when the table was started)
+	 * @return
+	 */
+	boolean isKeepingValues(){
+		return(keepValues);
+	}
+
+
+	String[] getColumnNames(){
+		return(columnNames);
+	}
+
+
+	/**
+	 * Returns the number of rows kept as numbers
+	 * @return
+	 */
+	int getNumberOfRows(){
+		return(numberOfRows);
+	}
+
+
+	/**
+	 * Returns the values kept, by column: the number without it's decimal point, Long.MIN_VALUE for NaN.
+	 * Only the first getNumberOfRows() values of each column are used.
+	 * @return
+	 */
+	long[][] getColumnValues(){
+		return(columnValues);
+	}
+
+
+	/**
+	 * Returns the number of decimals of each column, -1 for the columns that only had NaN
+	 * @return
+	 */
+	int[] getDecimals(){
+		return(decimals);
+	}
+
+
+	/**
+	 * Returns where the header line starts in the output
+	 * @return
+	 */
+	int getTableStart(){
+		return(tableStart);
+	}
+
+
+	/**
+	 * Returns where the last row kept as numbers ends in the output (or the header, if there are none)
+	 * @return
+	 */
+	int getTableEnd(){
+		return(tableEnd);
+	}
+
+
+
+	/**
+	 * Writes the number with the given number of decimals (up to 9), exactly like String.format does.
+	 * String.format rounds half up the shortest decimal that stands for the number (the one Double.toString gives),
+	 * which isn't always the number itself (1.0005 is really 1.000499999..., and it's written 1.001).
+	 * So the number is written here directly only when it's clearly closer to one of the two possible results,
+	 * and by String.format itself when it's too close to halfway to tell (or negative, too big, NaN or infinite).
+	 * @param text
+	 * @param value
+	 * @param decimals
+	 */
+	public static void appendDecimal(StringBuilder text, double value, int decimals){
+		long rounded = roundDirectly(value, decimals);
+		if(rounded>=0){
+			appendFixedPoint(text, rounded, decimals);
+			return;
+		}
+
+		text.append(String.format(Locale.ROOT, "%." + decimals + "f", value));
+	}
+
+
+	/**
+	 * Returns the number multiplied by 10^decimals and rounded the way String.format rounds it (see appendDecimal),
+	 * or -1 if that can't be told without String.format
+	 */
+	private static long roundDirectly(double value, int decimals){
+		double scaled = value*POWERS_OF_TEN[decimals];
+
+		//the sign bit is clear for positive numbers and 0, but not for -0 (which String.format writes -0.000)
+		if(Double.doubleToRawLongBits(value)>=0 && scaled<LARGEST_DIRECT){
+			double whole = Math.floor(scaled);
+			double fraction = scaled-whole;
+
+			if(Math.abs(fraction-0.5)>1e-6){
+				return((long) whole + (fraction>0.5 ? 1 : 0));
+			}
+		}
+
+		return(-1);
+	}
+
+
+	/**
+	 * Writes a positive number that's been multiplied by 10^decimals, putting back the decimal point
+	 */
+	private static void appendFixedPoint(StringBuilder text, long value, int decimals){
+		long scale = (long) POWERS_OF_TEN[decimals];
+		text.append(value/scale);
+
+		if(decimals==0)
+			return;
+
+		text.append('.');
+		long fraction = value%scale;
+		for(long digit=scale/10; digit>0; digit/=10){
+			text.append((char) ('0' + fraction/digit));
+			fraction %= digit;
+		}
+	}
+
+
+	private void startValue(){
+		if(valuesInLine>0)
+			line.append('\t');
+		valuesInLine++;
+	}
+
+
+	/**
+	 * Keeps the value just written, with the number of decimals it was written with (-1 for NaN)
+	 */
+	private void keepValue(long value, int valueDecimals){
+		if(!keepValues || valuesInLine>numberOfColumns)
+			return;
+
+		int column = valuesInLine-1;
+		rowValues[column] = value;
+
+		//a column keeps the same number of decimals in all it's rows, or they couldn't be written back the same way
+		if(valueDecimals>=0){
+			if(rowDecimals[column]<0)
+				rowDecimals[column] = valueDecimals;
+			else if(rowDecimals[column]!=valueDecimals)
+				rowCanBeKept = false;
+		}
+	}
+
+
+	/**
+	 * Keeps a decimal number that String.format wrote (negative, very big, close to halfway between two results, NaN or infinite).
+	 * String.format rounds half up the number Double.toString gives, and so does BigDecimal.valueOf here.
+	 */
+	private void keepDecimal(double value){
+		if(!keepValues)
+			return;
+
+		if(Double.isNaN(value)){
+			keepValue(Long.MIN_VALUE, -1);
+			return;
+		}
+		if(Double.isInfinite(value)){
+			rowCanBeKept = false;
+			return;
+		}
+
+		BigInteger rounded = BigDecimal.valueOf(value).setScale(DECIMALS, RoundingMode.HALF_UP).unscaledValue();
+
+		//-0.000 has no fixed-point number of it's own, and Long.MIN_VALUE is NaN
+		if(rounded.bitLength()>62 || (rounded.signum()==0 && Double.doubleToRawLongBits(value)<0)){
+			rowCanBeKept = false;
+			return;
+		}
+
+		keepValue(rounded.longValue(), DECIMALS);
+	}
+
+
+	/**
+	 * Adds the values of the line just finished to the columns, if every one of them could be kept
+	 * and all the lines before it were kept as well
+	 * @return true if the line was kept
+	 */
+	private boolean keepRow(){
+		boolean rowKept = keepingRows && rowCanBeKept;
+
+		if(rowKept){
+			if(numberOfColumns>0 && numberOfRows==columnValues[0].length){
+				for(int j=0; j<numberOfColumns; j++){
+					columnValues[j] = Arrays.copyOf(columnValues[j], 2*numberOfRows);
+				}
+			}
+
+			for(int j=0; j<numberOfColumns; j++){
+				columnValues[j][numberOfRows] = rowValues[j];
+			}
+			System.arraycopy(rowDecimals, 0, decimals, 0, numberOfColumns);
+			numberOfRows++;
+		}
+		else{
+			keepingRows = false;
+		}
+
+		System.arraycopy(decimals, 0, rowDecimals, 0, numberOfColumns);
+		rowCanBeKept = true;
+		return(rowKept);
+	}
+}
@@ -0,0 +1,228 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the rotation of a (black and white) plate picture, the same way calculateImageRotation always has:
+ * the best angle is the one that maximizes the variance of the sums of row and column brightnesses,
+ * which is what happens when the rows and columns of colonies are perfectly aligned to the picture's axes.
+ * <br>
+ * Instead of rotating the whole picture for every angle tried, only the coordinates of the bright pixels are rotated,
+ * and added straight to the row and column sums they land on. Every pixel is shared between the 2 rows (and the 2 columns)
+ * it falls between, in proportion to how close it is to each, so the variance changes smoothly with the angle.
+ * This makes it cheap enough to first try the angles on a coarse grid, and then refine around the best one.
+ *
+ * @author George Kritikos
+ *
+ */
+public class RotationEstimator {
+
+	/**
+	 * angles from -maximumAngle to +maximumAngle (in degrees) are searched
+	 */
+	public static double maximumAngle = 2;
+
+	/**
+	 * the step of the first, coarse, search
+	 */
+	public static double coarseAngleStep = 0.25;
+
+	/**
+	 * the step of the second search, around the best coarse angle. This is the precision of the angle returned.
+	 */
+	public static double fineAngleStep = 0.05;
+
+	/**
+	 * the coarse search only needs to get close to the best angle, so it only uses one in this many bright pixels
+	 */
+	private static final int COARSE_SEARCH_POINT_STEP = 4;
+
+
+
+	/**
+	 * Returns the angle (in degrees) by which the given black and white picture should be rotated (see Toolbox.rotateImage)
+	 * so that it's rows and columns of colonies become horizontal and vertical.
+	 * All non-black pixels are considered, weighted by their brightness.
+	 * @param blackAndWhiteImage
+	 * @return
+	 */
+	public static double estimateRotation(ImagePlus blackAndWhiteImage){
+
+		//1. get the coordinates (relative to the center, like ImageProcessor.rotate) and brightness of all the bright pixels
+		ImageProcessor ip = blackAndWhiteImage.getProcessor();
+		int width = ip.getWidth();
+		int height = ip.getHeight();
+		double centerX = (width-1)/2.0;
+		double centerY = (height-1)/2.0;
+
+		int numberOfPoints = 0;
+		for(int y=0; y<height; y++){
+			for(int x=0; x<width; x++){
+				if(ip.get(x, y)!=0)
+					numberOfPoints++;
+			}
+		}
+
+		float[] pointsX = new float[numberOfPoints];
+		float[] pointsY = new float[numberOfPoints];
+		float[] brightness = new float[numberOfPoints];
+
+		int point = 0;
+		for(int y=0; y<height; y++){
+			for(int x=0; x<width; x++){
+				int value = ip.get(x, y);
+				if(value!=0){
+					pointsX[point] = (float)(x-centerX);
+					pointsY[point] = (float)(y-centerY);
+					brightness[point] = value;
+					point++;
+				}
+			}
+		}
+
+		if(numberOfPoints==0)
+			return(0);
+
+		ProjectionVariance projectionVariance = new ProjectionVariance(pointsX, pointsY, brightness, width, height);
+
+
+		//2. coarse search over the whole range of angles
+		int coarseSteps = (int)Math.round(maximumAngle/coarseAngleStep);
+
+		double bestAngle = 0;
+		double bestVariance = -Double.MAX_VALUE;
+
+		for(int i=-coarseSteps; i<=coarseSteps; i++){
+			double angle = i*coarseAngleStep;
+			double variance = projectionVariance.getVariance(angle, COARSE_SEARCH_POINT_STEP);
+
+			if(variance > bestVariance){
+				bestAngle = angle;
+				bestVariance = variance;
+			}
+		}
+
+
+		//3. fine search, between the coarse angles left and right of the best one, using all the pixels
+		double coarseBestAngle = bestAngle;
+		bestVariance = projectionVariance.getVariance(coarseBestAngle, 1);
+		int fineSteps = (int)Math.round(coarseAngleStep/fineAngleStep);
+
+		for(int i=-fineSteps+1; i<fineSteps; i++){
+			if(i==0)
+				continue; //already tried
+
+			double angle = coarseBestAngle + i*fineAngleStep;
+			if(Math.abs(angle)>maximumAngle+fineAngleStep/2)
+				continue;
+
+			double variance = projectionVariance.getVariance(angle, 1);
+
+			if(variance > bestVariance){
+				bestAngle = angle;
+				bestVariance = variance;
+			}
+		}
+
+		//get rid of the rounding errors of the sums above
+		return(Math.round(bestAngle/fineAngleStep)*fineAngleStep);
+	}
+
+
+
+	/**
+	 * The bright pixels of a picture, that can be rotated to get the variance of the row and column sums
+	 */
+	private static class ProjectionVariance {
+
+		private final float[] pointsX;
+		private final float[] pointsY;
+		private final float[] brightness;
+		private final double centerX;
+		private final double centerY;
+
+		/**
+		 * the sums of brightness of the rows and columns of the rotated picture, re-used for every angle
+		 */
+		private final double[] sumOfRows;
+		private final double[] sumOfColumns;
+
+		ProjectionVariance(float[] pointsX_, float[] pointsY_, float[] brightness_, int width, int height){
+			pointsX = pointsX_;
+			pointsY = pointsY_;
+			brightness = brightness_;
+			centerX = (width-1)/2.0;
+			centerY = (height-1)/2.0;
+			sumOfRows = new double[height];
+			sumOfColumns = new double[width];
+		}
+
+
+		/**
+		 * Returns the sum of the variances of the row sums and the column sums of the picture, rotated clockwise by the given angle.
+		 * Pixels that get rotated out of the picture are left out, just like when the picture itself is rotated.
+		 * @param angle
+		 * @param pointStep only every pointStep-th pixel is used
+		 * @return
+		 */
+		double getVariance(double angle, int pointStep){
+			double angleRadians = Math.toRadians(angle);
+			double cos = Math.cos(angleRadians);
+			double sin = Math.sin(angleRadians);
+
+			Arrays.fill(sumOfRows, 0);
+			Arrays.fill(sumOfColumns, 0);
+
+			int lastRow = sumOfRows.length-1;
+			int lastColumn = sumOfColumns.length-1;
+
+			for(int i=0; i<pointsX.length; i+=pointStep){
+				double x = pointsX[i]*cos - pointsY[i]*sin + centerX;
+				double y = pointsX[i]*sin + pointsY[i]*cos + centerY;
+
+				if(x<0 || y<0 || x>lastColumn || y>lastRow)
+					continue;
+
+				addToSums(sumOfColumns, x, brightness[i]);
+				addToSums(sumOfRows, y, brightness[i]);
+			}
+
+			return(getVariance(sumOfRows) + getVariance(sumOfColumns));
+		}
+
+
+		/**
+		 * Shares the value between the 2 sums the position falls between
+		 */
+		private static void addToSums(double[] sums, double position, float value){
+			int index = (int)position;
+			double fraction = position-index;
+
+			sums[index] += value*(1-fraction);
+			if(fraction>0)
+				sums[index+1] += value*fraction;
+		}
+
+
+		/**
+		 * Returns the (sample) variance of the sums
+		 */
+		private static double getVariance(double[] sums){
+			double sum = 0;
+			double sumOfSquares = 0;
+			for(int i=0; i<sums.length; i++){
+				sum += sums[i];
+				sumOfSquares += sums[i]*sums[i];
+			}
+
+			double mean = sum/sums.length;
+			return((sumOfSquares - sums.length*mean*mean)/(sums.length-1));
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class keeps the pixel arrays of throw-away tile pictures, so that the next tile can use them again
+ * instead of allocating new ones. The tiles of a plate are all about the same size, so after the first few tiles
+ * most of the scratch pictures a tile reader needs come out of here.
+ * <br>
+ * Every thread has its own arrays, so there's no locking and a thread only ever gets back arrays it gave back itself.
+ * Arrays are kept by type and exact length (ImageJ processors need arrays of exactly width*height pixels).
+ * Only tile-sized arrays are kept, anything longer than MAX_POOLED_LENGTH is left to the garbage collector.
+ * The contents of an array are whatever was left in it, so they have to be overwritten before they are read.
+ * <br>
+ * Only give back arrays and pictures nothing else is holding on to.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ScratchBuffers {
+
+	/**
+	 * how many arrays of the same type and length a thread keeps
+	 */
+	private static final int MAX_ARRAYS_PER_LENGTH = 4;
+
+	/**
+	 * how many different lengths of the same type a thread keeps, before it drops them all and starts over
+	 */
+	private static final int MAX_LENGTHS = 64;
+
+	/**
+	 * arrays longer than this (e.g. whole plate pictures) aren't kept, they would stay alive for the whole run
+	 */
+	private static final int MAX_POOLED_LENGTH = 1<<20;
+
+
+	private static final ThreadLocal<Pool<byte[]>> bytePool = new ThreadLocal<Pool<byte[]>>() {
+		@Override
+		protected Pool<byte[]> initialValue() {
+			return(new Pool<byte[]>());
+		}
+	};
+
+	private static final ThreadLocal<Pool<int[]>> intPool = new ThreadLocal<Pool<int[]>>() {
+		@Override
+		protected Pool<int[]> initialValue() {
+			return(new Pool<int[]>());
+		}
+	};
+
+	private static final ThreadLocal<Pool<float[]>> floatPool = new ThreadLocal<Pool<float[]>>() {
+		@Override
+		protected Pool<float[]> initialValue() {
+			return(new Pool<float[]>());
+		}
+	};
+
+
+
+	/**
+	 * Returns a byte array of the given length, with undefined contents
+	 * @param length
+	 * @return
+	 */
+	public static byte[] getBytes(int length){
+		byte[] array = bytePool.get().take(length);
+		if(array==null)
+			array = new byte[length];
+		return(array);
+	}
+
+
+	/**
+	 * Returns an int array of the given length, with undefined contents
+	 * @param length
+	 * @return
+	 */
+	public static int[] getInts(int length){
+		int[] array = intPool.get().take(length);
+		if(array==null)
+			array = new int[length];
+		return(array);
+	}
+
+
+	/**
+	 * Returns a float array of the given length, with undefined contents
+	 * @param length
+	 * @return
+	 */
+	public static float[] getFloats(int length){
+		float[] array = floatPool.get().take(length);
+		if(array==null)
+			array = new float[length];
+		return(array);
+	}
+
+
+	public static void giveBack(byte[] array){
+		if(array!=null)
+			bytePool.get().put(array.length, array);
+	}
+
+
+	public static void giveBack(int[] array){
+		if(array!=null)
+			intPool.get().put(array.length, array);
+	}
+
+
+	public static void giveBack(float[] array){
+		if(array!=null)
+			floatPool.get().put(array.length, array);
+	}
+
+
+
+	/**
+	 * Returns a copy of the picture, just like ImagePlus.duplicate would:
+	 * if there is a selection in the picture, only the selection's bounding rectangle is copied.
+	 * The pixels of 8-bit and color pictures go in scratch arrays, so the copy should be given back
+	 * with release once it's not needed anymore.
+	 * @param image
+	 * @return
+	 */
+	public static ImagePlus duplicate(ImagePlus image){
+		ImageProcessor processor = image.getProcessor();
+		Rectangle area = processor.getRoi();
+		int width = processor.getWidth();
+
+		ImageProcessor copyProcessor;
+		if(processor instanceof ByteProcessor){
+			byte[] pixels = (byte[]) processor.getPixels();
+			byte[] copyPixels = getBytes(area.width*area.height);
+			for(int y=0; y<area.height; y++){
+				System.arraycopy(pixels, (area.y+y)*width + area.x, copyPixels, y*area.width, area.width);
+			}
+			copyProcessor = new ByteProcessor(area.width, area.height, copyPixels, processor.getColorModel());
+		}
+		else if(processor instanceof ColorProcessor){
+			int[] pixels = (int[]) processor.getPixels();
+			int[] copyPixels = getInts(area.width*area.height);
+			for(int y=0; y<area.height; y++){
+				System.arraycopy(pixels, (area.y+y)*width + area.x, copyPixels, y*area.width, area.width);
+			}
+			copyProcessor = new ColorProcessor(area.width, area.height, copyPixels);
+		}
+		else {
+			//other kinds of pictures aren't used for tiles, they get a normal copy
+			return(image.duplicate());
+		}
+
+		ImagePlus copy = image.createImagePlus();
+		copy.setProcessor("DUP_"+image.getTitle(), copyProcessor);
+		return(copy);
+	}
+
+
+	/**
+	 * Gives back the pixels of a scratch picture (e.g. one made by duplicate) and flushes it.
+	 * The picture can't be used after this.
+	 * @param scratchImage
+	 */
+	public static void release(ImagePlus scratchImage){
+		if(scratchImage==null)
+			return;
+
+		ImageProcessor processor = scratchImage.getProcessor();
+		if(processor!=null){
+			Object pixels = processor.getPixels();
+			if(pixels instanceof byte[])
+				giveBack((byte[]) pixels);
+			else if(pixels instanceof int[])
+				giveBack((int[]) pixels);
+			else if(pixels instanceof float[])
+				giveBack((float[]) pixels);
+		}
+
+		scratchImage.flush();
+	}
+
+
+
+	/**
+	 * The arrays one thread has given back, by length
+	 */
+	private static class Pool<T> {
+		private HashMap<Integer, ArrayList<T>> arrays = new HashMap<Integer, ArrayList<T>>();
+
+		T take(int length){
+			ArrayList<T> sameLength = arrays.get(length);
+			if(sameLength==null || sameLength.isEmpty())
+				return(null);
+			return(sameLength.remove(sameLength.size()-1));
+		}
+
+		void put(int length, T array){
+			if(length>MAX_POOLED_LENGTH)
+				return;
+
+			ArrayList<T> sameLength = arrays.get(length);
+			if(sameLength==null){
+				if(arrays.size()>=MAX_LENGTHS)
+					arrays.clear();
+				sameLength = new ArrayList<T>(MAX_ARRAYS_PER_LENGTH);
+				arrays.put(length, sameLength);
+			}
+			if(sameLength.size()<MAX_ARRAYS_PER_LENGTH && !containsArray(sameLength, array))
+				sameLength.add(array);
+		}
+
+		/**
+		 * the same array given back twice would later be handed out twice
+		 */
+		private boolean containsArray(ArrayList<T> sameLength, T array){
+			for(T pooledArray : sameLength){
+				if(pooledArray==array)
+					return(true);
+			}
+			return(false);
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * This class tells how much CPU time a thread has used and how many bytes it has allocated so far.
+ * Work the thread handed over to the tile pool (see TileExecutor) is counted as the thread's own,
+ * so the cost of reading the tiles of a plate ends up with the thread that analyzes the plate.
+ * <br>
+ * Not all JVMs can measure these, in which case the functions return -1.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ThreadCost {
+
+	/**
+	 * the JVM's thread bean, null if it can't measure thread CPU time
+	 */
+	private static final ThreadMXBean threadBean = getThreadBean();
+
+	/**
+	 * the same bean, if the JVM can also measure allocated bytes (HotSpot-only extension)
+	 */
+	private static final com.sun.management.ThreadMXBean allocationBean = getAllocationBean();
+
+	/**
+	 * [cpu time, allocated bytes] of the work other threads did on behalf of this thread
+	 */
+	private static final ThreadLocal<long[]> delegatedCost = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return(new long[2]);
+		}
+	};
+
+
+
+	/**
+	 * Returns the CPU time used by the calling thread (and the work it delegated) in nanoseconds, or -1 if unsupported
+	 * @return
+	 */
+	public static long getCpuTime(){
+		long ownCpuTime = getOwnCpuTime();
+		if(ownCpuTime<0)
+			return(-1);
+		return(ownCpuTime + delegatedCost.get()[0]);
+	}
+
+
+	/**
+	 * Returns the number of bytes allocated by the calling thread (and the work it delegated), or -1 if unsupported
+	 * @return
+	 */
+	public static long getAllocatedBytes(){
+		long ownAllocatedBytes = getOwnAllocatedBytes();
+		if(ownAllocatedBytes<0)
+			return(-1);
+		return(ownAllocatedBytes + delegatedCost.get()[1]);
+	}
+
+
+	/**
+	 * Returns the CPU time used by the calling thread alone, in nanoseconds, or -1 if unsupported
+	 * @return
+	 */
+	public static long getOwnCpuTime(){
+		if(threadBean==null)
+			return(-1);
+		return(threadBean.getCurrentThreadCpuTime());
+	}
+
+
+	/**
+	 * Returns the number of bytes allocated by the calling thread alone, or -1 if unsupported
+	 * @return
+	 */
+	public static long getOwnAllocatedBytes(){
+		if(allocationBean==null)
+			return(-1);
+		return(allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId()));
+	}
+
+
+	/**
+	 * Adds the cost of work done by other threads to the calling thread's account
+	 * @param cpuTime
+	 * @param allocatedBytes
+	 */
+	public static void addDelegatedCost(long cpuTime, long allocatedBytes){
+		long[] cost = delegatedCost.get();
+		cost[0] += cpuTime;
+		cost[1] += allocatedBytes;
+	}
+
+
+
+	private static ThreadMXBean getThreadBean(){
+		try{
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(!bean.isCurrentThreadCpuTimeSupported())
+				return(null);
+			if(!bean.isThreadCpuTimeEnabled())
+				bean.setThreadCpuTimeEnabled(true);
+			return(bean);
+		}
+		catch(Throwable e){
+			return(null);
+		}
+	}
+
+
+	private static com.sun.management.ThreadMXBean getAllocationBean(){
+		try{
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if(!(bean instanceof com.sun.management.ThreadMXBean))
+				return(null);
+
+			com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+			if(!allocationBean.isThreadAllocatedMemorySupported())
+				return(null);
+			if(!allocationBean.isThreadAllocatedMemoryEnabled())
+				allocationBean.setThreadAllocatedMemoryEnabled(true);
+			return(allocationBean);
+		}
+		catch(Throwable e){
+			//not a HotSpot JVM
+			return(null);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class fans the tiles of a plate (the ROImatrix produced by the segmenter) out over a fork-join pool.
+ * Each tile is independent of the others, so the profiles can read all of them at once and collect
+ * the results in their output matrices, as each tile only ever writes to it's own [row][column] cell.
+ * All plates share the same pool, so processing many plates at once doesn't multiply the number of threads.
+ * The CPU time and allocations of the pool threads are charged to the calling thread (see ThreadCost).
+ *
+ * @author George Kritikos
+ *
+ */
+public class TileExecutor {
+
+	/**
+	 * The work to be done on a single tile, usually calling the tile reader(s) and storing
+	 * the outputs in the [row][column] cell of the output matrices
+	 */
+	public interface TileTask {
+		public void processTile(int row, int column);
+	}
+
+
+	/**
+	 * below this number of tiles, a task will not be split further, but process the tiles one after the other
+	 */
+	private static final int TILES_PER_TASK = 8;
+
+	/**
+	 * this is the pool shared by all plates, it is created the first time it's needed
+	 */
+	private static ForkJoinPool pool = null;
+
+	/**
+	 * if set to false, all tiles will be processed one after the other in the calling thread
+	 */
+	public static boolean parallelTiles = true;
+
+
+
+	/**
+	 * This function will call the given task on every tile of a numberOfRows x numberOfColumns plate.
+	 * The function returns when all the tiles have been processed. Any exception thrown while processing
+	 * a tile is re-thrown here, just like it would be in a plain for loop.
+	 * @param numberOfRows
+	 * @param numberOfColumns
+	 * @param task
+	 */
+	public static void processAllTiles(int numberOfRows, int numberOfColumns, TileTask task){
+
+		int numberOfTiles = numberOfRows*numberOfColumns;
+
+		//no point in starting threads for a single colony or a tiny plate
+		if(!parallelTiles || numberOfTiles<=TILES_PER_TASK){
+			for(int i=0;i<numberOfRows;i++){
+				for (int j = 0; j < numberOfColumns; j++) {
+					task.processTile(i, j);
+				}
+			}
+			return;
+		}
+
+		TileCost cost = new TileCost(Thread.currentThread());
+		getPool().invoke(new TileRange(task, numberOfColumns, 0, numberOfTiles, cost));
+
+		ThreadCost.addDelegatedCost(cost.cpuTime.get(), cost.allocatedBytes.get());
+	}
+
+
+	/**
+	 * Returns the pool shared by all plates
+	 * @return
+	 */
+	private static synchronized ForkJoinPool getPool(){
+		if(pool==null)
+			pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		return(pool);
+	}
+
+
+	/**
+	 * A range of tiles, numbered row by row. It is split in half until it's small enough to be processed directly.
+	 */
+	private static class TileRange extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TileTask task;
+		private final int numberOfColumns;
+		private final int start;
+		private final int end;
+		private final TileCost cost;
+
+		TileRange(TileTask task_, int numberOfColumns_, int start_, int end_, TileCost cost_){
+			task = task_;
+			numberOfColumns = numberOfColumns_;
+			start = start_;
+			end = end_;
+			cost = cost_;
+		}
+
+		@Override
+		protected void compute() {
+			if(end-start<=TILES_PER_TASK){
+				//the calling thread may run some of the tiles itself, those are already on it's account
+				boolean delegated = Thread.currentThread()!=cost.caller;
+				long cpuTimeBefore = delegated ? ThreadCost.getOwnCpuTime() : -1;
+				long allocatedBytesBefore = delegated ? ThreadCost.getOwnAllocatedBytes() : -1;
+
+				for(int tile=start; tile<end; tile++){
+					task.processTile(tile/numberOfColumns, tile%numberOfColumns);
+				}
+
+				if(cpuTimeBefore>=0)
+					cost.cpuTime.addAndGet(ThreadCost.getOwnCpuTime()-cpuTimeBefore);
+				if(allocatedBytesBefore>=0)
+					cost.allocatedBytes.addAndGet(ThreadCost.getOwnAllocatedBytes()-allocatedBytesBefore);
+				return;
+			}
+
+			int middle = (start+end)>>>1;
+			invokeAll(new TileRange(task, numberOfColumns, start, middle, cost),
+					new TileRange(task, numberOfColumns, middle, end, cost));
+		}
+	}
+
+
+	/**
+	 * The CPU time and allocations of the pool threads, while working on the tiles of one plate
+	 */
+	private static class TileCost {
+		final Thread caller;
+		final AtomicLong cpuTime = new AtomicLong();
+		final AtomicLong allocatedBytes = new AtomicLong();
+
+		TileCost(Thread caller_){
+			caller = caller_;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.measure.Calibration;
+import ij.process.AutoThresholder;
+import ij.process.AutoThresholder.Method;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ImageStatistics;
+
+import java.util.EnumMap;
+
+/**
+ * This class holds the histogram of a (grayscale) tile, and the thresholds found on it.
+ * The histogram is calculated once, and each thresholding method runs at most once,
+ * so all the steps that need e.g. the Otsu threshold of the same tile share it.
+ * <br>
+ * The histogram is the one ImageJ would use for the picture (ImageStatistics),
+ * so a threshold from here is the same as the one from Toolbox.getThreshold or ImageProcessor.setAutoThreshold.
+ * It's only valid for as long as the pixels of the tile don't change.
+ *
+ * @author George Kritikos
+ *
+ */
+public class TileHistogram {
+
+	/**
+	 * the number of pixels of each brightness (0...255)
+	 */
+	private final int[] histogram;
+
+	/**
+	 * the thresholds found so far
+	 */
+	private final EnumMap<Method, Integer> thresholds = new EnumMap<Method, Integer>(Method.class);
+
+
+
+	/**
+	 * @param histogram_ the number of pixels of each brightness (0...255)
+	 */
+	public TileHistogram(int[] histogram_){
+		histogram = histogram_;
+	}
+
+
+	/**
+	 * Gets the histogram of the picture (of its selection's bounding rectangle if it has one)
+	 * @param grayscaleImage
+	 */
+	public TileHistogram(ImagePlus grayscaleImage){
+		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
+
+		if(imageProcessor instanceof ByteProcessor){
+			//this is what ImageStatistics does for 8-bit pictures, without the rest of the statistics
+			histogram = imageProcessor.getHistogram();
+		}
+		else {
+			Calibration calibration = new Calibration(grayscaleImage);
+			histogram = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration).histogram;
+		}
+	}
+
+
+	/**
+	 * Returns a copy of the histogram
+	 * @return
+	 */
+	public int[] getHistogram(){
+		return(histogram.clone());
+	}
+
+
+	/**
+	 * Returns the threshold the given method finds on this histogram
+	 * @param method
+	 * @return
+	 */
+	public int getThreshold(Method method){
+		Integer threshold = thresholds.get(method);
+
+		if(threshold==null){
+			//the thresholder gets its own copy, just in case a method changes it
+			threshold = new AutoThresholder().getThreshold(method, histogram.clone());
+			thresholds.put(method, threshold);
+		}
+
+		return(threshold);
+	}
+
+
+	/**
+	 * Sets the threshold levels of the picture the histogram came from, just like
+	 * ImageProcessor.setAutoThreshold(method, darkBackground, lutUpdate) would, but with the threshold found here.
+	 * Only 8-bit pictures can use this; for other pictures ImageJ's own function is called.
+	 * @param grayscaleImage
+	 * @param method
+	 * @param darkBackground
+	 * @param lutUpdate
+	 */
+	public void setAutoThreshold(ImagePlus grayscaleImage, Method method, boolean darkBackground, int lutUpdate){
+		ImageProcessor imageProcessor = grayscaleImage.getProcessor();
+
+		if(!(imageProcessor instanceof ByteProcessor)){
+			imageProcessor.setAutoThreshold(method, darkBackground, lutUpdate);
+			return;
+		}
+
+		int threshold = getThreshold(method);
+
+		double lower, upper;
+		if(darkBackground==imageProcessor.isInvertedLut()){
+			lower = 0.0;
+			upper = threshold;
+		}
+		else {
+			lower = threshold+1;
+			upper = 255.0;
+		}
+		if(lower>255)
+			lower = 255;
+
+		imageProcessor.setThreshold(lower, upper, lutUpdate);
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.gui.Roi;
+import ij.measure.ResultsTable;
+import ij.plugin.filter.ParticleAnalyzer;
+import ij.process.ImageStatistics;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * This is a particle analyzer that keeps the ROIs of the particles it finds to itself,
+ * instead of handing them to a RoiManager through ParticleAnalyzer.setRoiManager.
+ * That static hand-over is shared by every analyzer in the JVM, so it cannot be used by tiles read at the same time.
+ * Every tile gets it's own TileParticleAnalyzer, and the ROIs are retrieved with getRoisAsArray,
+ * in the same order as the rows of the results table.
+ * <br>
+ * If no results table is given, the analyzer will instead keep the area, perimeter, circularity, bounds and center of mass
+ * of each particle in plain arrays, skipping the results table bookkeeping altogether.
+ *
+ * @author George Kritikos
+ *
+ */
+public class TileParticleAnalyzer extends ParticleAnalyzer {
+
+	/**
+	 * the ROIs of the particles found, in the order they were found
+	 */
+	private ArrayList<Roi> particleRois = new ArrayList<Roi>();
+
+	/**
+	 * if false, the measurements are not written to the results table, but to the arrays below
+	 */
+	private boolean useResultsTable;
+
+	/**
+	 * the measurements of the particles, only used when there is no results table
+	 */
+	private float[] areas = new float[8];
+	private float[] perimeters = new float[8];
+	private float[] circularities = new float[8];
+	private float[] centersOfMassX = new float[8];
+	private float[] centersOfMassY = new float[8];
+	private Rectangle[] bounds = new Rectangle[8];
+
+
+	/**
+	 * Creates a particle analyzer that writes the measurements of the particles in the given results table,
+	 * and keeps their ROIs. The ADD_TO_MANAGER option is ignored, there is no RoiManager involved.
+	 * @param options
+	 * @param measurements
+	 * @param resultsTable
+	 * @param minSize
+	 * @param maxSize
+	 */
+	public TileParticleAnalyzer(int options, int measurements, ResultsTable resultsTable, double minSize, double maxSize) {
+		super(options & ~ADD_TO_MANAGER, measurements, resultsTable, minSize, maxSize);
+		useResultsTable = true;
+	}
+
+
+	/**
+	 * Creates a particle analyzer that keeps the ROIs and the basic measurements of the particles (area, perimeter,
+	 * circularity, bounds, center of mass) without a results table.
+	 * @param options
+	 * @param minSize
+	 * @param maxSize
+	 */
+	public TileParticleAnalyzer(int options, double minSize, double maxSize) {
+		//the results table is needed only so that the analyzer doesn't fall back to the system-wide one, nothing is written to it
+		super(options & ~ADD_TO_MANAGER, CENTER_OF_MASS+AREA+PERIMETER, new ResultsTable(), minSize, maxSize);
+		useResultsTable = false;
+	}
+
+
+	/**
+	 * This is called by the particle analyzer for every particle it keeps
+	 */
+	@Override
+	protected void saveResults(ImageStatistics stats, Roi roi) {
+
+		if(useResultsTable){
+			super.saveResults(stats, roi);
+		}
+		else{
+			int index = particleRois.size();
+			if(index==areas.length)
+				growArrays();
+
+			double perimeter = roi.getLength();
+			double circularity = perimeter==0.0 ? 0.0 : 4.0*Math.PI*(stats.pixelCount/(perimeter*perimeter));
+			if(circularity>1.0)
+				circularity = 1.0;
+
+			areas[index] = (float)stats.area;
+			perimeters[index] = (float)perimeter;
+			circularities[index] = (float)circularity;
+			centersOfMassX[index] = (float)stats.xCenterOfMass;
+			centersOfMassY[index] = (float)stats.yCenterOfMass;
+			bounds[index] = roi.getBounds();
+		}
+
+		//the particle analyzer re-uses the same wand for all particles, and traced ROIs keep the wand's point arrays,
+		//so the ROI has to be copied before the next particle is traced (this is what the RoiManager used to do)
+		particleRois.add((Roi) roi.clone());
+	}
+
+
+	/**
+	 * doubles the size of the measurement arrays
+	 */
+	private void growArrays(){
+		int newLength = areas.length*2;
+
+		float[] newAreas = new float[newLength];
+		float[] newPerimeters = new float[newLength];
+		float[] newCircularities = new float[newLength];
+		float[] newCentersOfMassX = new float[newLength];
+		float[] newCentersOfMassY = new float[newLength];
+		Rectangle[] newBounds = new Rectangle[newLength];
+
+		System.arraycopy(areas, 0, newAreas, 0, areas.length);
+		System.arraycopy(perimeters, 0, newPerimeters, 0, perimeters.length);
+		System.arraycopy(circularities, 0, newCircularities, 0, circularities.length);
+		System.arraycopy(centersOfMassX, 0, newCentersOfMassX, 0, centersOfMassX.length);
+		System.arraycopy(centersOfMassY, 0, newCentersOfMassY, 0, centersOfMassY.length);
+		System.arraycopy(bounds, 0, newBounds, 0, bounds.length);
+
+		areas = newAreas;
+		perimeters = newPerimeters;
+		circularities = newCircularities;
+		centersOfMassX = newCentersOfMassX;
+		centersOfMassY = newCentersOfMassY;
+		bounds = newBounds;
+	}
+
+
+	/**
+	 * Returns the ROIs of all the particles found, in the same order as in the results table
+	 * @return
+	 */
+	public Roi[] getRoisAsArray(){
+		return(particleRois.toArray(new Roi[particleRois.size()]));
+	}
+
+
+	/**
+	 * Returns the number of particles found
+	 * @return
+	 */
+	public int getCount(){
+		return(particleRois.size());
+	}
+
+
+	/**
+	 * Returns the index of the particle with the largest area, or -1 if there were no particles.
+	 * Only available if there was no results table.
+	 * @return
+	 */
+	public int getIndexOfBiggestParticle(){
+		int index = -1;
+		float max = -Float.MAX_VALUE;
+		for(int i=0; i<getCount(); i++){
+			if(areas[i]>max){
+				max = areas[i];
+				index = i;
+			}
+		}
+		return(index);
+	}
+
+	public float getArea(int index){
+		return(areas[index]);
+	}
+
+	public float getPerimeter(int index){
+		return(perimeters[index]);
+	}
+
+	public float getCircularity(int index){
+		return(circularities[index]);
+	}
+
+	public float getCenterOfMassX(int index){
+		return(centersOfMassX[index]);
+	}
+
+	public float getCenterOfMassY(int index){
+		return(centersOfMassY[index]);
+	}
+
+	public Rectangle getBounds(int index){
+		return(bounds[index]);
+	}
+}
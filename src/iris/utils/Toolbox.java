@@ -5,7 +5,6 @@ package iris.utils;
 
 import java.awt.Color;
 import java.awt.Point;
-import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
@@ -23,12 +22,10 @@ import com.opencsv.CSVReader;
 import fiji.threshold.Auto_Local_Threshold;
 import ij.ImagePlus;
 import ij.gui.Roi;
-import ij.io.FileSaver;
 import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
@@ -37,8 +34,10 @@ import ij.process.FloatProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
+import ij.process.ShortProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.settings.BasicSettings;
 import iris.settings.ColorSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput;
@@ -163,9 +162,11 @@ public class Toolbox {
 	 * This function will convert the given picture into black and white
 	 * using a fancy local thresholding algorithm, as described here:
 	 * @see http://www.dentistry.bham.ac.uk/landinig/software/autothreshold/autothreshold.html
-	 * @param 
+	 * @param originalImage
+	 * @param radius
+	 * @param settings the ROI of the original image is kept if the user has defined it (see BasicSettings.userDefinedRoi)
 	 */
-	public static ImagePlus turnImageBW_Local_auto_mean(ImagePlus originalImage, int radius){
+	public static ImagePlus turnImageBW_Local_auto_mean(ImagePlus originalImage, int radius, BasicSettings settings){
 		ImagePlus imageToThreshold = originalImage.duplicate();
 
 		//convert the image to grayscale
@@ -173,10 +174,10 @@ public class Toolbox {
 		converter.convertToGray8();
 
 
-		Auto_Local_Threshold.Mean(imageToThreshold, radius, 0, 0, true);
+		LocalThresholder.mean(imageToThreshold, radius, 0, true);
 		imageToThreshold.setTitle(originalImage.getTitle());
 
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(settings.userDefinedRoi){
 			imageToThreshold.setRoi(originalImage.getRoi());
 		}
 
@@ -198,8 +199,9 @@ public class Toolbox {
 		converter.convertToGray8();
 
 
+		//the mean, Niblack and Sauvola thresholds only need the sums of each window
 		if(method=="Mean"){
-			Auto_Local_Threshold.Mean(imageToThreshold, radius, 0, 0, false);
+			LocalThresholder.mean(imageToThreshold, radius, 0, false);
 		}
 		if(method=="Bernsen"){
 			Auto_Local_Threshold.Bernsen(imageToThreshold, radius, 0, 0, false);
@@ -208,7 +210,10 @@ public class Toolbox {
 			Auto_Local_Threshold.Median(imageToThreshold, radius, 0, 0, false);
 		}
 		if(method=="Niblack"){
-			Auto_Local_Threshold.Niblack(imageToThreshold, radius, 0, 0, false);
+			LocalThresholder.niblack(imageToThreshold, radius, -0.2, 0, false);
+		}
+		if(method=="Sauvola"){
+			LocalThresholder.sauvola(imageToThreshold, radius, 0.5, 128, false);
 		}
 		if(method=="MidGrey"){
 			Auto_Local_Threshold.MidGrey(imageToThreshold, radius, 0, 0, false);
@@ -223,23 +228,20 @@ public class Toolbox {
 	}
 
 	/**
-	 * This function will return a grayscale version of the given image, using the
-	 * brightness channel of the HSB conversion of the image.
-	 * The original input image is unchanged.
-	 * @param originalImage
+	 * This function will return a new 8-bit picture of the brightness channel of the HSB conversion
+	 * of the given color image, with the given title and no ROI.
+	 * getHSB only reads the pixels, so there's no need to work on a copy of the color image.
+	 * @param colorImage
+	 * @param title
 	 * @return
 	 */
-	public static ImagePlus getHSBgrayscaleImageBrightness(ImagePlus originalImage){
+	public static ImagePlus getHSBbrightnessImage(ImagePlus colorImage, String title){
 
-		ImagePlus originalImageCopy = originalImage.duplicate();
-		ImageProcessor ip =  originalImageCopy.getProcessor();
-
-		ColorProcessor cp = (ColorProcessor)ip;
+		ColorProcessor cp = (ColorProcessor) colorImage.getProcessor();
 
 		//get the number of pixels in the picture
-		//ip.snapshot(); // override ColorProcessor bug in 1.32c
-		int width = originalImageCopy.getWidth();
-		int height = originalImageCopy.getHeight();
+		int width = colorImage.getWidth();
+		int height = colorImage.getHeight();
 		int numPixels = width*height;
 
 		//we need those arrays to save the different channels into
@@ -250,15 +252,51 @@ public class Toolbox {
 		//saves the HSB channels of the cp into the h, s, bSource
 		cp.getHSB(hSource,sSource,bSource);
 
+		return(new ImagePlus(title, new ByteProcessor(width,height,bSource)));
+	}
+
+	/**
+	 * This function will return a grayscale version of the given image, using the
+	 * brightness channel of the HSB conversion of the image.
+	 * The original input image is unchanged.
+	 * @param originalImage
+	 * @param settings the ROI of the original image is kept if the user has defined it (see BasicSettings.userDefinedRoi)
+	 * @return
+	 */
+	public static ImagePlus getHSBgrayscaleImageBrightness(ImagePlus originalImage, BasicSettings settings){
+
 		//create a new image with the original title and the brightness HSB channel of the input image
-		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
-		ImagePlus grayscaleImage = new ImagePlus(originalImage.getTitle(), bpBri);
+		ImagePlus grayscaleImage = getHSBbrightnessImage(originalImage, originalImage.getTitle());
 
 
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(settings.userDefinedRoi){
 			grayscaleImage.setRoi(originalImage.getRoi());
 		}
-		originalImageCopy.flush();
+
+		return(grayscaleImage);
+	}
+
+
+	/**
+	 * This function will return an 8-bit grayscale copy of the given image, the same one ImageConverter.convertToGray8
+	 * would turn a duplicate of it into. Color images are converted straight from their pixels,
+	 * without making a color duplicate first. Any ROI of the original image is ignored.
+	 * The original input image is unchanged.
+	 * @param originalImage
+	 * @return
+	 */
+	public static ImagePlus getGrayscaleCopy(ImagePlus originalImage){
+
+		if(originalImage.getType()==ImagePlus.COLOR_RGB){
+			ImageProcessor grayscaleProcessor = originalImage.getProcessor().convertToByte(ImageConverter.getDoScaling());
+			return(new ImagePlus(originalImage.getTitle(), grayscaleProcessor));
+		}
+
+		ImagePlus grayscaleImage = originalImage.createImagePlus();
+		grayscaleImage.setProcessor(originalImage.getTitle(), originalImage.getProcessor().duplicate());
+
+		ImageConverter imageConverter = new ImageConverter(grayscaleImage);
+		imageConverter.convertToGray8();
 
 		return(grayscaleImage);
 	}
@@ -287,20 +325,37 @@ public class Toolbox {
 
 	/**
 	 * This function will create a copy of the original image, and rotate that copy.
-	 * The original image should be flushed by the caller if not reused
+	 * The original image should be flushed by the caller if not reused.
+	 * The ROI of the original image is deleted, so single colony pictures shouldn't be rotated (see RotateStage)
 	 * @param originalImage
 	 * @param angle
 	 * @return
 	 */
 	public static ImagePlus rotateImage(ImagePlus originalImage, double angle) {
 
-		if(IrisFrontend.singleColonyRun==true){
-			ImagePlus rotatedImage = originalImage.duplicate();
-			rotatedImage.setRoi(originalImage.getRoi());
-			return(rotatedImage); // otherwise I'd have to delete the ROI
+		originalImage.deleteRoi();
+		ImageProcessor originalProcessor = originalImage.getProcessor();
+
+		//ImageProcessor.rotate makes it's own copy of the pixels to read from, on top of the duplicate.
+		//Instead, the rotated picture is written into a new empty processor that reads straight from the original pixels (as it's snapshot),
+		//so there are never more than 2 copies of the picture in memory.
+		if(angle%360!=0 && originalProcessor.getInterpolationMethod()!=ImageProcessor.BICUBIC
+				&& (originalProcessor instanceof ColorProcessor || originalProcessor instanceof ByteProcessor)){
+
+			ImageProcessor rotatedProcessor = originalProcessor.createProcessor(originalImage.getWidth(), originalImage.getHeight());
+			rotatedProcessor.setInterpolationMethod(originalProcessor.getInterpolationMethod());
+			rotatedProcessor.setSnapshotPixels(originalProcessor.getPixels());
+			rotatedProcessor.setSnapshotCopyMode(true);
+			rotatedProcessor.setBackgroundValue(0);
+
+			rotatedProcessor.rotate(angle);
+			rotatedProcessor.setSnapshotPixels(null);
+
+			ImagePlus rotatedImage = originalImage.createImagePlus();
+			rotatedImage.setProcessor(originalImage.getTitle(), rotatedProcessor);
+			return(rotatedImage);
 		}
 
-		originalImage.deleteRoi();
 		ImagePlus aDuplicate = originalImage.duplicate();//because we don't want to tamper with the original image
 
 		aDuplicate.getProcessor().setBackgroundValue(0);
@@ -365,117 +420,26 @@ public class Toolbox {
 	}
 
 
-	/**
-	 * This function will get original picture, segment it into tiles.
-	 * For each one, it will apply the colony ROI on it (except it it was empty -- add an empty ROI).
-	 * Then, it will get the mask from the ROI and find it's bounds.
-	 * At the end, for each original tile, we'll have 0/1 tiles, with 1s where the colony bounds are.
-	 * @param croppedImage
-	 * @param segmenterOutput
-	 * @param colonyRoi
-	 * @return
-	 */
-	private static ByteProcessor[][] getColonyBounds(ImagePlus croppedImage, BasicImageSegmenterOutput segmentationOutput, BasicTileReaderOutput [][] tileReaderOutputs){
-
-		ByteProcessor[][] colonyBounds = new ByteProcessor[tileReaderOutputs.length][tileReaderOutputs[0].length];
-
-		//for all rows
-		for(int i=0;i<tileReaderOutputs.length; i++){
-			//for all columns
-			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
-
-				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
-
-
-				//apply the ROI, get the mask
-				ImageProcessor tileProcessor = tile.getProcessor();
-				tileProcessor.setRoi(tileReaderOutputs[i][j].colonyROI);
-
-				tileProcessor.setColor(Color.white);
-				tileProcessor.setBackgroundValue(0);
-				tileProcessor.fill(tileProcessor.getMask());
-
-
-				//get the bounds of the mask, that's it, save it
-				tileProcessor.findEdges();
-				colonyBounds[i][j] = (ByteProcessor) tileProcessor.convertToByte(true);		
-			}
-		}
-
-		croppedImage.deleteRoi();
-
-		return(colonyBounds);
-	}
-
-
 	/**
 	 * This function will use the ROI information in each TileReader to get the colony bounds on the picture, with
-	 * offsets found in the segmenterOutput.  
+	 * offsets found in the segmenterOutput (see ColonyOutlines). Empty tiles are skipped.
 	 * @param segmentedImage
 	 * @param segmenterOutput
 	 */
 	public static void drawColonyBounds(ImagePlus croppedImage, BasicImageSegmenterOutput segmenterOutput, BasicTileReaderOutput [][] tileReaderOutputs){
 
+		Roi[][] colonyRois = new Roi[tileReaderOutputs.length][tileReaderOutputs[0].length];
 
-		//first, get all the colony bounds into byte processors (one for each tile, having the exact tile size)
-		ByteProcessor[][] colonyBounds = getColonyBounds(croppedImage, segmenterOutput, tileReaderOutputs);
-
-
-		//paint those bounds on the original cropped image
-		ImageProcessor bigPictureProcessor = croppedImage.getProcessor();
-		//bigPictureProcessor.setColor(Color.black);
-		bigPictureProcessor.setColor(Color.cyan);
-		bigPictureProcessor.setLineWidth(1);
-
-
-		//for all rows
 		for(int i=0; i<tileReaderOutputs.length; i++){
-			//for all columns
 			for(int j=0; j<tileReaderOutputs[0].length; j++) {
-
 				if(tileReaderOutputs[i][j].colonySize==0)
 					continue; //don't go through the trouble for empty tiles
 
-				//get tile offsets
-				int tile_y_offset = segmenterOutput.ROImatrix[i][j].getBounds().y;
-				int tile_x_offset = segmenterOutput.ROImatrix[i][j].getBounds().x;
-				int tileWidth = segmenterOutput.ROImatrix[i][j].getBounds().width;
-				int tileHeight = segmenterOutput.ROImatrix[i][j].getBounds().height;
-
-
-				//for each pixel, if it is colony bounds, paint it on the big picture
-				for(int x=0; x<tileWidth; x++){
-					for(int y=0; y<tileHeight; y++){
-						if(colonyBounds[i][j].getPixel(x, y)==255){ //it is a colony bounds pixel
-							bigPictureProcessor.drawDot(x+tile_x_offset, y+tile_y_offset); //paint it on the big picture
-						}
-					}
-				}
-
+				colonyRois[i][j] = tileReaderOutputs[i][j].colonyROI;
 			}
-
 		}
 
-
-
-
-
-
-		//		croppedImage.updateImage();
-		//		croppedImage.show();
-		//		croppedImage.hide();
-
-
-
-
-		/**
-		 * TODO: if cropping the segmented (input) image doesn't give the tile we want (to set the ROI),
-		 * then we can switch back to using the original (cropped color) picture and draw both the grid and the colony bounds on it.
-		 * This will also give us the advantage of outputting a color grid
-		 */
+		ColonyOutlines.draw(croppedImage, segmenterOutput, colonyRois, Color.cyan);
 	}
 
 
@@ -535,17 +499,12 @@ public class Toolbox {
 	 * This method gets a subset of that picture (for faster execution), and calculates the rotation of that part
 	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
 	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
-	 * in a scanned document, as part of the OCR procedure.
+	 * in a scanned document, as part of the OCR procedure. See RotationEstimator for the search itself.
 	 * @param originalImage
 	 * @return the angle of this picture's rotation 
 	 */
 	public static double calculateImageRotation(ImagePlus originalImage) {
 
-		//0. if user has cropped the colony, no need to rotate
-		if(IrisFrontend.singleColonyRun==true){
-			return(0.0);
-		}
-
 		//1. get a subset of that picture
 		int width = originalImage.getWidth();
 		int height = originalImage.getHeight();
@@ -567,36 +526,10 @@ public class Toolbox {
 		turnImageBW_Otsu(imageSubset);
 
 
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
+		//3. find the angle that best aligns the rows and columns of colonies, with a precision of 0.05 degrees
+		double bestAngle = RotationEstimator.estimateRotation(imageSubset);
 
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
+		imageSubset.flush();
 
 		return(bestAngle);			
 	}
@@ -604,60 +537,53 @@ public class Toolbox {
 
 
 	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
+	 * This method will crop the given area of interest out of the image.
+	 * The rows of the bounding rectangle of the ROI are copied straight out of the backing pixel array
+	 * into a new image processor of the same type. This does not go through the (static) ImageJ clipboard,
+	 * and it doesn't touch the ROI of the original image, so it's safe to call from many threads at once.
+	 * Parts of the ROI that fall outside the image are left out, just like ImageJ's copy does.
+	 * @param originalImage
+	 * @param roi
 	 * @return
 	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
-
+	public static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
+		return(cropImage(originalImage, roi.getBounds()));
 	}
 
 
-
-	/**
-	 * I cannot believe I have to write this
-	 * @param list
-	 * @return
-	 */
-	private static double getMean(ArrayList<Integer> list){
-
-		int sum = 0;
-
-		for(int i=0;i<list.size();i++){
-			sum += list.get(i);
-		}
-
-		return(sum/list.size());
-	}
-
 	/**
-	 * There has to be a better way guys..
-	 * @param list
+	 * This method will crop the given rectangle out of the image, see {@link #cropImage(ImagePlus, Roi)}
+	 * @param originalImage
+	 * @param rectangle
 	 * @return
 	 */
-	private static double getVariance(ArrayList<Integer> list){
-		double mean = getMean(list);
-
-		double sum = 0;
-
-		for(int i=0;i<list.size();i++){			
-			sum += Math.pow(list.get(i)-mean, 2);
+	public static ImagePlus cropImage(ImagePlus originalImage, Rectangle rectangle){
+		ImageProcessor originalProcessor = originalImage.getProcessor();
+		int originalWidth = originalProcessor.getWidth();
+
+		//1. keep only the part of the rectangle that is inside the image
+		Rectangle bounds = rectangle.intersection(new Rectangle(0, 0, originalWidth, originalProcessor.getHeight()));
+		if(bounds.width<=0 || bounds.height<=0)
+			bounds = new Rectangle(0, 0, originalWidth, originalProcessor.getHeight());
+
+		//2. copy the rows one by one into a new processor of the same type
+		ImageProcessor croppedProcessor = originalProcessor.createProcessor(bounds.width, bounds.height);
+		Object originalPixels = originalProcessor.getPixels();
+		Object croppedPixels = croppedProcessor.getPixels();
+
+		for(int y=0; y<bounds.height; y++){
+			System.arraycopy(originalPixels, (bounds.y+y)*originalWidth + bounds.x, croppedPixels, y*bounds.width, bounds.width);
 		}
 
-		return(sum/(list.size()-1));
+		//float and 16-bit images need their display range recalculated for the new pixels
+		if(croppedProcessor instanceof FloatProcessor || croppedProcessor instanceof ShortProcessor)
+			croppedProcessor.resetMinAndMax();
 
+		return(new ImagePlus(originalImage.getTitle(), croppedProcessor));
 	}
 
 
 
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using the Otsu method. This version will also return the threshold found.
@@ -759,14 +685,13 @@ public class Toolbox {
 
 
 	/**
-	 * Saves a picture, sparing us the dramatic ImageJ's pass through the GUI elements
+	 * Saves a picture, sparing us the dramatic ImageJ's pass through the GUI elements.
+	 * The picture is saved in the background (see DiagnosticImageWriter), it can be changed or flushed right after this returns.
 	 * @param croppedImage
 	 * @param string
 	 */
 	public static void savePicture(ImagePlus inputImage, String path) {
-		FileSaver saver = new FileSaver(inputImage);
-		saver.saveAsJpeg(path);
-
+		DiagnosticImageWriter.savePicture(inputImage, path);
 	}
 
 	/**
@@ -813,6 +738,17 @@ public class Toolbox {
 	}
 
 
+	/**
+	 * Same as turnImageBW_Otsu_auto(ImagePlus), but the threshold comes from (and stays in) the given histogram of the picture,
+	 * so that it doesn't need to be found again by later steps
+	 * @param BW_croppedImage
+	 * @param histogram
+	 */
+	public static void turnImageBW_Otsu_auto(ImagePlus BW_croppedImage, TileHistogram histogram) {
+		histogram.setAutoThreshold(BW_croppedImage, Method.Otsu, true, ImageProcessor.BLACK_AND_WHITE_LUT);
+	}
+
+
 	/**
 	 * This function will convert the given picture into black and white
 	 * using ImageProcessor's auto thresholding function, employing the Percentile algorithm. 
@@ -850,6 +786,16 @@ public class Toolbox {
 	}
 
 
+	/**
+	 * Same as turnImageBW_Huang_auto(ImagePlus), but the threshold comes from (and stays in) the given histogram of the picture
+	 * @param BW_croppedImage
+	 * @param histogram
+	 */
+	public static void turnImageBW_Huang_auto(ImagePlus BW_croppedImage, TileHistogram histogram) {
+		histogram.setAutoThreshold(BW_croppedImage, Method.Huang, true, ImageProcessor.BLACK_AND_WHITE_LUT);
+	}
+
+
 	/**
 	 * This function will convert the given picture into black and white
 	 * using ImageProcessor's auto thresholding function, employing the Minimum algorithm
@@ -901,18 +847,8 @@ public class Toolbox {
 	 * @return
 	 */
 	public static int getThreshold(ImagePlus grayscale_image, Method method){
-
-		//get all the objects required: calibration, imageProcessor and histogram
-		Calibration calibration = new Calibration(grayscale_image);		
-		ImageProcessor imageProcessor = grayscale_image.getProcessor();
-		ImageStatistics statistics = ImageStatistics.getStatistics(imageProcessor, ij.measure.Measurements.MEAN, calibration);
-		int[] histogram = statistics.histogram;
-
-		//use that histogram to find a threshold
-		AutoThresholder at = new AutoThresholder();
-		int threshold = at.getThreshold(method, histogram);
-
-		return(threshold);
+		//if more than one threshold of the same picture is needed, keep the TileHistogram instead
+		return(new TileHistogram(grayscale_image).getThreshold(method));
 	}
 
 
@@ -1028,11 +964,8 @@ public class Toolbox {
 		//get just the tile part of the image
 		ImagePlus tileImage = cropImage(colourCroppedImage, segmentationOutput.ROImatrix[i][j]);
 
-
-		//construct the output filename for the tile.
-		//this will hold the 
-
-		savePicture(tileImage, tileImageFilename);
+		//it's saved in the background, or kept for the plate's colony atlas (see DiagnosticImageWriter.finishColonyPictures)
+		DiagnosticImageWriter.saveColonyPicture(colourCroppedImage, tileImage, tileImageFilename);
 
 	}
 
@@ -1157,12 +1090,13 @@ public class Toolbox {
 	 * This function just checks for circularity. If it's under 0.20, then the tile gets rejected.
 	 * @param resultsTable
 	 * @param tileImage
+	 * @param settings single colony tiles are never empty
 	 * @return
 	 */
 	public static boolean isTileEmpty_simple2(ResultsTable resultsTable,
-			ImagePlus tileImage) {
+			ImagePlus tileImage, BasicSettings settings) {
 
-		if(IrisFrontend.singleColonyRun==true){
+		if(settings.singleColonyRun==true){
 			return(false);
 		}
 
@@ -1189,15 +1123,44 @@ public class Toolbox {
 	}
 
 
+	/**
+	 * This function just checks for circularity. If it's under 0.20, then the tile gets rejected.
+	 * Same as the results table version, for particles found by the ConnectedComponentLabeller.
+	 * @param particles
+	 * @param tileImage
+	 * @param settings single colony tiles are never empty
+	 * @return
+	 */
+	public static boolean isTileEmpty_simple2(ConnectedComponentLabeller particles,
+			ImagePlus tileImage, BasicSettings settings) {
+
+		if(settings.singleColonyRun==true){
+			return(false);
+		}
+
+		//for the following, we only check the largest particle
+		//which is the one who would be reported either way if we decide that this spot is not empty
+		int indexOfMax = particles.getIndexOfBiggestParticle();
+
+		//check for the circularity of the largest particle, see above for the threshold
+		if(particles.getCircularities()[indexOfMax]<0.20){
+			return(true); //it's empty
+		}
+
+		return(false);
+	}
+
+
 	/**
 	 * This function checks whether the given tile is empty,
 	 * by summing up it's brightness and calculating the variance of these sums.
 	 * Empty tiles have a very low variance, whereas tiles with colonies have high variances.
 	 * @param tile
+	 * @param settings single colony tiles are never empty
 	 * @return
 	 */
-	public static boolean isTileEmpty_simple(ImagePlus tile, double varianceThreshold){
-		if(IrisFrontend.singleColonyRun==true){
+	public static boolean isTileEmpty_simple(ImagePlus tile, double varianceThreshold, BasicSettings settings){
+		if(settings.singleColonyRun==true){
 			return(false);
 		}
 
@@ -1221,134 +1184,310 @@ public class Toolbox {
 	 * @return
 	 */
 	private static double[] sumOfRows_double(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
+		int[] sumOfRows = BrightnessProjection.calculate(croppedImage).sumOfRows;
 
-		//make the sum of rows
+		double[] sumOfRows_double = new double[sumOfRows.length];
+		for(int y=0; y<sumOfRows.length; y++){
+			sumOfRows_double[y] = sumOfRows[y];
+		}
 
-		double[] sumOfRows = new double[dimensions[1]];
+		return(sumOfRows_double);
+	}
 
-		int sum = 0;
 
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
 
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
-			}
+	/**
+	 * a very commonly used procedure across tile readers: particle analysis
+	 * @param inputImage
+	 * @param resultsTable
+	 * @return the ROIs of the particles found, in the order of the results table, or null if none were found
+	 */
+	public static Roi[] particleAnalysis_fillHoles(ImagePlus inputImage, ResultsTable resultsTable){
+		//create the results table, where the results of the particle analysis will be shown
+		//ResultsTable resultsTable = new ResultsTable();
+
+		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
+		TileParticleAnalyzer particleAnalyzer = new TileParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
+				resultsTable, 5, Integer.MAX_VALUE);
+
+		particleAnalyzer.analyze(inputImage);
 
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
+		//3.1 check if the returned results table is empty
+		if(resultsTable.getCounter()==0){
+			return(null);
 		}
 
-		return(sumOfRows);
+		return(particleAnalyzer.getRoisAsArray());
 	}
 
+	/**
+	 * Fills the holes of the objects in a black and white picture, just like Binary's "Fill Holes" command:
+	 * the background pixels that can't be reached from the edges of the picture become object pixels.
+	 * The background is flooded from all the edges at once, on a BinaryBitmap.
+	 * <br>
+	 * Like the command, anything that isn't background (or is 127, the value the command floods with) becomes foreground,
+	 * so a grayscale picture comes out black and white too.
+	 * @param BW_image an 8-bit picture
+	 */
+	public static void fillHoles(ImagePlus BW_image){
+		ImageProcessor imageProcessor = BW_image.getProcessor();
+		byte[] pixels = (byte[]) imageProcessor.getPixels();
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
+
+		//1. which value is the background, the same way Binary decides
+		int foreground = getBinaryForeground(imageProcessor);
+		int background = 255 - foreground;
+
+		//2. flood the background from the edges
+		BinaryBitmap reachedBackground = BinaryBitmap.fromPixels(pixels, width, height, background);
+		reachedBackground.keepBorderConnected();
+
+		//3. everything not reached is foreground
+		for(int y=0; y<height; y++){
+			for(int x=0; x<width; x++){
+				int i = y*width + x;
+				if(reachedBackground.get(x, y) || pixels[i]==(byte)127)
+					pixels[i] = (byte) background;
+				else
+					pixels[i] = (byte) foreground;
+			}
+		}
 
+		imageProcessor.setBinaryThreshold();
+	}
 
 
 	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
+	 * Does Binary's "Open" command (one erosion and then one dilation, with the default count of 1) on a BinaryBitmap
+	 * @param BW_image an 8-bit black and white picture
 	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
+	public static void openBinary(ImagePlus BW_image){
+		binaryOpenOrClose(BW_image, true);
+	}
 
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
 
-		int sum = 0;
+	/**
+	 * Does Binary's "Close" command (one dilation and then one erosion, with the default count of 1) on a BinaryBitmap
+	 * @param BW_image an 8-bit black and white picture
+	 */
+	public static void closeBinary(ImagePlus BW_image){
+		binaryOpenOrClose(BW_image, false);
+	}
 
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
 
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
+	private static void binaryOpenOrClose(ImagePlus BW_image, boolean open){
+		ImageProcessor imageProcessor = BW_image.getProcessor();
+		byte[] pixels = (byte[]) imageProcessor.getPixels();
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
 
-				sum += croppedImage.getPixel(x, y)[0];
-			}
+		int foreground = getBinaryForeground(imageProcessor);
+		int background = 255 - foreground;
 
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
+		//Binary's erode turns everything that isn't background into foreground, dilate only grows what's exactly foreground
+		BinaryBitmap objects;
+		if(open){
+			objects = BinaryBitmap.fromPixels(pixels, width, height, background);
+			objects.invert();
+			objects.erode(1, !ij.Prefs.padEdges);
+			objects.dilate(1);
+		}
+		else {
+			objects = BinaryBitmap.fromPixels(pixels, width, height, foreground);
+			objects.dilate(1);
+			objects.erode(1, !ij.Prefs.padEdges);
 		}
 
-		return(sumOfRows);
+		objects.toPixels(pixels, foreground, background);
+		imageProcessor.setBinaryThreshold();
 	}
 
 
+	/**
+	 * Returns the value of the object pixels in black and white pictures, the way Binary finds it
+	 * (from the black background setting and the LUT of the picture)
+	 */
+	private static int getBinaryForeground(ImageProcessor imageProcessor){
+		int foreground = ij.Prefs.blackBackground ? 255 : 0;
+		if(imageProcessor.isInvertedLut())
+			foreground = 255 - foreground;
+		return(foreground);
+	}
 
 
+	/**
+	 * Same as calling ImageProcessor.erode() on the picture the given number of times, but all the iterations are done in one pass:
+	 * on a BinaryBitmap for black and white pictures, and as a single (2*iterations+1) square filter for grayscale and color pictures.
+	 * Other pictures, and pictures with a selection, are eroded one iteration at a time as before.
+	 * @param image
+	 * @param iterations
+	 */
+	public static void erode(ImagePlus image, int iterations){
+		erodeOrDilate(image, iterations, true);
+	}
+
 
 	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
+	 * Same as calling ImageProcessor.dilate() on the picture the given number of times, see erode(ImagePlus, int)
+	 * @param image
+	 * @param iterations
 	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
+	public static void dilate(ImagePlus image, int iterations){
+		erodeOrDilate(image, iterations, false);
+	}
+
 
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
+	private static void erodeOrDilate(ImagePlus image, int iterations, boolean erode){
+		ImageProcessor imageProcessor = image.getProcessor();
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
 
-		int sum = 0;
+		//ImageJ's 3x3 filters repeat the edge pixels outside the picture, so the filter of a bigger square is the same as repeating the small one,
+		//but only when the whole picture is filtered
+		Rectangle area = imageProcessor.getRoi();
+		boolean wholePicture = area.x==0 && area.y==0 && area.width==width && area.height==height;
 
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
+		if(wholePicture && imageProcessor instanceof ByteProcessor && ((ByteProcessor) imageProcessor).isBinary()){
+			//8-bit pictures get eroded with the maximum filter (white grows), unless the LUT is inverted
+			boolean whiteGrows = erode != imageProcessor.isInvertedLut();
+
+			byte[] pixels = (byte[]) imageProcessor.getPixels();
+			BinaryBitmap white = BinaryBitmap.fromPixels(pixels, width, height, 255);
+			if(whiteGrows)
+				white.dilate(iterations);
+			else
+				white.erode(iterations, false);
+			white.toPixels(pixels, 255, 0);
+		}
+		else if(wholePicture && imageProcessor instanceof ByteProcessor){
+			boolean maximum = erode != imageProcessor.isInvertedLut();
+			filterGraySquare((byte[]) imageProcessor.getPixels(), width, height, iterations, maximum);
+		}
+		else if(wholePicture && imageProcessor instanceof ColorProcessor){
+			//each channel gets eroded with the maximum filter, and dilated with the minimum
+			filterRGBSquare((int[]) imageProcessor.getPixels(), width, height, iterations, erode);
+		}
+		else {
+			for(int i=0; i<iterations; i++){
+				if(erode)
+					imageProcessor.erode();
+				else
+					imageProcessor.dilate();
+			}
+		}
+	}
 
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
+	/**
+	 * Replaces every pixel with the maximum (or minimum) of the square of the given radius around it
+	 * (the part of it inside the picture), first along the rows and then along the columns
+	 */
+	private static void filterGraySquare(byte[] pixels, int width, int height, int radius, boolean maximum){
+		byte[] rowResult = ScratchBuffers.getBytes(width*height);
+
+		//1. along the rows
+		for(int y=0; y<height; y++){
+			int rowStart = y*width;
+			for(int x=0; x<width; x++){
+				int first = rowStart + Math.max(x-radius, 0);
+				int last = rowStart + Math.min(x+radius, width-1);
+				rowResult[rowStart+x] = getExtreme(pixels, first, last, 1, maximum);
 			}
+		}
 
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
+		//2. along the columns
+		for(int y=0; y<height; y++){
+			int first = Math.max(y-radius, 0)*width;
+			int last = Math.min(y+radius, height-1)*width;
+			for(int x=0; x<width; x++){
+				pixels[y*width+x] = getExtreme(rowResult, first+x, last+x, width, maximum);
+			}
 		}
 
-		return(sumOfColumns);
+		ScratchBuffers.giveBack(rowResult);
 	}
 
 
+	/**
+	 * Returns the maximum (or minimum) of the pixels first, first+step, ... last
+	 */
+	private static byte getExtreme(byte[] pixels, int first, int last, int step, boolean maximum){
+		int extreme = pixels[first]&0xff;
+
+		for(int i=first+step; i<=last; i+=step){
+			int value = pixels[i]&0xff;
+			if(maximum ? value>extreme : value<extreme)
+				extreme = value;
+		}
+
+		return((byte) extreme);
+	}
+
 
 	/**
-	 * a very commonly used procedure across tile readers: particle analysis
-	 * @param inputImage
-	 * @param resultsTable
-	 * @return
+	 * Replaces each channel of every pixel with the maximum (or minimum) of that channel in the square of the given radius around it
+	 * (the part of it inside the picture), first along the rows and then along the columns
 	 */
-	public static RoiManager particleAnalysis_fillHoles(ImagePlus inputImage, ResultsTable resultsTable){
-		//create the results table, where the results of the particle analysis will be shown
-		//ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
+	private static void filterRGBSquare(int[] pixels, int width, int height, int radius, boolean maximum){
+		int[] rowResult = ScratchBuffers.getInts(width*height);
+
+		//1. along the rows
+		for(int y=0; y<height; y++){
+			int rowStart = y*width;
+			for(int x=0; x<width; x++){
+				int first = rowStart + Math.max(x-radius, 0);
+				int last = rowStart + Math.min(x+radius, width-1);
+				rowResult[rowStart+x] = getChannelExtremes(pixels, first, last, 1, maximum);
+			}
+		}
 
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
+		//2. along the columns
+		for(int y=0; y<height; y++){
+			int first = Math.max(y-radius, 0)*width;
+			int last = Math.min(y+radius, height-1)*width;
+			for(int x=0; x<width; x++){
+				pixels[y*width+x] = 0xff000000 | getChannelExtremes(rowResult, first+x, last+x, width, maximum);
+			}
+		}
 
-		ParticleAnalyzer.setRoiManager(roiManager);
+		ScratchBuffers.giveBack(rowResult);
+	}
 
-		particleAnalyzer.analyze(inputImage);
 
-		//3.1 check if the returned results table is empty
-		if(resultsTable.getCounter()==0){
-			return(null);
+	/**
+	 * Returns the maximum (or minimum) red, green and blue of the pixels first, first+step, ... last, as a color
+	 */
+	private static int getChannelExtremes(int[] pixels, int first, int last, int step, boolean maximum){
+		int red = (pixels[first]>>16)&0xff;
+		int green = (pixels[first]>>8)&0xff;
+		int blue = pixels[first]&0xff;
+
+		for(int i=first+step; i<=last; i+=step){
+			int pixel = pixels[i];
+			int pixelRed = (pixel>>16)&0xff;
+			int pixelGreen = (pixel>>8)&0xff;
+			int pixelBlue = pixel&0xff;
+
+			if(maximum){
+				if(pixelRed>red) red = pixelRed;
+				if(pixelGreen>green) green = pixelGreen;
+				if(pixelBlue>blue) blue = pixelBlue;
+			}
+			else {
+				if(pixelRed<red) red = pixelRed;
+				if(pixelGreen<green) green = pixelGreen;
+				if(pixelBlue<blue) blue = pixelBlue;
+			}
 		}
 
-		return(roiManager);
+		return((red<<16) | (green<<8) | blue);
 	}
 
+
+
 	/**
 	 * 
 	 * @param BW_tile: a thresholded tile
@@ -1360,12 +1499,15 @@ public class Toolbox {
 		ImageConverter imageConverter = new ImageConverter(BW_tile);
 		imageConverter.convertToGray8();
 
+		//both thresholds are found on the same histogram
+		TileHistogram tileHistogram = new TileHistogram(BW_tile);
+
 		//		turnImageBW_Local_auto(BW_tile, 8);
-		turnImageBW_Otsu_auto(BW_tile); //almost works
+		turnImageBW_Otsu_auto(BW_tile, tileHistogram); //almost works
 		//turnImageBW_Shanbhag_auto(BW_tile);
 
 
-		turnImageBW_Huang_auto(BW_tile);
+		turnImageBW_Huang_auto(BW_tile, tileHistogram);
 
 		//		BW_tile.show();
 		//		BW_tile.hide();
@@ -1377,32 +1519,24 @@ public class Toolbox {
 		//		BW_tile.hide();
 
 		//fill holes -- could be why UEP fails
-		ij.plugin.filter.Binary my_Binary = new ij.plugin.filter.Binary();
-		my_Binary.setup("Fill Holes", BW_tile);
-		my_Binary.run(BW_tile.getProcessor());
+		//(Binary only fills for "fill..." commands, so "Fill Holes" never filled anything here, it only set the binary threshold;
+		//the tile is still grayscale at this point, and filling it would turn everything that isn't pure white into foreground)
+		BW_tile.getProcessor().setBinaryThreshold();
 
 		//		BW_tile.show();
 		//		BW_tile.hide();
 		//		
-		ij.plugin.filter.EDM my_EDM = new ij.plugin.filter.EDM();
-		FloatProcessor EDM_processor = my_EDM.makeFloatEDM(BW_tile.getProcessor(), 0, true);
-		ij.plugin.filter.MaximumFinder MaximumFinder = new ij.plugin.filter.MaximumFinder();
-		double processorMax = EDM_processor.getMax();
-		Polygon centerPoints = MaximumFinder.getMaxima(EDM_processor, processorMax-1, true);
-
-		Point pointToReturn = new Point(centerPoints.xpoints[0], centerPoints.ypoints[0]);
+		//the distance map and its maximum are found on scratch arrays, see ColonyCenterFinder
+		Point pointToReturn = ColonyCenterFinder.getUltimateErosionPoint(BW_tile.getProcessor());
 
 		//if UEP failed miserably, I will erode myself and get the center
-		if(pointToReturn.x==0){
+		if(pointToReturn==null){
 			BW_tile.getProcessor().setAutoThreshold(Method.Otsu, true, ImageProcessor.BLACK_AND_WHITE_LUT);
 
-			BW_tile.getProcessor().erode();
-			BW_tile.getProcessor().erode();
-			BW_tile.getProcessor().erode();
-			BW_tile.getProcessor().erode();
+			erode(BW_tile, 4);
 
 			ResultsTable my_ResultsTable = new ResultsTable();
-			RoiManager my_RoiManager = Toolbox.particleAnalysis_fillHoles(BW_tile, my_ResultsTable);
+			Toolbox.particleAnalysis_fillHoles(BW_tile, my_ResultsTable);
 
 			int indexOfBiggestParticle = getIndexOfBiggestParticle(my_ResultsTable);
 			pointToReturn = getBiggestParticleCenterOfMass(my_ResultsTable, indexOfBiggestParticle);
@@ -1511,33 +1645,33 @@ public class Toolbox {
 	 * then will get the median of 
 	 * @return
 	 */
-	public static ColorTileReaderInput [][] precalculateColonyCenters(ImagePlus inputCroppedImage, BasicImageSegmenterOutput segmentationOutput, ColorSettings settings){
+	public static ColorTileReaderInput [][] precalculateColonyCenters(ImagePlus inputCroppedImage, final BasicImageSegmenterOutput segmentationOutput, final ColorSettings settings){
 
 		//if there's only one colony, then there's no way to pre-calculate centers.
 		//basically return nulls in the place of the colony center. This will get it to calculate the center individually per-colony
-		if(IrisFrontend.singleColonyRun==true){
+		if(settings.singleColonyRun==true){
 			ColorTileReaderInput [][]  dummy_centeredColorTileReaderInput = new ColorTileReaderInput[1][1];
 			dummy_centeredColorTileReaderInput[0][0] = new ColorTileReaderInput(inputCroppedImage, segmentationOutput.ROImatrix[0][0], settings); //notice last argument (center point) is missing
 			return(dummy_centeredColorTileReaderInput);
 
 		}	
 		//initialize output
-		BasicTileReaderOutput [][] basicTileReaderOutputsCenters = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] basicTileReaderOutputsCenters = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
 
 		//make input image grayscale (in case it wasn't)
-		ImagePlus grayscaleCroppedImage = makeImageGrayscaleHSB(inputCroppedImage);
+		final ImagePlus grayscaleCroppedImage = makeImageGrayscaleHSB(inputCroppedImage);
 
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		//the colony centers of the tiles are found in parallel
+		TileExecutor.processAllTiles(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileExecutor.TileTask() {
+			@Override
+			public void processTile(int i, int j) {
 				basicTileReaderOutputsCenters[i][j] = BasicTileReader_Bsu.getColonyCenter(
 						new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
 
 			}
-		}
+		});
 
 		//get the medians of all the rows and columns, ignore zeroes
 		//for all rows
@@ -1583,95 +1717,22 @@ public class Toolbox {
 
 	/**
 	 * This function will use the ROI information in each TileReader to get the colony bounds on the picture, with
-	 * offsets found in the segmenterOutput.  
+	 * offsets found in the segmenterOutput (see ColonyOutlines). This one draws the round colony ROIs.
 	 * @param segmentedImage
 	 * @param segmenterOutput
 	 */
 	public static void drawColonyRoundBounds(ImagePlus croppedImage, BasicImageSegmenterOutput segmenterOutput, 
 			BasicTileReaderOutput [][] tileReaderOutputs){
 
+		Roi[][] colonyRois = new Roi[tileReaderOutputs.length][tileReaderOutputs[0].length];
 
-		//first, get all the colony bounds into byte processors (one for each tile, having the exact tile size)
-		ByteProcessor[][] colonyBounds = getColonyRoundBounds(croppedImage, segmenterOutput, tileReaderOutputs);
-
-
-		//paint those bounds on the original cropped image
-		ImageProcessor bigPictureProcessor = croppedImage.getProcessor();
-		//bigPictureProcessor.setColor(Color.black);
-		bigPictureProcessor.setColor(Color.green);
-		bigPictureProcessor.setLineWidth(1);
-
-
-		//for all rows
 		for(int i=0; i<tileReaderOutputs.length; i++){
-			//for all columns
 			for(int j=0; j<tileReaderOutputs[0].length; j++) {
-
-				//get tile offsets
-				int tile_y_offset = segmenterOutput.ROImatrix[i][j].getBounds().y;
-				int tile_x_offset = segmenterOutput.ROImatrix[i][j].getBounds().x;
-				int tileWidth = segmenterOutput.ROImatrix[i][j].getBounds().width;
-				int tileHeight = segmenterOutput.ROImatrix[i][j].getBounds().height;
-
-
-				//for each pixel, if it is colony bounds, paint it on the big picture
-				for(int x=0; x<tileWidth; x++){
-					for(int y=0; y<tileHeight; y++){
-						if(colonyBounds[i][j].getPixel(x, y)==255){ //it is a colony bounds pixel
-							bigPictureProcessor.drawDot(x+tile_x_offset, y+tile_y_offset); //paint it on the big picture
-						}
-					}
-				}
-
+				colonyRois[i][j] = tileReaderOutputs[i][j].colonyROIround;
 			}
-
 		}
-	}
-
-
-
-	/**
-	 * 
-	 * @param croppedImage
-	 * @param segmentationOutput
-	 * @param tileReaderOutputs
-	 * @return
-	 */
-	private static ByteProcessor[][] getColonyRoundBounds(ImagePlus croppedImage, BasicImageSegmenterOutput segmentationOutput, BasicTileReaderOutput [][] tileReaderOutputs){
-
-		ByteProcessor[][] colonyBounds = new ByteProcessor[tileReaderOutputs.length][tileReaderOutputs[0].length];
-
-		//for all rows
-		for(int i=0;i<tileReaderOutputs.length; i++){
-			//for all columns
-			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
-
-				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
-
-
-				//apply the ROI, get the mask
-				ImageProcessor tileProcessor = tile.getProcessor();
-				tileProcessor.setRoi(tileReaderOutputs[i][j].colonyROIround);
-
-				tileProcessor.setColor(Color.white);
-				tileProcessor.setBackgroundValue(0);
-				tileProcessor.fill(tileProcessor.getMask());
-
-
-				//get the bounds of the mask, that's it, save it
-				tileProcessor.findEdges();
-				colonyBounds[i][j] = (ByteProcessor) tileProcessor.convertToByte(true);		
-
-
-			}
-		}
-
-		croppedImage.deleteRoi();
 
-		return(colonyBounds);
+		ColonyOutlines.draw(croppedImage, segmenterOutput, colonyRois, Color.green);
 	}
 
 